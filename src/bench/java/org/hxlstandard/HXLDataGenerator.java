@@ -0,0 +1,142 @@
+package org.hxlstandard;
+
+import java.util.Random;
+
+/**
+ * Synthetic HXL CSV data for benchmarks.
+ *
+ * <p>The generated data has an optional preamble of untagged rows, a
+ * row of hashtags, and then the data rows. Cells are short words or
+ * numbers; a configurable share of them are quoted, and half of the
+ * quoted cells contain a separator or an escaped quotation mark so
+ * that the tokenizer has to take its slow path.</p>
+ *
+ * @author David Megginson
+ */
+public class HXLDataGenerator {
+
+    private final static String TAGS[] = {
+        "#sector", "#subsector", "#org", "#country", "#adm1", "#adm2",
+        "#affected", "#targeted", "#reached", "#date", "#status", "#description"
+    };
+
+    private final static String WORDS[] = {
+        "WASH", "Health", "Education", "Protection", "Shelter", "Logistics",
+        "Nutrition", "Food Security", "Early Recovery", "Camp Management"
+    };
+
+    private int rows = 10000;
+
+    private int width = 10;
+
+    private double quoteDensity = 0.0;
+
+    private int preambleRows = 0;
+
+    private long seed = 1L;
+
+    /**
+     * Set the number of data rows (default 10000).
+     *
+     * @param rows The number of rows after the hashtag row.
+     * @return This generator, for chaining.
+     */
+    public HXLDataGenerator rows(int rows) {
+        this.rows = rows;
+        return this;
+    }
+
+    /**
+     * Set the number of columns (default 10).
+     *
+     * @param width The number of tagged columns.
+     * @return This generator, for chaining.
+     */
+    public HXLDataGenerator width(int width) {
+        this.width = width;
+        return this;
+    }
+
+    /**
+     * Set the share of cells that are quoted (default 0.0).
+     *
+     * @param quoteDensity A fraction between 0.0 and 1.0.
+     * @return This generator, for chaining.
+     */
+    public HXLDataGenerator quoteDensity(double quoteDensity) {
+        this.quoteDensity = quoteDensity;
+        return this;
+    }
+
+    /**
+     * Set the number of untagged rows before the hashtags (default 0).
+     *
+     * @param preambleRows The number of rows to skip during header
+     * detection.
+     * @return This generator, for chaining.
+     */
+    public HXLDataGenerator preambleRows(int preambleRows) {
+        this.preambleRows = preambleRows;
+        return this;
+    }
+
+    /**
+     * Set the random seed (default 1), so that runs are repeatable.
+     *
+     * @param seed The seed for the cell generator.
+     * @return This generator, for chaining.
+     */
+    public HXLDataGenerator seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Generate the CSV text.
+     *
+     * @return The complete dataset as a string.
+     */
+    public String generate() {
+        final Random random = new Random(seed);
+        final StringBuilder out = new StringBuilder(rows * width * 12);
+        for (int r = 0; r < preambleRows; r++) {
+            for (int c = 0; c < width; c++) {
+                if (c > 0) {
+                    out.append(',');
+                }
+                out.append("Header ").append(c);
+            }
+            out.append("\r\n");
+        }
+        for (int c = 0; c < width; c++) {
+            if (c > 0) {
+                out.append(',');
+            }
+            out.append(TAGS[c % TAGS.length]);
+            if (c >= TAGS.length) {
+                out.append("+v").append(c / TAGS.length);
+            }
+        }
+        out.append("\r\n");
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < width; c++) {
+                if (c > 0) {
+                    out.append(',');
+                }
+                final String cell = (c % 3 == 0 ? Integer.toString(random.nextInt(100000)) : WORDS[random.nextInt(WORDS.length)]);
+                if (random.nextDouble() < quoteDensity) {
+                    out.append('"').append(cell);
+                    if (random.nextBoolean()) {
+                        out.append(random.nextBoolean() ? ", etc." : " \"\"sic\"\"");
+                    }
+                    out.append('"');
+                } else {
+                    out.append(cell);
+                }
+            }
+            out.append("\r\n");
+        }
+        return out.toString();
+    }
+
+}
@@ -0,0 +1,107 @@
+package org.hxlstandard;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks for queries with {@link HXLIndex}, compared with a
+ * scan over a list of rows.
+ *
+ * @author David Megginson
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HXLIndexBenchmark {
+
+    @Param({"100000"})
+    public int rows;
+
+    private String data;
+
+    private List<HXLRow> list;
+
+    private HXLIndex index;
+
+    private HXLColumn adm1;
+
+    private HXLColumn affected;
+
+    private String adm1Value;
+
+    @Setup
+    public void setUp() throws IOException {
+        data = new HXLDataGenerator().rows(rows).width(12).generate();
+        final HXLReader reader = new HXLReader(new StringReader(data));
+        adm1 = reader.getColumns().get(4);
+        affected = reader.getColumns().get(6);
+        index = new HXLIndex().addHashIndex(adm1).addNumberIndex(affected);
+        list = new ArrayList<HXLRow>();
+        HXLRow row = reader.read();
+        while (row != null) {
+            list.add(row);
+            index.add(row);
+            row = reader.read();
+        }
+        adm1Value = list.get(0).get(adm1).getContent();
+    }
+
+    /**
+     * Build both indexes while parsing.
+     */
+    @Benchmark
+    public HXLIndex build() throws IOException {
+        final HXLReader reader = new HXLReader(new StringReader(data));
+        reader.setReuseObjects(true);
+        final List<HXLColumn> columns = reader.getColumns();
+        final HXLIndex result = new HXLIndex().addHashIndex(columns.get(4)).addNumberIndex(columns.get(6));
+        result.addAll(reader);
+        result.range(columns.get(6), 0, 0);
+        return result;
+    }
+
+    /**
+     * Equality and range predicates, intersected.
+     */
+    @Benchmark
+    public BitSet query() {
+        final BitSet result = index.equal(adm1, adm1Value);
+        result.and(index.range(affected, 1000, 2000));
+        return result;
+    }
+
+    /**
+     * The same predicates, as a scan over every row.
+     */
+    @Benchmark
+    public BitSet scan() {
+        final BitSet result = new BitSet();
+        for (final HXLRow row : list) {
+            final HXLValue value = row.get(affected);
+            if (adm1Value.equals(row.get(adm1).getContent()) && value.isNumeric() && value.asDouble() >= 1000 && value.asDouble() <= 2000) {
+                result.set(row.getRowNumber());
+            }
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,339 @@
+package org.hxlstandard;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * JMH benchmarks for parsing with {@link HXLReader}.
+ *
+ * <p>Each operation parses one complete synthetic dataset, so divide
+ * the throughput by the row count to get rows per second. Run with
+ * <code>-prof gc</code> (the default for <code>ant bench</code>) to
+ * see the allocation rate per operation.</p>
+ *
+ * @author David Megginson
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HXLReaderBenchmark {
+
+    @Param({"10000"})
+    public int rows;
+
+    @Param({"10", "40"})
+    public int width;
+
+    @Param({"0.0", "0.25"})
+    public double quoteDensity;
+
+    @Param({"native", "opencsv"})
+    public String engine;
+
+    private String data;
+
+    private String preambleData;
+
+    private String referenceData;
+
+    private byte utf8Data[];
+
+    private byte gzipData[];
+
+    @Setup
+    public void setUp() throws IOException {
+        data = new HXLDataGenerator().rows(rows).width(width).quoteDensity(quoteDensity).generate();
+        preambleData = new HXLDataGenerator().rows(0).width(width).preambleRows(rows).generate();
+        // one reference row for each distinct #adm1
+        final StringBuilder reference = new StringBuilder("#adm1,#adm1+code\n");
+        final HXLPipeline adm1 = HXLPipeline.from(new HXLReader(new StringReader(data))).select("#adm1").distinct();
+        HXLRow row = adm1.read();
+        for (int i = 0; row != null; i++) {
+            reference.append(row.get("#adm1").getContent()).append(",C").append(i).append('\n');
+            row = adm1.read();
+        }
+        referenceData = reference.toString();
+        utf8Data = data.getBytes("UTF-8");
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        final OutputStream output = new GZIPOutputStream(compressed);
+        output.write(utf8Data);
+        output.close();
+        gzipData = compressed.toByteArray();
+    }
+
+    /**
+     * Parse every row, allocating new objects for each.
+     */
+    @Benchmark
+    public int readAll(Blackhole blackhole) throws IOException {
+        return consume(newReader(data), blackhole);
+    }
+
+    /**
+     * Parse every row with object reuse enabled.
+     */
+    @Benchmark
+    public int readAllReuseObjects(Blackhole blackhole) throws IOException {
+        final HXLReader reader = newReader(data);
+        reader.setReuseObjects(true);
+        return consume(reader, blackhole);
+    }
+
+    /**
+     * Parse every row with object reuse and metrics enabled, to compare
+     * with {@link #readAllReuseObjects(Blackhole)}.
+     */
+    @Benchmark
+    public int readAllMetrics(Blackhole blackhole) throws IOException {
+        final HXLReader reader = newReader(data);
+        reader.setReuseObjects(true);
+        reader.setMetrics(new HXLReaderMetrics());
+        return consume(reader, blackhole);
+    }
+
+    /**
+     * Parse UTF-8 bytes, decoding with {@link HXLInputDecoder}.
+     */
+    @Benchmark
+    public int readBytes(Blackhole blackhole) throws IOException {
+        final HXLReader reader = new HXLReader(new ByteArrayInputStream(utf8Data));
+        reader.setReuseObjects(true);
+        return consume(reader, blackhole);
+    }
+
+    /**
+     * Parse UTF-8 bytes, decoding with an {@link InputStreamReader}, to
+     * compare with {@link #readBytes(Blackhole)}.
+     */
+    @Benchmark
+    public int readBytesInputStreamReader(Blackhole blackhole) throws IOException {
+        final HXLReader reader = new HXLReader(new InputStreamReader(new ByteArrayInputStream(utf8Data), "UTF-8"));
+        reader.setReuseObjects(true);
+        return consume(reader, blackhole);
+    }
+
+    /**
+     * Parse gzipped data, decompressing on a background thread.
+     */
+    @Benchmark
+    public int readGzip(Blackhole blackhole) throws IOException {
+        final HXLReader reader = HXLReader.open(new ByteArrayInputStream(gzipData));
+        reader.setReuseObjects(true);
+        return consume(reader, blackhole);
+    }
+
+    /**
+     * Parse gzipped data, decompressing on the parsing thread, to
+     * compare with {@link #readGzip(Blackhole)}.
+     */
+    @Benchmark
+    public int readGzipInline(Blackhole blackhole) throws IOException {
+        final HXLReader reader = new HXLReader(new InputStreamReader(new GZIPInputStream(new ByteArrayInputStream(gzipData), 64 * 1024), "UTF-8"));
+        reader.setReuseObjects(true);
+        return consume(reader, blackhole);
+    }
+
+    /**
+     * Parse every row into a recycled block of rows.
+     */
+    @Benchmark
+    public int readAllBatch(Blackhole blackhole) throws IOException {
+        final HXLReader reader = newReader(data);
+        int n = 0;
+        HXLRowBlock block = reader.readBatch(1024);
+        while (block != null) {
+            for (int i = 0; i < block.size(); i++) {
+                for (final HXLValue value : block.get(i)) {
+                    blackhole.consume(value.getContent());
+                }
+            }
+            n += block.size();
+            block = reader.readBatch(1024);
+        }
+        return n;
+    }
+
+    /**
+     * Parse every row on a background thread while this thread
+     * consumes the values.
+     */
+    @Benchmark
+    public int readAllAsync(Blackhole blackhole) throws IOException {
+        final HXLAsyncReader reader = new HXLAsyncReader(newReader(data));
+        int n = 0;
+        List<HXLRow> batch = reader.readBatch();
+        while (batch != null) {
+            for (final HXLRow row : batch) {
+                for (final HXLValue value : row) {
+                    blackhole.consume(value.getContent());
+                }
+                n++;
+            }
+            batch = reader.readBatch();
+        }
+        reader.close();
+        return n;
+    }
+
+    /**
+     * Count the rows for one sector through a pipeline.
+     */
+    @Benchmark
+    public long filterCount() throws IOException {
+        final HXLReader reader = newReader(data);
+        reader.setReuseObjects(true);
+        return HXLPipeline.from(reader).filter("#sector", s -> s.startsWith("WASH")).count();
+    }
+
+    /**
+     * Count and sum by two grouping tags in one pass.
+     */
+    @Benchmark
+    public HXLAggregator.Result aggregate() throws IOException {
+        final HXLReader reader = newReader(data);
+        reader.setReuseObjects(true);
+        return new HXLAggregator("#adm1", "#org").count().sum("#affected").aggregate(reader);
+    }
+
+    /**
+     * Count and sum by two grouping tags, with a partial table per
+     * thread.
+     */
+    @Benchmark
+    public HXLAggregator.Result aggregateParallel() {
+        return new HXLAggregator("#adm1", "#org").count().sum("#affected").aggregate(newReader(data).stream().parallel());
+    }
+
+    /**
+     * Join every row with a small reference table on #adm1.
+     */
+    @Benchmark
+    public long join() throws IOException {
+        final HXLReader reader = newReader(data);
+        reader.setReuseObjects(true);
+        return HXLPipeline.from(reader).join(new HXLReader(new StringReader(referenceData)), "#adm1").count();
+    }
+
+    /**
+     * Sort every row by two tags in memory.
+     */
+    @Benchmark
+    public long sort() throws IOException {
+        final HXLReader reader = newReader(data);
+        reader.setReuseObjects(true);
+        return HXLPipeline.from(reader).sort("#affected", "#adm1").count();
+    }
+
+    /**
+     * Sort every row by two tags with a small memory budget, so that
+     * sorted runs are spilled to temporary files and merged.
+     */
+    @Benchmark
+    public long sortSpill() throws IOException {
+        final HXLReader reader = newReader(data);
+        reader.setReuseObjects(true);
+        final HXLSorter sorter = new HXLSorter(reader, "#affected", "#adm1");
+        sorter.setMemoryBudget(1024 * 1024);
+        try {
+            return HXLPipeline.from(sorter).count();
+        } finally {
+            sorter.close();
+        }
+    }
+
+    /**
+     * Check every row against a few rules as it is read.
+     */
+    @Benchmark
+    public long validate() throws IOException {
+        final HXLReader reader = newReader(data);
+        reader.setReuseObjects(true);
+        return newValidator().validate(reader).getRowCount();
+    }
+
+    /**
+     * Check every row against the same rules on a parallel stream.
+     */
+    @Benchmark
+    public long validateParallel() throws IOException {
+        final HXLReader reader = newReader(data);
+        return newValidator().validate(reader.getColumns(), reader.stream().parallel()).getRowCount();
+    }
+
+    /**
+     * Find the hashtag row after a long untagged preamble.
+     */
+    @Benchmark
+    public Object findColumns() throws IOException {
+        return newReader(preambleData).getColumns();
+    }
+
+    /**
+     * Give up on a long untagged preamble after 100 rows.
+     */
+    @Benchmark
+    public Object findColumnsLimited() {
+        final HXLReader reader = newReader(preambleData);
+        reader.setMaxHeaderRows(100);
+        try {
+            return reader.getColumns();
+        } catch (IOException e) {
+            return e;
+        }
+    }
+
+    private static HXLValidator newValidator() {
+        return new HXLValidator()
+            .required("#adm1")
+            .integer("#affected", 0, Long.MAX_VALUE)
+            .integer("#reached", 0, Long.MAX_VALUE)
+            .date("#date")
+            .setMaxErrors(Integer.MAX_VALUE);
+    }
+
+    private HXLReader newReader(final String input) {
+        if ("opencsv".equals(engine)) {
+            return new HXLReader(new HXLOpenCSVTokenizer(new StringReader(input)));
+        } else {
+            return new HXLReader(new StringReader(input));
+        }
+    }
+
+    private static int consume(final HXLReader reader, final Blackhole blackhole) throws IOException {
+        int n = 0;
+        HXLRow row = reader.read();
+        while (row != null) {
+            for (final HXLValue value : row) {
+                blackhole.consume(value.getContent());
+            }
+            n++;
+            row = reader.read();
+        }
+        return n;
+    }
+
+}
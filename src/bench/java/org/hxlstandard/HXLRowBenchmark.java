@@ -0,0 +1,99 @@
+package org.hxlstandard;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * JMH benchmarks for value access on {@link HXLRow} and {@link HXLValue}.
+ *
+ * @author David Megginson
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HXLRowBenchmark {
+
+    @Param({"10", "40"})
+    public int width;
+
+    private HXLRow row;
+
+    @Setup
+    public void setUp() throws IOException {
+        final String data = new HXLDataGenerator().rows(1).width(width).generate();
+        row = new HXLReader(new StringReader(data)).read();
+    }
+
+    /**
+     * Iterate with the for-each loop.
+     */
+    @Benchmark
+    public void iterateValues(Blackhole blackhole) {
+        for (final HXLValue value : row) {
+            blackhole.consume(value.getContent());
+        }
+    }
+
+    /**
+     * Index into the list returned by {@link HXLRow#getValues()}.
+     */
+    @Benchmark
+    public void indexValues(Blackhole blackhole) {
+        final List<HXLValue> values = row.getValues();
+        for (int i = 0; i < values.size(); i++) {
+            blackhole.consume(values.get(i).getContent());
+        }
+    }
+
+    /**
+     * Find the value for a tag with a linear scan.
+     */
+    @Benchmark
+    public Object findByTag() {
+        for (final HXLValue value : row) {
+            if ("#adm1".equals(value.getTag())) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Find the value for a tag through the shared column index.
+     */
+    @Benchmark
+    public Object getByTag() {
+        return row.get("#adm1");
+    }
+
+    /**
+     * Read the column metadata through each value.
+     */
+    @Benchmark
+    public void valueMetadata(Blackhole blackhole) {
+        for (final HXLValue value : row) {
+            blackhole.consume(value.getTag());
+            blackhole.consume(value.getLang());
+            blackhole.consume(value.getSourceColumnNumber());
+        }
+    }
+
+}
@@ -0,0 +1,99 @@
+package org.hxlstandard;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks comparing a reload from an {@link HXLSnapshot} with
+ * parsing the same data as CSV.
+ *
+ * @author David Megginson
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HXLSnapshotBenchmark {
+
+    @Param({"10000", "100000"})
+    public int rows;
+
+    @Param({"10"})
+    public int width;
+
+    private String data;
+
+    private File file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        data = new HXLDataGenerator().rows(rows).width(width).generate();
+        file = File.createTempFile("hxl-bench", ".hxls");
+        HXLSnapshot.write(new HXLColumnarDataset(new HXLReader(new StringReader(data))), file);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        file.delete();
+    }
+
+    /**
+     * Parse the CSV and look at one value in every row, as a baseline.
+     */
+    @Benchmark
+    public long parseCsv() throws IOException {
+        final HXLReader reader = new HXLReader(new StringReader(data));
+        return sumLengths(reader);
+    }
+
+    /**
+     * Open the snapshot and look at one value in every row.
+     */
+    @Benchmark
+    public long loadSnapshot() throws IOException {
+        final HXLSnapshot snapshot = new HXLSnapshot(file);
+        return sumLengths(snapshot);
+    }
+
+    /**
+     * Open the snapshot and fetch a single row.
+     */
+    @Benchmark
+    public HXLRow openSnapshot() throws IOException {
+        final HXLSnapshot snapshot = new HXLSnapshot(file);
+        final HXLRow row = snapshot.getRow(rows / 2);
+        snapshot.close();
+        return row;
+    }
+
+    private static long sumLengths(HXLRowSource source) throws IOException {
+        final String tag = source.getColumns().get(0).getTag();
+        long n = 0;
+        HXLRow row = source.read();
+        while (row != null) {
+            n += row.get(tag).getContent().length();
+            row = source.read();
+        }
+        source.close();
+        return n;
+    }
+
+}
@@ -0,0 +1,93 @@
+package org.hxlstandard;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks for parsing tag specs with {@link HXLTagSpec} and
+ * matching them with {@link HXLTagPattern}, compared with splitting
+ * the header strings on every match.
+ *
+ * @author David Megginson
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HXLTagBenchmark {
+
+    private final static String HEADERS[] = {
+        "#sector+cluster", "#org+impl", "#org+funder", "#adm1+name", "#adm1+code",
+        "#affected+f+children", "#affected+m+children", "#affected+f+adults",
+        "#affected+m+adults", "#reached+f", "#date+reported", "#description/en"
+    };
+
+    private HXLColumn columns[];
+
+    private HXLTagPattern pattern;
+
+    @Setup
+    public void setUp() {
+        columns = new HXLColumn[HEADERS.length];
+        for (int i = 0; i < HEADERS.length; i++) {
+            columns[i] = new HXLColumn(HEADERS[i], null, i, i);
+        }
+        pattern = HXLTagPattern.compile("#affected+f-adults");
+    }
+
+    /**
+     * Parse every header through the shared cache.
+     */
+    @Benchmark
+    public int parse() {
+        int n = 0;
+        for (final String header : HEADERS) {
+            n += HXLTagSpec.parse(header).getAttributes().size();
+        }
+        return n;
+    }
+
+    /**
+     * Match every column against a compiled pattern.
+     */
+    @Benchmark
+    public int matchPattern() {
+        int n = 0;
+        for (final HXLColumn column : columns) {
+            if (pattern.matches(column)) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Match every column by splitting its header, for comparison.
+     */
+    @Benchmark
+    public int matchStrings() {
+        int n = 0;
+        for (final String header : HEADERS) {
+            final List<String> parts = Arrays.asList(header.split("/")[0].split("\\+"));
+            if (parts.get(0).equals("#affected") && parts.contains("f") && !parts.contains("adults")) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+}
@@ -0,0 +1,81 @@
+package org.hxlstandard;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks for the typed accessors on {@link HXLValue}.
+ *
+ * @author David Megginson
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HXLValueBenchmark {
+
+    @Param({"12345", "-0.125", "2015-03-09"})
+    public String content;
+
+    private HXLColumn column;
+
+    private HXLValue value;
+
+    @Setup
+    public void setUp() {
+        column = new HXLColumn("#affected", null, 0, 0);
+        value = new HXLValue(column, content, 0, 0);
+    }
+
+    /**
+     * Parse a fresh value with the built-in parser.
+     */
+    @Benchmark
+    public double asDouble() {
+        value.init(column, content, 0, 0);
+        return (value.isNumeric() ? value.asDouble() : 0);
+    }
+
+    /**
+     * Parse with {@link Double#parseDouble(String)} for comparison.
+     */
+    @Benchmark
+    public double parseDouble() {
+        try {
+            return Double.parseDouble(content);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Read a value that has already been parsed.
+     */
+    @Benchmark
+    public boolean cachedIsNumeric() {
+        return value.isNumeric();
+    }
+
+    /**
+     * Parse a fresh value as a date.
+     */
+    @Benchmark
+    public boolean isDate() {
+        value.init(column, content, 0, 0);
+        return value.isDate();
+    }
+
+}
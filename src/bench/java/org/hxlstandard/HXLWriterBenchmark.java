@@ -0,0 +1,128 @@
+package org.hxlstandard;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks for round-tripping data through {@link HXLReader}
+ * and {@link HXLWriter}.
+ *
+ * <p>Output is discarded, so the numbers measure the writer's
+ * quoting, buffering, and encoding rather than the disk.</p>
+ *
+ * @author David Megginson
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HXLWriterBenchmark {
+
+    @Param({"10000"})
+    public int rows;
+
+    @Param({"10", "40"})
+    public int width;
+
+    @Param({"0.0", "0.25"})
+    public double quoteDensity;
+
+    private String data;
+
+    @Setup
+    public void setUp() {
+        data = new HXLDataGenerator().rows(rows).width(width).quoteDensity(quoteDensity).generate();
+    }
+
+    /**
+     * Read every row, and write it to a character stream.
+     */
+    @Benchmark
+    public long roundTripWriter() throws IOException {
+        final HXLReader reader = new HXLReader(new StringReader(data));
+        reader.setReuseObjects(true);
+        final HXLWriter writer = new HXLWriter(new NullWriter());
+        final long n = writer.write(reader);
+        writer.close();
+        return n;
+    }
+
+    /**
+     * Read every row, and encode it as UTF-8 to a channel.
+     */
+    @Benchmark
+    public long roundTripChannel() throws IOException {
+        final HXLReader reader = new HXLReader(new StringReader(data));
+        reader.setReuseObjects(true);
+        final HXLWriter writer = new HXLWriter(new NullChannel());
+        final long n = writer.write(reader);
+        writer.close();
+        return n;
+    }
+
+    /**
+     * Read every row without writing, as a baseline.
+     */
+    @Benchmark
+    public long readOnly() throws IOException {
+        final HXLReader reader = new HXLReader(new StringReader(data));
+        reader.setReuseObjects(true);
+        return HXLPipeline.from(reader).count();
+    }
+
+    private static class NullWriter extends Writer {
+
+        @Override
+        public void write(char chars[], int offset, int length) {
+            // discard
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+    }
+
+    private static class NullChannel implements WritableByteChannel {
+
+        @Override
+        public int write(ByteBuffer buffer) {
+            final int n = buffer.remaining();
+            buffer.position(buffer.limit());
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+
+    }
+
+}
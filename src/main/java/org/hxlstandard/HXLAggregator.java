@@ -0,0 +1,550 @@
+package org.hxlstandard;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+/**
+ * Group-by and aggregate engine for HXL data.
+ *
+ * <p>The aggregator groups rows by the values of some hashtags (for
+ * example, <code>#adm1</code> and <code>#sector</code>) and computes
+ * counts, sums, minimums, maximums, and averages for each group, in a
+ * single pass over the data:</p>
+ *
+ * <pre>
+ * HXLAggregator.Result result = new HXLAggregator("#adm1", "#sector")
+ *   .count()
+ *   .sum("#affected")
+ *   .aggregate(new HXLReader(input));
+ * for (int i = 0; i &lt; result.getGroupCount(); i++) {
+ *   System.out.println(result.getKey(i, 0) + " " + result.getKey(i, 1) + ": " + result.getValue(i, 1));
+ * }
+ * </pre>
+ *
+ * <p>Each group's state is kept in primitive arrays, so adding a row
+ * creates no objects except for the first row of a new group. Values
+ * that aren't numbers (see {@link HXLValue#isNumeric()}) are ignored
+ * by every function except {@link Function#COUNT}, which counts
+ * rows.</p>
+ *
+ * <p>To aggregate on several threads, pass a parallel stream to
+ * {@link #aggregate(Stream)}: each thread fills its own partial table
+ * with no locking, and the partial tables are merged at the end.
+ * This works well with {@link HXLParallelReader}, or with any source
+ * that doesn't reuse its row objects:</p>
+ *
+ * <pre>
+ * result = aggregator.aggregate(HXLPipeline.from(new HXLParallelReader(file)).stream().parallel());
+ * </pre>
+ *
+ * <p>Groups are listed in the order in which they first appear in the
+ * data, for parallel streams as well. An aggregator may be used for
+ * any number of aggregations, but must not be changed while one is
+ * running.</p>
+ *
+ * @author David Megginson
+ */
+public class HXLAggregator {
+
+    /**
+     * Aggregate function.
+     */
+    public enum Function {
+        /** The number of rows in the group. */
+        COUNT,
+        /** The sum of the numeric values, or 0 if there are none. */
+        SUM,
+        /** The smallest numeric value. */
+        MIN,
+        /** The largest numeric value. */
+        MAX,
+        /** The average of the numeric values. */
+        AVG
+    }
+
+    /**
+     * Hashtag of the output column for {@link Function#COUNT}.
+     */
+    public final static String COUNT_TAG = "#meta+count";
+
+    private final String groupTags[];
+
+    private final List<Function> functions = new ArrayList<Function>();
+
+    private final List<String> tags = new ArrayList<String>();
+
+    /**
+     * Create an aggregator.
+     *
+     * @param groupTags The HXL hashtags to group by. With no tags, the
+     * whole dataset is a single group.
+     */
+    public HXLAggregator(String... groupTags) {
+        for (final String tag : groupTags) {
+            if (tag == null) {
+                throw new NullPointerException("tag");
+            }
+        }
+        this.groupTags = groupTags.clone();
+    }
+
+    /**
+     * Count the rows in each group.
+     *
+     * @return This aggregator.
+     */
+    public HXLAggregator count() {
+        return add(Function.COUNT, null);
+    }
+
+    /**
+     * Add up the numeric values of a column in each group.
+     *
+     * @param tag The HXL hashtag of the column.
+     * @return This aggregator.
+     */
+    public HXLAggregator sum(String tag) {
+        return add(Function.SUM, tag);
+    }
+
+    /**
+     * Find the smallest numeric value of a column in each group.
+     *
+     * @param tag The HXL hashtag of the column.
+     * @return This aggregator.
+     */
+    public HXLAggregator min(String tag) {
+        return add(Function.MIN, tag);
+    }
+
+    /**
+     * Find the largest numeric value of a column in each group.
+     *
+     * @param tag The HXL hashtag of the column.
+     * @return This aggregator.
+     */
+    public HXLAggregator max(String tag) {
+        return add(Function.MAX, tag);
+    }
+
+    /**
+     * Average the numeric values of a column in each group.
+     *
+     * @param tag The HXL hashtag of the column.
+     * @return This aggregator.
+     */
+    public HXLAggregator avg(String tag) {
+        return add(Function.AVG, tag);
+    }
+
+    /**
+     * Add an aggregate.
+     *
+     * <p>The results are numbered in the order that aggregates are
+     * added, starting from 0.</p>
+     *
+     * @param function The aggregate function.
+     * @param tag The HXL hashtag of the column, or null for {@link
+     * Function#COUNT}.
+     * @return This aggregator.
+     * @exception IllegalArgumentException if a tag is missing, or given
+     * for {@link Function#COUNT}.
+     */
+    public HXLAggregator add(Function function, String tag) {
+        if ((function == Function.COUNT) != (tag == null)) {
+            throw new IllegalArgumentException(function == Function.COUNT ? "COUNT takes no tag" : function + " needs a tag");
+        }
+        functions.add(function);
+        tags.add(tag);
+        return this;
+    }
+
+    /**
+     * Aggregate all of the remaining rows from a source, on the
+     * caller's thread.
+     *
+     * <p>The source isn't closed.</p>
+     *
+     * @param source The source of HXL rows.
+     * @return The aggregated groups.
+     * @exception IOException if there is an error reading the source.
+     */
+    public Result aggregate(HXLRowSource source) throws IOException {
+        final Table table = new Table(this);
+        table.columns = source.getColumns();
+        HXLRow row = source.read();
+        while (row != null) {
+            table.add(row);
+            row = source.read();
+        }
+        return new Result(table);
+    }
+
+    /**
+     * Aggregate a stream of rows, in parallel if the stream is
+     * parallel.
+     *
+     * <p>The rows must not be recycled objects (see {@link
+     * HXLReader#setReuseObjects(boolean)}) if the stream is
+     * parallel. Errors from the stream's source are thrown as {@link
+     * java.io.UncheckedIOException}.</p>
+     *
+     * @param rows The rows to aggregate.
+     * @return The aggregated groups.
+     */
+    public Result aggregate(Stream<HXLRow> rows) {
+        return new Result(rows.collect(() -> new Table(this), Table::add, Table::merge));
+    }
+
+    /**
+     * The groups and aggregate values from an aggregation.
+     *
+     * <p>The result is also an {@link HXLRowSource}, with one row per
+     * group: the grouping columns come first, followed by one column
+     * per aggregate, tagged {@link #COUNT_TAG} for a count and with
+     * the function as an attribute for the others (e.g.
+     * "#affected+sum"). Numbers are in the normalised form of {@link
+     * HXLColumnVector#getString(int)}, and a minimum, maximum, or
+     * average with no numeric values is "".</p>
+     */
+    public final static class Result implements HXLRowSource {
+
+        private final Table table;
+
+        private final HXLColumnIndex columnIndex;
+
+        private int nextGroup;
+
+        private Result(Table table) {
+            this.table = table;
+            final HXLAggregator aggregator = table.aggregator;
+            final List<HXLColumn> columns = new ArrayList<HXLColumn>();
+            // the same columns that HXLRow.get(tag) finds
+            final HXLColumnIndex sourceIndex = (table.columns == null ? null : new HXLColumnIndex(table.columns));
+            for (final String tag : aggregator.groupTags) {
+                HXLColumn sourceColumn = null;
+                if (sourceIndex != null) {
+                    final int n = sourceIndex.getColumnNumber(tag);
+                    sourceColumn = (n < 0 ? null : table.columns.get(n));
+                }
+                if (sourceColumn == null) {
+                    columns.add(new HXLColumn(tag, null, columns.size(), -1));
+                } else {
+                    columns.add(new HXLColumn(tag, sourceColumn.getLang(), columns.size(), sourceColumn.getSourceColumnNumber()));
+                }
+            }
+            for (int i = 0; i < aggregator.functions.size(); i++) {
+                final Function function = aggregator.functions.get(i);
+                final String tag = (function == Function.COUNT ? COUNT_TAG : aggregator.tags.get(i) + "+" + function.name().toLowerCase(Locale.ROOT));
+                columns.add(new HXLColumn(tag, null, columns.size(), -1));
+            }
+            this.columnIndex = new HXLColumnIndex(columns);
+        }
+
+        /**
+         * Get the output columns.
+         *
+         * @return A read-only list of columns: the grouping columns,
+         * then the aggregates.
+         */
+        @Override
+        public List<HXLColumn> getColumns() {
+            return columnIndex.getColumns();
+        }
+
+        /**
+         * Get the number of groups.
+         *
+         * @return The group count.
+         */
+        public int getGroupCount() {
+            return table.size;
+        }
+
+        /**
+         * Get a grouping value.
+         *
+         * @param group The zero-based group index.
+         * @param i The position of the tag in the aggregator's grouping
+         * tags.
+         * @return The value shared by the group's rows ("" if they have
+         * none).
+         */
+        public String getKey(int group, int i) {
+            checkGroup(group);
+            return table.keys.get(group)[i];
+        }
+
+        /**
+         * Get the number of rows in a group.
+         *
+         * @param group The zero-based group index.
+         * @return The row count.
+         */
+        public long getCount(int group) {
+            checkGroup(group);
+            return table.rowCounts[group];
+        }
+
+        /**
+         * Get an aggregate value.
+         *
+         * @param group The zero-based group index.
+         * @param aggregate The position of the aggregate, in the order
+         * it was added to the aggregator.
+         * @return The value; NaN for a minimum, maximum, or average
+         * with no numeric values.
+         */
+        public double getValue(int group, int aggregate) {
+            checkGroup(group);
+            final int n = table.width;
+            if (aggregate < 0 || aggregate >= n) {
+                throw new IndexOutOfBoundsException("Aggregate " + aggregate + " of " + n);
+            }
+            switch (table.functions[aggregate]) {
+            case COUNT:
+                return table.rowCounts[group];
+            case AVG:
+                final long count = table.counts[group * n + aggregate];
+                return (count == 0 ? Double.NaN : table.values[group * n + aggregate] / count);
+            default:
+                return table.values[group * n + aggregate];
+            }
+        }
+
+        /**
+         * Build the output row for a group.
+         *
+         * @param group The zero-based group index.
+         * @return A new row object, with the group index as its row
+         * number and no source row number.
+         */
+        public HXLRow getRow(int group) {
+            checkGroup(group);
+            final HXLRow row = new HXLRow(group, -1, columnIndex);
+            final List<HXLValue> values = row.getValuesModifiable();
+            final List<HXLColumn> columns = columnIndex.getColumns();
+            final String key[] = table.keys.get(group);
+            for (int i = 0; i < key.length; i++) {
+                values.add(new HXLValue(columns.get(i), key[i], group, -1));
+            }
+            for (int i = 0; i < table.width; i++) {
+                final double value = getValue(group, i);
+                final String content = (Double.isNaN(value) ? "" : HXLColumnVector.formatDouble(value));
+                values.add(new HXLValue(columns.get(key.length + i), content, group, -1));
+            }
+            return row;
+        }
+
+        /**
+         * Read the next group's output row.
+         *
+         * @return A new row, or null after the last group.
+         */
+        @Override
+        public HXLRow read() {
+            return (nextGroup < table.size ? getRow(nextGroup++) : null);
+        }
+
+        /**
+         * Finish reading the output rows.
+         */
+        @Override
+        public void close() {
+            nextGroup = table.size;
+        }
+
+        private void checkGroup(int group) {
+            if (group < 0 || group >= table.size) {
+                throw new IndexOutOfBoundsException("Group " + group + " of " + table.size);
+            }
+        }
+
+    }
+
+    /**
+     * A hash table of groups, filled by one thread.
+     */
+    private final static class Table {
+
+        final HXLAggregator aggregator;
+
+        final String groupTags[];
+
+        final Function functions[];
+
+        final String tags[];
+
+        final int width;
+
+        final HashMap<Key,Integer> groups = new HashMap<Key,Integer>();
+
+        final ArrayList<String[]> keys = new ArrayList<String[]>();
+
+        final Key probe;
+
+        List<HXLColumn> columns;
+
+        int size;
+
+        long rowCounts[] = new long[16];
+
+        long counts[];
+
+        double values[];
+
+        Table(HXLAggregator aggregator) {
+            this.aggregator = aggregator;
+            groupTags = aggregator.groupTags;
+            functions = aggregator.functions.toArray(new Function[aggregator.functions.size()]);
+            tags = aggregator.tags.toArray(new String[aggregator.tags.size()]);
+            width = functions.length;
+            counts = new long[16 * width];
+            values = new double[16 * width];
+            probe = new Key(new String[groupTags.length]);
+        }
+
+        void add(HXLRow row) {
+            if (columns == null) {
+                columns = columnsOf(row);
+            }
+            final String parts[] = probe.parts;
+            for (int i = 0; i < parts.length; i++) {
+                final HXLValue value = row.get(groupTags[i]);
+                parts[i] = (value == null ? "" : value.getContent());
+            }
+            probe.rehash();
+            final int group = findGroup(probe);
+            rowCounts[group]++;
+            final int base = group * width;
+            for (int i = 0; i < width; i++) {
+                if (functions[i] == Function.COUNT) {
+                    continue;
+                }
+                final HXLValue value = row.get(tags[i]);
+                if (value != null && value.isNumeric()) {
+                    accumulate(base + i, functions[i], 1, value.asDouble());
+                }
+            }
+        }
+
+        void merge(Table other) {
+            if (columns == null) {
+                columns = other.columns;
+            }
+            for (int g = 0; g < other.size; g++) {
+                final Key key = new Key(other.keys.get(g));
+                key.rehash();
+                final int group = findGroup(key);
+                rowCounts[group] += other.rowCounts[g];
+                for (int i = 0; i < width; i++) {
+                    final long count = other.counts[g * width + i];
+                    if (count > 0) {
+                        accumulate(group * width + i, functions[i], count, other.values[g * width + i]);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Add one value (or a partial result covering several values)
+         * to an accumulator.
+         */
+        private void accumulate(int slot, Function function, long count, double v) {
+            if (counts[slot] == 0) {
+                values[slot] = v;
+            } else {
+                switch (function) {
+                case MIN:
+                    if (v < values[slot]) {
+                        values[slot] = v;
+                    }
+                    break;
+                case MAX:
+                    if (v > values[slot]) {
+                        values[slot] = v;
+                    }
+                    break;
+                default:
+                    values[slot] += v;
+                }
+            }
+            counts[slot] += count;
+        }
+
+        /**
+         * Find a group, adding it if it's new.
+         *
+         * <p>The probe key is copied only when the group is added.</p>
+         */
+        private int findGroup(Key key) {
+            final Integer group = groups.get(key);
+            if (group != null) {
+                return group;
+            }
+            final Key copy = (key == probe ? new Key(key.parts.clone()) : key);
+            copy.hash = key.hash;
+            final int n = size++;
+            groups.put(copy, n);
+            keys.add(copy.parts);
+            if (n == rowCounts.length) {
+                rowCounts = Arrays.copyOf(rowCounts, n * 2);
+                counts = Arrays.copyOf(counts, n * 2 * width);
+                values = Arrays.copyOf(values, n * 2 * width);
+            }
+            for (int i = 0; i < width; i++) {
+                // MIN, MAX, and AVG stay NaN until they see a number
+                values[n * width + i] = (functions[i] == Function.SUM ? 0.0 : Double.NaN);
+            }
+            return n;
+        }
+
+        private static List<HXLColumn> columnsOf(HXLRow row) {
+            if (row.getColumnIndex() != null) {
+                return row.getColumnIndex().getColumns();
+            }
+            final List<HXLColumn> columns = new ArrayList<HXLColumn>();
+            for (final HXLValue value : row.getValues()) {
+                columns.add(value.getColumn());
+            }
+            return Collections.unmodifiableList(columns);
+        }
+
+    }
+
+    /**
+     * Grouping values, compared as a whole.
+     */
+    private final static class Key {
+
+        final String parts[];
+
+        int hash;
+
+        Key(String parts[]) {
+            this.parts = parts;
+        }
+
+        void rehash() {
+            hash = Arrays.hashCode(parts);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return (o instanceof Key && ((Key) o).hash == hash && Arrays.equals(((Key) o).parts, parts));
+        }
+
+    }
+
+}
@@ -0,0 +1,296 @@
+package org.hxlstandard;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Reader that parses HXL data ahead of the consumer on a background
+ * thread.
+ *
+ * <p>A producer thread reads rows from another {@link HXLRowSource}
+ * (usually an {@link HXLReader}) in batches, and hands the batches to
+ * the consumer through a bounded queue. While the consumer works on
+ * one batch, the producer is already doing the I/O and parsing for
+ * the next ones; when the queue is full, the producer waits, so memory
+ * use is bounded by the batch size times the queue capacity.</p>
+ *
+ * <p>Example:</p>
+ *
+ * <pre>
+ * HXLAsyncReader reader = new HXLAsyncReader(new HXLReader(input));
+ * List&lt;HXLRow&gt; batch = reader.readBatch();
+ * while (batch != null) {
+ *   // process the rows while the next batch is being parsed
+ *   batch = reader.readBatch();
+ * }
+ * reader.close();
+ * </pre>
+ *
+ * <p>An exception thrown by the source on the producer thread is
+ * rethrown to the consumer from {@link #read()} or {@link
+ * #readBatch()}, after any rows read before the error. {@link
+ * #close()} stops the producer and closes the source; rows that were
+ * already parsed are discarded.</p>
+ *
+ * <p>The source must not recycle its row objects (see {@link
+ * HXLReader#setReuseObjects(boolean)}), since rows are kept in batches.
+ * A single consumer thread should use the reader.</p>
+ *
+ * @author David Megginson
+ */
+public class HXLAsyncReader implements HXLRowSource {
+
+    /**
+     * Default number of rows in a batch.
+     */
+    public final static int DEFAULT_BATCH_SIZE = 256;
+
+    /**
+     * Default number of batches that the producer may parse ahead.
+     */
+    public final static int DEFAULT_CAPACITY = 16;
+
+    private final static List<HXLRow> END = new ArrayList<HXLRow>(0);
+
+    private final HXLRowSource source;
+
+    private final int batchSize;
+
+    private final BlockingQueue<List<HXLRow>> queue;
+
+    private final ThreadFactory threadFactory;
+
+    private List<HXLColumn> columns;
+
+    private Thread producer;
+
+    private volatile boolean closed;
+
+    private volatile Throwable error;
+
+    private boolean finished;
+
+    private List<HXLRow> currentRows;
+
+    private int currentIndex;
+
+    /**
+     * Create a new reader with the default batch size and capacity.
+     *
+     * @param source The source to read on a background thread.
+     */
+    public HXLAsyncReader(HXLRowSource source) {
+        this(source, DEFAULT_BATCH_SIZE, DEFAULT_CAPACITY, null);
+    }
+
+    /**
+     * Create a new reader.
+     *
+     * @param source The source to read on a background thread.
+     * @param batchSize The number of rows in each batch.
+     * @param capacity The number of batches that the producer may
+     * parse ahead of the consumer.
+     * @param threadFactory The factory for the producer thread (e.g.
+     * one that makes virtual threads), or null for a daemon platform
+     * thread.
+     */
+    public HXLAsyncReader(HXLRowSource source, int batchSize, int capacity, ThreadFactory threadFactory) {
+        if (source == null) {
+            throw new NullPointerException("source");
+        }
+        if (source instanceof HXLReader && ((HXLReader) source).isReuseObjects()) {
+            throw new IllegalArgumentException("Source must not reuse row objects");
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.source = source;
+        this.batchSize = batchSize;
+        this.queue = new ArrayBlockingQueue<List<HXLRow>>(capacity);
+        this.threadFactory = threadFactory;
+    }
+
+    /**
+     * Get the HXL columns.
+     *
+     * <p>The columns are read on the caller's thread, and the producer
+     * starts straight afterwards.</p>
+     *
+     * @return A list of HXL columns.
+     * @exception IOException if there is an error reading the hashtag
+     * row.
+     */
+    @Override
+    public List<HXLColumn> getColumns() throws IOException {
+        if (this.columns == null) {
+            this.columns = this.source.getColumns();
+            this.start();
+        }
+        return this.columns;
+    }
+
+    /**
+     * Read the next row of HXL data.
+     *
+     * @return A row of HXL data, or null if the source is finished or
+     * the reader has been closed.
+     * @exception IOException if the source failed, or the thread was
+     * interrupted while waiting.
+     */
+    @Override
+    public HXLRow read() throws IOException {
+        while (this.currentRows == null || this.currentIndex >= this.currentRows.size()) {
+            this.currentRows = this.readBatch();
+            this.currentIndex = 0;
+            if (this.currentRows == null) {
+                return null;
+            }
+        }
+        return this.currentRows.get(this.currentIndex++);
+    }
+
+    /**
+     * Read the next batch of rows, waiting if the producer hasn't
+     * finished parsing it.
+     *
+     * <p>Rows left over from a partly-consumed batch (after calls to
+     * {@link #read()}) are returned first.</p>
+     *
+     * @return A list of up to the batch size of rows, or null if the
+     * source is finished or the reader has been closed.
+     * @exception IOException if the source failed, or the thread was
+     * interrupted while waiting.
+     */
+    public List<HXLRow> readBatch() throws IOException {
+        if (this.currentRows != null && this.currentIndex < this.currentRows.size()) {
+            final List<HXLRow> rest = this.currentRows.subList(this.currentIndex, this.currentRows.size());
+            this.currentRows = null;
+            return rest;
+        }
+        this.getColumns();
+        if (this.finished || this.closed) {
+            return null;
+        }
+        final List<HXLRow> batch;
+        try {
+            batch = this.queue.take();
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for rows");
+        }
+        if (batch == END) {
+            this.finished = true;
+            this.rethrow();
+            return null;
+        }
+        return batch;
+    }
+
+    /**
+     * Stop the producer and close the source.
+     *
+     * <p>If the producer is blocked in an uninterruptible read, this
+     * method waits for that read to return before closing the
+     * source.</p>
+     *
+     * @exception IOException if there is an error closing the source.
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        this.currentRows = null;
+        if (this.producer != null) {
+            this.producer.interrupt();
+            this.queue.clear();
+            boolean interrupted = false;
+            while (this.producer.isAlive()) {
+                try {
+                    this.producer.join();
+                } catch (final InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        this.source.close();
+    }
+
+    private void start() {
+        final Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                produce();
+            }
+        };
+        if (this.threadFactory == null) {
+            this.producer = new Thread(task, "hxl-prefetch");
+            this.producer.setDaemon(true);
+        } else {
+            this.producer = this.threadFactory.newThread(task);
+        }
+        this.producer.start();
+    }
+
+    /**
+     * Producer loop, run on the background thread.
+     */
+    private void produce() {
+        List<HXLRow> batch = new ArrayList<HXLRow>(this.batchSize);
+        try {
+            try {
+                HXLRow row = this.closed ? null : this.source.read();
+                while (row != null) {
+                    batch.add(row);
+                    if (batch.size() == this.batchSize) {
+                        this.queue.put(batch);
+                        batch = new ArrayList<HXLRow>(this.batchSize);
+                    }
+                    row = this.closed ? null : this.source.read();
+                }
+            } catch (final InterruptedException ex) {
+                throw ex;
+            } catch (final Throwable t) {
+                if (this.closed) {
+                    return;
+                }
+                this.error = t;
+            }
+            // rows read before the end (or an error) come first
+            if (!batch.isEmpty()) {
+                this.queue.put(batch);
+            }
+            this.queue.put(END);
+        } catch (final InterruptedException ex) {
+            // closed by the consumer
+        }
+    }
+
+    private void rethrow() throws IOException {
+        final Throwable cause = this.error;
+        if (cause == null) {
+            return;
+        } else if (cause instanceof IOException) {
+            throw (IOException) cause;
+        } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+            throw (Error) cause;
+        } else {
+            throw new IOException(cause);
+        }
+    }
+
+}
@@ -0,0 +1,345 @@
+package org.hxlstandard;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Buffer-based RFC 4180 CSV tokenizer.
+ *
+ * <p>This is the default engine for {@link HXLReader}. It reads its
+ * input into a single character buffer and records each field of the
+ * current record as a slice of that buffer, so parsing a record
+ * allocates nothing: a string is created only when a client calls
+ * {@link #getField(int)}. Quoted fields may contain separators, line
+ * breaks, and doubled quotation marks (<code>""</code>), which are
+ * unescaped in place. Records may end with CRLF, LF, or a bare
+ * CR. A byte order mark (U+FEFF) at the start of the input is
+ * skipped.</p>
+ *
+ * <p>Unlike the opencsv engine ({@link HXLOpenCSVTokenizer}), the
+ * backslash has no special meaning.</p>
+ *
+ * <p>The buffer grows as needed to hold the longest record in the
+ * input, so memory use is bounded by the record length rather than
+ * the file length.</p>
+ *
+ * @author David Megginson
+ */
+public class HXLCSVTokenizer implements HXLTokenizer {
+
+    /**
+     * Default size of the character buffer.
+     */
+    public final static int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Default field separator.
+     */
+    public final static char DEFAULT_SEPARATOR = ',';
+
+    private final static char QUOTE = '"';
+
+    private final static char BOM = '\ufeff';
+
+    private final Reader input;
+
+    private final char separator;
+
+    private char buffer[];
+
+    private int pos;
+
+    private int limit;
+
+    private long bufferOffset;
+
+    private boolean eof;
+
+    private int recordStart;
+
+    private int fieldStart;
+
+    private int fieldEnd;
+
+    private int fieldStarts[] = new int[16];
+
+    private int fieldEnds[] = new int[16];
+
+    private int fieldCount;
+
+    /**
+     * Create a new tokenizer with the default separator and buffer size.
+     *
+     * @param input The character stream to tokenize.
+     */
+    public HXLCSVTokenizer(Reader input) {
+        this(input, DEFAULT_SEPARATOR, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Create a new tokenizer.
+     *
+     * @param input The character stream to tokenize.
+     * @param separator The field separator character.
+     * @param bufferSize The initial size of the character buffer.
+     */
+    public HXLCSVTokenizer(Reader input, char separator, int bufferSize) {
+        if (input == null) {
+            throw new NullPointerException("input");
+        }
+        if (separator == QUOTE || separator == '\r' || separator == '\n') {
+            throw new IllegalArgumentException("Illegal separator: " + separator);
+        }
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("Buffer size must be positive: " + bufferSize);
+        }
+        this.input = input;
+        this.separator = separator;
+        this.buffer = new char[bufferSize];
+    }
+
+    @Override
+    public int next() throws IOException {
+        fieldCount = 0;
+        recordStart = pos;
+        if (pos >= limit && !fill()) {
+            return -1;
+        }
+        while (readField()) {
+            // keep going until the end of the record
+        }
+        return fieldCount;
+    }
+
+    @Override
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    @Override
+    public String getField(int index) {
+        checkIndex(index);
+        final int length = fieldEnds[index] - fieldStarts[index];
+        return (length == 0 ? "" : new String(buffer, fieldStarts[index], length));
+    }
+
+    @Override
+    public int getFieldLength(int index) {
+        checkIndex(index);
+        return fieldEnds[index] - fieldStarts[index];
+    }
+
+    @Override
+    public char getFieldChar(int index, int offset) {
+        checkIndex(index);
+        if (offset < 0 || offset >= fieldEnds[index] - fieldStarts[index]) {
+            throw new IndexOutOfBoundsException("Offset " + offset + " in field " + index);
+        }
+        return buffer[fieldStarts[index] + offset];
+    }
+
+    /**
+     * Get the number of characters consumed so far.
+     *
+     * @return The offset of the end of the current record.
+     */
+    @Override
+    public long getInputOffset() {
+        return bufferOffset + pos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+    /**
+     * Get the character buffer that holds the current record.
+     *
+     * The buffer may be replaced by the next call to {@link #next()}.
+     *
+     * @return The buffer.
+     */
+    char[] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Get the offset of a field in the buffer.
+     *
+     * @param index The zero-based field index.
+     * @return The offset of the field's first character in {@link
+     * #getBuffer()}.
+     */
+    int getFieldStart(int index) {
+        checkIndex(index);
+        return fieldStarts[index];
+    }
+
+    /**
+     * Read one field of the current record.
+     *
+     * @return true if another field follows in the same record.
+     */
+    private boolean readField() throws IOException {
+        fieldStart = fieldEnd = pos;
+        if (pos >= limit && !fill()) {
+            return endField(false);
+        }
+        if (buffer[pos] == QUOTE) {
+            fieldStart = fieldEnd = ++pos;
+            readQuoted();
+        }
+
+        // unquoted content (or anything trailing a closing quote)
+        for (;;) {
+            final char b[] = buffer;
+            final int l = limit;
+            final char sep = separator;
+            int p = pos;
+            int w = fieldEnd;
+            if (w == p) {
+                while (p < l) {
+                    final char c = b[p];
+                    if (c == sep || c == '\n' || c == '\r') {
+                        break;
+                    }
+                    p++;
+                }
+                w = p;
+            } else {
+                while (p < l) {
+                    final char c = b[p];
+                    if (c == sep || c == '\n' || c == '\r') {
+                        break;
+                    }
+                    b[w++] = c;
+                    p++;
+                }
+            }
+            pos = p;
+            fieldEnd = w;
+            if (p < l) {
+                break;
+            }
+            if (!fill()) {
+                return endField(false);
+            }
+        }
+
+        final char c = buffer[pos++];
+        if (c == separator) {
+            return endField(true);
+        }
+        if (c == '\r' && (pos < limit || fill()) && buffer[pos] == '\n') {
+            pos++;
+        }
+        return endField(false);
+    }
+
+    /**
+     * Read the inside of a quoted field, up to and including the
+     * closing quotation mark.
+     */
+    private void readQuoted() throws IOException {
+        for (;;) {
+            final char b[] = buffer;
+            final int l = limit;
+            int p = pos;
+            int w = fieldEnd;
+            while (p < l) {
+                final char c = b[p];
+                if (c == QUOTE) {
+                    break;
+                }
+                b[w++] = c;
+                p++;
+            }
+            pos = p;
+            fieldEnd = w;
+            if (p == l) {
+                if (!fill()) {
+                    return; // unterminated quote: take what we have
+                }
+                continue;
+            }
+            pos++;
+            if (pos >= limit && !fill()) {
+                return;
+            }
+            if (buffer[pos] != QUOTE) {
+                return;
+            }
+            buffer[fieldEnd++] = QUOTE;
+            pos++;
+        }
+    }
+
+    private boolean endField(boolean more) {
+        if (fieldCount == fieldStarts.length) {
+            fieldStarts = Arrays.copyOf(fieldStarts, fieldCount * 2);
+            fieldEnds = Arrays.copyOf(fieldEnds, fieldCount * 2);
+        }
+        fieldStarts[fieldCount] = fieldStart;
+        fieldEnds[fieldCount] = fieldEnd;
+        fieldCount++;
+        return more;
+    }
+
+    /**
+     * Read more input, keeping the current record in the buffer.
+     *
+     * <p>The partial record is moved to the start of the buffer (or
+     * the buffer is grown if the record already fills it), and every
+     * saved position is adjusted to match.</p>
+     *
+     * @return false if there is no more input.
+     */
+    private boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+        if (recordStart > 0) {
+            final int shift = recordStart;
+            bufferOffset += shift;
+            System.arraycopy(buffer, shift, buffer, 0, limit - shift);
+            limit -= shift;
+            pos -= shift;
+            fieldStart -= shift;
+            fieldEnd -= shift;
+            recordStart = 0;
+            for (int i = 0; i < fieldCount; i++) {
+                fieldStarts[i] -= shift;
+                fieldEnds[i] -= shift;
+            }
+        } else if (limit == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        int n;
+        do {
+            n = input.read(buffer, limit, buffer.length - limit);
+        } while (n == 0);
+        if (n < 0) {
+            eof = true;
+            return false;
+        }
+        limit += n;
+        if (bufferOffset == 0 && limit == n && buffer[0] == BOM) {
+            // a byte order mark passed through by the decoder
+            System.arraycopy(buffer, 1, buffer, 0, --limit);
+            bufferOffset = 1;
+            if (limit == 0) {
+                return fill();
+            }
+        }
+        return true;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= fieldCount) {
+            throw new IndexOutOfBoundsException("Field " + index + " of " + fieldCount);
+        }
+    }
+
+}
@@ -1,15 +1,26 @@
 package org.hxlstandard;
 
+import java.util.List;
+
 /**
  * Column metadata for a HXL dataset.
  *
  * This is a shared data object referenced from every {@link HXLValue}
  * object.
  *
+ * <p>The column's hashtag is parsed into a {@link HXLTagSpec}, which
+ * gives access to the bare hashtag and the attributes: a column with
+ * the header "#affected+f+children" has the tag
+ * "#affected+f+children", the hashtag "#affected", and the attributes
+ * "f" and "children". Use a {@link HXLTagPattern} to choose columns
+ * by attribute.</p>
+ *
  * @author David Megginson
  */
 public class HXLColumn {
 
+    private HXLTagSpec tagSpec;
+
     private String tag;
 
     private String lang;
@@ -21,15 +32,35 @@ public class HXLColumn {
     /**
      * Create a new set of column metadata.
      *
-     * @param tag The HXL hashtag (including the "#").
+     * @param tag The HXL hashtag (including the "#"), with any
+     * attributes (e.g. "#org+impl"). It is normalised to lower case. If
+     * it ends with a language ("#sector/en") and the lang argument is
+     * null, that becomes the column's language.
      * @param lang The ISO 639 language code, or null if unspecified.
      * @param columnNumber The logical (HXL) column number, zero-based.
      * @param sourceColumnNumber The column number in the source
      * data, zero-based, or -1 if unspecified.
      */
     public HXLColumn(String tag, String lang, int columnNumber, int sourceColumnNumber) {
-        this.tag = tag.intern();
-        this.lang = (lang == null ? null : lang.intern());
+        this(HXLTagSpec.forColumn(tag), lang, columnNumber, sourceColumnNumber);
+    }
+
+    /**
+     * Create a new set of column metadata from a parsed tag spec.
+     *
+     * @param tagSpec The parsed hashtag, attributes, and language.
+     * @param columnNumber The logical (HXL) column number, zero-based.
+     * @param sourceColumnNumber The column number in the source
+     * data, zero-based, or -1 if unspecified.
+     */
+    public HXLColumn(HXLTagSpec tagSpec, int columnNumber, int sourceColumnNumber) {
+        this(tagSpec, null, columnNumber, sourceColumnNumber);
+    }
+
+    private HXLColumn(HXLTagSpec tagSpec, String lang, int columnNumber, int sourceColumnNumber) {
+        this.tagSpec = tagSpec;
+        this.tag = tagSpec.getTag();
+        this.lang = (lang == null ? tagSpec.getLang() : lang.intern());
         this.columnNumber = columnNumber;
         this.sourceColumnNumber = sourceColumnNumber;
     }
@@ -37,12 +68,51 @@ public class HXLColumn {
     /**
      * Get the HXL hashtag for the column.
      *
-     * @return A string containing a HXL hashtag.
+     * @return A string containing a HXL hashtag, with any attributes
+     * (e.g. "#org+impl") but without the language.
      */
     public String getTag() {
         return tag;
     }
 
+    /**
+     * Get the HXL hashtag without attributes.
+     *
+     * @return The bare hashtag (e.g. "#org").
+     */
+    public String getHashtag() {
+        return tagSpec.getHashtag();
+    }
+
+    /**
+     * Get the column's attributes.
+     *
+     * @return A read-only list of attribute names without the "+".
+     */
+    public List<String> getAttributes() {
+        return tagSpec.getAttributes();
+    }
+
+    /**
+     * Test whether the column has an attribute.
+     *
+     * @param attribute The attribute name, with or without the "+".
+     * @return true if the column's tag has the attribute.
+     */
+    public boolean hasAttribute(String attribute) {
+        return tagSpec.hasAttribute(attribute);
+    }
+
+    /**
+     * Get the parsed tag spec, shared by every column with the same
+     * header.
+     *
+     * @return The tag spec.
+     */
+    public HXLTagSpec getTagSpec() {
+        return tagSpec;
+    }
+
     /**
      * Get the ISO 639 language code for the column.
      *
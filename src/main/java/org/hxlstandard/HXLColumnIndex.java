@@ -0,0 +1,120 @@
+package org.hxlstandard;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lookup table from HXL hashtags to column numbers.
+ *
+ * <p>The index is built once from a dataset's columns (see {@link
+ * HXLReader#getColumnIndex()}) and shared by every {@link HXLRow} in
+ * the dataset, so that {@link HXLRow#get(String)} can find a value
+ * without comparing strings against each column in turn. The index
+ * is immutable, and safe to share between threads.</p>
+ *
+ * <p>Lookups are tag patterns (see {@link HXLTagPattern}), so
+ * "#affected" finds "#affected+f" as well. Each pattern is compiled
+ * and matched against the columns the first time it is used, and the
+ * result is kept for later lookups.</p>
+ *
+ * @author David Megginson
+ */
+public class HXLColumnIndex {
+
+    private final static int NONE[] = new int[0];
+
+    private final static int MAX_LOOKUPS = 1024;
+
+    private final List<HXLColumn> columns;
+
+    private final ConcurrentHashMap<String,int[]> lookups = new ConcurrentHashMap<String,int[]>();
+
+    /**
+     * Build an index for a list of columns.
+     *
+     * @param columns The columns, in logical order. Each column's
+     * logical column number must be its position in the list.
+     * @exception IllegalArgumentException if a column is out of
+     * place.
+     */
+    public HXLColumnIndex(List<HXLColumn> columns) {
+        this.columns = Collections.unmodifiableList(new ArrayList<HXLColumn>(columns));
+        for (int i = 0; i < this.columns.size(); i++) {
+            final HXLColumn column = this.columns.get(i);
+            if (column.getColumnNumber() != i) {
+                throw new IllegalArgumentException("Column " + column.getTag() + " has number " + column.getColumnNumber() + " at position " + i);
+            }
+        }
+    }
+
+    /**
+     * Get the indexed columns.
+     *
+     * @return A read-only list of columns, in logical order.
+     */
+    public List<HXLColumn> getColumns() {
+        return columns;
+    }
+
+    /**
+     * Get the number of columns.
+     *
+     * @return The column count.
+     */
+    public int size() {
+        return columns.size();
+    }
+
+    /**
+     * Get the first column that matches a tag pattern.
+     *
+     * @param tag The HXL hashtag, including the "#", optionally with
+     * attributes (e.g. "#affected+f").
+     * @return The logical column number, or -1 if no column matches
+     * (or the pattern isn't valid).
+     */
+    public int getColumnNumber(String tag) {
+        final int numbers[] = getColumnNumbers(tag);
+        return (numbers.length == 0 ? -1 : numbers[0]);
+    }
+
+    /**
+     * Get every column that matches a tag pattern.
+     *
+     * @param tag The HXL hashtag, including the "#", optionally with
+     * attributes.
+     * @return The logical column numbers in order (empty if no column
+     * matches). The array is shared and must not be modified.
+     */
+    int[] getColumnNumbers(String tag) {
+        int numbers[] = lookups.get(tag);
+        if (numbers == null) {
+            numbers = match(tag);
+            if (lookups.size() < MAX_LOOKUPS) {
+                lookups.put(tag, numbers);
+            }
+        }
+        return numbers;
+    }
+
+    private int[] match(String tag) {
+        final HXLTagPattern pattern;
+        try {
+            pattern = HXLTagPattern.compile(tag);
+        } catch (IllegalArgumentException e) {
+            return NONE;
+        }
+        int numbers[] = NONE;
+        for (int i = 0; i < columns.size(); i++) {
+            if (pattern.matches(columns.get(i))) {
+                numbers = Arrays.copyOf(numbers, numbers.length + 1);
+                numbers[numbers.length - 1] = i;
+            }
+        }
+        return numbers;
+    }
+
+}
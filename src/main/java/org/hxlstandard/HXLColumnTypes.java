@@ -0,0 +1,165 @@
+package org.hxlstandard;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Inferred data types for the columns of a HXL dataset.
+ *
+ * <p>Feed rows to {@link #add(HXLRow)} (or let {@link
+ * #infer(HXLRowSource, int)} read them), then ask for the narrowest
+ * type that fits every non-empty value in a column. A client can use
+ * {@link #isNumeric(HXLColumn)} to decide which columns to read with
+ * {@link HXLValue#asLong()} or {@link HXLValue#asDouble()}.</p>
+ *
+ * <p>The values are checked with the typed accessors on {@link
+ * HXLValue}, so the parsed numbers and dates stay cached in the
+ * values. Once a column has held a plain string, its later values are
+ * not examined at all.</p>
+ *
+ * <p>Example:</p>
+ *
+ * <pre>
+ * HXLColumnTypes types = HXLColumnTypes.infer(new HXLReader(input), 1000);
+ * for (HXLColumn column : types.getNumericColumns()) {
+ *   System.out.println(column.getTag() + " is numeric");
+ * }
+ * </pre>
+ *
+ * @author David Megginson
+ */
+public class HXLColumnTypes {
+
+    /**
+     * The type of a column.
+     */
+    public enum Type {
+        /** The column has no non-empty values (yet). */
+        EMPTY,
+        /** Every value is a whole number that fits in a long. */
+        INTEGER,
+        /** Every value is a number, and some aren't integers. */
+        DECIMAL,
+        /** Every value is an ISO 8601 date. */
+        DATE,
+        /** Some values are plain text, or the values are mixed. */
+        STRING
+    }
+
+    private final List<HXLColumn> columns;
+
+    private final Type types[];
+
+    /**
+     * Start inferring types for a set of columns.
+     *
+     * @param columns The dataset's columns, in logical order.
+     */
+    public HXLColumnTypes(List<HXLColumn> columns) {
+        this.columns = new ArrayList<HXLColumn>(columns);
+        this.types = new Type[columns.size()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = Type.EMPTY;
+        }
+    }
+
+    /**
+     * Infer column types from the first rows of a source.
+     *
+     * <p>The rows are consumed from the source.</p>
+     *
+     * @param source The source of rows.
+     * @param maxRows The largest number of rows to examine.
+     * @return The inferred types.
+     * @exception IOException if there is an error reading the source.
+     */
+    public static HXLColumnTypes infer(HXLRowSource source, int maxRows) throws IOException {
+        final HXLColumnTypes result = new HXLColumnTypes(source.getColumns());
+        for (int i = 0; i < maxRows; i++) {
+            final HXLRow row = source.read();
+            if (row == null) {
+                break;
+            }
+            result.add(row);
+        }
+        return result;
+    }
+
+    /**
+     * Examine the values in a row.
+     *
+     * @param row A row whose values belong to this set of columns.
+     */
+    public void add(HXLRow row) {
+        for (final HXLValue value : row.getValuesModifiable()) {
+            final int n = value.getColumnNumber();
+            final Type type = types[n];
+            if (type != Type.STRING) {
+                types[n] = merge(type, classify(value));
+            }
+        }
+    }
+
+    /**
+     * Get the inferred type of a column.
+     *
+     * @param column One of the columns.
+     * @return The narrowest type that fits every value seen so far.
+     */
+    public Type getType(HXLColumn column) {
+        return types[column.getColumnNumber()];
+    }
+
+    /**
+     * Test whether a column is uniformly numeric.
+     *
+     * @param column One of the columns.
+     * @return true if the column had at least one value, and every
+     * non-empty value was a number.
+     */
+    public boolean isNumeric(HXLColumn column) {
+        final Type type = getType(column);
+        return (type == Type.INTEGER || type == Type.DECIMAL);
+    }
+
+    /**
+     * Get the columns that are uniformly numeric.
+     *
+     * @return A new list of the numeric columns, in logical order.
+     */
+    public List<HXLColumn> getNumericColumns() {
+        final List<HXLColumn> result = new ArrayList<HXLColumn>();
+        for (final HXLColumn column : columns) {
+            if (isNumeric(column)) {
+                result.add(column);
+            }
+        }
+        return result;
+    }
+
+    private static Type classify(HXLValue value) {
+        if (value.isNumeric()) {
+            return (value.isInteger() ? Type.INTEGER : Type.DECIMAL);
+        } else if (value.isDate()) {
+            return Type.DATE;
+        } else if (value.getContent().trim().isEmpty()) {
+            return Type.EMPTY;
+        } else {
+            return Type.STRING;
+        }
+    }
+
+    private static Type merge(Type a, Type b) {
+        if (a == b || b == Type.EMPTY) {
+            return a;
+        } else if (a == Type.EMPTY) {
+            return b;
+        } else if ((a == Type.INTEGER && b == Type.DECIMAL) || (a == Type.DECIMAL && b == Type.INTEGER)) {
+            return Type.DECIMAL;
+        } else {
+            return Type.STRING;
+        }
+    }
+
+}
@@ -0,0 +1,533 @@
+package org.hxlstandard;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * All of the values for a single column in a {@link HXLColumnarDataset}.
+ *
+ * <p>Values are stored in a primitive array chosen from the content:
+ * a column whose non-empty values are all integers is stored as
+ * <code>int</code> (or <code>long</code>, if any value needs it), a
+ * column that also has decimals is stored as <code>double</code>, and
+ * anything else is stored as {@link Type#STRING}, with each distinct
+ * string kept once in a dictionary and an <code>int</code> code per
+ * row. Empty values are nulls, tracked in a bitmap.</p>
+ *
+ * <p>Numbers are parsed as by {@link HXLValue#isNumeric()} (see
+ * {@link HXLNumberParser}), but only numbers written in plain form are
+ * stored as numbers: integers with leading zeros (such as codes like
+ * "007"), signs, exponents or spaces are treated as strings, so that
+ * no information is lost. Decimal values are normalised, though:
+ * "1.50" and "2.0" in a numeric column come back from {@link
+ * #getString(int)} as "1.5" and "2".</p>
+ *
+ * @author David Megginson
+ */
+public class HXLColumnVector {
+
+    /**
+     * Storage type of a column vector.
+     */
+    public enum Type {
+        /** Integers, stored in an <code>int[]</code>. */
+        INT,
+        /** Integers, stored in a <code>long[]</code>. */
+        LONG,
+        /** Decimal numbers, stored in a <code>double[]</code>. */
+        DOUBLE,
+        /** Dictionary-encoded strings. */
+        STRING
+    }
+
+    private final HXLColumn column;
+
+    private Type type;
+
+    private int size;
+
+    private long present[] = new long[1];
+
+    private int ints[];
+
+    private long longs[];
+
+    private double doubles[];
+
+    private int codes[];
+
+    private ArrayList<String> dictionary;
+
+    private HashMap<String,Integer> dictionaryIndex;
+
+    private final HXLNumberParser parser = new HXLNumberParser();
+
+    /**
+     * Create an empty vector.
+     *
+     * @param column The column metadata.
+     */
+    HXLColumnVector(HXLColumn column) {
+        this.column = column;
+    }
+
+    /**
+     * Get the column metadata.
+     *
+     * @return The column.
+     */
+    public HXLColumn getColumn() {
+        return column;
+    }
+
+    /**
+     * Get the storage type.
+     *
+     * @return The type. A column with no values at all is {@link
+     * Type#STRING}.
+     */
+    public Type getType() {
+        return (type == null ? Type.STRING : type);
+    }
+
+    /**
+     * Test if the column is stored as numbers.
+     *
+     * @return true for {@link Type#INT}, {@link Type#LONG}, and {@link
+     * Type#DOUBLE}.
+     */
+    public boolean isNumeric() {
+        return type == Type.INT || type == Type.LONG || type == Type.DOUBLE;
+    }
+
+    /**
+     * Get the number of rows, including nulls.
+     *
+     * @return The row count.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Test if a row's value is null (empty or missing).
+     *
+     * @param row The zero-based row index.
+     * @return true if there is no value.
+     */
+    public boolean isNull(int row) {
+        checkRow(row);
+        return (present[row >>> 6] & (1L << row)) == 0;
+    }
+
+    /**
+     * Get a value from an {@link Type#INT} column.
+     *
+     * @param row The zero-based row index.
+     * @return The value, or 0 if it is null.
+     * @exception UnsupportedOperationException if the column isn't
+     * stored as <code>int</code>.
+     */
+    public int getInt(int row) {
+        checkRow(row);
+        checkType(type == Type.INT);
+        return ints[row];
+    }
+
+    /**
+     * Get a value from an integer column.
+     *
+     * @param row The zero-based row index.
+     * @return The value, or 0 if it is null.
+     * @exception UnsupportedOperationException if the column isn't
+     * {@link Type#INT} or {@link Type#LONG}.
+     */
+    public long getLong(int row) {
+        checkRow(row);
+        if (type == Type.INT) {
+            return ints[row];
+        }
+        checkType(type == Type.LONG);
+        return longs[row];
+    }
+
+    /**
+     * Get a value from a numeric column.
+     *
+     * @param row The zero-based row index.
+     * @return The value, or 0 if it is null.
+     * @exception UnsupportedOperationException if the column isn't
+     * numeric.
+     */
+    public double getDouble(int row) {
+        checkRow(row);
+        if (type == Type.DOUBLE) {
+            return doubles[row];
+        }
+        return getLong(row);
+    }
+
+    /**
+     * Get a value as a string, whatever the storage type.
+     *
+     * @param row The zero-based row index.
+     * @return The value, or null if it is null.
+     */
+    public String getString(int row) {
+        if (isNull(row)) {
+            return null;
+        }
+        switch (type) {
+        case INT:
+            return Integer.toString(ints[row]);
+        case LONG:
+            return Long.toString(longs[row]);
+        case DOUBLE:
+            return formatDouble(doubles[row]);
+        default:
+            return dictionary.get(codes[row]);
+        }
+    }
+
+    /**
+     * Get the dictionary code of a {@link Type#STRING} value.
+     *
+     * @param row The zero-based row index.
+     * @return The index of the value in {@link #getDictionary()}, or
+     * -1 if it is null.
+     * @exception UnsupportedOperationException if the column isn't
+     * stored as strings.
+     */
+    public int getCode(int row) {
+        checkRow(row);
+        checkType(type == Type.STRING || type == null);
+        return (isNull(row) ? -1 : codes[row]);
+    }
+
+    /**
+     * Get the distinct strings in a {@link Type#STRING} column.
+     *
+     * @return A read-only list, in order of first appearance.
+     * @exception UnsupportedOperationException if the column isn't
+     * stored as strings.
+     */
+    public List<String> getDictionary() {
+        checkType(type == Type.STRING || type == null);
+        if (dictionary == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(dictionary);
+    }
+
+    /**
+     * Count the non-null values.
+     *
+     * @return The number of rows with a value.
+     */
+    public int count() {
+        int n = 0;
+        final int words = (size + 63) >>> 6;
+        for (int i = 0; i < words; i++) {
+            n += Long.bitCount(present[i]);
+        }
+        return n;
+    }
+
+    /**
+     * Add up the non-null values of a numeric column.
+     *
+     * @return The sum, or 0 if there are no values.
+     * @exception UnsupportedOperationException if the column isn't
+     * numeric.
+     */
+    public double sum() {
+        checkType(isNumeric());
+        if (type == Type.DOUBLE) {
+            double sum = 0;
+            for (int i = 0; i < size; i++) {
+                sum += doubles[i];
+            }
+            return sum;
+        }
+        return sumLong();
+    }
+
+    /**
+     * Add up the non-null values of an integer column exactly.
+     *
+     * @return The sum, or 0 if there are no values.
+     * @exception UnsupportedOperationException if the column isn't
+     * {@link Type#INT} or {@link Type#LONG}.
+     */
+    public long sumLong() {
+        long sum = 0;
+        if (type == Type.INT) {
+            for (int i = 0; i < size; i++) {
+                sum += ints[i];
+            }
+        } else {
+            checkType(type == Type.LONG);
+            for (int i = 0; i < size; i++) {
+                sum += longs[i];
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Find the smallest non-null value of a numeric column.
+     *
+     * @return The minimum, or NaN if there are no values.
+     * @exception UnsupportedOperationException if the column isn't
+     * numeric.
+     */
+    public double min() {
+        checkType(isNumeric());
+        double min = Double.NaN;
+        for (int i = 0; i < size; i++) {
+            if ((present[i >>> 6] & (1L << i)) != 0) {
+                final double v = getDouble(i);
+                if (!(v >= min)) {
+                    min = v;
+                }
+            }
+        }
+        return min;
+    }
+
+    /**
+     * Find the largest non-null value of a numeric column.
+     *
+     * @return The maximum, or NaN if there are no values.
+     * @exception UnsupportedOperationException if the column isn't
+     * numeric.
+     */
+    public double max() {
+        checkType(isNumeric());
+        double max = Double.NaN;
+        for (int i = 0; i < size; i++) {
+            if ((present[i >>> 6] & (1L << i)) != 0) {
+                final double v = getDouble(i);
+                if (!(v <= max)) {
+                    max = v;
+                }
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Append a value, changing the storage type if necessary.
+     *
+     * <p>Nulls are stored as 0 (or code 0), so sums can skip the
+     * bitmap.</p>
+     *
+     * @param content The value, or null or "" for no value.
+     */
+    void add(String content) {
+        ensureCapacity(size + 1);
+        if (content == null || content.length() == 0) {
+            size++;
+            return;
+        }
+        present[size >>> 6] |= (1L << size);
+        final Type needed = (type == Type.STRING ? Type.STRING : classify(content));
+        if (type == null || (type != Type.STRING && needed.compareTo(type) > 0)) {
+            promote(needed);
+        }
+        switch (type) {
+        case INT:
+            ints[size] = (int) parser.longValue;
+            break;
+        case LONG:
+            longs[size] = parser.longValue;
+            break;
+        case DOUBLE:
+            doubles[size] = (needed == Type.DOUBLE ? parser.doubleValue : parser.longValue);
+            break;
+        default:
+            codes[size] = encode(content);
+        }
+        size++;
+    }
+
+    /**
+     * Release unused capacity once loading is finished.
+     */
+    void trimToSize() {
+        present = Arrays.copyOf(present, Math.max(1, (size + 63) >>> 6));
+        if (ints != null) {
+            ints = Arrays.copyOf(ints, size);
+        }
+        if (longs != null) {
+            longs = Arrays.copyOf(longs, size);
+        }
+        if (doubles != null) {
+            doubles = Arrays.copyOf(doubles, size);
+        }
+        if (codes != null) {
+            codes = Arrays.copyOf(codes, size);
+        }
+        if (dictionary != null) {
+            dictionary.trimToSize();
+        }
+        dictionaryIndex = null;
+    }
+
+    /**
+     * Work out the narrowest type for a non-empty value, leaving the
+     * number in the parser.
+     *
+     * <p>Only numbers already in plain form are stored as numbers, so
+     * that {@link #getString(int)} (and a later promotion to strings)
+     * gives back the text that was loaded.</p>
+     */
+    private Type classify(String s) {
+        if (!isPlainNumber(s)) {
+            return Type.STRING;
+        }
+        switch (parser.parse(s)) {
+        case HXLNumberParser.INTEGER:
+            final long v = parser.longValue;
+            return (v >= Integer.MIN_VALUE && v <= Integer.MAX_VALUE ? Type.INT : Type.LONG);
+        case HXLNumberParser.DECIMAL:
+            // a whole number too big for a long would come back rounded
+            return (s.indexOf('.') < 0 ? Type.STRING : Type.DOUBLE);
+        default:
+            return Type.STRING;
+        }
+    }
+
+    /**
+     * Test whether a number is written in the form that comes back
+     * from {@link #getString(int)}: an optional minus sign, digits
+     * without leading zeros, and optional decimals. Numbers with a
+     * plus sign, an exponent, leading zeros or spaces (such as codes
+     * like "007") are kept as strings, though {@link
+     * HXLValue#isNumeric()} accepts them.
+     */
+    private static boolean isPlainNumber(String s) {
+        final int length = s.length();
+        final int start = (s.charAt(0) == '-' ? 1 : 0);
+        int point = -1;
+        for (int i = start; i < length; i++) {
+            final char c = s.charAt(i);
+            if (c == '.' && point < 0 && i > start && i + 1 < length) {
+                point = i;
+            } else if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        final int intDigits = (point < 0 ? length : point) - start;
+        return intDigits >= 1 && !(intDigits > 1 && s.charAt(start) == '0');
+    }
+
+    private void promote(Type to) {
+        final int capacity = capacity();
+        switch (to) {
+        case INT:
+            ints = new int[capacity];
+            break;
+        case LONG:
+            longs = new long[capacity];
+            if (ints != null) {
+                for (int i = 0; i < size; i++) {
+                    longs[i] = ints[i];
+                }
+                ints = null;
+            }
+            break;
+        case DOUBLE:
+            doubles = new double[capacity];
+            for (int i = 0; i < size; i++) {
+                doubles[i] = (ints != null ? ints[i] : (longs != null ? longs[i] : 0));
+            }
+            ints = null;
+            longs = null;
+            break;
+        default:
+            final Type from = type;
+            type = Type.STRING;
+            codes = new int[capacity];
+            dictionary = new ArrayList<String>();
+            dictionaryIndex = new HashMap<String,Integer>();
+            for (int i = 0; i < size; i++) {
+                if ((present[i >>> 6] & (1L << i)) != 0) {
+                    final String s;
+                    if (from == Type.INT) {
+                        s = Integer.toString(ints[i]);
+                    } else if (from == Type.LONG) {
+                        s = Long.toString(longs[i]);
+                    } else {
+                        s = formatDouble(doubles[i]);
+                    }
+                    codes[i] = encode(s);
+                }
+            }
+            ints = null;
+            longs = null;
+            doubles = null;
+        }
+        type = to;
+    }
+
+    private int encode(String s) {
+        final Integer code = dictionaryIndex.get(s);
+        if (code != null) {
+            return code;
+        }
+        final int n = dictionary.size();
+        dictionary.add(s);
+        dictionaryIndex.put(s, n);
+        return n;
+    }
+
+    private int capacity() {
+        return present.length << 6;
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed <= capacity()) {
+            return;
+        }
+        final int capacity = Math.max(needed, capacity() * 2);
+        present = Arrays.copyOf(present, (capacity + 63) >>> 6);
+        final int newCapacity = capacity();
+        if (ints != null) {
+            ints = Arrays.copyOf(ints, newCapacity);
+        }
+        if (longs != null) {
+            longs = Arrays.copyOf(longs, newCapacity);
+        }
+        if (doubles != null) {
+            doubles = Arrays.copyOf(doubles, newCapacity);
+        }
+        if (codes != null) {
+            codes = Arrays.copyOf(codes, newCapacity);
+        }
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+        }
+    }
+
+    private void checkType(boolean ok) {
+        if (!ok) {
+            throw new UnsupportedOperationException("Column " + column.getTag() + " is stored as " + getType());
+        }
+    }
+
+    /**
+     * Format a decimal value the way {@link #getString(int)} does.
+     */
+    static String formatDouble(double d) {
+        return BigDecimal.valueOf(d).stripTrailingZeros().toPlainString();
+    }
+
+}
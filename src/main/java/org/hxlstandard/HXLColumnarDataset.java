@@ -0,0 +1,192 @@
+package org.hxlstandard;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A complete HXL dataset held in memory column by column.
+ *
+ * <p>Instead of one {@link HXLRow} object per row, the dataset keeps
+ * one {@link HXLColumnVector} per {@link HXLColumn}, storing numeric
+ * columns as primitive arrays and other columns as dictionary-encoded
+ * strings. This takes a fraction of the heap of a list of rows, and
+ * column-wise operations such as {@link HXLColumnVector#sum()} scan a
+ * single array.</p>
+ *
+ * <p>Example:</p>
+ *
+ * <pre>
+ * HXLColumnarDataset dataset = new HXLColumnarDataset(new HXLReader(input));
+ * HXLColumnVector affected = dataset.getVector("#affected");
+ * if (affected != null &amp;&amp; affected.isNumeric()) {
+ *   System.out.println("Total affected: " + affected.sum());
+ * }
+ * </pre>
+ *
+ * @author David Megginson
+ */
+public class HXLColumnarDataset {
+
+    private final List<HXLColumn> columns;
+
+    private final HXLColumnIndex columnIndex;
+
+    private final HXLColumnVector vectors[];
+
+    private int rowNumbers[];
+
+    private int sourceRowNumbers[];
+
+    private int rowCount;
+
+    /**
+     * Load all of the remaining rows from a reader.
+     *
+     * <p>The reader temporarily has object reuse turned on (see {@link
+     * HXLReader#setReuseObjects(boolean)}), since the dataset copies
+     * everything it needs from each row.</p>
+     *
+     * @param reader The source of the HXL data.
+     * @exception IOException if there is an error reading the data.
+     */
+    public HXLColumnarDataset(HXLReader reader) throws IOException {
+        columnIndex = reader.getColumnIndex();
+        columns = columnIndex.getColumns();
+        vectors = new HXLColumnVector[columns.size()];
+        for (int i = 0; i < vectors.length; i++) {
+            vectors[i] = new HXLColumnVector(columns.get(i));
+        }
+        rowNumbers = new int[1024];
+        sourceRowNumbers = new int[1024];
+
+        final boolean reuseObjects = reader.isReuseObjects();
+        reader.setReuseObjects(true);
+        try {
+            HXLRow row = reader.read();
+            while (row != null) {
+                add(row);
+                row = reader.read();
+            }
+        } finally {
+            reader.setReuseObjects(reuseObjects);
+        }
+
+        rowNumbers = Arrays.copyOf(rowNumbers, rowCount);
+        sourceRowNumbers = Arrays.copyOf(sourceRowNumbers, rowCount);
+        for (final HXLColumnVector vector : vectors) {
+            vector.trimToSize();
+        }
+    }
+
+    /**
+     * Get the column metadata.
+     *
+     * @return A read-only list of columns, in logical order.
+     */
+    public List<HXLColumn> getColumns() {
+        return columns;
+    }
+
+    /**
+     * Get the number of rows.
+     *
+     * @return The row count.
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Get the values for a column.
+     *
+     * @param columnNumber The logical (HXL) column number, zero-based.
+     * @return The column's vector.
+     */
+    public HXLColumnVector getVector(int columnNumber) {
+        return vectors[columnNumber];
+    }
+
+    /**
+     * Get the values for the first column with a tag.
+     *
+     * @param tag The HXL hashtag, including the "#".
+     * @return The column's vector, or null if no column has the tag.
+     */
+    public HXLColumnVector getVector(String tag) {
+        final int columnNumber = columnIndex.getColumnNumber(tag);
+        return (columnNumber == -1 ? null : vectors[columnNumber]);
+    }
+
+    /**
+     * Get the logical (HXL) row number of a row.
+     *
+     * @param row The zero-based index of the row in this dataset.
+     * @return The row number from the original reader.
+     */
+    public int getRowNumber(int row) {
+        checkRow(row);
+        return rowNumbers[row];
+    }
+
+    /**
+     * Get the original source row number of a row.
+     *
+     * @param row The zero-based index of the row in this dataset.
+     * @return The source row number from the original reader.
+     */
+    public int getSourceRowNumber(int row) {
+        checkRow(row);
+        return sourceRowNumbers[row];
+    }
+
+    /**
+     * Rebuild a row as an {@link HXLRow} object.
+     *
+     * <p>The row has a value for every column, with "" for nulls.
+     * Numeric values are in their normalised form (see {@link
+     * HXLColumnVector}).</p>
+     *
+     * @param row The zero-based index of the row in this dataset.
+     * @return A new row object.
+     */
+    public HXLRow getRow(int row) {
+        checkRow(row);
+        final HXLRow result = new HXLRow(rowNumbers[row], sourceRowNumbers[row], columnIndex);
+        for (final HXLColumnVector vector : vectors) {
+            final String content = vector.getString(row);
+            result.getValuesModifiable().add(new HXLValue(vector.getColumn(), content == null ? "" : content, rowNumbers[row], sourceRowNumbers[row]));
+        }
+        return result;
+    }
+
+    private void add(HXLRow row) {
+        if (rowCount == rowNumbers.length) {
+            rowNumbers = Arrays.copyOf(rowNumbers, rowCount * 2);
+            sourceRowNumbers = Arrays.copyOf(sourceRowNumbers, rowCount * 2);
+        }
+        rowNumbers[rowCount] = row.getRowNumber();
+        sourceRowNumbers[rowCount] = row.getSourceRowNumber();
+
+        // values come in column order, but short rows may omit some
+        int next = 0;
+        for (final HXLValue value : row.getValuesModifiable()) {
+            final int columnNumber = value.getColumnNumber();
+            while (next < columnNumber) {
+                vectors[next++].add(null);
+            }
+            vectors[next++].add(value.getContent());
+        }
+        while (next < vectors.length) {
+            vectors[next++].add(null);
+        }
+        rowCount++;
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + rowCount);
+        }
+    }
+
+}
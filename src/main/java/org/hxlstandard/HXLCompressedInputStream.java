@@ -0,0 +1,565 @@
+package org.hxlstandard;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.PushbackInputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Byte stream that decompresses gzip, zlib (deflate), or ZIP input on
+ * a background thread.
+ *
+ * <p>The format is detected from the first bytes of the input (for
+ * zlib, by inflating the first few kilobytes on trial), not from a
+ * file name, so a .csv.gz feed served without a
+ * <code>Content-Encoding</code> header still works. Input that isn't
+ * compressed is passed through unchanged, without a thread.</p>
+ *
+ * <p>For compressed input, a producer thread inflates the data into a
+ * small ring of large buffers (see {@link #DEFAULT_BUFFER_SIZE} and
+ * {@link #DEFAULT_CAPACITY}) and hands them to the consumer through a
+ * bounded queue, so decompression overlaps with parsing instead of
+ * taking turns with it, and there is no temporary file. Buffers are
+ * recycled, so memory use is fixed.</p>
+ *
+ * <p>Example:</p>
+ *
+ * <pre>
+ * HXLCompressedInputStream input = new HXLCompressedInputStream(new FileInputStream("data.csv.gz"));
+ * HXLReader reader = new HXLReader(input);
+ * // ... read the rows ...
+ * System.err.println(input.getCompressedBytes() + " -&gt; " + input.getUncompressedBytes());
+ * </pre>
+ *
+ * <p>{@link HXLReader#open(File)} and {@link HXLReader#open(InputStream)}
+ * do the same in one step.</p>
+ *
+ * <p>A ZIP archive is read up to its first file (skipping directory
+ * entries); see {@link #getEntryName()}. An error on the producer
+ * thread, such as a truncated archive, is rethrown from {@link
+ * #read(byte[], int, int)} after the data decompressed before it.
+ * A single consumer thread should use the stream.</p>
+ *
+ * @author David Megginson
+ */
+public class HXLCompressedInputStream extends InputStream {
+
+    /**
+     * Compression formats.
+     */
+    public enum Format {
+
+        /**
+         * Not compressed.
+         */
+        NONE,
+
+        /**
+         * gzip (RFC 1952), including concatenated members.
+         */
+        GZIP,
+
+        /**
+         * zlib-wrapped deflate (RFC 1950).
+         */
+        DEFLATE,
+
+        /**
+         * ZIP archive.
+         */
+        ZIP
+
+    }
+
+    /**
+     * Default size of each decompressed buffer, in bytes.
+     */
+    public final static int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+    /**
+     * Default number of buffers that the producer may fill ahead of
+     * the consumer.
+     */
+    public final static int DEFAULT_CAPACITY = 4;
+
+    private final static Chunk END = new Chunk(0);
+
+    /**
+     * Number of bytes inflated on trial to confirm a zlib header.
+     */
+    private final static int SNIFF_SIZE = 4096;
+
+    private final CountingInputStream raw;
+
+    private final InputStream input;
+
+    private final Format format;
+
+    private final int bufferSize;
+
+    private final String entryName;
+
+    private final BlockingQueue<Chunk> full;
+
+    private final BlockingQueue<Chunk> free;
+
+    private final ThreadFactory threadFactory;
+
+    private final int maxChunks;
+
+    private Thread producer;
+
+    private int chunkCount;
+
+    private Chunk current;
+
+    private int currentPos;
+
+    private volatile long uncompressedBytes;
+
+    private volatile boolean closed;
+
+    private volatile Throwable error;
+
+    private boolean finished;
+
+    /**
+     * Create a new stream with the default buffer size and capacity.
+     *
+     * @param input The raw input, compressed or not.
+     * @exception IOException if there is an error reading the first
+     * bytes, or a ZIP archive has no files.
+     */
+    public HXLCompressedInputStream(InputStream input) throws IOException {
+        this(input, DEFAULT_BUFFER_SIZE, DEFAULT_CAPACITY, null);
+    }
+
+    /**
+     * Create a new stream.
+     *
+     * @param input The raw input, compressed or not.
+     * @param bufferSize The size of each decompressed buffer.
+     * @param capacity The number of buffers that the producer may fill
+     * ahead of the consumer.
+     * @param threadFactory The factory for the producer thread, or null
+     * for a daemon platform thread.
+     * @exception IOException if there is an error reading the first
+     * bytes, or a ZIP archive has no files.
+     */
+    public HXLCompressedInputStream(InputStream input, int bufferSize, int capacity, ThreadFactory threadFactory) throws IOException {
+        if (input == null) {
+            throw new NullPointerException("input");
+        }
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("Buffer size must be positive: " + bufferSize);
+        }
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.raw = new CountingInputStream(input);
+        this.bufferSize = bufferSize;
+        this.threadFactory = threadFactory;
+        final PushbackInputStream sniffer = new PushbackInputStream(raw, SNIFF_SIZE);
+        this.format = detect(sniffer);
+        String name = null;
+        switch (format) {
+        case GZIP:
+            this.input = new GZIPInputStream(sniffer, Math.min(bufferSize, 64 * 1024));
+            break;
+        case DEFLATE:
+            this.input = new InflaterInputStream(sniffer, new Inflater(), Math.min(bufferSize, 64 * 1024));
+            break;
+        case ZIP:
+            final ZipInputStream zip = new ZipInputStream(new BufferedInputStream(sniffer, Math.min(bufferSize, 64 * 1024)));
+            ZipEntry entry = zip.getNextEntry();
+            while (entry != null && entry.isDirectory()) {
+                entry = zip.getNextEntry();
+            }
+            if (entry == null) {
+                zip.close();
+                throw new IOException("No file in ZIP archive");
+            }
+            name = entry.getName();
+            this.input = zip;
+            break;
+        default:
+            this.input = sniffer;
+            break;
+        }
+        this.entryName = name;
+        if (format == Format.NONE) {
+            this.full = null;
+            this.free = null;
+            this.maxChunks = 0;
+        } else {
+            // one chunk being filled and one being read, plus the queued ones
+            this.maxChunks = capacity + 2;
+            this.full = new ArrayBlockingQueue<Chunk>(maxChunks);
+            this.free = new ArrayBlockingQueue<Chunk>(maxChunks);
+        }
+    }
+
+    /**
+     * Get the compression format that was detected.
+     *
+     * @return The format.
+     */
+    public Format getFormat() {
+        return format;
+    }
+
+    /**
+     * Get the name of the ZIP entry being read.
+     *
+     * @return The entry name, or null if the input isn't a ZIP archive.
+     */
+    public String getEntryName() {
+        return entryName;
+    }
+
+    /**
+     * Get the number of bytes read from the raw input so far.
+     *
+     * <p>For compressed input, this runs ahead of {@link
+     * #getUncompressedBytes()} by the data buffered on the producer
+     * thread. It may be called from any thread.</p>
+     *
+     * @return The compressed byte count.
+     */
+    public long getCompressedBytes() {
+        return raw.count;
+    }
+
+    /**
+     * Get the number of bytes returned to the consumer so far.
+     *
+     * <p>It may be called from any thread.</p>
+     *
+     * @return The uncompressed byte count.
+     */
+    public long getUncompressedBytes() {
+        return uncompressedBytes;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final byte b[] = new byte[1];
+        final int n = read(b, 0, 1);
+        return (n < 0 ? -1 : (b[0] & 0xff));
+    }
+
+    @Override
+    public int read(byte b[], int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (format == Format.NONE) {
+            final int n = input.read(b, off, len);
+            if (n > 0) {
+                uncompressedBytes += n;
+            }
+            return n;
+        }
+        if (current == null || currentPos >= current.length) {
+            if (!nextChunk()) {
+                return -1;
+            }
+        }
+        final int n = Math.min(len, current.length - currentPos);
+        System.arraycopy(current.data, currentPos, b, off, n);
+        currentPos += n;
+        uncompressedBytes += n;
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        if (format == Format.NONE) {
+            return input.available();
+        }
+        return (current == null ? 0 : current.length - currentPos);
+    }
+
+    /**
+     * Stop the producer and close the raw input.
+     *
+     * @exception IOException if there is an error closing the input.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        current = null;
+        if (producer != null) {
+            producer.interrupt();
+            full.clear();
+            boolean interrupted = false;
+            while (producer.isAlive()) {
+                try {
+                    producer.join();
+                } catch (final InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        input.close();
+    }
+
+    /**
+     * Detect the compression format without consuming any input.
+     */
+    private static Format detect(PushbackInputStream input) throws IOException {
+        final byte magic[] = new byte[SNIFF_SIZE];
+        int n = fill(input, magic, 0, 4);
+        final int b0 = (n > 0 ? magic[0] & 0xff : -1);
+        final int b1 = (n > 1 ? magic[1] & 0xff : -1);
+        Format format = Format.NONE;
+        if (b0 == 0x1f && b1 == 0x8b) {
+            format = Format.GZIP;
+        } else if (n == 4 && b0 == 'P' && b1 == 'K' && magic[2] == 3 && magic[3] == 4) {
+            format = Format.ZIP;
+        } else if (n >= 2 && (b0 & 0x0f) == 8 && (b0 >> 4) <= 7 && (b1 & 0x20) == 0 && ((b0 << 8) | b1) % 31 == 0) {
+            // zlib header (deflate method, window size, no preset dictionary, check bits)
+            n = fill(input, magic, n, SNIFF_SIZE);
+            if (isDeflate(magic, n)) {
+                format = Format.DEFLATE;
+            }
+        }
+        if (n > 0) {
+            input.unread(magic, 0, n);
+        }
+        return format;
+    }
+
+    /**
+     * Read until a buffer holds a number of bytes or the input ends.
+     *
+     * @return The number of bytes in the buffer.
+     */
+    private static int fill(InputStream input, byte buffer[], int start, int end) throws IOException {
+        int n = start;
+        while (n < end) {
+            final int r = input.read(buffer, n, end - n);
+            if (r < 0) {
+                break;
+            }
+            n += r;
+        }
+        return n;
+    }
+
+    /**
+     * Confirm a zlib header by inflating the start of the input.
+     *
+     * <p>One text file in 31 or so starts with two bytes that pass
+     * the header check (e.g. "HK" or "x^"), but its next bytes are
+     * almost never valid deflate blocks. A prefix that is valid but
+     * unfinished counts only if it filled the sniff buffer; a shorter
+     * input must be the whole stream, so it has to be complete.</p>
+     */
+    private static boolean isDeflate(byte prefix[], int length) {
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(prefix, 0, length);
+            final byte output[] = new byte[SNIFF_SIZE];
+            while (!inflater.finished() && !inflater.needsInput()) {
+                if (inflater.inflate(output) == 0 && (inflater.needsDictionary() || inflater.getRemaining() == 0)) {
+                    break;
+                }
+            }
+            return inflater.finished() || (length == SNIFF_SIZE && inflater.needsInput());
+        } catch (DataFormatException e) {
+            return false;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Return the current chunk to the producer and wait for the next.
+     */
+    private boolean nextChunk() throws IOException {
+        if (finished) {
+            return false;
+        }
+        if (producer == null) {
+            start();
+        }
+        if (current != null) {
+            free.offer(current);
+            current = null;
+        }
+        final Chunk chunk;
+        try {
+            chunk = full.take();
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for decompressed data");
+        }
+        if (chunk == END) {
+            finished = true;
+            rethrow();
+            return false;
+        }
+        current = chunk;
+        currentPos = 0;
+        return true;
+    }
+
+    private void start() {
+        final Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                produce();
+            }
+        };
+        if (threadFactory == null) {
+            producer = new Thread(task, "hxl-inflate");
+            producer.setDaemon(true);
+        } else {
+            producer = threadFactory.newThread(task);
+        }
+        producer.start();
+    }
+
+    /**
+     * Producer loop, run on the background thread.
+     */
+    private void produce() {
+        try {
+            try {
+                for (;;) {
+                    Chunk chunk = free.poll();
+                    if (chunk == null) {
+                        if (chunkCount < maxChunks) {
+                            chunk = new Chunk(bufferSize);
+                            chunkCount++;
+                        } else {
+                            chunk = free.take();
+                        }
+                    }
+                    // fill the whole buffer, so the consumer sees few large chunks
+                    int length = 0;
+                    while (length < chunk.data.length && !closed) {
+                        final int n = input.read(chunk.data, length, chunk.data.length - length);
+                        if (n < 0) {
+                            break;
+                        }
+                        length += n;
+                    }
+                    if (length == 0 || closed) {
+                        break;
+                    }
+                    chunk.length = length;
+                    full.put(chunk);
+                    if (length < chunk.data.length) {
+                        break;
+                    }
+                }
+            } catch (final InterruptedException ex) {
+                throw ex;
+            } catch (final Throwable t) {
+                if (closed) {
+                    return;
+                }
+                error = t;
+            }
+            full.put(END);
+        } catch (final InterruptedException ex) {
+            // closed by the consumer
+        }
+    }
+
+    private void rethrow() throws IOException {
+        final Throwable cause = error;
+        if (cause == null) {
+            return;
+        } else if (cause instanceof IOException) {
+            throw (IOException) cause;
+        } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+            throw (Error) cause;
+        } else {
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * A buffer of decompressed bytes.
+     */
+    private final static class Chunk {
+
+        final byte data[];
+
+        int length;
+
+        Chunk(int size) {
+            data = new byte[size];
+        }
+
+    }
+
+    /**
+     * Counts the raw bytes read, for the compression ratio.
+     */
+    private final static class CountingInputStream extends FilterInputStream {
+
+        volatile long count;
+
+        CountingInputStream(InputStream input) {
+            super(input);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = in.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte b[], int off, int len) throws IOException {
+            final int n = in.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            final long skipped = in.skip(n);
+            if (skipped > 0) {
+                count += skipped;
+            }
+            return skipped;
+        }
+
+    }
+
+}
@@ -0,0 +1,157 @@
+package org.hxlstandard;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a reader can't find the HXL hashtag row.
+ *
+ * <p>The exception says why the search stopped (see {@link
+ * #getReason()}), how much input it looked at, and, if some row looked
+ * like a hashtag row but wasn't one, where the first bad cell was, so
+ * that a service can give a useful error for a bad upload.</p>
+ *
+ * @author David Megginson
+ * @see HXLReader#setMaxHeaderRows(int)
+ * @see HXLReader#setMaxHeaderBytes(long)
+ */
+public class HXLHeaderNotFoundException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Why the search for the hashtag row stopped.
+     */
+    public enum Reason {
+
+        /**
+         * The input ended.
+         */
+        END_OF_INPUT,
+
+        /**
+         * The reader's row limit was reached.
+         */
+        ROW_LIMIT,
+
+        /**
+         * The reader's byte limit was reached.
+         */
+        BYTE_LIMIT
+
+    }
+
+    private final Reason reason;
+
+    private final int rowsScanned;
+
+    private final long bytesScanned;
+
+    private final int rejectedRowNumber;
+
+    private final int rejectedColumnNumber;
+
+    private final String rejectedText;
+
+    /**
+     * Create a new exception.
+     *
+     * @param reason Why the search stopped.
+     * @param rowsScanned The number of rows looked at.
+     * @param bytesScanned The input looked at, or -1 if unknown.
+     * @param rejectedRowNumber The source row number of the last row
+     * that looked like a hashtag row, or -1 if none did.
+     * @param rejectedColumnNumber The source column number of the
+     * first bad cell in that row.
+     * @param rejectedText The start of the bad cell.
+     */
+    HXLHeaderNotFoundException(Reason reason, int rowsScanned, long bytesScanned, int rejectedRowNumber, int rejectedColumnNumber, String rejectedText) {
+        super(makeMessage(reason, rowsScanned, bytesScanned, rejectedRowNumber, rejectedColumnNumber, rejectedText));
+        this.reason = reason;
+        this.rowsScanned = rowsScanned;
+        this.bytesScanned = bytesScanned;
+        this.rejectedRowNumber = rejectedRowNumber;
+        this.rejectedColumnNumber = rejectedColumnNumber;
+        this.rejectedText = rejectedText;
+    }
+
+    /**
+     * Get the reason the search stopped.
+     *
+     * @return The reason.
+     */
+    public Reason getReason() {
+        return reason;
+    }
+
+    /**
+     * Get the number of rows looked at.
+     *
+     * @return The row count.
+     */
+    public int getRowsScanned() {
+        return rowsScanned;
+    }
+
+    /**
+     * Get the amount of input looked at, in the tokenizer's units (see
+     * {@link HXLTokenizer#getInputOffset()}).
+     *
+     * @return The byte or character count, or -1 if unknown.
+     */
+    public long getBytesScanned() {
+        return bytesScanned;
+    }
+
+    /**
+     * Get the last row that started like a hashtag row but had a cell
+     * that isn't a hashtag.
+     *
+     * @return The zero-based source row number, or -1 if there was no
+     * such row.
+     */
+    public int getRejectedRowNumber() {
+        return rejectedRowNumber;
+    }
+
+    /**
+     * Get the first bad cell in the rejected row.
+     *
+     * @return The zero-based source column number, or -1 if there was
+     * no rejected row.
+     */
+    public int getRejectedColumnNumber() {
+        return rejectedColumnNumber;
+    }
+
+    /**
+     * Get the content of the first bad cell in the rejected row.
+     *
+     * @return The first few characters of the cell, or null if there
+     * was no rejected row.
+     */
+    public String getRejectedText() {
+        return rejectedText;
+    }
+
+    private static String makeMessage(Reason reason, int rowsScanned, long bytesScanned, int rejectedRowNumber, int rejectedColumnNumber, String rejectedText) {
+        final StringBuilder message = new StringBuilder("HXL header row not found");
+        switch (reason) {
+        case ROW_LIMIT:
+            message.append(" in the first ").append(rowsScanned).append(" rows");
+            break;
+        case BYTE_LIMIT:
+            message.append(" in the first ").append(bytesScanned).append(" bytes");
+            break;
+        default:
+            message.append(" (").append(rowsScanned).append(" rows)");
+            break;
+        }
+        if (rejectedRowNumber >= 0) {
+            message.append("; row ").append(rejectedRowNumber + 1)
+                .append(" has a non-hashtag in column ").append(rejectedColumnNumber + 1)
+                .append(": \"").append(rejectedText).append('"');
+        }
+        return message.toString();
+    }
+
+}
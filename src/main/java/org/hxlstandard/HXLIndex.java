@@ -0,0 +1,453 @@
+package org.hxlstandard;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+
+/**
+ * In-memory indexes over the columns of a HXL dataset.
+ *
+ * <p>Instead of scanning every row to answer a query such as "all
+ * rows with <code>#adm1</code> = X" or "<code>#date</code> between A
+ * and B", add each row to an index as it is read, and look up the
+ * matching rows directly. There are three kinds of index, each for a
+ * single {@link HXLColumn}:</p>
+ *
+ * <ul>
+ * <li>a hash index, for equality on the string content;</li>
+ * <li>a number index, for ranges of numeric values (see {@link
+ * HXLValue#isNumeric()}); and</li>
+ * <li>a date index, for ranges of ISO 8601 dates (see {@link
+ * HXLValue#isDate()}).</li>
+ * </ul>
+ *
+ * <p>Every query returns a {@link BitSet} of logical row numbers (see
+ * {@link HXLRow#getRowNumber()}), so the results for several columns
+ * can be combined with {@link BitSet#and(BitSet)} and {@link
+ * BitSet#or(BitSet)}. For rows read from the start of a file, the
+ * row number is also the row's position in a list of rows or in an
+ * {@link HXLColumnarDataset}.</p>
+ *
+ * <p>Example:</p>
+ *
+ * <pre>
+ * HXLReader reader = new HXLReader(input);
+ * List&lt;HXLColumn&gt; columns = reader.getColumns();
+ * HXLIndex index = new HXLIndex()
+ *   .addHashIndex(columns.get(0))   // #adm1
+ *   .addDateIndex(columns.get(3));  // #date
+ * index.addAll(reader);
+ * BitSet rows = index.equal(columns.get(0), "North");
+ * rows.and(index.range(columns.get(3), LocalDate.of(2015, 1, 1), LocalDate.of(2015, 3, 31)));
+ * </pre>
+ *
+ * <p>Rows may be added at any time, and later queries include them
+ * (an index on a column covers only the rows added after the index
+ * itself). The number and date indexes keep new entries in an
+ * unsorted buffer and sort them into place at the next query, so
+ * building an index costs one sort rather than one insertion per
+ * row. Rows must be added from one thread, and not while other
+ * threads are querying; once the last row is added, queries may run
+ * on several threads at once.</p>
+ *
+ * @author David Megginson
+ */
+public class HXLIndex {
+
+    private final HashMap<HXLColumn,HashIndex> hashIndexes = new HashMap<HXLColumn,HashIndex>();
+
+    private final HashMap<HXLColumn,SortedIndex> sortedIndexes = new HashMap<HXLColumn,SortedIndex>();
+
+    private HashIndex hashList[] = new HashIndex[0];
+
+    private SortedIndex sortedList[] = new SortedIndex[0];
+
+    private final BitSet rows = new BitSet();
+
+    /**
+     * Index a column's values for equality queries.
+     *
+     * <p>An empty or missing value is indexed as "".</p>
+     *
+     * @param column One of the dataset's columns.
+     * @return This object.
+     */
+    public HXLIndex addHashIndex(HXLColumn column) {
+        if (!hashIndexes.containsKey(column)) {
+            final HashIndex index = new HashIndex(column);
+            hashIndexes.put(column, index);
+            hashList = Arrays.copyOf(hashList, hashList.length + 1);
+            hashList[hashList.length - 1] = index;
+        }
+        return this;
+    }
+
+    /**
+     * Index a column's numeric values for range queries.
+     *
+     * <p>Values that aren't numbers are left out of the index.</p>
+     *
+     * @param column One of the dataset's columns.
+     * @return This object.
+     * @exception IllegalArgumentException if the column already has a
+     * date index.
+     */
+    public HXLIndex addNumberIndex(HXLColumn column) {
+        return addSortedIndex(column, false);
+    }
+
+    /**
+     * Index a column's dates for range queries.
+     *
+     * <p>Values that aren't ISO 8601 dates are left out of the
+     * index.</p>
+     *
+     * @param column One of the dataset's columns.
+     * @return This object.
+     * @exception IllegalArgumentException if the column already has a
+     * number index.
+     */
+    public HXLIndex addDateIndex(HXLColumn column) {
+        return addSortedIndex(column, true);
+    }
+
+    /**
+     * Add a row to every index.
+     *
+     * <p>The row's values are copied, so rows may be recycled objects
+     * (see {@link HXLReader#setReuseObjects(boolean)}).</p>
+     *
+     * @param row A row of the dataset.
+     */
+    public void add(HXLRow row) {
+        final int rowNumber = row.getRowNumber();
+        for (final HashIndex index : hashList) {
+            index.add(row, rowNumber);
+        }
+        for (final SortedIndex index : sortedList) {
+            index.add(row, rowNumber);
+        }
+        rows.set(rowNumber);
+    }
+
+    /**
+     * Add all of the remaining rows from a source.
+     *
+     * <p>The source isn't closed.</p>
+     *
+     * @param source The source of rows.
+     * @return The number of rows added.
+     * @exception IOException if there is an error reading the source.
+     */
+    public long addAll(HXLRowSource source) throws IOException {
+        long count = 0;
+        HXLRow row = source.read();
+        while (row != null) {
+            add(row);
+            count++;
+            row = source.read();
+        }
+        return count;
+    }
+
+    /**
+     * Get every row added to the index.
+     *
+     * @return A new bitmap of row numbers.
+     */
+    public BitSet getRows() {
+        return (BitSet) rows.clone();
+    }
+
+    /**
+     * Find the rows with a value.
+     *
+     * @param column A column with a hash index.
+     * @param value The content to match exactly ("" for no value).
+     * @return A new bitmap of row numbers.
+     * @exception IllegalArgumentException if the column has no hash
+     * index.
+     */
+    public BitSet equal(HXLColumn column, String value) {
+        final HashIndex index = hashIndexes.get(column);
+        if (index == null) {
+            throw new IllegalArgumentException("No hash index for column " + column.getTag());
+        }
+        return index.find(value);
+    }
+
+    /**
+     * Find the rows with a number in a range.
+     *
+     * @param column A column with a number index.
+     * @param from The smallest value to include (or {@link
+     * Double#NEGATIVE_INFINITY}).
+     * @param to The largest value to include (or {@link
+     * Double#POSITIVE_INFINITY}).
+     * @return A new bitmap of row numbers.
+     * @exception IllegalArgumentException if the column has no number
+     * index.
+     */
+    public BitSet range(HXLColumn column, double from, double to) {
+        return getSortedIndex(column, false).find(from, to);
+    }
+
+    /**
+     * Find the rows with a date in a range.
+     *
+     * @param column A column with a date index.
+     * @param from The first date to include (or {@link LocalDate#MIN}).
+     * @param to The last date to include (or {@link LocalDate#MAX}).
+     * @return A new bitmap of row numbers.
+     * @exception IllegalArgumentException if the column has no date
+     * index.
+     */
+    public BitSet range(HXLColumn column, LocalDate from, LocalDate to) {
+        return getSortedIndex(column, true).find(from.toEpochDay(), to.toEpochDay());
+    }
+
+    private HXLIndex addSortedIndex(HXLColumn column, boolean dates) {
+        final SortedIndex existing = sortedIndexes.get(column);
+        if (existing == null) {
+            final SortedIndex index = new SortedIndex(column, dates);
+            sortedIndexes.put(column, index);
+            sortedList = Arrays.copyOf(sortedList, sortedList.length + 1);
+            sortedList[sortedList.length - 1] = index;
+        } else if (existing.dates != dates) {
+            throw new IllegalArgumentException("Column " + column.getTag() + " already has a " + (existing.dates ? "date" : "number") + " index");
+        }
+        return this;
+    }
+
+    private SortedIndex getSortedIndex(HXLColumn column, boolean dates) {
+        final SortedIndex index = sortedIndexes.get(column);
+        if (index == null || index.dates != dates) {
+            throw new IllegalArgumentException("No " + (dates ? "date" : "number") + " index for column " + column.getTag());
+        }
+        return index;
+    }
+
+    /**
+     * Hash index: a list of row numbers for each distinct value.
+     */
+    private final static class HashIndex {
+
+        final HXLColumn column;
+
+        final HashMap<String,Postings> postings = new HashMap<String,Postings>();
+
+        HashIndex(HXLColumn column) {
+            this.column = column;
+        }
+
+        void add(HXLRow row, int rowNumber) {
+            final HXLValue value = row.get(column);
+            final String content = (value == null ? "" : value.getContent());
+            Postings p = postings.get(content);
+            if (p == null) {
+                p = new Postings();
+                postings.put(content, p);
+            }
+            p.add(rowNumber);
+        }
+
+        BitSet find(String value) {
+            final BitSet result = new BitSet();
+            final Postings p = postings.get(value);
+            if (p != null) {
+                for (int i = 0; i < p.size; i++) {
+                    result.set(p.rows[i]);
+                }
+            }
+            return result;
+        }
+
+    }
+
+    private final static class Postings {
+
+        int rows[] = new int[4];
+
+        int size;
+
+        void add(int row) {
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, size * 2);
+            }
+            rows[size++] = row;
+        }
+
+    }
+
+    /**
+     * Sorted index: parallel arrays of keys and row numbers, sorted by
+     * key, plus any new entries waiting to be sorted in.
+     */
+    private final static class SortedIndex {
+
+        final HXLColumn column;
+
+        final boolean dates;
+
+        double keys[] = new double[16];
+
+        int rows[] = new int[16];
+
+        int size;
+
+        int sorted;
+
+        volatile boolean dirty;
+
+        SortedIndex(HXLColumn column, boolean dates) {
+            this.column = column;
+            this.dates = dates;
+        }
+
+        void add(HXLRow row, int rowNumber) {
+            final HXLValue value = row.get(column);
+            if (value == null) {
+                return;
+            }
+            final double key;
+            if (dates) {
+                if (!value.isDate()) {
+                    return;
+                }
+                key = value.asDate().toEpochDay();
+            } else {
+                if (!value.isNumeric()) {
+                    return;
+                }
+                key = value.asDouble();
+                if (Double.isNaN(key)) {
+                    return;
+                }
+            }
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                rows = Arrays.copyOf(rows, size * 2);
+            }
+            keys[size] = key;
+            rows[size] = rowNumber;
+            size++;
+            dirty = true;
+        }
+
+        BitSet find(double from, double to) {
+            if (dirty) {
+                synchronized (this) {
+                    if (dirty) {
+                        sortPending();
+                        dirty = false;
+                    }
+                }
+            }
+            final BitSet result = new BitSet();
+            final double k[] = keys;
+            final int r[] = rows;
+            for (int i = lowerBound(k, sorted, from); i < sorted && k[i] <= to; i++) {
+                result.set(r[i]);
+            }
+            return result;
+        }
+
+        /**
+         * Sort the new entries, then merge them with the sorted ones.
+         */
+        private void sortPending() {
+            sort(keys, rows, sorted, size - 1);
+            if (sorted > 0 && keys[sorted - 1] > keys[sorted]) {
+                final double mergedKeys[] = new double[keys.length];
+                final int mergedRows[] = new int[rows.length];
+                int a = 0;
+                int b = sorted;
+                for (int i = 0; i < size; i++) {
+                    if (b == size || (a < sorted && keys[a] <= keys[b])) {
+                        mergedKeys[i] = keys[a];
+                        mergedRows[i] = rows[a++];
+                    } else {
+                        mergedKeys[i] = keys[b];
+                        mergedRows[i] = rows[b++];
+                    }
+                }
+                keys = mergedKeys;
+                rows = mergedRows;
+            }
+            sorted = size;
+        }
+
+        private static int lowerBound(double k[], int n, double key) {
+            int lo = 0;
+            int hi = n;
+            while (lo < hi) {
+                final int mid = (lo + hi) >>> 1;
+                if (k[mid] < key) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        /**
+         * Sort keys[lo..hi] with the matching row numbers.
+         */
+        private static void sort(double k[], int r[], int lo, int hi) {
+            while (hi - lo > 16) {
+                final double pivot = median(k[lo], k[(lo + hi) >>> 1], k[hi]);
+                int i = lo;
+                int j = hi;
+                while (i <= j) {
+                    while (k[i] < pivot) {
+                        i++;
+                    }
+                    while (k[j] > pivot) {
+                        j--;
+                    }
+                    if (i <= j) {
+                        swap(k, r, i++, j--);
+                    }
+                }
+                // recurse into the smaller half, loop on the larger
+                if (j - lo < hi - i) {
+                    sort(k, r, lo, j);
+                    lo = i;
+                } else {
+                    sort(k, r, i, hi);
+                    hi = j;
+                }
+            }
+            for (int i = lo + 1; i <= hi; i++) {
+                final double key = k[i];
+                final int row = r[i];
+                int j = i - 1;
+                while (j >= lo && k[j] > key) {
+                    k[j + 1] = k[j];
+                    r[j + 1] = r[j];
+                    j--;
+                }
+                k[j + 1] = key;
+                r[j + 1] = row;
+            }
+        }
+
+        private static double median(double a, double b, double c) {
+            return Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+        }
+
+        private static void swap(double k[], int r[], int i, int j) {
+            final double key = k[i];
+            k[i] = k[j];
+            k[j] = key;
+            final int row = r[i];
+            r[i] = r[j];
+            r[j] = row;
+        }
+
+    }
+
+}
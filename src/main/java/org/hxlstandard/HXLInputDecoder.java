@@ -0,0 +1,254 @@
+package org.hxlstandard;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Character stream that detects the encoding of HXL bytes and decodes
+ * them.
+ *
+ * <p>The encoding is taken from a byte order mark if there is one
+ * (UTF-8, UTF-16BE, or UTF-16LE), and the mark is removed, so the
+ * first hashtag of an Excel export is "#sector" rather than U+FEFF
+ * followed by "#sector". Without a mark, input that starts with a zero
+ * byte next to a non-zero one is taken as UTF-16, and anything else
+ * as UTF-8.</p>
+ *
+ * <p>The bytes are decoded by a {@link CharsetDecoder} straight from
+ * one reusable byte buffer into the caller's character buffer (usually
+ * the {@link HXLCSVTokenizer}'s), with no intermediate copy; for
+ * UTF-8, the JDK's decoder copies runs of ASCII bytes with a
+ * vectorised loop. Malformed input becomes U+FFFD, as with {@link
+ * java.io.InputStreamReader}.</p>
+ *
+ * @author David Megginson
+ * @see HXLReader#HXLReader(InputStream)
+ */
+public class HXLInputDecoder extends Reader {
+
+    /**
+     * Default size of the byte buffer.
+     */
+    public final static int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final static Charset UTF8 = Charset.forName("UTF-8");
+
+    private final static Charset UTF16BE = Charset.forName("UTF-16BE");
+
+    private final static Charset UTF16LE = Charset.forName("UTF-16LE");
+
+    private final InputStream input;
+
+    private final ByteBuffer in;
+
+    private final Charset charset;
+
+    private final CharsetDecoder decoder;
+
+    private final boolean byteOrderMark;
+
+    private final char pair[] = new char[2];
+
+    private int pairPos;
+
+    private int pairLimit;
+
+    private boolean eof;
+
+    private boolean done;
+
+    private boolean closed;
+
+    /**
+     * Create a new decoder with the default buffer size.
+     *
+     * @param input The bytes to decode.
+     * @exception IOException if there is an error reading the first
+     * bytes.
+     */
+    public HXLInputDecoder(InputStream input) throws IOException {
+        this(input, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Create a new decoder.
+     *
+     * <p>The first few bytes are read straight away, to detect the
+     * encoding.</p>
+     *
+     * @param input The bytes to decode.
+     * @param bufferSize The size of the byte buffer (at least 4).
+     * @exception IOException if there is an error reading the first
+     * bytes.
+     */
+    public HXLInputDecoder(InputStream input, int bufferSize) throws IOException {
+        if (input == null) {
+            throw new NullPointerException("input");
+        }
+        if (bufferSize < 4) {
+            throw new IllegalArgumentException("Buffer size must be at least 4: " + bufferSize);
+        }
+        this.input = input;
+        final byte bytes[] = new byte[bufferSize];
+        int length = 0;
+        while (length < 4 && !eof) {
+            final int n = input.read(bytes, length, bytes.length - length);
+            if (n < 0) {
+                eof = true;
+            } else {
+                length += n;
+            }
+        }
+        charset = detectCharset(bytes, length);
+        int start = 0;
+        if (charset == UTF8) {
+            if (length >= 3 && (bytes[0] & 0xff) == 0xef && (bytes[1] & 0xff) == 0xbb && (bytes[2] & 0xff) == 0xbf) {
+                start = 3;
+            }
+        } else if (length >= 2 && ((bytes[0] & 0xff) == 0xfe || (bytes[0] & 0xff) == 0xff)) {
+            start = 2;
+        }
+        byteOrderMark = (start > 0);
+        in = ByteBuffer.wrap(bytes, start, length - start);
+        decoder = charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * Detect the encoding of HXL bytes from their start.
+     *
+     * <p>Four bytes are enough; the decoder constructor uses the same
+     * rules.</p>
+     *
+     * @param bytes The first bytes of the input.
+     * @param length The number of bytes available.
+     * @return UTF-8, UTF-16BE, or UTF-16LE.
+     */
+    static Charset detectCharset(byte bytes[], int length) {
+        final int b0 = (length > 0 ? bytes[0] & 0xff : -1);
+        final int b1 = (length > 1 ? bytes[1] & 0xff : -1);
+        if (b0 == 0xfe && b1 == 0xff) {
+            return UTF16BE;
+        } else if (b0 == 0xff && b1 == 0xfe) {
+            return UTF16LE;
+        } else if (b0 == 0 && b1 > 0) {
+            return UTF16BE;
+        } else if (b0 > 0 && b1 == 0) {
+            return UTF16LE;
+        } else {
+            return UTF8;
+        }
+    }
+
+    /**
+     * Get the encoding that was detected.
+     *
+     * @return UTF-8, UTF-16BE, or UTF-16LE.
+     */
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * Test whether the input started with a byte order mark.
+     *
+     * @return true if a byte order mark was removed.
+     */
+    public boolean hasByteOrderMark() {
+        return byteOrderMark;
+    }
+
+    @Override
+    public int read(char cbuf[], int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > cbuf.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (pairPos < pairLimit) {
+            cbuf[off] = pair[pairPos++];
+            return 1;
+        }
+        if (len == 1) {
+            // decode into a buffer with room for a surrogate pair
+            pairLimit = decode(pair, 0, 2);
+            pairPos = 0;
+            return (pairLimit < 0 ? -1 : read(cbuf, off, 1));
+        }
+        return decode(cbuf, off, len);
+    }
+
+    @Override
+    public boolean ready() throws IOException {
+        return (pairPos < pairLimit || in.hasRemaining() || input.available() > 0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            input.close();
+        }
+    }
+
+    /**
+     * Decode at least one character, unless the input is finished.
+     *
+     * @return The number of characters decoded, or -1 at the end of
+     * the input.
+     */
+    private int decode(char cbuf[], int off, int len) throws IOException {
+        if (done) {
+            return -1;
+        }
+        final CharBuffer out = CharBuffer.wrap(cbuf, off, len);
+        for (;;) {
+            final CoderResult result = decoder.decode(in, out, eof);
+            if (eof && result.isUnderflow() && decoder.flush(out).isUnderflow()) {
+                done = true;
+                break;
+            }
+            // don't block for more input once there's something to return
+            if (out.position() > off || result.isOverflow()) {
+                break;
+            }
+            fill();
+        }
+        final int n = out.position() - off;
+        return (n == 0 ? -1 : n);
+    }
+
+    /**
+     * Move any undecoded bytes to the start of the buffer and read
+     * more.
+     */
+    private void fill() throws IOException {
+        in.compact();
+        try {
+            int n;
+            do {
+                n = input.read(in.array(), in.position(), in.remaining());
+            } while (n == 0);
+            if (n < 0) {
+                eof = true;
+            } else {
+                in.position(in.position() + n);
+            }
+        } finally {
+            in.flip();
+        }
+    }
+
+}
@@ -0,0 +1,467 @@
+package org.hxlstandard;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Memory-mapped CSV tokenizer for UTF-8 files on disk.
+ *
+ * <p>This tokenizer maps the file into memory with {@link
+ * FileChannel#map} and finds separators, quotation marks, and line
+ * breaks by scanning the UTF-8 bytes directly (they are all ASCII, so
+ * they can never appear inside a multi-byte character). There is no
+ * decoding step and no copy into a character buffer: a field is just
+ * a byte range in the mapped file until somebody asks for its
+ * content.</p>
+ *
+ * <p>When {@link HXLReader} uses this tokenizer, it gives each {@link
+ * HXLValue} a reference to the field's bytes instead of a string, and
+ * the string is decoded the first time {@link HXLValue#getContent()}
+ * is called. Jobs that look at only a few values per row never pay to
+ * decode the rest.</p>
+ *
+ * <p>Large files are mapped through a sliding window of {@link
+ * #DEFAULT_WINDOW_SIZE} bytes. Values keep their window alive until
+ * they are garbage collected, so they remain readable after the
+ * tokenizer moves on or is closed. The quoting rules are the same as
+ * for {@link HXLCSVTokenizer}, and a UTF-8 byte order mark at the start
+ * of the file is skipped.</p>
+ *
+ * @author David Megginson
+ * @see HXLReader#HXLReader(File)
+ */
+public class HXLMappedTokenizer implements HXLTokenizer {
+
+    /**
+     * Default size of the mapped window, in bytes.
+     */
+    public final static int DEFAULT_WINDOW_SIZE = 128 * 1024 * 1024;
+
+    private final static Charset UTF8 = Charset.forName("UTF-8");
+
+    private final static byte QUOTE = '"';
+
+    private final static byte CR = '\r';
+
+    private final static byte LF = '\n';
+
+    private final FileChannel channel;
+
+    private final long size;
+
+    private final byte separator;
+
+    private int windowSize;
+
+    private ByteBuffer window;
+
+    private long windowStart;
+
+    private int windowLimit;
+
+    private int pos;
+
+    private int fieldStarts[] = new int[16];
+
+    private int fieldEnds[] = new int[16];
+
+    private boolean fieldQuoted[] = new boolean[16];
+
+    private int fieldCount;
+
+    private int charField = -1;
+
+    private int charAscii;
+
+    private String charValue;
+
+    /**
+     * Create a new tokenizer with the default separator and window size.
+     *
+     * @param file The UTF-8 CSV file to tokenize.
+     * @exception IOException if the file can't be opened.
+     */
+    public HXLMappedTokenizer(File file) throws IOException {
+        this(file, HXLCSVTokenizer.DEFAULT_SEPARATOR, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Create a new tokenizer.
+     *
+     * @param file The UTF-8 CSV file to tokenize.
+     * @param separator The field separator, which must be an ASCII
+     * character.
+     * @param windowSize The initial number of bytes to map at once.
+     * @exception IOException if the file can't be opened.
+     */
+    public HXLMappedTokenizer(File file, char separator, int windowSize) throws IOException {
+        if (separator >= 0x80 || separator == '"' || separator == '\r' || separator == '\n') {
+            throw new IllegalArgumentException("Illegal separator: " + separator);
+        }
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("Window size must be positive: " + windowSize);
+        }
+        this.separator = (byte) separator;
+        this.windowSize = windowSize;
+        this.channel = new RandomAccessFile(file, "r").getChannel();
+        this.size = channel.size();
+    }
+
+    @Override
+    public int next() throws IOException {
+        fieldCount = 0;
+        charField = -1;
+        if (window == null) {
+            if (size == 0) {
+                return -1;
+            }
+            map(0);
+            if (windowLimit >= 3 && window.get(0) == (byte) 0xef && window.get(1) == (byte) 0xbb && window.get(2) == (byte) 0xbf) {
+                // skip the UTF-8 byte order mark
+                pos = 3;
+            }
+        }
+        for (;;) {
+            if (windowStart + pos >= size) {
+                return -1;
+            }
+            final int recordStart = pos;
+            if (scanRecord()) {
+                return fieldCount;
+            }
+            // the record runs past the end of the window
+            fieldCount = 0;
+            if (recordStart == 0) {
+                if (windowSize == Integer.MAX_VALUE) {
+                    throw new IOException("Record too long at byte " + windowStart);
+                }
+                windowSize = (int) Math.min(2L * windowSize, Integer.MAX_VALUE);
+            }
+            map(windowStart + recordStart);
+        }
+    }
+
+    @Override
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    @Override
+    public String getField(int index) {
+        checkIndex(index);
+        return decode(window, fieldStarts[index], fieldEnds[index], fieldQuoted[index]);
+    }
+
+    @Override
+    public int getFieldLength(int index) {
+        checkIndex(index);
+        if (!fieldQuoted[index] && isAscii(fieldStarts[index], fieldEnds[index])) {
+            return fieldEnds[index] - fieldStarts[index];
+        }
+        return getField(index).length();
+    }
+
+    /**
+     * Get one character of a field.
+     *
+     * <p>Callers such as {@link HXLTagSpec#isTagSpec} read a field a
+     * character at a time, so the tokenizer remembers, for the last
+     * field read this way, how many of its bytes are known to be
+     * ASCII (and read straight from the window), and the decoded
+     * string once a character past them is needed.</p>
+     */
+    @Override
+    public char getFieldChar(int index, int offset) {
+        checkIndex(index);
+        if (index != charField) {
+            charField = index;
+            charAscii = 0;
+            charValue = null;
+        }
+        final int start = fieldStarts[index];
+        if (!fieldQuoted[index] && offset >= 0 && start + offset < fieldEnds[index]) {
+            while (charAscii <= offset && window.get(start + charAscii) >= 0) {
+                charAscii++;
+            }
+            if (offset < charAscii) {
+                return (char) window.get(start + offset);
+            }
+        }
+        if (charValue == null) {
+            charValue = getField(index);
+        }
+        return charValue.charAt(offset);
+    }
+
+    /**
+     * Get the number of bytes consumed so far.
+     *
+     * @return The offset of the end of the current record.
+     */
+    @Override
+    public long getInputOffset() {
+        return windowStart + pos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Get a field's content without decoding it yet.
+     *
+     * @param index The zero-based field index.
+     * @return A character sequence that decodes the field on first use,
+     * and stays valid after the tokenizer moves on.
+     */
+    Field getLazyField(int index) {
+        final Field field = new Field();
+        setLazyField(field, index);
+        return field;
+    }
+
+    /**
+     * Point an existing lazy field at a field of the current record.
+     *
+     * @param field The field object to reuse.
+     * @param index The zero-based field index.
+     */
+    void setLazyField(Field field, int index) {
+        checkIndex(index);
+        field.set(window, fieldStarts[index], fieldEnds[index], fieldQuoted[index]);
+    }
+
+    /**
+     * Scan one record from the current position.
+     *
+     * @return true if the whole record was in the window, or false if
+     * the window must be moved and the record scanned again.
+     */
+    private boolean scanRecord() {
+        final ByteBuffer b = window;
+        final int l = windowLimit;
+        final boolean last = (windowStart + l >= size);
+        final byte sep = separator;
+        int p = pos;
+        for (;;) {
+            final int start = p;
+            boolean quoted = false;
+            if (p < l && b.get(p) == QUOTE) {
+                quoted = true;
+                p++;
+                for (;;) {
+                    if (p >= l) {
+                        if (!last) {
+                            return false;
+                        }
+                        break; // unterminated quote
+                    }
+                    if (b.get(p++) == QUOTE) {
+                        if (p < l && b.get(p) == QUOTE) {
+                            p++;
+                            continue;
+                        }
+                        if (p >= l && !last) {
+                            return false;
+                        }
+                        break;
+                    }
+                }
+            }
+            while (p < l) {
+                final byte c = b.get(p);
+                if (c == sep || c == CR || c == LF) {
+                    break;
+                }
+                p++;
+            }
+            if (p >= l && !last) {
+                return false;
+            }
+            addField(quoted ? start + 1 : start, p, quoted);
+            if (p >= l) {
+                pos = p;
+                return true;
+            }
+            final byte c = b.get(p++);
+            if (c == sep) {
+                continue;
+            }
+            if (c == CR) {
+                if (p >= l) {
+                    if (!last) {
+                        return false;
+                    }
+                } else if (b.get(p) == LF) {
+                    p++;
+                }
+            }
+            pos = p;
+            return true;
+        }
+    }
+
+    private void addField(int start, int end, boolean quoted) {
+        if (fieldCount == fieldStarts.length) {
+            fieldStarts = Arrays.copyOf(fieldStarts, fieldCount * 2);
+            fieldEnds = Arrays.copyOf(fieldEnds, fieldCount * 2);
+            fieldQuoted = Arrays.copyOf(fieldQuoted, fieldCount * 2);
+        }
+        fieldStarts[fieldCount] = start;
+        fieldEnds[fieldCount] = end;
+        fieldQuoted[fieldCount] = quoted;
+        fieldCount++;
+    }
+
+    private void map(long position) throws IOException {
+        final long length = Math.min(windowSize, size - position);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        windowStart = position;
+        windowLimit = (int) length;
+        pos = 0;
+    }
+
+    private boolean isAscii(int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (window.get(i) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= fieldCount) {
+            throw new IndexOutOfBoundsException("Field " + index + " of " + fieldCount);
+        }
+    }
+
+    /**
+     * Decode a field's bytes.
+     *
+     * <p>A quoted field's range starts just after the opening quotation
+     * mark and may include the closing one and anything after it, so
+     * it's unescaped with the same rules as {@link HXLCSVTokenizer}
+     * before decoding. Since every quotation mark is a single byte in
+     * UTF-8, this can be done on the bytes.</p>
+     */
+    private static String decode(ByteBuffer buffer, int start, int end, boolean quoted) {
+        int length = end - start;
+        if (length == 0) {
+            return "";
+        }
+        final byte bytes[] = new byte[length];
+        final ByteBuffer source = buffer.duplicate();
+        source.position(start);
+        source.get(bytes);
+        if (quoted) {
+            int w = 0;
+            boolean inQuote = true;
+            for (int r = 0; r < length; r++) {
+                final byte c = bytes[r];
+                if (inQuote && c == QUOTE) {
+                    if (r + 1 < length && bytes[r + 1] == QUOTE) {
+                        bytes[w++] = QUOTE;
+                        r++;
+                    } else {
+                        inQuote = false;
+                    }
+                } else {
+                    bytes[w++] = c;
+                }
+            }
+            length = w;
+        }
+        return new String(bytes, 0, length, UTF8);
+    }
+
+    /**
+     * Field content that is decoded from the mapped file on first use.
+     */
+    static class Field implements CharSequence {
+
+        private ByteBuffer buffer;
+
+        private int start;
+
+        private int end;
+
+        private boolean quoted;
+
+        private String content;
+
+        private int asciiLength;
+
+        void set(ByteBuffer buffer, int start, int end, boolean quoted) {
+            this.buffer = buffer;
+            this.start = start;
+            this.end = end;
+            this.quoted = quoted;
+            this.content = null;
+            this.asciiLength = -2;
+        }
+
+        @Override
+        public int length() {
+            final int n = asciiLength();
+            return (n >= 0 ? n : toString().length());
+        }
+
+        @Override
+        public char charAt(int index) {
+            final int n = asciiLength();
+            if (n < 0) {
+                return toString().charAt(index);
+            }
+            if (index < 0 || index >= n) {
+                throw new IndexOutOfBoundsException("Index " + index + " of " + n);
+            }
+            return (char) buffer.get(start + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return toString().subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            String s = content;
+            if (s == null) {
+                s = content = decode(buffer, start, end, quoted);
+            }
+            return s;
+        }
+
+        /**
+         * Get the length of an unquoted, all-ASCII field, whose
+         * characters can be read straight from the buffer without
+         * decoding it.
+         *
+         * @return The length, or -1 if the field must be decoded.
+         */
+        private int asciiLength() {
+            if (asciiLength == -2) {
+                asciiLength = -1;
+                if (content == null && !quoted) {
+                    int i = start;
+                    while (i < end && buffer.get(i) >= 0) {
+                        i++;
+                    }
+                    if (i == end) {
+                        asciiLength = end - start;
+                    }
+                }
+            }
+            return asciiLength;
+        }
+
+    }
+
+}
@@ -0,0 +1,167 @@
+package org.hxlstandard;
+
+/**
+ * The grammar for numbers in HXL content.
+ *
+ * <p>A number is an optional sign, digits with an optional decimal
+ * point, and an optional exponent (e.g. "42", "-3.5", "+5", "007",
+ * "1e6"), with optional surrounding spaces. Thousands separators are
+ * not allowed. {@link HXLValue#isNumeric()} and {@link
+ * HXLColumnTypes} use this class, so they agree on what is a number;
+ * {@link HXLColumnVector} uses it for the values of the numbers it
+ * stores, but keeps any number that wouldn't come back as written
+ * (such as "007") as a string.</p>
+ *
+ * <p>Integers of up to 18 digits, and decimals with up to 15
+ * significant digits and a small exponent, are computed exactly from
+ * the digits; anything longer goes to {@link
+ * Double#parseDouble(String)}. A parser can be reused, but isn't
+ * thread-safe.</p>
+ *
+ * @author David Megginson
+ */
+final class HXLNumberParser {
+
+    /**
+     * The content isn't a number.
+     */
+    final static byte NOT_NUMBER = 1;
+
+    /**
+     * The content is a whole number that fits in a <code>long</code>,
+     * in {@link #longValue}.
+     */
+    final static byte INTEGER = 2;
+
+    /**
+     * The content is any other number, in {@link #doubleValue}.
+     */
+    final static byte DECIMAL = 3;
+
+    private final static double POWERS_OF_TEN[] = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+        1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20,
+        1e21, 1e22
+    };
+
+    /**
+     * The value of the last {@link #INTEGER}.
+     */
+    long longValue;
+
+    /**
+     * The value of the last {@link #DECIMAL}.
+     */
+    double doubleValue;
+
+    /**
+     * Parse a number into {@link #longValue} or {@link #doubleValue}.
+     *
+     * @param s The content to parse.
+     * @return {@link #INTEGER}, {@link #DECIMAL}, or {@link
+     * #NOT_NUMBER}.
+     */
+    byte parse(CharSequence s) {
+        int start = 0;
+        int end = s.length();
+        while (start < end && s.charAt(start) == ' ') {
+            start++;
+        }
+        while (end > start && s.charAt(end - 1) == ' ') {
+            end--;
+        }
+        int i = start;
+        boolean negative = false;
+        if (i < end && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+            negative = (s.charAt(i) == '-');
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean point = false;
+        boolean seenDigit = false;
+        for (; i < end; i++) {
+            final char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                seenDigit = true;
+                if (mantissa == 0 && c == '0') {
+                    // leading zeros don't count
+                } else {
+                    digits++;
+                    if (digits <= 18) {
+                        mantissa = mantissa * 10 + (c - '0');
+                    } else {
+                        scale++; // dropped digit, still counted for the fallback test
+                    }
+                }
+                if (point) {
+                    scale--;
+                }
+            } else if (c == '.' && !point) {
+                point = true;
+            } else {
+                break;
+            }
+        }
+        if (!seenDigit || (point && s.charAt(i - 1) == '.')) {
+            return NOT_NUMBER;
+        }
+
+        int exponent = 0;
+        boolean hasExponent = false;
+        if (i < end && (s.charAt(i) == 'e' || s.charAt(i) == 'E')) {
+            hasExponent = true;
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+                negativeExponent = (s.charAt(i) == '-');
+                i++;
+            }
+            if (i == end) {
+                return NOT_NUMBER;
+            }
+            for (; i < end; i++) {
+                final char c = s.charAt(i);
+                if (c < '0' || c > '9') {
+                    return NOT_NUMBER;
+                }
+                if (exponent < 10000) {
+                    exponent = exponent * 10 + (c - '0');
+                }
+            }
+            if (negativeExponent) {
+                exponent = -exponent;
+            }
+        }
+        if (i != end) {
+            return NOT_NUMBER;
+        }
+
+        if (!point && !hasExponent && digits <= 18) {
+            longValue = (negative ? -mantissa : mantissa);
+            return INTEGER;
+        }
+        final int power = scale + exponent;
+        if (digits <= 15 && power >= -22 && power <= 22) {
+            final double d = (power < 0 ? mantissa / POWERS_OF_TEN[-power] : mantissa * POWERS_OF_TEN[power]);
+            doubleValue = (negative ? -d : d);
+        } else {
+            doubleValue = Double.parseDouble(s.subSequence(start, end).toString());
+        }
+        if (!point && !hasExponent) {
+            // a whole number too long for 18 digits: keep it if it fits
+            if (doubleValue >= Long.MIN_VALUE && doubleValue <= Long.MAX_VALUE) {
+                try {
+                    longValue = Long.parseLong(s.subSequence(start, end).toString());
+                    return INTEGER;
+                } catch (NumberFormatException e) {
+                    // fall through to a decimal
+                }
+            }
+        }
+        return DECIMAL;
+    }
+
+}
@@ -0,0 +1,87 @@
+package org.hxlstandard;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import au.com.bytecode.opencsv.CSVReader;
+
+/**
+ * Tokenizer that delegates to opencsv.
+ *
+ * <p>This was the original engine for {@link HXLReader}, and remains
+ * available as a fallback for input that depends on opencsv's
+ * parsing rules (such as backslash escapes). It allocates a new
+ * array and a new string for every field of every record, so it is
+ * slower than the default {@link HXLCSVTokenizer}.</p>
+ *
+ * <p>Example:</p>
+ *
+ * <pre>
+ * HXLReader reader = new HXLReader(new HXLOpenCSVTokenizer(input));
+ * </pre>
+ *
+ * @author David Megginson
+ */
+public class HXLOpenCSVTokenizer implements HXLTokenizer {
+
+    private final CSVReader csvReader;
+
+    private String fields[];
+
+    /**
+     * Create a new tokenizer with opencsv's default settings.
+     *
+     * @param input The character stream to tokenize.
+     */
+    public HXLOpenCSVTokenizer(Reader input) {
+        this(new CSVReader(input));
+    }
+
+    /**
+     * Create a new tokenizer from a preconfigured opencsv reader.
+     *
+     * @param csvReader The opencsv reader to delegate to.
+     */
+    public HXLOpenCSVTokenizer(CSVReader csvReader) {
+        this.csvReader = csvReader;
+    }
+
+    @Override
+    public int next() throws IOException {
+        fields = csvReader.readNext();
+        return (fields == null ? -1 : fields.length);
+    }
+
+    @Override
+    public int getFieldCount() {
+        return (fields == null ? 0 : fields.length);
+    }
+
+    @Override
+    public String getField(int index) {
+        return current()[index];
+    }
+
+    @Override
+    public int getFieldLength(int index) {
+        return current()[index].length();
+    }
+
+    @Override
+    public char getFieldChar(int index, int offset) {
+        return current()[index].charAt(offset);
+    }
+
+    @Override
+    public void close() throws IOException {
+        csvReader.close();
+    }
+
+    private String[] current() {
+        if (fields == null) {
+            throw new IndexOutOfBoundsException("No current record");
+        }
+        return fields;
+    }
+
+}
@@ -0,0 +1,498 @@
+package org.hxlstandard;
+
+import java.io.CharArrayReader;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Class to read HXL data from a CSV file on disk, using several threads.
+ *
+ * <p>The reader finds the hashtag row once, at the start of the file,
+ * and then splits the rest of the file into chunks of roughly {@link
+ * #DEFAULT_CHUNK_SIZE} bytes. A first parallel pass scans each chunk's
+ * bytes for quotation marks and line breaks, so that every chunk can
+ * be moved to start on a record boundary (even when a quoted value
+ * contains line breaks) and can know how many records come before
+ * it. A second parallel pass parses the chunks into {@link HXLRow}
+ * objects on a {@link ForkJoinPool}.</p>
+ *
+ * <p>Every row has the same row number and source row number that
+ * {@link HXLReader} would give it. Rows come back either in file
+ * order or, if the caller doesn't need that, in whatever order the
+ * chunks finish (still in order inside each chunk). Only a bounded
+ * number of chunks is in memory at once.</p>
+ *
+ * <p>Example:</p>
+ *
+ * <pre>
+ * HXLParallelReader reader = new HXLParallelReader(new File("3w.csv"));
+ * try {
+ *   HXLRow row = reader.read();
+ *   while (row != null) {
+ *     // do something with each row
+ *     row = reader.read();
+ *   }
+ * } finally {
+ *   reader.close();
+ * }
+ * </pre>
+ *
+ * <p>Limitations: the character encoding must represent quotation
+ * marks, commas, and line breaks as single ASCII bytes (e.g. UTF-8 or
+ * ISO-8859-1), and quotation marks may appear only around whole
+ * fields (as in RFC 4180), because the boundary scan counts them to
+ * decide whether a line break is inside a quoted value.</p>
+ *
+ * @author David Megginson
+ */
+public class HXLParallelReader implements HXLRowSource {
+
+    /**
+     * Default size of a chunk, in bytes.
+     */
+    public final static int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    private final static byte QUOTE = '"';
+
+    private final static byte CR = '\r';
+
+    private final static byte LF = '\n';
+
+    private final File file;
+
+    private final Charset charset;
+
+    private final ForkJoinPool pool;
+
+    private final boolean ownPool;
+
+    private final boolean ordered;
+
+    private final int chunkSize;
+
+    private final FileChannel channel;
+
+    private List<HXLColumn> columns;
+
+    private int headerRowNumber;
+
+    private long dataStart;
+
+    private List<Chunk> chunks;
+
+    private int nextChunk;
+
+    private final ArrayDeque<Future<List<HXLRow>>> pending = new ArrayDeque<Future<List<HXLRow>>>();
+
+    private CompletionService<List<HXLRow>> completionService;
+
+    private List<HXLRow> currentRows;
+
+    private int currentIndex;
+
+    /**
+     * Create a parallel reader for a UTF-8 file, returning rows in order.
+     *
+     * <p>The reader uses its own pool with one thread per
+     * processor.</p>
+     *
+     * @param file The CSV file to read.
+     * @exception IOException if the file can't be opened.
+     */
+    public HXLParallelReader(final File file) throws IOException {
+        this(file, Charset.forName("UTF-8"), null, true, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Create a parallel reader.
+     *
+     * @param file The CSV file to read.
+     * @param charset The character encoding of the file.
+     * @param pool The pool for parsing chunks, or null to create one
+     * that is shut down by {@link #close()}.
+     * @param ordered true to return rows in file order, false to
+     * return each chunk's rows as soon as it is parsed.
+     * @param chunkSize The target size of a chunk, in bytes.
+     * @exception IOException if the file can't be opened.
+     * @exception IllegalArgumentException if the charset doesn't use
+     * single ASCII bytes for CSV punctuation, or the chunk size isn't
+     * positive.
+     */
+    public HXLParallelReader(final File file, final Charset charset, final ForkJoinPool pool, final boolean ordered, final int chunkSize) throws IOException {
+        if (!Arrays.equals("\",\r\n".getBytes(charset), new byte[] { QUOTE, ',', CR, LF })) {
+            throw new IllegalArgumentException("Unsupported charset for parallel reading: " + charset);
+        }
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        }
+        this.file = file;
+        this.charset = charset;
+        this.ownPool = (pool == null);
+        this.pool = (pool == null ? new ForkJoinPool() : pool);
+        this.ordered = ordered;
+        this.chunkSize = chunkSize;
+        this.channel = new RandomAccessFile(file, "r").getChannel();
+    }
+
+    /**
+     * Get the columns from the file's hashtag row.
+     *
+     * @return A list of HXL columns.
+     * @exception IOException if there is an error reading the file or
+     * it has no hashtag row.
+     */
+    public List<HXLColumn> getColumns() throws IOException {
+        if (this.columns == null) {
+            this.findColumns();
+        }
+        return this.columns;
+    }
+
+    /**
+     * Read the next row of HXL data.
+     *
+     * <p>The first call scans the file and starts parsing.</p>
+     *
+     * @return A row of HXL data, or null if the file is finished.
+     * @exception IOException if there is an error reading or parsing
+     * any chunk of the file.
+     */
+    public HXLRow read() throws IOException {
+        if (this.chunks == null) {
+            this.getColumns();
+            this.planChunks();
+            this.submitChunks();
+        }
+        while (this.currentRows == null || this.currentIndex >= this.currentRows.size()) {
+            if (this.pending.isEmpty()) {
+                this.currentRows = null;
+                return null;
+            }
+            this.currentRows = this.takeChunk();
+            this.currentIndex = 0;
+            this.submitChunks();
+        }
+        return this.currentRows.get(this.currentIndex++);
+    }
+
+    /**
+     * Stop parsing and release the file.
+     *
+     * <p>Chunks still being parsed are cancelled, and the pool is shut
+     * down if the reader created it.</p>
+     *
+     * @exception IOException if there is an error closing the file.
+     */
+    @Override
+    public void close() throws IOException {
+        for (final Future<List<HXLRow>> future : this.pending) {
+            future.cancel(true);
+        }
+        this.pending.clear();
+        this.nextChunk = (this.chunks == null ? 0 : this.chunks.size());
+        if (this.ownPool) {
+            this.pool.shutdownNow();
+        }
+        this.channel.close();
+    }
+
+    /**
+     * Get the number of chunks the file was split into.
+     *
+     * @return The number of chunks, or -1 if reading hasn't started.
+     */
+    int getChunkCount() {
+        return (this.chunks == null ? -1 : this.chunks.size());
+    }
+
+    /**
+     * Find the hashtag row with a sequential reader, then the byte
+     * offset where the data starts.
+     */
+    private void findColumns() throws IOException {
+        final FileInputStream input = new FileInputStream(this.file);
+        try {
+            final HXLReader headerReader = new HXLReader(new InputStreamReader(input, this.charset));
+            this.columns = headerReader.getColumns();
+            this.headerRowNumber = headerReader.getHeaderRowNumber();
+        } finally {
+            input.close();
+        }
+        this.dataStart = this.skipRecords(this.headerRowNumber + 1);
+    }
+
+    /**
+     * Get the byte offset just after a number of records.
+     */
+    private long skipRecords(final int count) throws IOException {
+        final long size = this.channel.size();
+        final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        final byte bytes[] = buffer.array();
+        boolean inQuote = false;
+        int seen = 0;
+        long offset = 0;
+        while (offset < size) {
+            buffer.clear();
+            final int n = this.channel.read(buffer, offset);
+            if (n < 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                final byte b = bytes[i];
+                if (b == QUOTE) {
+                    inQuote = !inQuote;
+                } else if (!inQuote && this.isTerminator(b, i + 1 < n ? bytes[i + 1] : this.byteAt(offset + i + 1))) {
+                    if (++seen == count) {
+                        return offset + i + 1;
+                    }
+                }
+            }
+            offset += n;
+        }
+        return size;
+    }
+
+    /**
+     * Scan the data in parallel and work out where each chunk starts.
+     */
+    private void planChunks() throws IOException {
+        final long size = this.channel.size();
+        final List<Callable<RangeScan>> scans = new ArrayList<Callable<RangeScan>>();
+        for (long start = this.dataStart; start < size; start += this.chunkSize) {
+            scans.add(new RangeScan(start, Math.min(start + this.chunkSize, size)));
+        }
+
+        final List<Future<RangeScan>> results = this.pool.invokeAll(scans);
+
+        this.chunks = new ArrayList<Chunk>();
+        long start = this.dataStart;
+        long startRecord = 0;
+        long records = 0;
+        int state = 0;
+        for (int k = 0; k < results.size(); k++) {
+            final RangeScan scan = this.getResult(results.get(k));
+            if (k > 0 && scan.first[state] >= 0) {
+                this.chunks.add(new Chunk(start, scan.first[state], startRecord));
+                start = scan.first[state];
+                startRecord = records + 1;
+            }
+            records += scan.count[state];
+            state ^= scan.parity;
+        }
+        if (start < size) {
+            this.chunks.add(new Chunk(start, size, startRecord));
+        }
+        if (records + 1 + this.headerRowNumber > Integer.MAX_VALUE) {
+            throw new IOException("Too many rows in " + this.file);
+        }
+    }
+
+    /**
+     * Keep up to two chunks per thread in flight.
+     */
+    private void submitChunks() {
+        if (this.completionService == null && !this.ordered) {
+            this.completionService = new ExecutorCompletionService<List<HXLRow>>(this.pool);
+        }
+        final int maxInFlight = 2 * this.pool.getParallelism();
+        while (this.pending.size() < maxInFlight && this.nextChunk < this.chunks.size()) {
+            final ChunkParse task = new ChunkParse(this.chunks.get(this.nextChunk++));
+            if (this.ordered) {
+                this.pending.add(this.pool.submit(task));
+            } else {
+                this.pending.add(this.completionService.submit(task));
+            }
+        }
+    }
+
+    /**
+     * Wait for the next chunk, in order or as it completes.
+     */
+    private List<HXLRow> takeChunk() throws IOException {
+        if (this.ordered) {
+            return this.getResult(this.pending.removeFirst());
+        }
+        try {
+            final Future<List<HXLRow>> future = this.completionService.take();
+            this.pending.remove(future);
+            return this.getResult(future);
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading " + this.file);
+        }
+    }
+
+    private <T> T getResult(final Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading " + this.file);
+        } catch (final ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new IOException(cause);
+            }
+        }
+    }
+
+    /**
+     * Test if a byte ends a record, given the byte after it (or -1).
+     */
+    private boolean isTerminator(final byte b, final int next) {
+        return b == LF || (b == CR && next != LF);
+    }
+
+    private int byteAt(final long position) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(1);
+        return (this.channel.read(buffer, position) == 1 ? buffer.get(0) : -1);
+    }
+
+    private void readFully(final ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            final int n = this.channel.read(buffer, position);
+            if (n < 0) {
+                throw new EOFException("Unexpected end of " + this.file);
+            }
+            position += n;
+        }
+    }
+
+    /**
+     * Byte range of the data that starts and ends on record boundaries.
+     */
+    private static class Chunk {
+
+        final long start;
+
+        final long end;
+
+        final long firstRecord;
+
+        Chunk(final long start, final long end, final long firstRecord) {
+            this.start = start;
+            this.end = end;
+            this.firstRecord = firstRecord;
+        }
+
+    }
+
+    /**
+     * First pass over an arbitrary byte range.
+     *
+     * <p>Since the scan doesn't know whether the range starts inside a
+     * quoted value, it keeps results for both cases: index 0 assumes
+     * it starts outside quotes, and index 1 inside. A line break at
+     * even quote parity (relative to the range start) ends a record in
+     * the first case, and one at odd parity in the second.</p>
+     */
+    private class RangeScan implements Callable<RangeScan> {
+
+        private final long start;
+
+        private final long end;
+
+        final long count[] = new long[2];
+
+        final long first[] = { -1, -1 };
+
+        int parity;
+
+        RangeScan(final long start, final long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public RangeScan call() throws IOException {
+            final int length = (int) (this.end - this.start);
+            final ByteBuffer buffer = ByteBuffer.allocate(length);
+            HXLParallelReader.this.readFully(buffer, this.start);
+            final byte bytes[] = buffer.array();
+            final int after = HXLParallelReader.this.byteAt(this.end);
+            int p = 0;
+            for (int i = 0; i < length; i++) {
+                final byte b = bytes[i];
+                if (b == QUOTE) {
+                    p ^= 1;
+                } else if (HXLParallelReader.this.isTerminator(b, i + 1 < length ? bytes[i + 1] : after)) {
+                    if (this.count[p]++ == 0) {
+                        this.first[p] = this.start + i + 1;
+                    }
+                }
+            }
+            this.parity = p;
+            return this;
+        }
+
+    }
+
+    /**
+     * Second pass: parse a chunk into rows.
+     */
+    private class ChunkParse implements Callable<List<HXLRow>> {
+
+        private final Chunk chunk;
+
+        ChunkParse(final Chunk chunk) {
+            this.chunk = chunk;
+        }
+
+        @Override
+        public List<HXLRow> call() throws IOException {
+            final long length = this.chunk.end - this.chunk.start;
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("Record too long at byte " + this.chunk.start + " in " + HXLParallelReader.this.file);
+            }
+            final ByteBuffer bytes = ByteBuffer.allocate((int) length);
+            HXLParallelReader.this.readFully(bytes, this.chunk.start);
+            bytes.flip();
+            final CharBuffer chars = HXLParallelReader.this.charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                .decode(bytes);
+
+            final HXLReader reader = new HXLReader(
+                new HXLCSVTokenizer(new CharArrayReader(chars.array(), chars.arrayOffset() + chars.position(), chars.remaining())),
+                HXLParallelReader.this.columns,
+                (int) this.chunk.firstRecord,
+                (int) (HXLParallelReader.this.headerRowNumber + 1 + this.chunk.firstRecord)
+            );
+            final List<HXLRow> rows = new ArrayList<HXLRow>();
+            HXLRow row = reader.read();
+            while (row != null) {
+                rows.add(row);
+                row = reader.read();
+            }
+            return rows;
+        }
+
+    }
+
+}
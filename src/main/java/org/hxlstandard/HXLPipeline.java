@@ -0,0 +1,722 @@
+package org.hxlstandard;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * A lazy chain of processing steps over a source of HXL rows.
+ *
+ * <p>Each step (filter, select, rename, limit, distinct, join, validate)
+ * returns a new pipeline that pulls rows from the one before it only
+ * when its own {@link #read()} is called, so a whole file can be
+ * processed in one pass without buffering it:</p>
+ *
+ * <pre>
+ * long count = HXLPipeline.from(new HXLReader(input))
+ *   .filter("#sector", s -&gt; s.equals("WASH"))
+ *   .select("#org", "#adm1")
+ *   .distinct()
+ *   .count();
+ * </pre>
+ *
+ * <p>A pipeline is itself an {@link HXLRowSource}, and can also be
+ * consumed with a for-each loop or as a {@link Stream}. Closing any
+ * step closes the original source.</p>
+ *
+ * <p>Filters and limits pass the source's rows through unchanged.
+ * {@link #select(String...)} and {@link #rename(String, String)}
+ * change the columns, so they build new rows with new {@link
+ * HXLColumn} objects. When the source is an {@link HXLReader}, it is
+ * cheaper to give the reader a tag selection (see {@link
+ * HXLReader#HXLReader(java.io.Reader, String...)}) than to select the
+ * same tags here.</p>
+ *
+ * @author David Megginson
+ */
+public abstract class HXLPipeline implements HXLRowSource, Iterable<HXLRow> {
+
+    /**
+     * Default limit on the number of rows read from the other source
+     * in a join.
+     */
+    public final static int DEFAULT_MAX_JOIN_ROWS = 1000000;
+
+    /**
+     * The previous step, or the original source.
+     */
+    protected final HXLRowSource source;
+
+    /**
+     * Create a new step.
+     *
+     * @param source The previous step, or the original source.
+     */
+    protected HXLPipeline(HXLRowSource source) {
+        if (source == null) {
+            throw new NullPointerException("source");
+        }
+        this.source = source;
+    }
+
+    /**
+     * Start a pipeline.
+     *
+     * @param source The source of rows (e.g. an {@link HXLReader}).
+     * @return A pipeline that passes the source's rows through
+     * unchanged.
+     */
+    public static HXLPipeline from(HXLRowSource source) {
+        if (source instanceof HXLPipeline) {
+            return (HXLPipeline) source;
+        }
+        return new HXLPipeline(source) {
+            @Override
+            public HXLRow read() throws IOException {
+                return this.source.read();
+            }
+        };
+    }
+
+    /**
+     * Keep only the rows that match a test.
+     *
+     * @param predicate The test for each row.
+     * @return The new pipeline.
+     */
+    public HXLPipeline filter(final Predicate<? super HXLRow> predicate) {
+        return new HXLPipeline(this) {
+            @Override
+            public HXLRow read() throws IOException {
+                HXLRow row = this.source.read();
+                while (row != null && !predicate.test(row)) {
+                    row = this.source.read();
+                }
+                return row;
+            }
+        };
+    }
+
+    /**
+     * Keep only the rows where the value for a tag matches a test.
+     *
+     * <p>The test sees the first value with the tag (see {@link
+     * HXLRow#get(String)}), or "" if the row has none.</p>
+     *
+     * @param tag The HXL hashtag, including the "#".
+     * @param predicate The test for the value's content.
+     * @return The new pipeline.
+     */
+    public HXLPipeline filter(final String tag, final Predicate<? super String> predicate) {
+        return filter(new Predicate<HXLRow>() {
+            @Override
+            public boolean test(HXLRow row) {
+                final HXLValue value = row.get(tag);
+                return predicate.test(value == null ? "" : value.getContent());
+            }
+        });
+    }
+
+    /**
+     * Keep only the columns with some tags.
+     *
+     * <p>The columns stay in their original order, and keep their
+     * source column numbers. Each tag is a pattern (see {@link
+     * HXLTagPattern}), so "#affected" keeps "#affected+f" too.</p>
+     *
+     * @param tags The HXL hashtags to keep.
+     * @return The new pipeline.
+     * @exception IllegalArgumentException if a tag isn't a valid
+     * pattern.
+     */
+    public HXLPipeline select(String... tags) {
+        final HXLTagPattern selection[] = compile(tags);
+        return new Remap(this) {
+            @Override
+            HXLColumn map(HXLColumn column, int columnNumber) {
+                if (!matches(selection, column)) {
+                    return null;
+                }
+                return new HXLColumn(column.getTag(), column.getLang(), columnNumber, column.getSourceColumnNumber());
+            }
+        };
+    }
+
+    /**
+     * Change the hashtag of every column with a tag.
+     *
+     * <p>The tag is a pattern (see {@link HXLTagPattern}), so renaming
+     * "#affected" to "#inneed" also changes "#affected+f". A renamed
+     * column keeps any attributes that the pattern doesn't name, so
+     * that column becomes "#inneed+f".</p>
+     *
+     * @param tag The HXL hashtag to change.
+     * @param newTag The replacement hashtag.
+     * @return The new pipeline.
+     * @exception IllegalArgumentException if the tag isn't a valid
+     * pattern.
+     */
+    public HXLPipeline rename(final String tag, final String newTag) {
+        if (newTag == null) {
+            throw new NullPointerException("newTag");
+        }
+        final HXLTagPattern pattern = HXLTagPattern.compile(tag);
+        final HXLTagSpec newSpec = HXLTagSpec.forColumn(newTag);
+        return new Remap(this) {
+            @Override
+            HXLColumn map(HXLColumn column, int columnNumber) {
+                if (!pattern.matches(column)) {
+                    return new HXLColumn(column.getTag(), column.getLang(), columnNumber, column.getSourceColumnNumber());
+                }
+                final StringBuilder t = new StringBuilder(newSpec.getTag());
+                for (final String attribute : column.getAttributes()) {
+                    if (!pattern.getIncludedAttributes().contains(attribute) && !newSpec.hasAttribute(attribute)) {
+                        t.append('+').append(attribute);
+                    }
+                }
+                return new HXLColumn(t.toString(), column.getLang(), columnNumber, column.getSourceColumnNumber());
+            }
+        };
+    }
+
+    /**
+     * Stop after a number of rows.
+     *
+     * <p>Once the limit is reached, no more rows are read from the
+     * source.</p>
+     *
+     * @param maxRows The largest number of rows to return.
+     * @return The new pipeline.
+     */
+    public HXLPipeline limit(final long maxRows) {
+        if (maxRows < 0) {
+            throw new IllegalArgumentException("Limit must not be negative: " + maxRows);
+        }
+        return new HXLPipeline(this) {
+            private long count;
+
+            @Override
+            public HXLRow read() throws IOException {
+                if (count >= maxRows) {
+                    return null;
+                }
+                final HXLRow row = this.source.read();
+                if (row != null) {
+                    count++;
+                }
+                return row;
+            }
+        };
+    }
+
+    /**
+     * Drop rows that repeat earlier ones.
+     *
+     * <p>Two rows are duplicates if they have the same content in the
+     * columns with the given tags (or in every column, if no tags are
+     * given). Unlike the other steps, this one uses memory in
+     * proportion to the data: it remembers each distinct key it has
+     * seen.</p>
+     *
+     * @param tags The HXL hashtags of the columns to compare, as
+     * patterns (see {@link HXLTagPattern}).
+     * @return The new pipeline.
+     * @exception IllegalArgumentException if a tag isn't a valid
+     * pattern.
+     */
+    public HXLPipeline distinct(String... tags) {
+        final HXLTagPattern selection[] = (tags.length == 0 ? null : compile(tags));
+        return new HXLPipeline(this) {
+            private final Set<List<String>> seen = new HashSet<List<String>>();
+
+            private HXLColumn keyColumns[];
+
+            @Override
+            public HXLRow read() throws IOException {
+                if (keyColumns == null) {
+                    final List<HXLColumn> columns = new ArrayList<HXLColumn>();
+                    for (final HXLColumn column : getColumns()) {
+                        if (selection == null || matches(selection, column)) {
+                            columns.add(column);
+                        }
+                    }
+                    keyColumns = columns.toArray(new HXLColumn[columns.size()]);
+                }
+                HXLRow row = this.source.read();
+                while (row != null) {
+                    final String key[] = new String[keyColumns.length];
+                    for (int i = 0; i < key.length; i++) {
+                        final HXLValue value = row.get(keyColumns[i]);
+                        key[i] = (value == null ? "" : value.getContent());
+                    }
+                    if (seen.add(Arrays.asList(key))) {
+                        return row;
+                    }
+                    row = this.source.read();
+                }
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Sort the rows by the values of some hashtags.
+     *
+     * <p>Like {@link #distinct(String...)}, this step has to see every
+     * row before it can return the first. It uses an {@link HXLSorter}
+     * with the default memory budget, spilling to temporary files for
+     * larger datasets; use the sorter directly to change the budget or
+     * sort in parallel.</p>
+     *
+     * @param tags The HXL hashtags to sort by, most significant first.
+     * @return The new pipeline.
+     * @exception IllegalArgumentException if no tags are given.
+     */
+    public HXLPipeline sort(String... tags) {
+        return from(new HXLSorter(this, tags));
+    }
+
+    /**
+     * Check the rows against a validator's rules as they pass.
+     *
+     * <p>The rows themselves are unchanged. The step ends early if the
+     * validator's error limit is reached; get the errors from the
+     * returned step once the rows have been read.</p>
+     *
+     * @param validator The rules to check.
+     * @return The new pipeline.
+     */
+    public HXLValidator.Check validate(HXLValidator validator) {
+        return validator.check(this);
+    }
+
+    /**
+     * Add the columns of another source to the rows with matching keys.
+     *
+     * <p>This is an inner join: a row with no match in the other source
+     * is dropped. See {@link #join(HXLRowSource, boolean, int,
+     * String...)}.</p>
+     *
+     * @param other The source to look up matches in, preferably the
+     * smaller of the two (e.g. a reference table of admin codes).
+     * @param tags The HXL hashtags of the key columns.
+     * @return The new pipeline.
+     */
+    public HXLPipeline join(HXLRowSource other, String... tags) {
+        return join(other, false, DEFAULT_MAX_JOIN_ROWS, tags);
+    }
+
+    /**
+     * Add the columns of another source to the rows with matching
+     * keys, keeping rows with no match.
+     *
+     * <p>This is a left outer join: a row with no match in the other
+     * source is kept, with no values in the added columns. See {@link
+     * #join(HXLRowSource, boolean, int, String...)}.</p>
+     *
+     * @param other The source to look up matches in, preferably the
+     * smaller of the two.
+     * @param tags The HXL hashtags of the key columns.
+     * @return The new pipeline.
+     */
+    public HXLPipeline leftJoin(HXLRowSource other, String... tags) {
+        return join(other, true, DEFAULT_MAX_JOIN_ROWS, tags);
+    }
+
+    /**
+     * Add the columns of another source to the rows with matching keys.
+     *
+     * <p>The first time a row is read, this step reads all of the rows
+     * of the other source into a hash table, keyed by the content of
+     * the first column with each tag. The rows from this pipeline then
+     * stream through one at a time: each one is looked up in the table
+     * and comes out once for each match, in the other source's order,
+     * with the other source's non-key columns added after its own.
+     * Keys must match exactly, and a key with an empty part never
+     * matches.</p>
+     *
+     * <p>Only the content of the other source's non-key columns is kept
+     * in the table, with repeated strings shared, and the number of
+     * rows is limited, so a source that is bigger than expected causes
+     * an error rather than running out of memory.</p>
+     *
+     * <p>The output columns are this pipeline's columns, followed by
+     * new columns numbered after them for the other source's non-key
+     * columns (with no source column number, since they don't come from
+     * this source). Output rows keep the row numbers of the rows from
+     * this pipeline. Closing the step closes both sources.</p>
+     *
+     * @param other The source to look up matches in.
+     * @param outer true to keep rows without a match (a left outer
+     * join), false to drop them (an inner join).
+     * @param maxRows The largest number of rows to read from the other
+     * source.
+     * @param tags The HXL hashtags of the key columns.
+     * @return The new pipeline.
+     * @exception IllegalArgumentException if no tags are given.
+     */
+    public HXLPipeline join(HXLRowSource other, boolean outer, int maxRows, String... tags) {
+        if (other == null) {
+            throw new NullPointerException("other");
+        }
+        if (tags.length == 0) {
+            throw new IllegalArgumentException("A join needs at least one key tag");
+        }
+        if (maxRows < 0) {
+            throw new IllegalArgumentException("Limit must not be negative: " + maxRows);
+        }
+        return new Join(this, other, outer, maxRows, tags.clone());
+    }
+
+    /**
+     * Count the remaining rows.
+     *
+     * @return The number of rows read before the end of the pipeline.
+     * @exception IOException if there is an error reading the data.
+     */
+    public long count() throws IOException {
+        long count = 0;
+        while (read() != null) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Get the columns of the rows from this step.
+     *
+     * @return A list of columns, in logical order.
+     * @exception IOException if there is an error reading the hashtag
+     * row.
+     */
+    @Override
+    public List<HXLColumn> getColumns() throws IOException {
+        return source.getColumns();
+    }
+
+    /**
+     * Get an iterator over the remaining rows.
+     *
+     * <p>Errors are wrapped in {@link java.io.UncheckedIOException}.</p>
+     *
+     * @return An iterator object.
+     */
+    @Override
+    public Iterator<HXLRow> iterator() {
+        return new HXLRowIterator(this);
+    }
+
+    /**
+     * Get a stream of the remaining rows.
+     *
+     * <p>Closing the stream closes the original source. Errors are
+     * wrapped in {@link java.io.UncheckedIOException}.</p>
+     *
+     * @return A sequential stream of rows.
+     */
+    public Stream<HXLRow> stream() {
+        return HXLRowSpliterator.stream(this, !isReusingRows());
+    }
+
+    /**
+     * Close the original source.
+     *
+     * @exception IOException if there is an error closing the source.
+     */
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+
+    /**
+     * Test whether the original source recycles its row objects.
+     */
+    private boolean isReusingRows() {
+        HXLRowSource s = this;
+        while (s instanceof HXLPipeline) {
+            s = ((HXLPipeline) s).source;
+        }
+        return (s instanceof HXLReader && ((HXLReader) s).isReuseObjects());
+    }
+
+    private static HXLTagPattern[] compile(String tags[]) {
+        final HXLTagPattern patterns[] = new HXLTagPattern[tags.length];
+        for (int i = 0; i < tags.length; i++) {
+            patterns[i] = HXLTagPattern.compile(tags[i]);
+        }
+        return patterns;
+    }
+
+    private static boolean matches(HXLTagPattern patterns[], HXLColumn column) {
+        for (final HXLTagPattern pattern : patterns) {
+            if (pattern.matches(column)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A step that builds new rows with different columns.
+     */
+    private abstract static class Remap extends HXLPipeline {
+
+        private List<HXLColumn> columns;
+
+        private HXLColumn sourceColumns[];
+
+        private HXLColumnIndex index;
+
+        Remap(HXLRowSource source) {
+            super(source);
+        }
+
+        /**
+         * Make the output column for a source column.
+         *
+         * @param column The source column.
+         * @param columnNumber The logical column number for the output
+         * column.
+         * @return The output column, or null to drop the column.
+         */
+        abstract HXLColumn map(HXLColumn column, int columnNumber);
+
+        @Override
+        public List<HXLColumn> getColumns() throws IOException {
+            if (columns == null) {
+                final List<HXLColumn> mapped = new ArrayList<HXLColumn>();
+                final List<HXLColumn> from = new ArrayList<HXLColumn>();
+                for (final HXLColumn column : source.getColumns()) {
+                    final HXLColumn result = map(column, mapped.size());
+                    if (result != null) {
+                        mapped.add(result);
+                        from.add(column);
+                    }
+                }
+                index = new HXLColumnIndex(mapped);
+                sourceColumns = from.toArray(new HXLColumn[from.size()]);
+                columns = Collections.unmodifiableList(mapped);
+            }
+            return columns;
+        }
+
+        @Override
+        public HXLRow read() throws IOException {
+            getColumns();
+            final HXLRow row = source.read();
+            if (row == null) {
+                return null;
+            }
+            final HXLRow result = new HXLRow(row.getRowNumber(), row.getSourceRowNumber(), index);
+            final List<HXLValue> values = result.getValuesModifiable();
+            for (int i = 0; i < sourceColumns.length; i++) {
+                final HXLValue value = row.get(sourceColumns[i]);
+                if (value != null) {
+                    values.add(new HXLValue(columns.get(i), value.getContent(), value.getRowNumber(), value.getSourceRowNumber()));
+                }
+            }
+            return result;
+        }
+
+    }
+
+    /**
+     * A hash join with another source.
+     */
+    private final static class Join extends HXLPipeline {
+
+        private final HXLRowSource other;
+
+        private final boolean outer;
+
+        private final int maxRows;
+
+        private final String tags[];
+
+        private List<HXLColumn> columns;
+
+        private HXLColumnIndex index;
+
+        private HXLColumn keyColumns[];
+
+        private HXLColumn otherColumns[];
+
+        private HashMap<Object,List<String[]>> table;
+
+        private HXLRow current;
+
+        private List<String[]> matches;
+
+        private int nextMatch;
+
+        Join(HXLRowSource source, HXLRowSource other, boolean outer, int maxRows, String tags[]) {
+            super(source);
+            this.other = other;
+            this.outer = outer;
+            this.maxRows = maxRows;
+            this.tags = tags;
+        }
+
+        @Override
+        public List<HXLColumn> getColumns() throws IOException {
+            if (columns == null) {
+                final List<HXLColumn> own = source.getColumns();
+                final HXLColumnIndex ownIndex = new HXLColumnIndex(own);
+                final HXLColumnIndex otherIndex = new HXLColumnIndex(other.getColumns());
+                keyColumns = new HXLColumn[tags.length];
+                final Set<Integer> otherKeys = new HashSet<Integer>();
+                for (int i = 0; i < tags.length; i++) {
+                    final int n = ownIndex.getColumnNumber(tags[i]);
+                    final int m = otherIndex.getColumnNumber(tags[i]);
+                    if (n == -1 || m == -1) {
+                        throw new IllegalArgumentException("Join tag " + tags[i] + " is missing from " + (n == -1 ? "the source" : "the other source"));
+                    }
+                    keyColumns[i] = own.get(n);
+                    otherKeys.add(m);
+                }
+                final List<HXLColumn> joined = new ArrayList<HXLColumn>(own);
+                final List<HXLColumn> from = new ArrayList<HXLColumn>();
+                for (final HXLColumn column : otherIndex.getColumns()) {
+                    if (!otherKeys.contains(column.getColumnNumber())) {
+                        joined.add(new HXLColumn(column.getTag(), column.getLang(), joined.size(), -1));
+                        from.add(column);
+                    }
+                }
+                otherColumns = from.toArray(new HXLColumn[from.size()]);
+                index = new HXLColumnIndex(joined);
+                columns = index.getColumns();
+            }
+            return columns;
+        }
+
+        @Override
+        public HXLRow read() throws IOException {
+            if (table == null) {
+                build();
+            }
+            for (;;) {
+                if (matches != null && nextMatch < matches.size()) {
+                    return merge(current, matches.get(nextMatch++));
+                }
+                current = source.read();
+                if (current == null) {
+                    matches = null;
+                    return null;
+                }
+                final Object key = makeKey(current, keyColumns);
+                matches = (key == null ? null : table.get(key));
+                nextMatch = 0;
+                if (matches == null && outer) {
+                    return merge(current, null);
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                other.close();
+            } finally {
+                source.close();
+            }
+        }
+
+        /**
+         * Read the other source into the hash table.
+         */
+        private void build() throws IOException {
+            getColumns();
+            final HXLColumn otherKeyColumns[] = new HXLColumn[tags.length];
+            final List<HXLColumn> all = other.getColumns();
+            final HXLColumnIndex otherIndex = new HXLColumnIndex(all);
+            for (int i = 0; i < tags.length; i++) {
+                otherKeyColumns[i] = all.get(otherIndex.getColumnNumber(tags[i]));
+            }
+            final HashMap<String,String> strings = new HashMap<String,String>();
+            final HashMap<Object,List<String[]>> built = new HashMap<Object,List<String[]>>();
+            int count = 0;
+            HXLRow row = other.read();
+            while (row != null) {
+                if (++count > maxRows) {
+                    throw new IOException("Join source has more than " + maxRows + " rows");
+                }
+                final Object key = makeKey(row, otherKeyColumns);
+                if (key != null) {
+                    final String contents[] = new String[otherColumns.length];
+                    for (int i = 0; i < contents.length; i++) {
+                        final HXLValue value = row.get(otherColumns[i]);
+                        if (value != null) {
+                            final String content = value.getContent();
+                            final String shared = strings.putIfAbsent(content, content);
+                            contents[i] = (shared == null ? content : shared);
+                        }
+                    }
+                    List<String[]> list = built.get(key);
+                    if (list == null) {
+                        list = new ArrayList<String[]>(1);
+                        built.put(key, list);
+                    }
+                    list.add(contents);
+                }
+                row = other.read();
+            }
+            table = built;
+        }
+
+        /**
+         * Make a hash key from a row: the content itself for a single
+         * tag, or a list of contents.
+         *
+         * @return The key, or null if a part of it is empty.
+         */
+        private static Object makeKey(HXLRow row, HXLColumn keyColumns[]) {
+            if (keyColumns.length == 1) {
+                return content(row, keyColumns[0]);
+            }
+            final String parts[] = new String[keyColumns.length];
+            for (int i = 0; i < parts.length; i++) {
+                parts[i] = content(row, keyColumns[i]);
+                if (parts[i] == null) {
+                    return null;
+                }
+            }
+            return Arrays.asList(parts);
+        }
+
+        private static String content(HXLRow row, HXLColumn column) {
+            final HXLValue value = row.get(column);
+            final String content = (value == null ? null : value.getContent());
+            return (content == null || content.length() == 0 ? null : content);
+        }
+
+        /**
+         * Make an output row, sharing the values from this source.
+         */
+        private HXLRow merge(HXLRow row, String match[]) {
+            final int rowNumber = row.getRowNumber();
+            final int sourceRowNumber = row.getSourceRowNumber();
+            final HXLRow result = new HXLRow(rowNumber, sourceRowNumber, index);
+            final List<HXLValue> values = result.getValuesModifiable();
+            values.addAll(row.getValues());
+            if (match != null) {
+                final int base = columns.size() - match.length;
+                for (int i = 0; i < match.length; i++) {
+                    if (match[i] != null) {
+                        values.add(new HXLValue(columns.get(base + i), match[i], rowNumber, sourceRowNumber));
+                    }
+                }
+            }
+            return result;
+        }
+
+    }
+
+}
@@ -1,42 +1,350 @@
 package org.hxlstandard;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.Reader;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
-
-import au.com.bytecode.opencsv.CSVReader;
+import java.util.stream.Stream;
 
 /**
  * Class to read HXL data from a CSV file.
  *
+ * <p>By default, the reader parses its input with the buffer-based
+ * {@link HXLCSVTokenizer}. To use a different engine (such as the
+ * original opencsv-based {@link HXLOpenCSVTokenizer}), construct the
+ * reader from an {@link HXLTokenizer} instead of a {@link
+ * Reader}.</p>
+ *
+ * <p>For streaming through large datasets, the reader can also
+ * recycle a single {@link HXLRow} and its {@link HXLValue} objects
+ * from one call to the next; see {@link #setReuseObjects(boolean)}.</p>
+ *
+ * <p>If only a few columns are needed, give the reader a tag
+ * selection when constructing it:</p>
+ *
+ * <pre>
+ * HXLReader reader = new HXLReader(input, "#adm1", "#sector", "#affected");
+ * </pre>
+ *
+ * <p>The other columns are dropped from {@link #getColumns()}, and
+ * their fields are passed over in the tokenizer's buffer without ever
+ * becoming strings or {@link HXLValue} objects.</p>
+ *
+ * <p>Given bytes (an {@link InputStream}, {@link File}, or {@link
+ * Path}) rather than characters, the reader detects the encoding and
+ * strips any byte order mark itself. To read a .csv.gz or .zip file
+ * without unpacking it first, use {@link #open(File, String...)}.</p>
+ *
  * @author David Megginson
  */
-public class HXLReader implements Iterable {
+public class HXLReader implements HXLRowSource, Iterable<HXLRow> {
+
+	private final HXLTokenizer tokenizer;
 
-	private final Reader input;
+	private final HXLMappedTokenizer mappedTokenizer;
 
-	private final CSVReader csvReader;
+	private final HXLCSVTokenizer csvTokenizer;
 
 	private ArrayList<HXLColumn> columns;
 
-	private HashMap<Integer,HXLColumn> columnMap;
+	private HXLColumn fieldColumns[];
+
+	private HXLColumnIndex columnIndex;
+
+	private HXLTagPattern tagSelection[];
 
-	private HXLIterator hxlIterator;
+	private HXLRowIterator hxlIterator;
 
 	private int rowNumber = -1;
 
 	private int sourceRowNumber = -1;
 
+	private int headerRowNumber = -1;
+
+	private boolean reuseObjects = false;
+
+	private int dictionaryLimit = 0;
+
+	private HXLValueDictionary dictionaries[];
+
+	private RowSlot sharedSlot;
+
+	private HXLRowBlock block;
+
+	private int maxHeaderRows = Integer.MAX_VALUE;
+
+	private long maxHeaderBytes = Long.MAX_VALUE;
+
+	private HXLHeaderNotFoundException headerFailure;
+
+	private int rejectedRowNumber = -1;
+
+	private int rejectedColumnNumber = -1;
+
+	private String rejectedText;
+
+	private HXLReaderMetrics metrics;
+
+	private HXLReaderMetrics.Batch metricsBatch;
+
+	private boolean metricsStarted;
+
+	private boolean metricsFinished;
+
+	private long inputOffset;
+
+	private long startAllocatedBytes;
+
+	private int progressCount;
+
 	/**
 	 * Create a new HXL CSV data reader.
+	 *
+	 * @param input The character stream containing the CSV data.
 	 */
 	public HXLReader(final Reader input) {
-		// TODO can add extra params for custom separators, etc.
-		this.input = input;
-		this.csvReader = new CSVReader(input);
+		this(new HXLCSVTokenizer(input));
+	}
+
+	/**
+	 * Create a new HXL CSV data reader for a byte stream.
+	 *
+	 * <p>The encoding is detected from a byte order mark, which is
+	 * removed, and is otherwise UTF-8 (see {@link HXLInputDecoder}).
+	 * This is faster than wrapping the stream in an {@link
+	 * InputStreamReader}, and works with Excel's UTF-8 exports.</p>
+	 *
+	 * @param input The byte stream containing the CSV data.
+	 * @exception IOException if there is an error reading the first
+	 * bytes.
+	 */
+	public HXLReader(final InputStream input) throws IOException {
+		this(new HXLCSVTokenizer(new HXLInputDecoder(input)));
+	}
+
+	/**
+	 * Create a new HXL data reader for a CSV file on disk.
+	 *
+	 * <p>A UTF-8 file (with or without a byte order mark) is
+	 * memory-mapped (see {@link HXLMappedTokenizer}), and each value's
+	 * content is decoded only when {@link HXLValue#getContent()} is
+	 * first called. A UTF-16 file is decoded as for {@link
+	 * #HXLReader(InputStream)}. Use {@link #close()} to release the
+	 * file.</p>
+	 *
+	 * @param file The CSV file to read.
+	 * @exception IOException if the file can't be opened.
+	 */
+	public HXLReader(final File file) throws IOException {
+		this(openTokenizer(file));
+	}
+
+	/**
+	 * Create a new HXL data reader for a CSV file on disk.
+	 *
+	 * @param path The CSV file to read.
+	 * @exception IOException if the file can't be opened.
+	 * @see #HXLReader(File)
+	 */
+	public HXLReader(final Path path) throws IOException {
+		this(openTokenizer(path.toFile()));
+	}
+
+	/**
+	 * Create a new HXL data reader using a specific tokenizer.
+	 *
+	 * @param tokenizer The source of raw records (e.g. a {@link
+	 * HXLCSVTokenizer} with a custom separator, or a {@link
+	 * HXLOpenCSVTokenizer}).
+	 */
+	public HXLReader(final HXLTokenizer tokenizer) {
+		if (tokenizer == null) {
+			throw new NullPointerException("tokenizer");
+		}
+		this.tokenizer = tokenizer;
+		this.mappedTokenizer = (tokenizer instanceof HXLMappedTokenizer ? (HXLMappedTokenizer) tokenizer : null);
+		this.csvTokenizer = (tokenizer instanceof HXLCSVTokenizer ? (HXLCSVTokenizer) tokenizer : null);
+	}
+
+	/**
+	 * Create a new HXL CSV data reader that reads only some columns.
+	 *
+	 * @param input The character stream containing the CSV data.
+	 * @param tags The hashtags of the columns to read (e.g.
+	 * "#adm1", "#sector"). Columns with other hashtags are skipped.
+	 */
+	public HXLReader(final Reader input, final String... tags) {
+		this(new HXLCSVTokenizer(input), tags);
+	}
+
+	/**
+	 * Create a new HXL CSV data reader for some of the columns of a
+	 * byte stream.
+	 *
+	 * @param input The byte stream containing the CSV data.
+	 * @param tags The hashtags of the columns to read.
+	 * @exception IOException if there is an error reading the first
+	 * bytes.
+	 * @see #HXLReader(InputStream)
+	 */
+	public HXLReader(final InputStream input, final String... tags) throws IOException {
+		this(new HXLCSVTokenizer(new HXLInputDecoder(input)), tags);
+	}
+
+	/**
+	 * Create a new HXL data reader for some of the columns of a CSV
+	 * file on disk.
+	 *
+	 * @param file The CSV file to read.
+	 * @param tags The hashtags of the columns to read. Columns with
+	 * other hashtags are never decoded.
+	 * @exception IOException if the file can't be opened.
+	 */
+	public HXLReader(final File file, final String... tags) throws IOException {
+		this(openTokenizer(file), tags);
+	}
+
+	/**
+	 * Create a new HXL data reader for some of the columns of a CSV
+	 * file on disk.
+	 *
+	 * @param path The CSV file to read.
+	 * @param tags The hashtags of the columns to read.
+	 * @exception IOException if the file can't be opened.
+	 */
+	public HXLReader(final Path path, final String... tags) throws IOException {
+		this(openTokenizer(path.toFile()), tags);
+	}
+
+	/**
+	 * Create a new HXL data reader that reads only some columns, using
+	 * a specific tokenizer.
+	 *
+	 * <p>{@link #getColumns()} returns only the columns that match
+	 * one of the tags, in their original order. Each tag is a pattern
+	 * (see {@link HXLTagPattern}), so "#affected" selects
+	 * "#affected+f" too, and "#affected-adults" leaves out
+	 * "#affected+adults". Their logical column numbers are renumbered
+	 * from 0, but their source column numbers still give their
+	 * position in the CSV file. Tags that don't match any column are
+	 * ignored.</p>
+	 *
+	 * @param tokenizer The source of raw records.
+	 * @param tags The hashtags of the columns to read.
+	 * @exception IllegalArgumentException if a tag isn't a valid
+	 * pattern.
+	 */
+	public HXLReader(final HXLTokenizer tokenizer, final String... tags) {
+		this(tokenizer);
+		if (tags == null) {
+			throw new NullPointerException("tags");
+		}
+		this.tagSelection = new HXLTagPattern[tags.length];
+		for (int i = 0; i < tags.length; i++) {
+			this.tagSelection[i] = HXLTagPattern.compile(tags[i]);
+		}
+	}
+
+	/**
+	 * Open a CSV file that may be compressed.
+	 *
+	 * <p>A gzip, zlib, or ZIP file is recognised by its first bytes,
+	 * whatever its name, and decompressed on a background thread as it
+	 * is read (see {@link HXLCompressedInputStream}), with no temporary
+	 * file. An uncompressed file is memory-mapped as for {@link
+	 * #HXLReader(File)}.</p>
+	 *
+	 * @param file The CSV file to read.
+	 * @param tags The hashtags of the columns to read, or none for all
+	 * columns.
+	 * @return A new reader.
+	 * @exception IOException if the file can't be opened, or there is
+	 * an error reading its first bytes.
+	 */
+	public static HXLReader open(final File file, final String... tags) throws IOException {
+		final HXLCompressedInputStream input = new HXLCompressedInputStream(new FileInputStream(file));
+		if (input.getFormat() == HXLCompressedInputStream.Format.NONE) {
+			input.close();
+			return (tags.length == 0 ? new HXLReader(file) : new HXLReader(file, tags));
+		}
+		return open(input, tags);
+	}
+
+	/**
+	 * Open a CSV byte stream that may be compressed.
+	 *
+	 * <p>A gzip, zlib, or ZIP stream is recognised by its first bytes
+	 * and decompressed on a background thread as it is read, and the
+	 * text encoding is detected as for {@link
+	 * #HXLReader(InputStream)}. To see
+	 * the compressed and uncompressed byte counts, create the {@link
+	 * HXLCompressedInputStream} yourself and pass it here.</p>
+	 *
+	 * @param input The byte stream to read.
+	 * @param tags The hashtags of the columns to read, or none for all
+	 * columns.
+	 * @return A new reader.
+	 * @exception IOException if there is an error reading the first
+	 * bytes.
+	 */
+	public static HXLReader open(final InputStream input, final String... tags) throws IOException {
+		final InputStream bytes = (input instanceof HXLCompressedInputStream ? input : new HXLCompressedInputStream(input));
+		return (tags.length == 0 ? new HXLReader(bytes) : new HXLReader(bytes, tags));
+	}
+
+	/**
+	 * Choose a tokenizer for a file: memory-mapped for UTF-8, or
+	 * decoding for UTF-16.
+	 */
+	private static HXLTokenizer openTokenizer(final File file) throws IOException {
+		final byte start[] = new byte[4];
+		int length = 0;
+		try (InputStream sniff = new FileInputStream(file)) {
+			int n = 0;
+			while (length < start.length && n >= 0) {
+				n = sniff.read(start, length, start.length - length);
+				length += Math.max(n, 0);
+			}
+		}
+		if (HXLInputDecoder.detectCharset(start, length).name().equals("UTF-8")) {
+			return new HXLMappedTokenizer(file);
+		}
+		// a fresh stream, so the decoder reads with its full buffer
+		final InputStream input = new FileInputStream(file);
+		try {
+			return new HXLCSVTokenizer(new HXLInputDecoder(input));
+		} catch (IOException | RuntimeException e) {
+			input.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Create a reader for a fragment of HXL data with known columns.
+	 *
+	 * <p>The tokenizer must be positioned after the hashtag row. This
+	 * lets {@link HXLParallelReader} parse chunks of a file
+	 * independently while keeping the row numbers of the whole
+	 * file.</p>
+	 *
+	 * @param tokenizer The source of raw data records.
+	 * @param columns The columns from the file's hashtag row.
+	 * @param rowNumber The logical row number of the first record.
+	 * @param sourceRowNumber The source row number of the first record.
+	 */
+	HXLReader(final HXLTokenizer tokenizer, final List<HXLColumn> columns, final int rowNumber, final int sourceRowNumber) {
+		this(tokenizer);
+		this.columns = new ArrayList<HXLColumn>(columns);
+		this.mapFields();
+		this.columnIndex = new HXLColumnIndex(this.columns);
+		this.rowNumber = rowNumber - 1;
+		this.sourceRowNumber = sourceRowNumber - 1;
 	}
 
 	/**
@@ -51,22 +359,240 @@ public class HXLReader implements Iterable {
 			this.findColumns();
 		}
 
-		final String fields[] = this.readRawRow();
-		if (fields == null) {
+		final long start = (this.metrics == null ? 0 : this.startMetrics());
+		final int fieldCount = this.readRawRow();
+		if (fieldCount == -1) {
 			this.rowNumber = -1;
+			if (this.metrics != null) {
+				this.finishMetrics(start);
+			}
 			return null;
 		}
 
-		final HXLRow row = new HXLRow(++this.rowNumber, this.sourceRowNumber);
-		for (int i = 0; i < fields.length; i++) {
-			final HXLColumn column = this.columnMap.get(i);
-			if (column != null) {
-				final HXLValue value = new HXLValue(column, fields[i], this.rowNumber, this.sourceRowNumber);
-				row.getValuesModifiable().add(value);
+		RowSlot slot = null;
+		if (this.reuseObjects) {
+			if (this.sharedSlot == null) {
+				this.sharedSlot = new RowSlot(this.columnIndex);
 			}
+			slot = this.sharedSlot;
 		}
+		return (this.metrics == null ? this.fillRow(slot, fieldCount) : this.fillMeasured(slot, fieldCount, start));
+	}
 
-		return row;
+	/**
+	 * Read a block of rows of HXL data.
+	 *
+	 * <p>This fills the rows in one tight loop, which saves the
+	 * per-call overhead of {@link #read()} and lets a client process
+	 * rows in groups. The block, its rows, and their values are all
+	 * recycled: like rows in object reuse mode (see {@link
+	 * #setReuseObjects(boolean)}), they are valid <em>only until the
+	 * next call to this method</em>, and a client that needs to keep
+	 * data must copy it first. Calls to {@link #read()} don't affect
+	 * the block.</p>
+	 *
+	 * @param maxRows The largest number of rows to read.
+	 * @return A block of between 1 and maxRows rows, or null if the CSV
+	 * file is finished.
+	 * @exception IOException if there is an error reading or parsing
+	 * the HXL data from the CSV source.
+	 */
+	public HXLRowBlock readBatch(final int maxRows) throws IOException {
+		if (maxRows < 1) {
+			throw new IllegalArgumentException("Batch size must be positive: " + maxRows);
+		}
+		if (this.columns == null) {
+			this.findColumns();
+		}
+		if (this.block == null) {
+			this.block = new HXLRowBlock();
+		}
+
+		final HXLRowBlock block = this.block;
+		int n = 0;
+		while (n < maxRows) {
+			final long start = (this.metrics == null ? 0 : this.startMetrics());
+			final int fieldCount = this.readRawRow();
+			if (fieldCount == -1) {
+				this.rowNumber = -1;
+				if (this.metrics != null) {
+					this.finishMetrics(start);
+				}
+				break;
+			}
+			if (this.metrics == null) {
+				this.fillRow(block.getSlot(n, this.columnIndex), fieldCount);
+			} else {
+				this.fillMeasured(block.getSlot(n, this.columnIndex), fieldCount, start);
+			}
+			n++;
+		}
+		block.setSize(n);
+		return (n == 0 ? null : block);
+	}
+
+	/**
+	 * Enable or disable object reuse.
+	 *
+	 * <p>When object reuse is enabled, {@link #read()} returns the
+	 * same {@link HXLRow} object every time, reinitialised with the
+	 * new row's data, and fills it from a pool of recycled {@link
+	 * HXLValue} objects. This removes the per-row allocation of the
+	 * row, its value list, and its values, which matters when
+	 * streaming through very large datasets.</p>
+	 *
+	 * <p>The contract is that a row and all of the values obtained
+	 * from it are valid <em>only until the next call to {@link
+	 * #read()}</em> (or the next step of the iterator). After that,
+	 * they silently change to describe the following row. A client
+	 * that needs to keep data must copy it first: the strings
+	 * returned by {@link HXLValue#getContent()} and the {@link
+	 * HXLColumn} objects are never recycled, so keeping those is
+	 * always safe.</p>
+	 *
+	 * <p>Object reuse is disabled by default.</p>
+	 *
+	 * @param reuseObjects true to recycle row and value objects.
+	 */
+	public void setReuseObjects(final boolean reuseObjects) {
+		this.reuseObjects = reuseObjects;
+	}
+
+	/**
+	 * Share the strings of repeated values within each column.
+	 *
+	 * <p>When the limit is positive, the reader gives each column an
+	 * {@link HXLValueDictionary} and looks up every field in it before
+	 * creating a value. With the default tokenizer, the lookup reads
+	 * straight from the tokenizer's buffer, so a repeated value costs
+	 * no new string at all; all occurrences of it share one instance,
+	 * and can be compared with <code>==</code>. A column with more
+	 * distinct values than the limit stops using its dictionary and
+	 * goes back to plain strings.</p>
+	 *
+	 * <p>Dictionaries are disabled by default. With the memory-mapped
+	 * tokenizer, dictionary columns are decoded eagerly instead of
+	 * lazily.</p>
+	 *
+	 * @param dictionaryLimit The largest number of distinct values per
+	 * column (e.g. {@link HXLValueDictionary#DEFAULT_LIMIT}), or 0 to
+	 * disable dictionaries. Limits above {@link
+	 * HXLValueDictionary#MAX_LIMIT} are reduced to it. Changing the
+	 * limit starts new dictionaries.
+	 */
+	public void setDictionaryLimit(final int dictionaryLimit) {
+		if (dictionaryLimit < 0) {
+			throw new IllegalArgumentException("Dictionary limit must not be negative: " + dictionaryLimit);
+		}
+		this.dictionaryLimit = Math.min(dictionaryLimit, HXLValueDictionary.MAX_LIMIT);
+		this.dictionaries = null;
+	}
+
+	/**
+	 * Limit the number of rows searched for the hashtag row.
+	 *
+	 * <p>If the hashtag row isn't among the first maxRows rows, reading
+	 * fails with a {@link HXLHeaderNotFoundException} instead of going
+	 * on to the end of the input. Rows before the hashtag row are never
+	 * turned into strings, and each is rejected at its first cell that
+	 * isn't a hashtag, but every row still has to be tokenized; a limit
+	 * keeps a large file with no hashtags from costing a full parse.</p>
+	 *
+	 * <p>There is no limit by default.</p>
+	 *
+	 * @param maxRows The largest number of rows to search, including
+	 * the hashtag row itself.
+	 */
+	public void setMaxHeaderRows(final int maxRows) {
+		if (maxRows < 1) {
+			throw new IllegalArgumentException("Header row limit must be positive: " + maxRows);
+		}
+		this.maxHeaderRows = maxRows;
+	}
+
+	/**
+	 * Limit the amount of input searched for the hashtag row.
+	 *
+	 * <p>Like {@link #setMaxHeaderRows(int)}, but counting input
+	 * instead of rows, which also protects against a few enormous
+	 * rows. The limit is in the tokenizer's units (see {@link
+	 * HXLTokenizer#getInputOffset()}), and is checked after each row,
+	 * so the search may go past it by up to one row. Tokenizers that
+	 * don't count their input aren't limited.</p>
+	 *
+	 * <p>There is no limit by default.</p>
+	 *
+	 * @param maxBytes The largest number of bytes (or characters) to
+	 * search.
+	 */
+	public void setMaxHeaderBytes(final long maxBytes) {
+		if (maxBytes < 1) {
+			throw new IllegalArgumentException("Header byte limit must be positive: " + maxBytes);
+		}
+		this.maxHeaderBytes = maxBytes;
+	}
+
+	/**
+	 * Collect parse metrics.
+	 *
+	 * <p>With metrics, the reader counts rows, fields, input and
+	 * allocations, and times the search for the hashtag row, the
+	 * tokenizing, and the building of rows and values (see {@link
+	 * HXLReaderMetrics}). Set the metrics before the first read to
+	 * include the hashtag row. The same metrics object may be shared
+	 * by several readers.</p>
+	 *
+	 * <p>Metrics are off by default.</p>
+	 *
+	 * @param metrics The metrics to add to, or null to stop collecting
+	 * them.
+	 */
+	public void setMetrics(final HXLReaderMetrics metrics) {
+		if (this.metrics != null && this.metricsBatch != null) {
+			this.metrics.flush(this.metricsBatch, this.readInput());
+		}
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Get the parse metrics.
+	 *
+	 * @return The metrics, or null if they aren't being collected.
+	 * @see #setMetrics(HXLReaderMetrics)
+	 */
+	public HXLReaderMetrics getMetrics() {
+		return this.metrics;
+	}
+
+	/**
+	 * Get the limit on distinct values per column dictionary.
+	 *
+	 * @return The limit, or 0 if dictionaries are disabled.
+	 * @see #setDictionaryLimit(int)
+	 */
+	public int getDictionaryLimit() {
+		return this.dictionaryLimit;
+	}
+
+	/**
+	 * Get the dictionary for a column, with its statistics.
+	 *
+	 * @param column One of the columns from {@link #getColumns()}.
+	 * @return The column's dictionary, or null if dictionaries are
+	 * disabled or no rows have been read since they were enabled.
+	 */
+	public HXLValueDictionary getDictionary(final HXLColumn column) {
+		return (this.dictionaries == null ? null : this.dictionaries[column.getColumnNumber()]);
+	}
+
+	/**
+	 * Test whether object reuse is enabled.
+	 *
+	 * @return true if {@link #read()} recycles row and value objects.
+	 * @see #setReuseObjects(boolean)
+	 */
+	public boolean isReuseObjects() {
+		return this.reuseObjects;
 	}
 
 	/**
@@ -86,6 +612,7 @@ public class HXLReader implements Iterable {
 	 *
 	 * <p>Instead of the equivalent</p>
 	 *
+	 * <pre>
 	 * HXLRow row = reader.read();
 	 * while (row != null) {
 	 *   // do something with each row
@@ -95,8 +622,8 @@ public class HXLReader implements Iterable {
 	 *
 	 * <p><b>Warning:</b> because {@link #read()} can throw a {@link
 	 * IOException} but {@link Iterator#next()} does not allow any
-	 * exceptions, the iterator will wrap any exceptions in a generic
-	 * {@link RuntimeException}. If you are using the iterator, be
+	 * exceptions, the iterator will wrap any exceptions in an {@link
+	 * java.io.UncheckedIOException}. If you are using the iterator, be
 	 * prepared to catch that exception.</p>
 	 *
 	 * @return An iterator object.
@@ -104,11 +631,51 @@ public class HXLReader implements Iterable {
 	@Override
 	public Iterator<HXLRow> iterator() {
 		if (this.hxlIterator == null) {
-			this.hxlIterator = new HXLIterator();
+			this.hxlIterator = new HXLRowIterator(this);
 		}
 		return this.hxlIterator;
 	}
 
+	/**
+	 * Get a stream of the remaining rows of HXL data.
+	 *
+	 * <p>Rows are read lazily as the stream consumes them, so a
+	 * pipeline such as <code>reader.stream().filter(...).count()</code>
+	 * makes a single pass over the input in constant memory. Closing
+	 * the stream closes the reader. Errors are wrapped in {@link
+	 * java.io.UncheckedIOException}.</p>
+	 *
+	 * <p>If object reuse is enabled (see {@link
+	 * #setReuseObjects(boolean)}), the stream won't split for parallel
+	 * processing, and each row is valid only until the stream moves
+	 * on to the next one.</p>
+	 *
+	 * @return A sequential stream of rows.
+	 * @see HXLPipeline
+	 */
+	public Stream<HXLRow> stream() {
+		return HXLRowSpliterator.stream(this, !this.reuseObjects);
+	}
+
+	/**
+	 * Close the underlying tokenizer and its input.
+	 *
+	 * <p>With metrics, a reader closed before the end of its input
+	 * adds the counts it still holds and is recorded as finished.</p>
+	 *
+	 * @exception IOException if there is an error closing the input.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			if (this.metrics != null && this.metricsStarted) {
+				this.finishMetrics(System.nanoTime());
+			}
+		} finally {
+			this.tokenizer.close();
+		}
+	}
+
 	public List<HXLColumn> getColumns() throws IOException {
 		if (this.columns == null) {
 			this.findColumns();
@@ -116,44 +683,134 @@ public class HXLReader implements Iterable {
 		return this.columns;
 	}
 
+	/**
+	 * Get the tag index shared by all of the rows from this reader.
+	 *
+	 * <p>The index is built once, when the reader finds the hashtag
+	 * row, and lets {@link HXLRow#get(String)} find values without a
+	 * search.</p>
+	 *
+	 * @return The index of the columns from {@link #getColumns()}.
+	 * @exception IOException if there is an error reading the hashtag
+	 * row.
+	 */
+	public HXLColumnIndex getColumnIndex() throws IOException {
+		if (this.columns == null) {
+			this.findColumns();
+		}
+		return this.columnIndex;
+	}
+
+	/**
+	 * Get the source row number of the HXL hashtag row.
+	 *
+	 * @return The zero-based source row number, or -1 if the columns
+	 * haven't been read yet (or were supplied to the constructor).
+	 */
+	int getHeaderRowNumber() {
+		return this.headerRowNumber;
+	}
+
 	/**
 	 * Seek forward to the row of HXL headers.
+	 *
+	 * <p>A failure is remembered, so later reads throw the same
+	 * exception instead of searching the rest of the input.</p>
 	 */
 	private void findColumns() throws IOException {
-		String fields[] = this.readRawRow();
-		while (fields != null) {
-			if (this.isHeaderRow(fields)) {
-				this.makeColumns(fields);
+		if (this.headerFailure != null) {
+			throw this.headerFailure;
+		}
+		final long start = (this.metrics == null ? 0 : this.startMetrics());
+		final long startOffset = this.tokenizer.getInputOffset();
+		int rows = 0;
+		int fieldCount = this.readRawRow();
+		while (fieldCount != -1) {
+			rows++;
+			if (this.isHeaderRow(fieldCount)) {
+				this.headerRowNumber = this.sourceRowNumber;
+				this.makeColumns(fieldCount);
+				if (this.metrics != null) {
+					this.metrics.recordHeader(this.headerRowNumber, System.nanoTime() - start, this.readInput(), this.columns);
+				}
 				return;
 			}
-			fields = this.readRawRow();
+			final long bytes = (startOffset < 0 ? -1 : this.tokenizer.getInputOffset() - startOffset);
+			if (rows >= this.maxHeaderRows) {
+				throw this.headerNotFound(HXLHeaderNotFoundException.Reason.ROW_LIMIT, rows, bytes);
+			} else if (bytes >= this.maxHeaderBytes) {
+				throw this.headerNotFound(HXLHeaderNotFoundException.Reason.BYTE_LIMIT, rows, bytes);
+			}
+			fieldCount = this.readRawRow();
 		}
-		throw new IOException("HXL header row not found.");
+		throw this.headerNotFound(HXLHeaderNotFoundException.Reason.END_OF_INPUT, rows, (startOffset < 0 ? -1 : this.tokenizer.getInputOffset() - startOffset));
+	}
+
+	private HXLHeaderNotFoundException headerNotFound(final HXLHeaderNotFoundException.Reason reason, final int rows, final long bytes) {
+		this.headerFailure = new HXLHeaderNotFoundException(reason, rows, bytes, this.rejectedRowNumber, this.rejectedColumnNumber, this.rejectedText);
+		return this.headerFailure;
 	}
 
-	private void makeColumns(final String fields[]) {
+	private void makeColumns(final int fieldCount) {
 		int n = 0;
 		this.columns = new ArrayList<HXLColumn>();
-		this.columnMap = new HashMap<Integer,HXLColumn>();
-		for (int i = 0; i < fields.length; i++) {
-			if (fields[i].length() > 0) {
-				final HXLColumn column = new HXLColumn(fields[i], null, n++, i);
-				this.columns.add(column);
-				this.columnMap.put(i, column);
+		for (int i = 0; i < fieldCount; i++) {
+			if (this.tokenizer.getFieldLength(i) > 0) {
+				final HXLTagSpec spec = HXLTagSpec.parse(this.tokenizer.getField(i));
+				if (this.isSelected(spec)) {
+					this.columns.add(new HXLColumn(spec, n++, i));
+				}
 			}
 		}
+		this.mapFields();
+		this.columnIndex = new HXLColumnIndex(this.columns);
+	}
+
+	private boolean isSelected(final HXLTagSpec spec) {
+		if (this.tagSelection == null) {
+			return true;
+		}
+		for (final HXLTagPattern pattern : this.tagSelection) {
+			if (pattern.matches(spec)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Build the dense map from source field index to column.
+	 *
+	 * <p>The array ends at the last column's field, so fields past it
+	 * (including unselected ones) are never looked at.</p>
+	 */
+	private void mapFields() {
+		int length = 0;
+		for (final HXLColumn column : this.columns) {
+			length = Math.max(length, column.getSourceColumnNumber() + 1);
+		}
+		this.fieldColumns = new HXLColumn[length];
+		for (final HXLColumn column : this.columns) {
+			this.fieldColumns[column.getSourceColumnNumber()] = column;
+		}
 	}
 
 	/**
-	 * Test if a raw CSV row consists of HXL headers.
+	 * Test if the current raw CSV row consists of HXL headers.
+	 *
+	 * Works on the tokenizer's buffer, so rows before the headers
+	 * never become strings.
 	 */
-	private boolean isHeaderRow(final String fields[]) {
+	private boolean isHeaderRow(final int fieldCount) {
 		boolean seenTag = false;
-		for (final String field : fields) {
-			if (field.length() > 0) {
-				if (this.isHxlTag(field)) {
+		for (int i = 0; i < fieldCount; i++) {
+			if (this.tokenizer.getFieldLength(i) > 0) {
+				if (this.isHxlTag(i)) {
 					seenTag = true;
 				} else {
+					if (seenTag || this.tokenizer.getFieldChar(i, 0) == '#') {
+						this.rejectHeaderRow(i);
+					}
 					return false;
 				}
 			}
@@ -162,65 +819,230 @@ public class HXLReader implements Iterable {
 	}
 
 	/**
-	 * Test if a string is a HXL tag.
+	 * Remember the first bad cell of a row that looked like the
+	 * hashtag row, to explain a failure.
 	 */
-	private boolean isHxlTag(final String field) {
-		// TODO proper test
-		return field.startsWith("#");
+	private void rejectHeaderRow(final int index) {
+		final String field = this.tokenizer.getField(index);
+		this.rejectedRowNumber = this.sourceRowNumber;
+		this.rejectedColumnNumber = index;
+		this.rejectedText = (field.length() > 40 ? field.substring(0, 40) + "..." : field);
 	}
 
-	private String[] readRawRow() throws IOException {
-		final String fields[] = this.csvReader.readNext();
-		if (fields != null) {
-			this.sourceRowNumber++;
-			return fields;
+	/**
+	 * Test if a field in the current raw CSV row is a HXL tag spec,
+	 * with optional attributes and language.
+	 */
+	private boolean isHxlTag(final int index) {
+		return HXLTagSpec.isTagSpec(this.tokenizer, index);
+	}
+
+	/**
+	 * Fill a row from the current raw CSV row.
+	 *
+	 * @param slot The recycled row and values to fill, or null to
+	 * allocate new ones.
+	 * @param fieldCount The number of fields in the raw row.
+	 */
+	private HXLRow fillRow(final RowSlot slot, final int fieldCount) {
+		if (this.dictionaryLimit > 0 && this.dictionaries == null) {
+			this.dictionaries = new HXLValueDictionary[this.columns.size()];
+			for (int i = 0; i < this.dictionaries.length; i++) {
+				this.dictionaries[i] = new HXLValueDictionary(this.dictionaryLimit);
+			}
+		}
+
+		final HXLRow row;
+		if (slot == null) {
+			row = new HXLRow(++this.rowNumber, this.sourceRowNumber, this.columnIndex);
 		} else {
-			this.sourceRowNumber = -1;
-			return null;
+			row = slot.row;
+			row.init(++this.rowNumber, this.sourceRowNumber);
+		}
+		final List<HXLValue> values = row.getValuesModifiable();
+		final HXLColumn fieldColumns[] = this.fieldColumns;
+		final HXLValueDictionary dictionaries[] = this.dictionaries;
+		final int fieldLimit = Math.min(fieldCount, fieldColumns.length);
+		for (int i = 0; i < fieldLimit; i++) {
+			final HXLColumn column = fieldColumns[i];
+			if (column != null) {
+				final HXLValueDictionary dictionary = (dictionaries == null ? null : dictionaries[column.getColumnNumber()]);
+				if (dictionary != null && dictionary.isEnabled()) {
+					values.add(this.makeValue(slot, values.size(), column, this.internField(dictionary, i)));
+				} else if (this.mappedTokenizer != null) {
+					values.add(this.makeLazyValue(slot, values.size(), column, i));
+				} else {
+					values.add(this.makeValue(slot, values.size(), column, this.tokenizer.getField(i)));
+				}
+			}
 		}
+		return row;
 	}
 
-
 	/**
-	 * Inner class to implement an iterator for HXLRow objects.
+	 * Make a new value, or reinitialise one from a slot's pool.
 	 *
-	 * Exceptions will be wrapped in {@link RuntimeException}. The
-	 * iterator may sometimes have to read one row ahead, if the
-	 * client invokes {@link #hasNext()}.
+	 * @param slot The recycled row and values, or null.
+	 * @param index The position of the value in its row, used as the
+	 * pool slot.
 	 */
-	private class HXLIterator implements Iterator<HXLRow> {
+	private HXLValue makeValue(final RowSlot slot, final int index, final HXLColumn column, final String content) {
+		if (slot == null) {
+			return new HXLValue(column, content, this.rowNumber, this.sourceRowNumber);
+		} else if (index < slot.values.size()) {
+			final HXLValue value = slot.values.get(index);
+			value.init(column, content, this.rowNumber, this.sourceRowNumber);
+			return value;
+		} else {
+			final HXLValue value = new HXLValue(column, content, this.rowNumber, this.sourceRowNumber);
+			slot.values.add(value);
+			return value;
+		}
+	}
 
-		private HXLRow nextRow = null;
+	/**
+	 * Look up a field of the current raw row in a column dictionary.
+	 */
+	private String internField(final HXLValueDictionary dictionary, final int field) {
+		if (this.csvTokenizer != null) {
+			return dictionary.intern(this.csvTokenizer.getBuffer(), this.csvTokenizer.getFieldStart(field), this.csvTokenizer.getFieldLength(field));
+		} else {
+			return dictionary.intern(this.tokenizer.getField(field));
+		}
+	}
 
-		@Override
-		public boolean hasNext() {
-			if (this.nextRow == null) {
-				this.nextRow = this.next();
+	/**
+	 * Make a value whose content stays in the mapped file until needed.
+	 *
+	 * @param slot The recycled row and values, or null.
+	 * @param index The position of the value in its row.
+	 * @param field The index of the field in the current raw row.
+	 */
+	private HXLValue makeLazyValue(final RowSlot slot, final int index, final HXLColumn column, final int field) {
+		final HXLMappedTokenizer.Field content;
+		if (slot == null) {
+			content = this.mappedTokenizer.getLazyField(field);
+		} else {
+			while (slot.fields.size() <= index) {
+				slot.fields.add(new HXLMappedTokenizer.Field());
 			}
-			return (this.nextRow == null);
+			content = slot.fields.get(index);
+			this.mappedTokenizer.setLazyField(content, field);
 		}
+		final HXLValue value = this.makeValue(slot, index, column, null);
+		value.initLazy(column, content, this.rowNumber, this.sourceRowNumber);
+		return value;
+	}
 
-		@Override
-		public HXLRow next() {
-			HXLRow row;
-			if (this.nextRow != null) {
-				row = this.nextRow;
-				this.nextRow = null;
-			} else {
-				try {
-					row = HXLReader.this.read();
-				} catch (final IOException ex) {
-					throw new RuntimeException(ex);
-				}
-			}
-			return null;
+	/**
+	 * Fill a row, adding its counts and times to the metrics.
+	 *
+	 * @param start The time before the raw row was read.
+	 */
+	private HXLRow fillMeasured(final RowSlot slot, final int fieldCount, final long start) {
+		final long tokenized = System.nanoTime();
+		final int pooled = (slot == null ? 0 : slot.values.size());
+		final HXLRow row = this.fillRow(slot, fieldCount);
+		final HXLReaderMetrics.Batch batch = this.metricsBatch;
+		batch.buildNanos += System.nanoTime() - tokenized;
+		batch.tokenizeNanos += tokenized - start;
+		batch.rows++;
+		batch.fields += fieldCount;
+		batch.maxFields = Math.max(batch.maxFields, fieldCount);
+		final int size = row.getValues().size();
+		if (slot == null) {
+			batch.rowsAllocated++;
+			batch.valuesAllocated += size;
+		} else {
+			final int allocated = slot.values.size() - pooled;
+			batch.valuesAllocated += allocated;
+			batch.valuesRecycled += size - allocated;
+		}
+		if (++this.progressCount >= this.metrics.getProgressInterval()) {
+			this.progressCount = 0;
+			this.metrics.flush(batch, this.readInput());
+			this.metrics.recordProgress();
+		} else if (batch.rows >= HXLReaderMetrics.Batch.FLUSH_ROWS) {
+			this.metrics.flush(batch, this.readInput());
+		}
+		return row;
+	}
+
+	/**
+	 * Note where the input and allocation counts start, the first time
+	 * the reader does any measured work.
+	 *
+	 * @return The current time.
+	 */
+	private long startMetrics() {
+		if (!this.metricsStarted) {
+			this.metricsStarted = true;
+			this.metricsBatch = new HXLReaderMetrics.Batch();
+			this.inputOffset = Math.max(0, this.tokenizer.getInputOffset());
+			this.startAllocatedBytes = HXLReaderMetrics.getThreadAllocatedBytes();
+		}
+		return System.nanoTime();
+	}
+
+	/**
+	 * Record the end of the input, once.
+	 *
+	 * @param start The time before the last attempt to read a row.
+	 */
+	private void finishMetrics(final long start) {
+		if (!this.metricsFinished) {
+			this.metricsFinished = true;
+			final long nanos = System.nanoTime() - start;
+			final long allocated = (this.startAllocatedBytes < 0 ? -1 : HXLReaderMetrics.getThreadAllocatedBytes() - this.startAllocatedBytes);
+			this.metrics.flush(this.metricsBatch, 0);
+			this.metrics.recordEnd(nanos, this.readInput(), allocated);
 		}
+	}
+
+	/**
+	 * Get the amount of input consumed since the last call.
+	 */
+	private long readInput() {
+		final long offset = this.tokenizer.getInputOffset();
+		if (offset < 0) {
+			return 0;
+		}
+		final long delta = offset - this.inputOffset;
+		this.inputOffset = offset;
+		return delta;
+	}
+
+	/**
+	 * Advance the tokenizer to the next raw CSV row.
+	 *
+	 * @return The number of fields, or -1 at the end of the input.
+	 */
+	private int readRawRow() throws IOException {
+		final int fieldCount = this.tokenizer.next();
+		if (fieldCount != -1) {
+			this.sourceRowNumber++;
+		} else {
+			this.sourceRowNumber = -1;
+		}
+		return fieldCount;
+	}
+
+	/**
+	 * A recycled row, with pools of the values and lazy fields that
+	 * have been used in it.
+	 */
+	static final class RowSlot {
+
+		final HXLRow row;
+
+		final ArrayList<HXLValue> values = new ArrayList<HXLValue>();
+
+		final ArrayList<HXLMappedTokenizer.Field> fields = new ArrayList<HXLMappedTokenizer.Field>();
 
-		@Override
-		public void remove() {
-			throw new UnsupportedOperationException();
+		RowSlot(final HXLColumnIndex index) {
+			this.row = new HXLRow(-1, -1, index);
 		}
 
 	}
 
-}
\ No newline at end of file
+}
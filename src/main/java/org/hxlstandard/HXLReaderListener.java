@@ -0,0 +1,59 @@
+package org.hxlstandard;
+
+import java.util.List;
+
+/**
+ * Callbacks for following the progress of an {@link HXLReader}.
+ *
+ * <p>Register a listener with {@link
+ * HXLReaderMetrics#addListener(HXLReaderListener)}. Listeners are
+ * called on the reading thread at a few points in the parse, never
+ * once per row, so they can afford to log or publish the current
+ * metrics. All of the methods do nothing by default.</p>
+ *
+ * <p>Example:</p>
+ *
+ * <pre>
+ * HXLReaderMetrics metrics = new HXLReaderMetrics();
+ * metrics.addListener(new HXLReaderListener() {
+ *   public void finished(HXLReaderMetrics m) {
+ *     System.err.println(m.getLogicalRows() + " rows in " + m.getTotalNanos() + "ns");
+ *   }
+ * });
+ * reader.setMetrics(metrics);
+ * </pre>
+ *
+ * @author David Megginson
+ */
+public interface HXLReaderListener {
+
+    /**
+     * Called when a reader finds its hashtag row.
+     *
+     * @param metrics The metrics so far, including the rows skipped
+     * before the hashtag row and the time spent looking for it.
+     * @param columns The columns from the hashtag row.
+     */
+    default void headerFound(HXLReaderMetrics metrics, List<HXLColumn> columns) {
+    }
+
+    /**
+     * Called each time a reader has read another {@link
+     * HXLReaderMetrics#getProgressInterval()} rows.
+     *
+     * @param metrics The metrics so far.
+     */
+    default void progress(HXLReaderMetrics metrics) {
+    }
+
+    /**
+     * Called when a reader reaches the end of its input, or is closed
+     * before it.
+     *
+     * @param metrics The final metrics (or the running totals, if the
+     * metrics are shared between several readers).
+     */
+    default void finished(HXLReaderMetrics metrics) {
+    }
+
+}
@@ -0,0 +1,501 @@
+package org.hxlstandard;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters and timers for the work done by {@link HXLReader}.
+ *
+ * <p>Metrics are off by default. To turn them on, give a reader a
+ * metrics object before reading from it:</p>
+ *
+ * <pre>
+ * HXLReaderMetrics metrics = new HXLReaderMetrics();
+ * HXLReader reader = new HXLReader(input);
+ * reader.setMetrics(metrics);
+ * // ... read the data ...
+ * System.err.println(metrics);
+ * </pre>
+ *
+ * <p>The metrics split the work into three phases: looking for the
+ * hashtag row (the header phase), splitting the input into raw
+ * records (tokenizing), and turning records into {@link HXLRow} and
+ * {@link HXLValue} objects (building). Each phase is timed with
+ * {@link System#nanoTime()}, which costs a few tens of nanoseconds per
+ * row while metrics are on; a reader without metrics does no extra
+ * work beyond a null check.</p>
+ *
+ * <p>A metrics object is thread-safe and may be shared by several
+ * readers, in which case it holds their totals. Each reader adds its
+ * row counts every thousand rows or so, so the totals seen while a
+ * reader is busy may be slightly behind. It can also be
+ * published over JMX with {@link #register(String)}, and can notify
+ * {@link HXLReaderListener}s as the parse goes on.</p>
+ *
+ * @author David Megginson
+ */
+public class HXLReaderMetrics implements HXLReaderMetricsMBean {
+
+    /**
+     * Default number of rows between calls to {@link
+     * HXLReaderListener#progress(HXLReaderMetrics)}.
+     */
+    public final static int DEFAULT_PROGRESS_INTERVAL = 100000;
+
+    private final LongAdder bytesRead = new LongAdder();
+
+    private final LongAdder rawRows = new LongAdder();
+
+    private final LongAdder logicalRows = new LongAdder();
+
+    private final LongAdder skippedRows = new LongAdder();
+
+    private final LongAdder fieldCount = new LongAdder();
+
+    private final LongAccumulator maxFieldsPerRow = new LongAccumulator(Math::max, 0);
+
+    private final LongAdder headerNanos = new LongAdder();
+
+    private final LongAdder tokenizeNanos = new LongAdder();
+
+    private final LongAdder buildNanos = new LongAdder();
+
+    private final LongAdder rowsAllocated = new LongAdder();
+
+    private final LongAdder valuesAllocated = new LongAdder();
+
+    private final LongAdder valuesRecycled = new LongAdder();
+
+    private final LongAdder allocatedBytes = new LongAdder();
+
+    private final LongAdder readersFinished = new LongAdder();
+
+    private final List<HXLReaderListener> listeners = new CopyOnWriteArrayList<HXLReaderListener>();
+
+    private volatile int progressInterval = DEFAULT_PROGRESS_INTERVAL;
+
+    private ObjectName objectName;
+
+    /**
+     * Add a listener for the progress of the readers using these
+     * metrics.
+     *
+     * @param listener The listener to add.
+     */
+    public void addListener(HXLReaderListener listener) {
+        if (listener == null) {
+            throw new NullPointerException("listener");
+        }
+        listeners.add(listener);
+    }
+
+    /**
+     * Remove a listener.
+     *
+     * @param listener The listener to remove.
+     */
+    public void removeListener(HXLReaderListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Set how often listeners hear about progress.
+     *
+     * @param rows The number of rows each reader reads between calls to
+     * {@link HXLReaderListener#progress(HXLReaderMetrics)} (default
+     * {@link #DEFAULT_PROGRESS_INTERVAL}).
+     */
+    public void setProgressInterval(int rows) {
+        if (rows < 1) {
+            throw new IllegalArgumentException("Progress interval must be positive: " + rows);
+        }
+        this.progressInterval = rows;
+    }
+
+    /**
+     * Get how often listeners hear about progress.
+     *
+     * @return The number of rows between progress calls.
+     */
+    public int getProgressInterval() {
+        return progressInterval;
+    }
+
+    /**
+     * Get the amount of input consumed.
+     *
+     * <p>This is in the tokenizer's units (see {@link
+     * HXLTokenizer#getInputOffset()}): bytes for a file, but characters
+     * for a {@link java.io.Reader}. Tokenizers that don't keep count
+     * add nothing.</p>
+     *
+     * @return The number of bytes or characters read.
+     */
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    /**
+     * Get the number of raw records read from the tokenizer, including
+     * the hashtag row and any rows before it.
+     *
+     * @return The number of raw rows.
+     */
+    @Override
+    public long getRawRows() {
+        return rawRows.sum();
+    }
+
+    /**
+     * Get the number of rows of data returned.
+     *
+     * @return The number of logical rows.
+     */
+    @Override
+    public long getLogicalRows() {
+        return logicalRows.sum();
+    }
+
+    /**
+     * Get the number of rows skipped before the hashtag row.
+     *
+     * @return The number of rows of preamble.
+     */
+    @Override
+    public long getSkippedRows() {
+        return skippedRows.sum();
+    }
+
+    /**
+     * Get the total number of raw fields in the rows of data.
+     *
+     * @return The number of fields.
+     */
+    @Override
+    public long getFieldCount() {
+        return fieldCount.sum();
+    }
+
+    /**
+     * Get the largest number of raw fields in a row of data.
+     *
+     * @return The widest row's field count.
+     */
+    @Override
+    public long getMaxFieldsPerRow() {
+        return maxFieldsPerRow.get();
+    }
+
+    /**
+     * Get the average number of raw fields in a row of data.
+     *
+     * @return The average, or 0 if there are no rows.
+     */
+    @Override
+    public double getAverageFieldsPerRow() {
+        final long rows = logicalRows.sum();
+        return (rows == 0 ? 0 : (double) fieldCount.sum() / rows);
+    }
+
+    /**
+     * Get the time spent looking for the hashtag row, including
+     * tokenizing the rows before it.
+     *
+     * @return The time in nanoseconds.
+     */
+    @Override
+    public long getHeaderNanos() {
+        return headerNanos.sum();
+    }
+
+    /**
+     * Get the time spent splitting rows of data into fields, including
+     * waiting for input.
+     *
+     * @return The time in nanoseconds.
+     */
+    @Override
+    public long getTokenizeNanos() {
+        return tokenizeNanos.sum();
+    }
+
+    /**
+     * Get the time spent building rows and values from raw fields.
+     *
+     * @return The time in nanoseconds.
+     */
+    @Override
+    public long getBuildNanos() {
+        return buildNanos.sum();
+    }
+
+    /**
+     * Get the time spent in all three phases.
+     *
+     * @return The time in nanoseconds.
+     */
+    @Override
+    public long getTotalNanos() {
+        return headerNanos.sum() + tokenizeNanos.sum() + buildNanos.sum();
+    }
+
+    /**
+     * Get the number of new {@link HXLRow} objects created.
+     *
+     * <p>This is one per row normally, and 0 for rows recycled in
+     * object reuse mode or by {@link HXLReader#readBatch(int)}.</p>
+     *
+     * @return The number of rows allocated.
+     */
+    @Override
+    public long getRowsAllocated() {
+        return rowsAllocated.sum();
+    }
+
+    /**
+     * Get the number of new {@link HXLValue} objects created.
+     *
+     * @return The number of values allocated.
+     */
+    @Override
+    public long getValuesAllocated() {
+        return valuesAllocated.sum();
+    }
+
+    /**
+     * Get the number of {@link HXLValue} objects reinitialised from a
+     * pool instead of created.
+     *
+     * @return The number of values recycled.
+     */
+    @Override
+    public long getValuesRecycled() {
+        return valuesRecycled.sum();
+    }
+
+    /**
+     * Get the heap allocated by the reading threads between the first
+     * read and the end of the input.
+     *
+     * <p>This covers everything the thread allocated, including the
+     * client's own work between reads. It stays at 0 if the JVM
+     * doesn't measure allocation per thread.</p>
+     *
+     * @return The allocation in bytes.
+     */
+    @Override
+    public long getAllocatedBytes() {
+        return allocatedBytes.sum();
+    }
+
+    /**
+     * Get the number of readers that have reached the end of their
+     * input or been closed.
+     *
+     * @return The number of finished readers.
+     */
+    @Override
+    public long getReadersFinished() {
+        return readersFinished.sum();
+    }
+
+    /**
+     * Set all of the counters back to 0.
+     *
+     * <p>Counts from readers in progress may be partly lost.</p>
+     */
+    @Override
+    public void reset() {
+        bytesRead.reset();
+        rawRows.reset();
+        logicalRows.reset();
+        skippedRows.reset();
+        fieldCount.reset();
+        maxFieldsPerRow.reset();
+        headerNanos.reset();
+        tokenizeNanos.reset();
+        buildNanos.reset();
+        rowsAllocated.reset();
+        valuesAllocated.reset();
+        valuesRecycled.reset();
+        allocatedBytes.reset();
+        readersFinished.reset();
+    }
+
+    /**
+     * Publish the metrics on the platform MBean server.
+     *
+     * @param name The name to register under, which becomes the
+     * <code>name</code> key of
+     * <code>org.hxlstandard:type=HXLReaderMetrics</code>.
+     * @return The MBean's object name.
+     * @exception JMException if the name is taken or not allowed.
+     */
+    public synchronized ObjectName register(String name) throws JMException {
+        if (objectName != null) {
+            throw new IllegalStateException("Already registered as " + objectName);
+        }
+        final ObjectName objectName = new ObjectName("org.hxlstandard:type=HXLReaderMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        this.objectName = objectName;
+        return objectName;
+    }
+
+    /**
+     * Remove the metrics from the platform MBean server, if they were
+     * published with {@link #register(String)}.
+     *
+     * @exception JMException if the MBean server won't remove them.
+     */
+    public synchronized void unregister() throws JMException {
+        if (objectName != null) {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            objectName = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "HXLReaderMetrics[bytesRead=" + getBytesRead()
+            + ", rawRows=" + getRawRows()
+            + ", logicalRows=" + getLogicalRows()
+            + ", skippedRows=" + getSkippedRows()
+            + ", averageFieldsPerRow=" + String.format("%.1f", getAverageFieldsPerRow())
+            + ", headerMs=" + getHeaderNanos() / 1000000
+            + ", tokenizeMs=" + getTokenizeNanos() / 1000000
+            + ", buildMs=" + getBuildNanos() / 1000000
+            + ", valuesAllocated=" + getValuesAllocated()
+            + ", valuesRecycled=" + getValuesRecycled()
+            + ", allocatedBytes=" + getAllocatedBytes()
+            + "]";
+    }
+
+    /**
+     * Record the search for the hashtag row.
+     *
+     * @param skipped The number of rows before the hashtag row.
+     */
+    void recordHeader(long skipped, long nanos, long bytes, List<HXLColumn> columns) {
+        rawRows.add(skipped + 1);
+        skippedRows.add(skipped);
+        headerNanos.add(nanos);
+        bytesRead.add(bytes);
+        for (final HXLReaderListener listener : listeners) {
+            listener.headerFound(this, columns);
+        }
+    }
+
+    /**
+     * Add a reader's batch of row counts to the totals, and clear it.
+     *
+     * @param bytes The input consumed since the last flush.
+     */
+    void flush(Batch batch, long bytes) {
+        rawRows.add(batch.rows);
+        logicalRows.add(batch.rows);
+        fieldCount.add(batch.fields);
+        maxFieldsPerRow.accumulate(batch.maxFields);
+        tokenizeNanos.add(batch.tokenizeNanos);
+        buildNanos.add(batch.buildNanos);
+        rowsAllocated.add(batch.rowsAllocated);
+        valuesAllocated.add(batch.valuesAllocated);
+        valuesRecycled.add(batch.valuesRecycled);
+        bytesRead.add(bytes);
+        batch.clear();
+    }
+
+    void recordProgress() {
+        for (final HXLReaderListener listener : listeners) {
+            listener.progress(this);
+        }
+    }
+
+    /**
+     * Record the end of a reader's input.
+     *
+     * @param nanos The time spent finding that there were no more rows.
+     * @param allocated The heap allocated by the thread, or -1 if
+     * unknown.
+     */
+    void recordEnd(long nanos, long bytes, long allocated) {
+        tokenizeNanos.add(nanos);
+        bytesRead.add(bytes);
+        if (allocated > 0) {
+            allocatedBytes.add(allocated);
+        }
+        readersFinished.increment();
+        for (final HXLReaderListener listener : listeners) {
+            listener.finished(this);
+        }
+    }
+
+    /**
+     * Get the heap allocated so far by the current thread.
+     *
+     * @return The allocation in bytes, or -1 if the JVM doesn't keep
+     * count.
+     */
+    static long getThreadAllocatedBytes() {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            final com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+            if (sunThreads.isThreadAllocatedMemorySupported() && sunThreads.isThreadAllocatedMemoryEnabled()) {
+                return sunThreads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Row counts kept by a single reader between flushes, so that the
+     * shared counters aren't touched for every row.
+     */
+    static final class Batch {
+
+        /**
+         * Number of rows between flushes.
+         */
+        final static int FLUSH_ROWS = 1024;
+
+        int rows;
+
+        long fields;
+
+        int maxFields;
+
+        long tokenizeNanos;
+
+        long buildNanos;
+
+        int rowsAllocated;
+
+        int valuesAllocated;
+
+        int valuesRecycled;
+
+        void clear() {
+            rows = 0;
+            fields = 0;
+            maxFields = 0;
+            tokenizeNanos = 0;
+            buildNanos = 0;
+            rowsAllocated = 0;
+            valuesAllocated = 0;
+            valuesRecycled = 0;
+        }
+
+    }
+
+}
@@ -0,0 +1,47 @@
+package org.hxlstandard;
+
+/**
+ * JMX management interface for {@link HXLReaderMetrics}.
+ *
+ * <p>See {@link HXLReaderMetrics} for the meaning of each
+ * attribute.</p>
+ *
+ * @author David Megginson
+ */
+public interface HXLReaderMetricsMBean {
+
+    long getBytesRead();
+
+    long getRawRows();
+
+    long getLogicalRows();
+
+    long getSkippedRows();
+
+    long getFieldCount();
+
+    long getMaxFieldsPerRow();
+
+    double getAverageFieldsPerRow();
+
+    long getHeaderNanos();
+
+    long getTokenizeNanos();
+
+    long getBuildNanos();
+
+    long getTotalNanos();
+
+    long getRowsAllocated();
+
+    long getValuesAllocated();
+
+    long getValuesRecycled();
+
+    long getAllocatedBytes();
+
+    long getReadersFinished();
+
+    void reset();
+
+}
@@ -1,6 +1,7 @@
 package org.hxlstandard;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
@@ -26,6 +27,14 @@ import java.util.List;
  * }
  * </pre>
  *
+ * <p>Rows from a {@link HXLReader} share the reader's {@link
+ * HXLColumnIndex}, so looking up a value by tag is a constant-time
+ * operation that allocates nothing:</p>
+ *
+ * <pre>
+ * HXLValue adm1 = row.get("#adm1");
+ * </pre>
+ *
  * @author David Megginson
  */
 public class HXLRow implements Iterable<HXLValue> {
@@ -34,7 +43,15 @@ public class HXLRow implements Iterable<HXLValue> {
 
     private int sourceRowNumber;
 
-    private ArrayList<HXLValue> values = new ArrayList<HXLValue>();
+    private final ArrayList<HXLValue> values = new ArrayList<HXLValue>();
+
+    private final List<HXLValue> readOnlyValues = Collections.unmodifiableList(values);
+
+    private final HXLColumnIndex index;
+
+    private HXLValue slots[];
+
+    private int indexedCount;
 
     /**
      * Create a new row of HXL data.
@@ -43,6 +60,22 @@ public class HXLRow implements Iterable<HXLValue> {
      * @param sourceRowNumber The original source row number, zero-based.
      */
     public HXLRow(int rowNumber, int sourceRowNumber) {
+        this(rowNumber, sourceRowNumber, null);
+    }
+
+    /**
+     * Create a new row of HXL data with a shared column index.
+     *
+     * @param rowNumber The logical (HXL) row number, zero-based.
+     * @param sourceRowNumber The original source row number, zero-based.
+     * @param index The dataset's column index, or null to look up tags
+     * by scanning the values.
+     */
+    public HXLRow(int rowNumber, int sourceRowNumber, HXLColumnIndex index) {
+        this.index = index;
+        if (index != null) {
+            slots = new HXLValue[index.size()];
+        }
         init(rowNumber, sourceRowNumber);
     }
 
@@ -55,6 +88,10 @@ public class HXLRow implements Iterable<HXLValue> {
      * @param sourceRowNumber The original source row number, zero-based.
      */
     protected void init(int rowNumber, int sourceRowNumber) {
+        if (indexedCount > 0) {
+            Arrays.fill(slots, null);
+            indexedCount = 0;
+        }
         values.clear();
         this.rowNumber = rowNumber;
         this.sourceRowNumber = sourceRowNumber;
@@ -63,7 +100,8 @@ public class HXLRow implements Iterable<HXLValue> {
     /**
      * Get a modifiable list of this row's values.
      *
-     * {@link HXLReader} and other builders can add HXLValue objects to this list.
+     * {@link HXLReader} and other builders can add HXLValue objects to
+     * this list, but should not remove or replace them.
      *
      * @return A list of type {@link HXLValue}
      */
@@ -77,7 +115,106 @@ public class HXLRow implements Iterable<HXLValue> {
      * @return An unmodifiable list of type {@link HXLValue}.
      */
     public List<HXLValue> getValues() {
-        return Collections.unmodifiableList(values);
+        return readOnlyValues;
+    }
+
+    /**
+     * Get the value for a column.
+     *
+     * @param column One of the dataset's columns.
+     * @return The value, or null if the row has no value for the
+     * column.
+     */
+    public HXLValue get(HXLColumn column) {
+        final HXLValue value = getSlot(column.getColumnNumber());
+        if (value != null && value.getColumn() == column) {
+            return value;
+        }
+        // a column from elsewhere: fall back to a scan
+        for (final HXLValue v : values) {
+            if (v.getColumn() == column) {
+                return v;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the first value with a tag.
+     *
+     * <p>The tag is a pattern (see {@link HXLTagPattern}), so
+     * "#affected" finds a value in an "#affected+f" column.</p>
+     *
+     * @param tag The HXL hashtag, including the "#", optionally with
+     * attributes.
+     * @return The value in the first column with the tag that has a
+     * value in this row, or null if there is none.
+     */
+    public HXLValue get(String tag) {
+        if (index != null) {
+            for (final int columnNumber : index.getColumnNumbers(tag)) {
+                final HXLValue value = getSlot(columnNumber);
+                if (value != null) {
+                    return value;
+                }
+            }
+        } else {
+            final HXLTagPattern pattern = compile(tag);
+            for (final HXLValue value : values) {
+                if (pattern != null && pattern.matches(value.getColumn())) {
+                    return value;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get all of the values with a tag.
+     *
+     * @param tag The HXL hashtag, including the "#", optionally with
+     * attributes (see {@link #get(String)}).
+     * @return A new list of the values with the tag, in column order.
+     */
+    public List<HXLValue> getAll(String tag) {
+        final List<HXLValue> result = new ArrayList<HXLValue>();
+        if (index != null) {
+            for (final int columnNumber : index.getColumnNumbers(tag)) {
+                final HXLValue value = getSlot(columnNumber);
+                if (value != null) {
+                    result.add(value);
+                }
+            }
+        } else {
+            final HXLTagPattern pattern = compile(tag);
+            for (final HXLValue value : values) {
+                if (pattern != null && pattern.matches(value.getColumn())) {
+                    result.add(value);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Compile a lookup pattern, or return null if it isn't valid (so
+     * it matches nothing, as with an index).
+     */
+    private static HXLTagPattern compile(String tag) {
+        try {
+            return HXLTagPattern.compile(tag);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Get the column index shared by the rows of this dataset.
+     *
+     * @return The index, or null if the row was created without one.
+     */
+    public HXLColumnIndex getColumnIndex() {
+        return index;
     }
 
     /**
@@ -86,7 +223,7 @@ public class HXLRow implements Iterable<HXLValue> {
      * @return A read-only value iterator.
      */
     public Iterator<HXLValue> iterator() {
-        return getValues().iterator();
+        return readOnlyValues.iterator();
     }
 
     /**
@@ -109,4 +246,26 @@ public class HXLRow implements Iterable<HXLValue> {
         return sourceRowNumber;
     }
 
-}
\ No newline at end of file
+    /**
+     * Get the value in a logical column.
+     *
+     * <p>Values are placed in the dense slot array the first time a
+     * lookup needs them, so builders can keep adding values through
+     * {@link #getValuesModifiable()}.</p>
+     */
+    private HXLValue getSlot(int columnNumber) {
+        final int count = values.size();
+        for (; indexedCount < count; indexedCount++) {
+            final HXLValue value = values.get(indexedCount);
+            final int n = value.getColumnNumber();
+            if (slots == null) {
+                slots = new HXLValue[Math.max(16, n + 1)];
+            } else if (n >= slots.length) {
+                slots = Arrays.copyOf(slots, Math.max(slots.length * 2, n + 1));
+            }
+            slots[n] = value;
+        }
+        return (columnNumber >= 0 && slots != null && columnNumber < slots.length ? slots[columnNumber] : null);
+    }
+
+}
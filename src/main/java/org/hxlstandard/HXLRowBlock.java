@@ -0,0 +1,93 @@
+package org.hxlstandard;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * A reusable block of rows from {@link HXLReader#readBatch(int)}.
+ *
+ * <p>The reader refills the same block, with the same {@link HXLRow}
+ * and {@link HXLValue} objects, on every call, so the rows are valid
+ * only until the next batch is read. The block is a read-only
+ * list.</p>
+ *
+ * <p>Example:</p>
+ *
+ * <pre>
+ * HXLRowBlock block = reader.readBatch(1024);
+ * while (block != null) {
+ *   for (int i = 0; i &lt; block.size(); i++) {
+ *     HXLRow row = block.get(i);
+ *     // do something with the row
+ *   }
+ *   block = reader.readBatch(1024);
+ * }
+ * </pre>
+ *
+ * @author David Megginson
+ */
+public final class HXLRowBlock extends AbstractList<HXLRow> implements RandomAccess {
+
+    private HXLReader.RowSlot slots[] = new HXLReader.RowSlot[16];
+
+    private int size;
+
+    /**
+     * Create an empty block.
+     */
+    HXLRowBlock() {
+    }
+
+    /**
+     * Get a row.
+     *
+     * @param index The zero-based position of the row in the block.
+     * @return The row.
+     */
+    @Override
+    public HXLRow get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Row " + index + " of " + size);
+        }
+        return slots[index].row;
+    }
+
+    /**
+     * Get the number of rows in the block.
+     *
+     * @return The row count.
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the recycled row and values at a position, creating them if
+     * needed.
+     *
+     * @param index The zero-based position in the block.
+     * @param columnIndex The column index for a new row.
+     * @return The slot.
+     */
+    HXLReader.RowSlot getSlot(int index, HXLColumnIndex columnIndex) {
+        if (index >= slots.length) {
+            slots = Arrays.copyOf(slots, Math.max(slots.length * 2, index + 1));
+        }
+        if (slots[index] == null) {
+            slots[index] = new HXLReader.RowSlot(columnIndex);
+        }
+        return slots[index];
+    }
+
+    /**
+     * Set the number of rows filled.
+     *
+     * @param size The row count.
+     */
+    void setSize(int size) {
+        this.size = size;
+    }
+
+}
@@ -0,0 +1,62 @@
+package org.hxlstandard;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterator over the rows of a {@link HXLRowSource}.
+ *
+ * <p>{@link Iterator#next()} can't throw an {@link IOException}, so
+ * any error from the source is wrapped in an {@link
+ * UncheckedIOException}.</p>
+ *
+ * @author David Megginson
+ */
+class HXLRowIterator implements Iterator<HXLRow> {
+
+    private final HXLRowSource source;
+
+    private HXLRow nextRow;
+
+    private boolean finished;
+
+    /**
+     * Create a new iterator.
+     *
+     * @param source The source of rows.
+     */
+    HXLRowIterator(HXLRowSource source) {
+        this.source = source;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (nextRow == null && !finished) {
+            try {
+                nextRow = source.read();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            finished = (nextRow == null);
+        }
+        return (nextRow != null);
+    }
+
+    @Override
+    public HXLRow next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        final HXLRow row = nextRow;
+        nextRow = null;
+        return row;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+}
@@ -0,0 +1,35 @@
+package org.hxlstandard;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Anything that supplies rows of HXL data one at a time.
+ *
+ * <p>This is the common interface of {@link HXLReader}, {@link
+ * HXLParallelReader}, and the stages of an {@link HXLPipeline}, so
+ * that processing steps can be chained over any of them.</p>
+ *
+ * @author David Megginson
+ */
+public interface HXLRowSource extends Closeable {
+
+    /**
+     * Get the columns of the rows from this source.
+     *
+     * @return A list of columns, in logical order.
+     * @exception IOException if there is an error reading the hashtag
+     * row.
+     */
+    List<HXLColumn> getColumns() throws IOException;
+
+    /**
+     * Read the next row.
+     *
+     * @return A row of HXL data, or null if there are no more rows.
+     * @exception IOException if there is an error reading the data.
+     */
+    HXLRow read() throws IOException;
+
+}
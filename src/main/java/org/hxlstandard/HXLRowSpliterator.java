@@ -0,0 +1,80 @@
+package org.hxlstandard;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Spliterator over the rows of a {@link HXLRowSource}.
+ *
+ * <p>The rows are read one at a time as the stream pulls them. For a
+ * parallel stream, the spliterator splits off batches of rows that
+ * other threads can process while this one keeps reading. Splitting
+ * is disabled when the source recycles its row objects, since the
+ * rows in a batch would all be the same object.</p>
+ *
+ * @author David Megginson
+ */
+class HXLRowSpliterator extends Spliterators.AbstractSpliterator<HXLRow> {
+
+    private final HXLRowSource source;
+
+    private final boolean splittable;
+
+    /**
+     * Create a new spliterator.
+     *
+     * @param source The source of rows.
+     * @param splittable false if the source reuses its row objects.
+     */
+    HXLRowSpliterator(HXLRowSource source, boolean splittable) {
+        super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+        this.source = source;
+        this.splittable = splittable;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super HXLRow> action) {
+        final HXLRow row;
+        try {
+            row = source.read();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (row == null) {
+            return false;
+        }
+        action.accept(row);
+        return true;
+    }
+
+    @Override
+    public Spliterator<HXLRow> trySplit() {
+        return (splittable ? super.trySplit() : null);
+    }
+
+    /**
+     * Make a stream that closes the source when it is closed.
+     *
+     * @param source The source of rows.
+     * @param splittable false if the source reuses its row objects.
+     * @return A sequential stream of rows.
+     */
+    static Stream<HXLRow> stream(final HXLRowSource source, boolean splittable) {
+        return StreamSupport.stream(new HXLRowSpliterator(source, splittable), false).onClose(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    source.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+    }
+
+}
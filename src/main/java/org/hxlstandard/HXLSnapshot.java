@@ -0,0 +1,465 @@
+package org.hxlstandard;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary snapshot of an HXL dataset, for reloading without parsing.
+ *
+ * <p>{@link #write(HXLColumnarDataset, File)} saves a dataset once in
+ * a compact column-wise format; opening the file again with {@link
+ * #HXLSnapshot(File)} memory-maps it instead of reading and parsing
+ * CSV, so the cost of reloading is reading the column table. Values
+ * are decoded only when a row is requested, and rows come back as the
+ * usual {@link HXLRow} and {@link HXLValue} objects, with the same
+ * column metadata and row numbers as the original reader.</p>
+ *
+ * <p>Example:</p>
+ *
+ * <pre>
+ * HXLSnapshot.write(new HXLColumnarDataset(new HXLReader(input)), file);
+ * ...
+ * HXLSnapshot snapshot = new HXLSnapshot(file);
+ * HXLRow row = snapshot.read();
+ * while (row != null) {
+ *   System.out.println(row.get("#sector"));
+ *   row = snapshot.read();
+ * }
+ * snapshot.close();
+ * </pre>
+ *
+ * <p>The file holds a column table (the tag, language, and source
+ * column number of each {@link HXLColumn}, with the storage type and
+ * position of its data), the logical and source row numbers, and then
+ * one section per column: a null bitmap followed by an
+ * <code>int</code>, <code>long</code>, or <code>double</code> array
+ * for a numeric column, or by an array of dictionary codes and the
+ * UTF-8 dictionary for a string column (see {@link HXLColumnVector}).
+ * Numbers are big-endian, and every section starts on an 8-byte
+ * boundary. Numeric values are restored already parsed, so {@link
+ * HXLValue#asLong()} and {@link HXLValue#asDouble()} cost nothing;
+ * as in {@link HXLColumnarDataset#getRow(int)}, decimals come back in
+ * normalised form, and nulls as "".</p>
+ *
+ * <p>Each section is mapped separately, so a section (for example,
+ * the <code>long</code> array of a column) can't be larger than 2 GB.
+ * Closing the snapshot closes the file, but the operating system may
+ * keep the mapping until the snapshot is garbage collected.</p>
+ *
+ * @author David Megginson
+ */
+public class HXLSnapshot implements HXLRowSource {
+
+    /**
+     * Magic number at the start of a snapshot file ("HXLS").
+     */
+    public final static int MAGIC = 0x48584C53;
+
+    /**
+     * Version of the snapshot format written by this class.
+     */
+    public final static int VERSION = 1;
+
+    private final static HXLColumnVector.Type TYPES[] = HXLColumnVector.Type.values();
+
+    private final FileChannel channel;
+
+    private final HXLColumnIndex columnIndex;
+
+    private final int rowCount;
+
+    private final ByteBuffer rowNumbers;
+
+    private final Section sections[];
+
+    private int nextRow;
+
+    /**
+     * Open a snapshot file.
+     *
+     * @param file The file written by {@link #write(HXLColumnarDataset,
+     * File)}.
+     * @exception IOException if the file can't be read, or isn't a
+     * valid snapshot.
+     */
+    public HXLSnapshot(File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            final long fileSize = channel.size();
+            // the stream is only for the column table, and isn't closed
+            final DataInputStream input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            if (input.readInt() != MAGIC) {
+                throw new IOException("Not an HXL snapshot: " + file);
+            }
+            final int version = input.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported HXL snapshot version " + version + ": " + file);
+            }
+            final int columnCount = input.readInt();
+            rowCount = input.readInt();
+            rowNumbers = map(input.readLong(), 8L * rowCount, fileSize);
+
+            final List<HXLColumn> columns = new ArrayList<HXLColumn>(columnCount);
+            sections = new Section[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                final String tag = input.readUTF();
+                final String lang = (input.readBoolean() ? input.readUTF() : null);
+                final HXLColumn column = new HXLColumn(tag, lang, i, input.readInt());
+                final int type = input.readByte();
+                if (type < 0 || type >= TYPES.length) {
+                    throw new IOException("Bad type " + type + " for column " + tag + " in " + file);
+                }
+                final long offset = input.readLong();
+                final long length = input.readLong();
+                columns.add(column);
+                sections[i] = new Section(column, TYPES[type], map(offset, length, fileSize), rowCount);
+            }
+            columnIndex = new HXLColumnIndex(columns);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Get the HXL columns.
+     *
+     * @return A read-only list of columns, in logical order.
+     */
+    @Override
+    public List<HXLColumn> getColumns() {
+        return columnIndex.getColumns();
+    }
+
+    /**
+     * Get the tag lookup table shared by the rows.
+     *
+     * @return The column index.
+     */
+    public HXLColumnIndex getColumnIndex() {
+        return columnIndex;
+    }
+
+    /**
+     * Get the number of rows.
+     *
+     * @return The row count.
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Read the next row, starting from the first.
+     *
+     * @return A new row, or null after the last row.
+     */
+    @Override
+    public HXLRow read() {
+        return (nextRow < rowCount ? getRow(nextRow++) : null);
+    }
+
+    /**
+     * Rebuild a row as an {@link HXLRow} object.
+     *
+     * <p>The row has a value for every column. This doesn't change the
+     * position of {@link #read()}.</p>
+     *
+     * @param row The zero-based index of the row in the snapshot.
+     * @return A new row object.
+     */
+    public HXLRow getRow(int row) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + rowCount);
+        }
+        final int rowNumber = rowNumbers.getInt(row << 2);
+        final int sourceRowNumber = rowNumbers.getInt((rowCount + row) << 2);
+        final HXLRow result = new HXLRow(rowNumber, sourceRowNumber, columnIndex);
+        final List<HXLValue> values = result.getValuesModifiable();
+        for (final Section section : sections) {
+            values.add(section.getValue(row, rowNumber, sourceRowNumber));
+        }
+        return result;
+    }
+
+    /**
+     * Close the snapshot file.
+     *
+     * @exception IOException if there is an error closing the file.
+     */
+    @Override
+    public void close() throws IOException {
+        nextRow = rowCount;
+        channel.close();
+    }
+
+    /**
+     * Save a dataset as a snapshot file, replacing any existing
+     * content.
+     *
+     * @param dataset The dataset to save.
+     * @param file The file to write.
+     * @exception IOException if there is an error writing the file.
+     */
+    public static void write(HXLColumnarDataset dataset, File file) throws IOException {
+        final List<HXLColumn> columns = dataset.getColumns();
+        final int rowCount = dataset.getRowCount();
+        final int bitmapLength = ((rowCount + 63) >>> 6) << 3;
+
+        // encode the dictionaries first, to know the section lengths
+        final byte dictionaries[][][] = new byte[columns.size()][][];
+        final long lengths[] = new long[columns.size()];
+        for (int i = 0; i < columns.size(); i++) {
+            final HXLColumnVector vector = dataset.getVector(i);
+            switch (vector.getType()) {
+            case INT:
+                lengths[i] = bitmapLength + 4L * rowCount;
+                break;
+            case LONG:
+            case DOUBLE:
+                lengths[i] = bitmapLength + 8L * rowCount;
+                break;
+            default:
+                final List<String> dictionary = vector.getDictionary();
+                final byte encoded[][] = new byte[dictionary.size()][];
+                long length = bitmapLength + 4L + 4L * rowCount + 4L * (encoded.length + 1);
+                for (int j = 0; j < encoded.length; j++) {
+                    encoded[j] = dictionary.get(j).getBytes(StandardCharsets.UTF_8);
+                    length += encoded[j].length;
+                }
+                dictionaries[i] = encoded;
+                lengths[i] = length;
+            }
+        }
+
+        // the column table has a fixed length, so lay it out once to measure it
+        final long offsets[] = new long[columns.size()];
+        final long rowsOffset = align(writeTable(dataset, 0, offsets, lengths).length);
+        long offset = align(rowsOffset + 8L * rowCount);
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = offset;
+            offset = align(offset + lengths[i]);
+        }
+
+        final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+        try {
+            // DataOutputStream.size() stops counting at 2 GiB, so track the position here
+            final byte table[] = writeTable(dataset, rowsOffset, offsets, lengths);
+            output.write(table);
+            pad(output, table.length, rowsOffset);
+            for (int row = 0; row < rowCount; row++) {
+                output.writeInt(dataset.getRowNumber(row));
+            }
+            for (int row = 0; row < rowCount; row++) {
+                output.writeInt(dataset.getSourceRowNumber(row));
+            }
+            long position = rowsOffset + 8L * rowCount;
+            for (int i = 0; i < columns.size(); i++) {
+                pad(output, position, offsets[i]);
+                writeSection(output, dataset.getVector(i), dictionaries[i]);
+                position = offsets[i] + lengths[i];
+            }
+        } finally {
+            output.close();
+        }
+    }
+
+    private static byte[] writeTable(HXLColumnarDataset dataset, long rowsOffset, long offsets[], long lengths[]) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream output = new DataOutputStream(bytes);
+        final List<HXLColumn> columns = dataset.getColumns();
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeInt(columns.size());
+        output.writeInt(dataset.getRowCount());
+        output.writeLong(rowsOffset);
+        for (int i = 0; i < columns.size(); i++) {
+            final HXLColumn column = columns.get(i);
+            output.writeUTF(column.getTag());
+            output.writeBoolean(column.getLang() != null);
+            if (column.getLang() != null) {
+                output.writeUTF(column.getLang());
+            }
+            output.writeInt(column.getSourceColumnNumber());
+            output.writeByte(dataset.getVector(i).getType().ordinal());
+            output.writeLong(offsets[i]);
+            output.writeLong(lengths[i]);
+        }
+        output.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void writeSection(DataOutputStream output, HXLColumnVector vector, byte dictionary[][]) throws IOException {
+        final int size = vector.size();
+        for (int word = 0; word < (size + 63) >>> 6; word++) {
+            long bits = 0;
+            for (int bit = 0; bit < 64 && (word << 6) + bit < size; bit++) {
+                if (!vector.isNull((word << 6) + bit)) {
+                    bits |= 1L << bit;
+                }
+            }
+            output.writeLong(bits);
+        }
+        switch (vector.getType()) {
+        case INT:
+            for (int row = 0; row < size; row++) {
+                output.writeInt(vector.getInt(row));
+            }
+            break;
+        case LONG:
+            for (int row = 0; row < size; row++) {
+                output.writeLong(vector.getLong(row));
+            }
+            break;
+        case DOUBLE:
+            for (int row = 0; row < size; row++) {
+                output.writeDouble(vector.getDouble(row));
+            }
+            break;
+        default:
+            output.writeInt(dictionary.length);
+            for (int row = 0; row < size; row++) {
+                output.writeInt(Math.max(0, vector.getCode(row)));
+            }
+            int end = 0;
+            output.writeInt(end);
+            for (final byte s[] : dictionary) {
+                end += s.length;
+                output.writeInt(end);
+            }
+            for (final byte s[] : dictionary) {
+                output.write(s);
+            }
+        }
+    }
+
+    private static void pad(DataOutputStream output, long position, long offset) throws IOException {
+        for (long i = position; i < offset; i++) {
+            output.writeByte(0);
+        }
+    }
+
+    private static long align(long offset) {
+        return (offset + 7) & ~7L;
+    }
+
+    private ByteBuffer map(long offset, long length, long fileSize) throws IOException {
+        if (offset < 0 || length < 0 || offset + length > fileSize) {
+            throw new IOException("Truncated HXL snapshot");
+        }
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("HXL snapshot section too large to map: " + length + " bytes");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+    }
+
+    /**
+     * The mapped data for one column.
+     */
+    private final static class Section {
+
+        private final HXLColumn column;
+
+        private final HXLColumnVector.Type type;
+
+        private final ByteBuffer data;
+
+        private final int valuesOffset;
+
+        private final int endsOffset;
+
+        private final int bytesOffset;
+
+        private final String strings[];
+
+        Section(HXLColumn column, HXLColumnVector.Type type, ByteBuffer data, int rowCount) throws IOException {
+            this.column = column;
+            this.type = type;
+            this.data = data;
+            final int bitmapLength = ((rowCount + 63) >>> 6) << 3;
+            if (type == HXLColumnVector.Type.STRING) {
+                // dictionary size, codes, string end offsets, UTF-8 bytes
+                if (bitmapLength + 4L + 4L * rowCount > data.limit()) {
+                    throw new IOException("Truncated HXL snapshot column " + column.getTag());
+                }
+                final int dictionarySize = data.getInt(bitmapLength);
+                valuesOffset = bitmapLength + 4;
+                endsOffset = valuesOffset + 4 * rowCount;
+                if (dictionarySize < 0 || endsOffset + 4L * (dictionarySize + 1L) > data.limit()) {
+                    throw new IOException("Bad dictionary size in HXL snapshot column " + column.getTag() + ": " + dictionarySize);
+                }
+                bytesOffset = endsOffset + 4 * (dictionarySize + 1);
+                if (bytesOffset + (long) data.getInt(bytesOffset - 4) > data.limit()) {
+                    throw new IOException("Truncated HXL snapshot column " + column.getTag());
+                }
+                strings = new String[dictionarySize];
+            } else {
+                final long expected = bitmapLength + (type == HXLColumnVector.Type.INT ? 4L : 8L) * rowCount;
+                if (data.limit() != expected) {
+                    throw new IOException("HXL snapshot column " + column.getTag() + " has " + data.limit()
+                                          + " bytes, expected " + expected);
+                }
+                valuesOffset = bitmapLength;
+                endsOffset = bytesOffset = 0;
+                strings = null;
+            }
+        }
+
+        HXLValue getValue(int row, int rowNumber, int sourceRowNumber) {
+            if ((data.getLong((row >>> 6) << 3) & (1L << row)) == 0) {
+                return new HXLValue(column, "", rowNumber, sourceRowNumber);
+            }
+            switch (type) {
+            case INT:
+                return makeLong(data.getInt(valuesOffset + (row << 2)), rowNumber, sourceRowNumber);
+            case LONG:
+                return makeLong(data.getLong(valuesOffset + (row << 3)), rowNumber, sourceRowNumber);
+            case DOUBLE:
+                final HXLValue value = new HXLValue(column, null, rowNumber, sourceRowNumber);
+                value.initDouble(column, data.getDouble(valuesOffset + (row << 3)), rowNumber, sourceRowNumber);
+                return value;
+            default:
+                return new HXLValue(column, getString(data.getInt(valuesOffset + (row << 2))), rowNumber, sourceRowNumber);
+            }
+        }
+
+        private HXLValue makeLong(long n, int rowNumber, int sourceRowNumber) {
+            final HXLValue value = new HXLValue(column, null, rowNumber, sourceRowNumber);
+            value.initLong(column, n, rowNumber, sourceRowNumber);
+            return value;
+        }
+
+        /**
+         * Decode a dictionary entry, keeping it for later rows.
+         */
+        private String getString(int code) {
+            String s = strings[code];
+            if (s == null) {
+                final int start = data.getInt(endsOffset + (code << 2));
+                final int end = data.getInt(endsOffset + ((code + 1) << 2));
+                final byte bytes[] = new byte[end - start];
+                final ByteBuffer view = data.duplicate();
+                view.position(bytesOffset + start);
+                view.get(bytes);
+                s = new String(bytes, StandardCharsets.UTF_8);
+                strings[code] = s;
+            }
+            return s;
+        }
+
+    }
+
+}
@@ -0,0 +1,672 @@
+package org.hxlstandard;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Sorts HXL rows by the values of some hashtags, using temporary files
+ * when the data doesn't fit in memory.
+ *
+ * <p>The sorter reads its source into runs of rows up to a share of
+ * the memory budget, sorts each run, and writes it to a temporary
+ * file in a compact binary format. Once the source is finished, it
+ * merges the runs back together, reading one row at a time from each
+ * file, so the whole dataset is never in memory at once. If the
+ * source fits in a single run, nothing is written to disk.</p>
+ *
+ * <p>Example:</p>
+ *
+ * <pre>
+ * HXLSorter sorter = new HXLSorter(new HXLReader(input), "#adm1", "#date");
+ * sorter.setMemoryBudget(256L * 1024 * 1024);
+ * HXLRow row = sorter.read();
+ * while (row != null) {
+ *   // rows come back in order of #adm1, then #date
+ *   row = sorter.read();
+ * }
+ * sorter.close();
+ * </pre>
+ *
+ * <p>Values are compared as numbers when both are numeric (see {@link
+ * HXLValue#isNumeric()}), so "9" comes before "10"; numbers come
+ * before other values, which are compared as strings (so ISO 8601
+ * dates sort by date), and empty values come last. The sort is
+ * stable: rows with equal keys stay in their original order. Rows
+ * keep their row numbers and source row numbers.</p>
+ *
+ * <p>With a parallelism above 1, runs are sorted and written on a
+ * {@link ForkJoinPool} while the calling thread goes on reading the
+ * next run. Up to that many runs may be waiting or being written at
+ * once, so the memory budget is shared between them and the run being
+ * read.</p>
+ *
+ * @author David Megginson
+ */
+public class HXLSorter implements HXLRowSource {
+
+    /**
+     * Default memory budget, in bytes.
+     */
+    public final static long DEFAULT_MEMORY_BUDGET = 64L * 1024 * 1024;
+
+    private final static int BUFFER_SIZE = 64 * 1024;
+
+    private final HXLRowSource source;
+
+    private final String tags[];
+
+    private long memoryBudget = DEFAULT_MEMORY_BUDGET;
+
+    private int parallelism = 1;
+
+    private File tempDirectory;
+
+    private boolean descending;
+
+    private ForkJoinPool pool;
+
+    private List<HXLColumn> columns;
+
+    private HXLColumnIndex index;
+
+    private int keyColumns[];
+
+    private Comparator<Record> comparator;
+
+    private boolean sorted;
+
+    private List<Record> memoryRun;
+
+    private int memoryIndex;
+
+    private final List<File> files = new ArrayList<File>();
+
+    private final List<Run> runs = new ArrayList<Run>();
+
+    private PriorityQueue<Run> queue;
+
+    private boolean closed;
+
+    /**
+     * Create a sorter.
+     *
+     * @param source The rows to sort. Rows may be recycled objects
+     * (see {@link HXLReader#setReuseObjects(boolean)}).
+     * @param tags The HXL hashtags to sort by, most significant first.
+     * Each tag refers to the first column with that tag.
+     * @exception IllegalArgumentException if no tags are given.
+     */
+    public HXLSorter(HXLRowSource source, String... tags) {
+        if (source == null) {
+            throw new NullPointerException("source");
+        }
+        if (tags.length == 0) {
+            throw new IllegalArgumentException("A sort needs at least one tag");
+        }
+        this.source = source;
+        this.tags = tags.clone();
+    }
+
+    /**
+     * Set the approximate amount of heap to use for rows.
+     *
+     * @param bytes The memory budget, in bytes (default {@link
+     * #DEFAULT_MEMORY_BUDGET}).
+     */
+    public void setMemoryBudget(long bytes) {
+        if (bytes < 1) {
+            throw new IllegalArgumentException("Memory budget must be positive: " + bytes);
+        }
+        checkNotStarted();
+        this.memoryBudget = bytes;
+    }
+
+    /**
+     * Set the number of runs that may be sorted and written in the
+     * background.
+     *
+     * @param parallelism The number of pool threads, or 1 (the
+     * default) to do all of the work on the calling thread.
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        checkNotStarted();
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Set the pool for sorting runs in the background.
+     *
+     * @param pool The pool, or null (the default) to create one of the
+     * size given by {@link #setParallelism(int)}, which is shut down by
+     * {@link #close()}. The pool is used only if the parallelism is
+     * above 1.
+     */
+    public void setPool(ForkJoinPool pool) {
+        checkNotStarted();
+        this.pool = pool;
+    }
+
+    /**
+     * Set the directory for temporary files.
+     *
+     * @param directory The directory, or null (the default) for the
+     * system's temporary directory.
+     */
+    public void setTempDirectory(File directory) {
+        checkNotStarted();
+        this.tempDirectory = directory;
+    }
+
+    /**
+     * Sort from largest to smallest.
+     *
+     * <p>Empty values still come last.</p>
+     *
+     * @param descending true to reverse the order.
+     */
+    public void setDescending(boolean descending) {
+        checkNotStarted();
+        this.descending = descending;
+    }
+
+    /**
+     * Get the columns, which are the same as the source's.
+     *
+     * @return A list of HXL columns.
+     * @exception IOException if there is an error reading the hashtag
+     * row.
+     */
+    @Override
+    public List<HXLColumn> getColumns() throws IOException {
+        if (columns == null) {
+            columns = source.getColumns();
+            index = new HXLColumnIndex(columns);
+            keyColumns = new int[tags.length];
+            for (int i = 0; i < tags.length; i++) {
+                keyColumns[i] = index.getColumnNumber(tags[i]);
+            }
+            comparator = new RecordComparator(descending);
+        }
+        return columns;
+    }
+
+    /**
+     * Read the next row in sorted order.
+     *
+     * <p>The first call reads and sorts the whole source.</p>
+     *
+     * @return A row of HXL data, or null after the last row.
+     * @exception IOException if there is an error reading the source,
+     * or with the temporary files.
+     */
+    @Override
+    public HXLRow read() throws IOException {
+        if (closed) {
+            return null;
+        }
+        if (!sorted) {
+            sort();
+            sorted = true;
+        }
+        if (memoryRun != null) {
+            return (memoryIndex < memoryRun.size() ? toRow(memoryRun.get(memoryIndex++)) : null);
+        }
+        final Run run = queue.poll();
+        if (run == null) {
+            return null;
+        }
+        final HXLRow row = toRow(run.head);
+        if (run.advance()) {
+            queue.add(run);
+        } else {
+            run.close();
+        }
+        return row;
+    }
+
+    /**
+     * Close the source and delete any temporary files.
+     *
+     * @exception IOException if there is an error closing the source.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        memoryRun = null;
+        try {
+            for (final Run run : runs) {
+                run.close();
+            }
+        } finally {
+            for (final File file : files) {
+                file.delete();
+            }
+            source.close();
+        }
+    }
+
+    /**
+     * Get the number of runs written to temporary files.
+     *
+     * @return The number of runs, or 0 if the data was sorted in memory.
+     */
+    int getRunCount() {
+        return files.size();
+    }
+
+    /**
+     * Read the source into sorted runs.
+     */
+    private void sort() throws IOException {
+        getColumns();
+        final boolean background = (parallelism > 1);
+        final ForkJoinPool runPool = (background && pool == null ? new ForkJoinPool(parallelism) : pool);
+        // the run being read shares the budget with the ones being written
+        final long runBudget = Math.max(1, memoryBudget / (background ? parallelism + 1 : 1));
+        final ArrayDeque<Future<File>> pending = new ArrayDeque<Future<File>>();
+        try {
+            List<Record> run = new ArrayList<Record>();
+            long runBytes = 0;
+            HXLRow row = source.read();
+            while (row != null) {
+                final Record record = new Record(row, columns.size(), keyColumns);
+                run.add(record);
+                runBytes += record.estimateSize();
+                row = source.read();
+                if (runBytes >= runBudget && row != null) {
+                    if (background) {
+                        while (pending.size() >= parallelism) {
+                            files.add(getResult(pending.removeFirst()));
+                        }
+                        pending.add(runPool.submit(new SpillTask(run)));
+                    } else {
+                        files.add(spill(run));
+                    }
+                    run = new ArrayList<Record>();
+                    runBytes = 0;
+                }
+            }
+            if (files.isEmpty() && pending.isEmpty()) {
+                Collections.sort(run, comparator);
+                memoryRun = run;
+                return;
+            }
+            if (!run.isEmpty()) {
+                files.add(spill(run));
+            }
+            // keep the files in input order, for a stable merge
+            final File last = files.remove(files.size() - 1);
+            while (!pending.isEmpty()) {
+                files.add(getResult(pending.removeFirst()));
+            }
+            files.add(last);
+        } finally {
+            // only after a failure: a pool task can't be stopped once it
+            // has started, and a cancelled one may still write its file,
+            // so wait for each and remove what it wrote
+            for (final Future<File> future : pending) {
+                final File file = awaitQuietly(future);
+                if (file != null) {
+                    file.delete();
+                }
+            }
+            if (runPool != pool) {
+                runPool.shutdown();
+            }
+        }
+
+        queue = new PriorityQueue<Run>(Math.max(1, files.size()), new Comparator<Run>() {
+            @Override
+            public int compare(Run a, Run b) {
+                final int c = comparator.compare(a.head, b.head);
+                return (c != 0 ? c : Integer.compare(a.number, b.number));
+            }
+        });
+        for (int i = 0; i < files.size(); i++) {
+            final Run run = new Run(files.get(i), i, columns.size(), keyColumns);
+            runs.add(run);
+            if (run.advance()) {
+                queue.add(run);
+            } else {
+                run.close();
+            }
+        }
+    }
+
+    /**
+     * Sort a run and write it to a new temporary file.
+     */
+    private File spill(List<Record> run) throws IOException {
+        Collections.sort(run, comparator);
+        final File file = File.createTempFile("hxl-sort-", ".run", tempDirectory);
+        file.deleteOnExit();
+        boolean written = false;
+        try {
+            final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+            try {
+                for (final Record record : run) {
+                    record.write(output);
+                }
+            } finally {
+                output.close();
+            }
+            written = true;
+        } finally {
+            if (!written) {
+                file.delete();
+            }
+        }
+        return file;
+    }
+
+    private HXLRow toRow(Record record) {
+        final HXLRow row = new HXLRow(record.rowNumber, record.sourceRowNumber, index);
+        final List<HXLValue> values = row.getValuesModifiable();
+        for (int i = 0; i < record.contents.length; i++) {
+            if (record.contents[i] != null) {
+                values.add(new HXLValue(columns.get(i), record.contents[i], record.rowNumber, record.sourceRowNumber));
+            }
+        }
+        return row;
+    }
+
+    private void checkNotStarted() {
+        if (sorted) {
+            throw new IllegalStateException("Sorting has already started");
+        }
+    }
+
+    private File getResult(Future<File> future) throws IOException {
+        try {
+            return future.get();
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while sorting");
+        } catch (final ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new IOException(cause);
+            }
+        }
+    }
+
+    /**
+     * Wait for a run that is no longer wanted, ignoring its errors and
+     * any interruption (which is passed on afterwards).
+     *
+     * @return The run's file, or null if it wasn't written.
+     */
+    private static File awaitQuietly(Future<File> future) {
+        boolean interrupted = false;
+        try {
+            for (;;) {
+                try {
+                    return future.get();
+                } catch (final InterruptedException ex) {
+                    interrupted = true;
+                } catch (final ExecutionException ex) {
+                    return null;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Sorts and writes a run on the pool.
+     */
+    private class SpillTask implements Callable<File> {
+
+        private final List<Record> run;
+
+        SpillTask(List<Record> run) {
+            this.run = run;
+        }
+
+        @Override
+        public File call() throws IOException {
+            return spill(run);
+        }
+
+    }
+
+    /**
+     * The content of one row, with its sort keys.
+     *
+     * <p>In a run file, a record is the row number and source row
+     * number, the numeric value of each key (NaN if it isn't a
+     * number), and then each column's content as a variable-length
+     * byte count (0 for no value, otherwise the UTF-8 length plus 1)
+     * followed by the UTF-8 bytes.</p>
+     */
+    private final static class Record {
+
+        final int rowNumber;
+
+        final int sourceRowNumber;
+
+        final String contents[];
+
+        final String keys[];
+
+        final double numbers[];
+
+        Record(HXLRow row, int columnCount, int keyColumns[]) {
+            rowNumber = row.getRowNumber();
+            sourceRowNumber = row.getSourceRowNumber();
+            contents = new String[columnCount];
+            keys = new String[keyColumns.length];
+            numbers = new double[keyColumns.length];
+            Arrays.fill(numbers, Double.NaN);
+            for (final HXLValue value : row.getValues()) {
+                final int n = value.getColumnNumber();
+                if (n < columnCount) {
+                    contents[n] = value.getContent();
+                    for (int i = 0; i < keyColumns.length; i++) {
+                        if (keyColumns[i] == n) {
+                            keys[i] = contents[n];
+                            if (value.isNumeric()) {
+                                numbers[i] = value.asDouble();
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        Record(DataInputStream input, int columnCount, int keyColumns[]) throws IOException {
+            rowNumber = input.readInt();
+            sourceRowNumber = input.readInt();
+            numbers = new double[keyColumns.length];
+            for (int i = 0; i < numbers.length; i++) {
+                numbers[i] = input.readDouble();
+            }
+            contents = new String[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                final int length = readLength(input) - 1;
+                if (length >= 0) {
+                    final byte bytes[] = new byte[length];
+                    input.readFully(bytes);
+                    contents[i] = new String(bytes, StandardCharsets.UTF_8);
+                }
+            }
+            keys = new String[keyColumns.length];
+            for (int i = 0; i < keyColumns.length; i++) {
+                keys[i] = (keyColumns[i] == -1 ? null : contents[keyColumns[i]]);
+            }
+        }
+
+        void write(DataOutputStream output) throws IOException {
+            output.writeInt(rowNumber);
+            output.writeInt(sourceRowNumber);
+            for (final double number : numbers) {
+                output.writeDouble(number);
+            }
+            for (final String content : contents) {
+                if (content == null) {
+                    output.writeByte(0);
+                } else {
+                    final byte bytes[] = content.getBytes(StandardCharsets.UTF_8);
+                    writeLength(output, bytes.length + 1);
+                    output.write(bytes);
+                }
+            }
+        }
+
+        /**
+         * Guess the heap used by the record.
+         */
+        long estimateSize() {
+            long size = 64 + 16L * contents.length + 24L * keys.length;
+            for (final String content : contents) {
+                if (content != null) {
+                    size += 40 + content.length();
+                }
+            }
+            return size;
+        }
+
+        private static void writeLength(DataOutputStream output, int n) throws IOException {
+            while ((n & ~0x7f) != 0) {
+                output.writeByte((n & 0x7f) | 0x80);
+                n >>>= 7;
+            }
+            output.writeByte(n);
+        }
+
+        private static int readLength(DataInputStream input) throws IOException {
+            int n = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                final int b = input.readUnsignedByte();
+                n |= (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return n;
+                }
+            }
+            throw new IOException("Bad length in sort run");
+        }
+
+    }
+
+    /**
+     * Compares records by their keys.
+     */
+    private final static class RecordComparator implements Comparator<Record> {
+
+        private final boolean descending;
+
+        RecordComparator(boolean descending) {
+            this.descending = descending;
+        }
+
+        @Override
+        public int compare(Record a, Record b) {
+            for (int i = 0; i < a.keys.length; i++) {
+                final String sa = a.keys[i];
+                final String sb = b.keys[i];
+                final boolean emptyA = (sa == null || sa.length() == 0);
+                final boolean emptyB = (sb == null || sb.length() == 0);
+                if (emptyA || emptyB) {
+                    if (emptyA != emptyB) {
+                        return (emptyA ? 1 : -1);
+                    }
+                    continue;
+                }
+                final double na = a.numbers[i];
+                final double nb = b.numbers[i];
+                int c;
+                if (!Double.isNaN(na) && !Double.isNaN(nb)) {
+                    c = Double.compare(na, nb);
+                } else if (!Double.isNaN(na) || !Double.isNaN(nb)) {
+                    c = (Double.isNaN(na) ? 1 : -1);
+                } else {
+                    c = sa.compareTo(sb);
+                }
+                if (c != 0) {
+                    return (descending ? -c : c);
+                }
+            }
+            return 0;
+        }
+
+    }
+
+    /**
+     * A sorted run being read back from its file.
+     */
+    private final static class Run {
+
+        final int number;
+
+        private final DataInputStream input;
+
+        private final int columnCount;
+
+        private final int keyColumns[];
+
+        Record head;
+
+        Run(File file, int number, int columnCount, int keyColumns[]) throws IOException {
+            this.number = number;
+            this.input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+            this.columnCount = columnCount;
+            this.keyColumns = keyColumns;
+        }
+
+        /**
+         * Read the next record into {@link #head}.
+         *
+         * @return false at the end of the run.
+         */
+        boolean advance() throws IOException {
+            try {
+                head = new Record(input, columnCount, keyColumns);
+                return true;
+            } catch (final EOFException e) {
+                head = null;
+                return false;
+            }
+        }
+
+        void close() throws IOException {
+            input.close();
+        }
+
+    }
+
+}
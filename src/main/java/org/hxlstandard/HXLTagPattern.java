@@ -0,0 +1,246 @@
+package org.hxlstandard;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A compiled pattern for choosing HXL columns by hashtag and
+ * attributes.
+ *
+ * <p>A pattern is a hashtag followed by attributes that a column must
+ * have ("+f") or must not have ("-adults"). For example,
+ * "#affected+f-adults" matches "#affected+f+children" and
+ * "#affected+children+f", but not "#affected+f+adults" or
+ * "#affected+m". The order of attributes doesn't matter, and a
+ * column may have attributes the pattern doesn't mention.</p>
+ *
+ * <p>Compile a pattern once and reuse it: matching compares the
+ * interned hashtag by reference and the attributes as bitsets (see
+ * {@link HXLTagSpec}), so it does no string operations.</p>
+ *
+ * <pre>
+ * HXLTagPattern pattern = HXLTagPattern.compile("#affected+f-adults");
+ * for (HXLColumn column : reader.getColumns()) {
+ *   if (pattern.matches(column)) {
+ *     // ...
+ *   }
+ * }
+ * </pre>
+ *
+ * @author David Megginson
+ */
+public final class HXLTagPattern {
+
+    private final String pattern;
+
+    private final String hashtag;
+
+    private final List<String> include;
+
+    private final List<String> exclude;
+
+    private final long includeBits[];
+
+    private final long excludeBits[];
+
+    private final boolean unnumbered;
+
+    private HXLTagPattern(String pattern, String hashtag, List<String> include, List<String> exclude) {
+        this.pattern = pattern;
+        this.hashtag = hashtag.intern();
+        this.include = include;
+        this.exclude = exclude;
+        boolean unnumbered = false;
+        long includeBits[] = new long[0];
+        for (final String attribute : include) {
+            final int id = HXLTagSpec.getAttributeId(attribute);
+            if (id < 0) {
+                unnumbered = true;
+            } else {
+                includeBits = setBit(includeBits, id);
+            }
+        }
+        long excludeBits[] = new long[0];
+        for (final String attribute : exclude) {
+            final int id = HXLTagSpec.getAttributeId(attribute);
+            if (id < 0) {
+                unnumbered = true;
+            } else {
+                excludeBits = setBit(excludeBits, id);
+            }
+        }
+        this.includeBits = includeBits;
+        this.excludeBits = excludeBits;
+        this.unnumbered = unnumbered;
+    }
+
+    /**
+     * Compile a tag pattern.
+     *
+     * @param pattern The pattern (e.g. "#affected+f-adults").
+     * Whitespace between the parts and case are ignored.
+     * @return The compiled pattern.
+     * @exception IllegalArgumentException if the pattern isn't valid.
+     */
+    public static HXLTagPattern compile(String pattern) {
+        final String s = pattern.trim().toLowerCase(Locale.ROOT);
+        final List<String> include = new ArrayList<String>();
+        final List<String> exclude = new ArrayList<String>();
+        int i = 0;
+        int end = nameEnd(s, 1);
+        if (!s.startsWith("#") || end == 1) {
+            throw new IllegalArgumentException("Bad HXL tag pattern: " + pattern);
+        }
+        final String hashtag = s.substring(0, end);
+        i = skipSpace(s, end);
+        while (i < s.length()) {
+            final char sign = s.charAt(i);
+            final int start = skipSpace(s, i + 1);
+            end = nameEnd(s, start);
+            if ((sign != '+' && sign != '-') || end == start) {
+                throw new IllegalArgumentException("Bad HXL tag pattern: " + pattern);
+            }
+            (sign == '+' ? include : exclude).add(s.substring(start, end));
+            i = skipSpace(s, end);
+        }
+        return new HXLTagPattern(pattern, hashtag, Collections.unmodifiableList(include), Collections.unmodifiableList(exclude));
+    }
+
+    /**
+     * Test whether a column matches.
+     *
+     * @param column The column to test.
+     * @return true if the column has the pattern's hashtag, all of its
+     * required attributes, and none of its excluded ones.
+     */
+    public boolean matches(HXLColumn column) {
+        return matches(column.getTagSpec());
+    }
+
+    /**
+     * Test whether a tag spec matches.
+     *
+     * @param spec The tag spec to test.
+     * @return true if the spec has the pattern's hashtag, all of its
+     * required attributes, and none of its excluded ones.
+     */
+    public boolean matches(HXLTagSpec spec) {
+        if (spec.getHashtag() != hashtag) {
+            return false;
+        }
+        if (unnumbered || spec.hasUnnumberedAttributes()) {
+            return matchesByName(spec);
+        }
+        final long bits[] = spec.getAttributeBits();
+        for (int i = 0; i < includeBits.length; i++) {
+            final long word = (i < bits.length ? bits[i] : 0);
+            if ((word & includeBits[i]) != includeBits[i]) {
+                return false;
+            }
+        }
+        for (int i = 0; i < excludeBits.length && i < bits.length; i++) {
+            if ((bits[i] & excludeBits[i]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Find the first matching column.
+     *
+     * @param columns The columns to search.
+     * @return The position of the first match in the list, or -1 if
+     * none matches.
+     */
+    public int find(List<HXLColumn> columns) {
+        for (int i = 0; i < columns.size(); i++) {
+            if (matches(columns.get(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get the hashtag the pattern matches.
+     *
+     * @return The hashtag, in lower case.
+     */
+    public String getHashtag() {
+        return hashtag;
+    }
+
+    /**
+     * Get the attributes a column must have.
+     *
+     * @return A read-only list of attribute names.
+     */
+    public List<String> getIncludedAttributes() {
+        return include;
+    }
+
+    /**
+     * Get the attributes a column must not have.
+     *
+     * @return A read-only list of attribute names.
+     */
+    public List<String> getExcludedAttributes() {
+        return exclude;
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+
+    private boolean matchesByName(HXLTagSpec spec) {
+        final List<String> attributes = spec.getAttributes();
+        for (final String attribute : include) {
+            if (!attributes.contains(attribute)) {
+                return false;
+            }
+        }
+        for (final String attribute : exclude) {
+            if (attributes.contains(attribute)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long[] setBit(long bits[], int id) {
+        if ((id >> 6) >= bits.length) {
+            bits = Arrays.copyOf(bits, (id >> 6) + 1);
+        }
+        bits[id >> 6] |= 1L << id;
+        return bits;
+    }
+
+    private static int nameEnd(String s, int start) {
+        if (start >= s.length() || s.charAt(start) < 'a' || s.charAt(start) > 'z') {
+            return start;
+        }
+        int i = start + 1;
+        while (i < s.length()) {
+            final char c = s.charAt(i);
+            if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '_') {
+                i++;
+            } else {
+                break;
+            }
+        }
+        return i;
+    }
+
+    private static int skipSpace(String s, int i) {
+        while (i < s.length() && (s.charAt(i) == ' ' || s.charAt(i) == '\t')) {
+            i++;
+        }
+        return i;
+    }
+
+}
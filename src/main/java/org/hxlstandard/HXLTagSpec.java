@@ -0,0 +1,356 @@
+package org.hxlstandard;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A parsed HXL hashtag specification, such as "#affected+f+children".
+ *
+ * <p>A tag spec has a hashtag ("#affected"), zero or more attributes
+ * ("f", "children"), and, in the older HXL 1.0 style, a language code
+ * after a slash ("#sector/en"). Whitespace is allowed between the
+ * parts, and case doesn't matter: the spec is normalised to lower
+ * case, with duplicate attributes removed. Attributes keep the order
+ * they were written in, so {@link #getTag()} gives back something
+ * close to the original header.</p>
+ *
+ * <p>Parsed specs are immutable and canonical: {@link #parse(String)}
+ * keeps them in a cache shared by the whole JVM, so each distinct
+ * header string in a program is parsed once, and every column with
+ * the same header shares one spec. Each spec also carries a bitset of
+ * its attributes, which {@link HXLTagPattern} uses to match columns
+ * without comparing strings.</p>
+ *
+ * @author David Megginson
+ * @see HXLColumn#getTagSpec()
+ */
+public final class HXLTagSpec {
+
+    /**
+     * The largest number of header strings kept in the cache; others
+     * are parsed each time.
+     */
+    private final static int MAX_CACHE_SIZE = 10000;
+
+    /**
+     * The largest number of distinct attributes given a bit; others
+     * are matched by name.
+     */
+    private final static int MAX_ATTRIBUTES = 4096;
+
+    private final static ConcurrentHashMap<String,HXLTagSpec> cache = new ConcurrentHashMap<String,HXLTagSpec>();
+
+    private final static ConcurrentHashMap<String,Integer> attributeIds = new ConcurrentHashMap<String,Integer>();
+
+    private final static AtomicInteger nextAttributeId = new AtomicInteger();
+
+    private final static long NO_BITS[] = new long[0];
+
+    private final String tag;
+
+    private final String hashtag;
+
+    private final List<String> attributes;
+
+    private final String lang;
+
+    private final long attributeBits[];
+
+    private final boolean unnumbered;
+
+    private HXLTagSpec(String hashtag, List<String> attributes, String lang) {
+        this.hashtag = hashtag.intern();
+        this.attributes = attributes;
+        this.lang = (lang == null ? null : lang.intern());
+        final StringBuilder tag = new StringBuilder(hashtag);
+        long bits[] = NO_BITS;
+        boolean unnumbered = false;
+        for (final String attribute : attributes) {
+            tag.append('+').append(attribute);
+            final int id = getAttributeId(attribute);
+            if (id < 0) {
+                unnumbered = true;
+            } else {
+                if ((id >> 6) >= bits.length) {
+                    bits = Arrays.copyOf(bits, (id >> 6) + 1);
+                }
+                bits[id >> 6] |= 1L << id;
+            }
+        }
+        this.tag = tag.toString().intern();
+        this.attributeBits = bits;
+        this.unnumbered = unnumbered;
+    }
+
+    /**
+     * Parse a HXL tag spec.
+     *
+     * @param s The text of a hashtag row cell (e.g. "#org+impl" or
+     * "#sector/en").
+     * @return The canonical spec, or null if the text isn't a valid
+     * tag spec.
+     */
+    public static HXLTagSpec parse(String s) {
+        HXLTagSpec spec = cache.get(s);
+        if (spec == null) {
+            spec = doParse(s);
+            if (spec != null && cache.size() < MAX_CACHE_SIZE) {
+                final HXLTagSpec existing = cache.putIfAbsent(s, spec);
+                if (existing != null) {
+                    spec = existing;
+                }
+            }
+        }
+        return spec;
+    }
+
+    /**
+     * Get the spec for a column's tag, even if it isn't valid HXL.
+     *
+     * <p>Text that doesn't parse becomes a spec with the whole text as
+     * its hashtag and no attributes, so that columns made up by
+     * client code keep working.</p>
+     */
+    static HXLTagSpec forColumn(String s) {
+        final HXLTagSpec spec = parse(s);
+        return (spec != null ? spec : new HXLTagSpec(s, Collections.<String>emptyList(), null));
+    }
+
+    /**
+     * Test whether a field of the tokenizer's current record is a
+     * valid tag spec, without making a string of it.
+     *
+     * @param tokenizer The tokenizer.
+     * @param field The index of the field in the current record.
+     * @return true if the field would parse.
+     */
+    static boolean isTagSpec(HXLTokenizer tokenizer, int field) {
+        final int length = tokenizer.getFieldLength(field);
+        int i = 0;
+        while (i < length && isSpace(tokenizer.getFieldChar(field, i))) {
+            i++;
+        }
+        if (i >= length || tokenizer.getFieldChar(field, i) != '#') {
+            return false;
+        }
+        char prefix = '#';
+        for (;;) {
+            // a name after '#', '+' or '/'
+            i++;
+            while (i < length && isSpace(tokenizer.getFieldChar(field, i)) && prefix != '#') {
+                i++;
+            }
+            if (i >= length || !isLetter(tokenizer.getFieldChar(field, i))) {
+                return false;
+            }
+            do {
+                i++;
+            } while (i < length && isNameChar(tokenizer.getFieldChar(field, i), prefix == '/'));
+            while (i < length && isSpace(tokenizer.getFieldChar(field, i))) {
+                i++;
+            }
+            if (i >= length) {
+                return true;
+            }
+            final char c = tokenizer.getFieldChar(field, i);
+            if (prefix == '/' || (c != '+' && c != '/')) {
+                return false;
+            }
+            prefix = c;
+        }
+    }
+
+    /**
+     * Get the hashtag with its attributes, but not its language.
+     *
+     * @return The normalised tag (e.g. "#affected+f+children").
+     */
+    public String getTag() {
+        return tag;
+    }
+
+    /**
+     * Get the bare hashtag.
+     *
+     * @return The hashtag without attributes (e.g. "#affected"). The
+     * string is interned.
+     */
+    public String getHashtag() {
+        return hashtag;
+    }
+
+    /**
+     * Get the attributes.
+     *
+     * @return A read-only list of attribute names without the "+", in
+     * the order written.
+     */
+    public List<String> getAttributes() {
+        return attributes;
+    }
+
+    /**
+     * Test for an attribute.
+     *
+     * @param attribute The attribute name, with or without the "+".
+     * @return true if the spec has the attribute.
+     */
+    public boolean hasAttribute(String attribute) {
+        final String name = normalise(attribute.startsWith("+") ? attribute.substring(1) : attribute);
+        return attributes.contains(name);
+    }
+
+    /**
+     * Get the language code from the HXL 1.0 "/lang" syntax.
+     *
+     * @return The language code, or null if none was given.
+     */
+    public String getLang() {
+        return lang;
+    }
+
+    @Override
+    public String toString() {
+        return (lang == null ? tag : tag + "/" + lang);
+    }
+
+    /**
+     * Get the bit for each attribute, indexed by {@link
+     * #getAttributeId(String)}.
+     */
+    long[] getAttributeBits() {
+        return attributeBits;
+    }
+
+    /**
+     * Test whether some attributes have no bit, because there were too
+     * many distinct attributes.
+     */
+    boolean hasUnnumberedAttributes() {
+        return unnumbered;
+    }
+
+    /**
+     * Get the bit number shared by every use of an attribute.
+     *
+     * @param attribute The normalised attribute name.
+     * @return The bit number, or -1 if the table is full.
+     */
+    static int getAttributeId(String attribute) {
+        final Integer id = attributeIds.get(attribute);
+        if (id != null) {
+            return id;
+        }
+        synchronized (attributeIds) {
+            final Integer existing = attributeIds.get(attribute);
+            if (existing != null) {
+                return existing;
+            }
+            if (nextAttributeId.get() >= MAX_ATTRIBUTES) {
+                return -1;
+            }
+            final int newId = nextAttributeId.getAndIncrement();
+            attributeIds.put(attribute, newId);
+            return newId;
+        }
+    }
+
+    /**
+     * Split a tag spec into its parts.
+     *
+     * @return The new spec, or null if the text isn't a tag spec.
+     */
+    private static HXLTagSpec doParse(String s) {
+        final int length = s.length();
+        int i = skipSpace(s, 0);
+        if (i >= length || s.charAt(i) != '#') {
+            return null;
+        }
+        int end = scanName(s, i + 1, false);
+        if (end < 0) {
+            return null;
+        }
+        final String hashtag = normalise(s.substring(i, end));
+        List<String> attributes = null;
+        String lang = null;
+        i = skipSpace(s, end);
+        while (i < length && s.charAt(i) == '+') {
+            final int start = skipSpace(s, i + 1);
+            end = scanName(s, start, false);
+            if (end < 0) {
+                return null;
+            }
+            final String attribute = normalise(s.substring(start, end));
+            if (attributes == null) {
+                attributes = new ArrayList<String>(2);
+            }
+            if (!attributes.contains(attribute)) {
+                attributes.add(attribute);
+            }
+            i = skipSpace(s, end);
+        }
+        if (i < length && s.charAt(i) == '/') {
+            final int start = skipSpace(s, i + 1);
+            end = scanName(s, start, true);
+            if (end < 0) {
+                return null;
+            }
+            lang = normalise(s.substring(start, end));
+            i = skipSpace(s, end);
+        }
+        if (i < length) {
+            return null;
+        }
+        return new HXLTagSpec(hashtag, (attributes == null ? Collections.<String>emptyList() : Collections.unmodifiableList(attributes)), lang);
+    }
+
+    /**
+     * Find the end of a name.
+     *
+     * @return The offset after the name, or -1 if there's no name.
+     */
+    private static int scanName(String s, int start, boolean lang) {
+        if (start >= s.length() || !isLetter(s.charAt(start))) {
+            return -1;
+        }
+        int i = start + 1;
+        while (i < s.length() && isNameChar(s.charAt(i), lang)) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int skipSpace(String s, int i) {
+        while (i < s.length() && isSpace(s.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static String normalise(String name) {
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) >= 'A' && name.charAt(i) <= 'Z') {
+                return name.toLowerCase(Locale.ROOT);
+            }
+        }
+        return name;
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isNameChar(char c, boolean lang) {
+        return isLetter(c) || (c >= '0' && c <= '9') || (lang ? c == '-' : c == '_');
+    }
+
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t';
+    }
+
+}
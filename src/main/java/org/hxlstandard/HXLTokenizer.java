@@ -0,0 +1,99 @@
+package org.hxlstandard;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Low-level source of raw records for {@link HXLReader}.
+ *
+ * <p>A tokenizer splits its input into records and fields, but
+ * doesn't know anything about HXL. After each successful call to
+ * {@link #next()}, the fields of the current record are available
+ * through the accessor methods until the following call to {@link
+ * #next()}. Implementations are free to reuse their internal buffers
+ * between records, so field content is materialised as a string only
+ * when the client asks for it with {@link #getField(int)}.</p>
+ *
+ * <p>Example:</p>
+ *
+ * <pre>
+ * HXLTokenizer tokenizer = new HXLCSVTokenizer(input);
+ * while (tokenizer.next() != -1) {
+ *   for (int i = 0; i &lt; tokenizer.getFieldCount(); i++) {
+ *     // do something with tokenizer.getField(i)
+ *   }
+ * }
+ * </pre>
+ *
+ * @author David Megginson
+ * @see HXLCSVTokenizer
+ * @see HXLOpenCSVTokenizer
+ */
+public interface HXLTokenizer extends Closeable {
+
+    /**
+     * Advance to the next raw record.
+     *
+     * @return The number of fields in the record, or -1 if the input
+     * is finished.
+     * @exception IOException if there is an error reading or parsing
+     * the input.
+     */
+    int next() throws IOException;
+
+    /**
+     * Get the number of fields in the current record.
+     *
+     * @return The field count, or 0 if there is no current record.
+     */
+    int getFieldCount();
+
+    /**
+     * Get the content of a field in the current record.
+     *
+     * @param index The zero-based field index.
+     * @return The field content as a new or shared string.
+     * @exception IndexOutOfBoundsException if the index is not less
+     * than {@link #getFieldCount()}.
+     */
+    String getField(int index);
+
+    /**
+     * Get the length of a field without materialising its content.
+     *
+     * @param index The zero-based field index.
+     * @return The length of the field content in characters.
+     * @exception IndexOutOfBoundsException if the index is not less
+     * than {@link #getFieldCount()}.
+     */
+    int getFieldLength(int index);
+
+    /**
+     * Get a single character of a field without materialising its
+     * content.
+     *
+     * @param index The zero-based field index.
+     * @param offset The zero-based character offset inside the field.
+     * @return The character at the offset.
+     * @exception IndexOutOfBoundsException if the index is not less
+     * than {@link #getFieldCount()} or the offset is not less than
+     * {@link #getFieldLength(int)}.
+     */
+    char getFieldChar(int index, int offset);
+
+    /**
+     * Get the amount of input consumed so far, up to the end of the
+     * current record.
+     *
+     * <p>The unit is whatever the tokenizer reads: bytes for a
+     * tokenizer over a file, or characters for one over a {@link
+     * java.io.Reader}. The default implementation doesn't keep
+     * count.</p>
+     *
+     * @return The input offset, or -1 if unknown.
+     */
+    default long getInputOffset() {
+        return -1;
+    }
+
+}
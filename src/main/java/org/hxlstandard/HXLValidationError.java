@@ -0,0 +1,120 @@
+package org.hxlstandard;
+
+/**
+ * A value that broke a rule of an {@link HXLValidator}.
+ *
+ * <p>An error keeps copies of everything it reports, so it stays valid
+ * even when the rows were recycled by the reader (see {@link
+ * HXLReader#setReuseObjects(boolean)}).</p>
+ *
+ * @author David Megginson
+ */
+public class HXLValidationError {
+
+    private final HXLColumn column;
+
+    private final String content;
+
+    private final String message;
+
+    private final int rowNumber;
+
+    private final int sourceRowNumber;
+
+    /**
+     * Create a new error.
+     *
+     * @param column The column with the bad value, or null for an
+     * error about the dataset as a whole.
+     * @param content The bad value's content ("" for a missing value).
+     * @param message What the value should have been (e.g. "must be a
+     * date").
+     * @param rowNumber The logical row number, or -1 for an error
+     * about the columns.
+     * @param sourceRowNumber The source row number, or -1.
+     */
+    public HXLValidationError(HXLColumn column, String content, String message, int rowNumber, int sourceRowNumber) {
+        this.column = column;
+        this.content = content;
+        this.message = message;
+        this.rowNumber = rowNumber;
+        this.sourceRowNumber = sourceRowNumber;
+    }
+
+    /**
+     * Get the column with the bad value.
+     *
+     * @return The column, or null for an error about the dataset as a
+     * whole (such as a missing required column).
+     */
+    public HXLColumn getColumn() {
+        return column;
+    }
+
+    /**
+     * Get the content of the bad value.
+     *
+     * @return The content, or "" if the value was missing.
+     */
+    public String getContent() {
+        return content;
+    }
+
+    /**
+     * Get the rule that the value broke.
+     *
+     * @return A description of what the value should have been.
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * Get the logical row number.
+     *
+     * @return The zero-based row number, or -1 for an error about the
+     * columns.
+     */
+    public int getRowNumber() {
+        return rowNumber;
+    }
+
+    /**
+     * Get the row number in the source data.
+     *
+     * @return The zero-based source row number, or -1 for an error
+     * about the columns.
+     */
+    public int getSourceRowNumber() {
+        return sourceRowNumber;
+    }
+
+    /**
+     * Get the column number in the source data.
+     *
+     * @return The zero-based source column number, or -1 if unknown.
+     */
+    public int getSourceColumnNumber() {
+        return (column == null ? -1 : column.getSourceColumnNumber());
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder s = new StringBuilder();
+        if (sourceRowNumber >= 0) {
+            s.append("Row ").append(sourceRowNumber + 1);
+            if (getSourceColumnNumber() >= 0) {
+                s.append(", column ").append(getSourceColumnNumber() + 1);
+            }
+            s.append(": ");
+        }
+        if (column != null) {
+            s.append(column.getTag()).append(' ');
+        }
+        if (content.length() > 0) {
+            s.append('"').append(content).append("\" ");
+        }
+        return s.append(message).toString();
+    }
+
+}
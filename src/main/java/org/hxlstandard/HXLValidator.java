@@ -0,0 +1,516 @@
+package org.hxlstandard;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Checks HXL rows against a set of rules while they are read.
+ *
+ * <p>Each rule applies to the columns that match a tag pattern (see
+ * {@link HXLTagPattern}), so a rule for "#affected" covers
+ * "#affected+f" and "#affected+m" too. Rules are compiled against a
+ * dataset's columns once, before the first row: each column gets the
+ * list of rules that apply to it, and a row is checked by looking up
+ * only those columns. Number and date rules use the parsing cached in
+ * {@link HXLValue}, so a value is parsed at most once.</p>
+ *
+ * <p>Example:</p>
+ *
+ * <pre>
+ * HXLValidator validator = new HXLValidator()
+ *   .required("#adm1")
+ *   .allowedValues("#adm1", adminNames)
+ *   .integer("#affected", 0, Long.MAX_VALUE)
+ *   .date("#date")
+ *   .setMaxErrors(100);
+ * HXLValidator.Report report = validator.validate(new HXLReader(input));
+ * for (HXLValidationError error : report.getErrors()) {
+ *   System.err.println(error);
+ * }
+ * </pre>
+ *
+ * <p>To validate while doing something else with the rows, use {@link
+ * #check(HXLRowSource)} (or {@link HXLPipeline#validate(HXLValidator)})
+ * as a step in a pipeline. To validate on several threads, pass a
+ * parallel stream to {@link #validate(List, Stream)}.</p>
+ *
+ * <p>An empty value breaks only the {@link #required(String)} rule; the
+ * other rules skip it. A validator can be used for many datasets, and
+ * from several threads at once once its rules are set up.</p>
+ *
+ * @author David Megginson
+ */
+public class HXLValidator {
+
+    /**
+     * Default number of errors after which validation stops.
+     */
+    public final static int DEFAULT_MAX_ERRORS = 1000;
+
+    private final List<Rule> rules = new ArrayList<Rule>();
+
+    private int maxErrors = DEFAULT_MAX_ERRORS;
+
+    /**
+     * Require a non-empty value in every row.
+     *
+     * <p>It is also an error for no column to match the pattern.</p>
+     *
+     * @param pattern A tag pattern (e.g. "#adm1").
+     * @return This validator.
+     */
+    public HXLValidator required(String pattern) {
+        rules.add(new Rule(HXLTagPattern.compile(pattern), null, "is required"));
+        return this;
+    }
+
+    /**
+     * Allow only values from a list.
+     *
+     * @param pattern A tag pattern.
+     * @param values The allowed values, compared exactly.
+     * @return This validator.
+     */
+    public HXLValidator allowedValues(String pattern, Collection<String> values) {
+        final Set<String> allowed = new HashSet<String>(values);
+        return rule(pattern, value -> allowed.contains(value.getContent()), "is not an allowed value");
+    }
+
+    /**
+     * Allow only whole numbers in a range.
+     *
+     * @param pattern A tag pattern.
+     * @param min The smallest allowed number.
+     * @param max The largest allowed number.
+     * @return This validator.
+     */
+    public HXLValidator integer(String pattern, final long min, final long max) {
+        return rule(pattern, value -> value.isInteger() && value.asLong() >= min && value.asLong() <= max,
+                    "must be an integer" + describeRange(min, max, Long.MIN_VALUE, Long.MAX_VALUE));
+    }
+
+    /**
+     * Allow only numbers in a range.
+     *
+     * @param pattern A tag pattern.
+     * @param min The smallest allowed number.
+     * @param max The largest allowed number.
+     * @return This validator.
+     */
+    public HXLValidator number(String pattern, final double min, final double max) {
+        return rule(pattern, value -> value.isNumeric() && value.asDouble() >= min && value.asDouble() <= max,
+                    "must be a number" + describeRange(min, max, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY));
+    }
+
+    /**
+     * Allow only ISO 8601 dates (YYYY-MM-DD).
+     *
+     * @param pattern A tag pattern.
+     * @return This validator.
+     */
+    public HXLValidator date(String pattern) {
+        return rule(pattern, HXLValue::isDate, "must be an ISO 8601 date");
+    }
+
+    /**
+     * Allow only values matching a regular expression.
+     *
+     * @param pattern A tag pattern.
+     * @param regex A regular expression that must match the whole
+     * value.
+     * @return This validator.
+     */
+    public HXLValidator regex(String pattern, String regex) {
+        final Pattern compiled = Pattern.compile(regex);
+        return rule(pattern, value -> compiled.matcher(value.getContent()).matches(), "must match " + regex);
+    }
+
+    /**
+     * Add a custom rule.
+     *
+     * @param pattern A tag pattern.
+     * @param test A test for non-empty values, which must be safe to
+     * call from several threads.
+     * @param message What a value should be, for the error report
+     * (e.g. "must be a P-code").
+     * @return This validator.
+     */
+    public HXLValidator rule(String pattern, Predicate<? super HXLValue> test, String message) {
+        if (test == null) {
+            throw new NullPointerException("test");
+        }
+        rules.add(new Rule(HXLTagPattern.compile(pattern), test, message));
+        return this;
+    }
+
+    /**
+     * Set the number of errors after which validation stops.
+     *
+     * @param maxErrors The largest number of errors to report (default
+     * {@link #DEFAULT_MAX_ERRORS}).
+     * @return This validator.
+     */
+    public HXLValidator setMaxErrors(int maxErrors) {
+        if (maxErrors < 1) {
+            throw new IllegalArgumentException("Error limit must be positive: " + maxErrors);
+        }
+        this.maxErrors = maxErrors;
+        return this;
+    }
+
+    /**
+     * Check rows as they pass through a pipeline step.
+     *
+     * <p>The step returns the source's rows unchanged, and ends early
+     * once the error limit is reached.</p>
+     *
+     * @param source The rows to check.
+     * @return A pipeline step that records the errors it finds.
+     */
+    public Check check(HXLRowSource source) {
+        return new Check(this, source);
+    }
+
+    /**
+     * Check every row from a source.
+     *
+     * <p>Reading stops early if the error limit is reached. The source
+     * is not closed.</p>
+     *
+     * @param source The rows to check.
+     * @return The errors found.
+     * @exception IOException if there is an error reading the source.
+     */
+    public Report validate(HXLRowSource source) throws IOException {
+        final Check check = new Check(this, source);
+        while (check.read() != null) {
+            // the check records the errors
+        }
+        return check.getReport();
+    }
+
+    /**
+     * Check a stream of rows, which may be parallel.
+     *
+     * <p>With a parallel stream (such as <code>reader.stream().parallel()</code>),
+     * each thread checks its own batches of rows. The stream stops
+     * soon after the error limit is reached, but the rows already
+     * being checked finish first, so in parallel the errors reported
+     * are not always the first ones in the data. Errors are sorted by
+     * source row and column.</p>
+     *
+     * @param columns The columns of the rows.
+     * @param rows The rows to check.
+     * @return The errors found.
+     */
+    public Report validate(List<HXLColumn> columns, Stream<HXLRow> rows) {
+        final Compiled compiled = compile(columns);
+        final ConcurrentLinkedQueue<HXLValidationError> errors = new ConcurrentLinkedQueue<HXLValidationError>(compiled.columnErrors);
+        final AtomicInteger errorCount = new AtomicInteger(errors.size());
+        final LongAdder rowCount = new LongAdder();
+        final boolean stopped = (errorCount.get() >= maxErrors || rows.anyMatch(row -> {
+            rowCount.increment();
+            final int n = compiled.check(row, errors);
+            return (n > 0 && errorCount.addAndGet(n) >= maxErrors);
+        }));
+        final List<HXLValidationError> sorted = new ArrayList<HXLValidationError>(errors);
+        Collections.sort(sorted, ERROR_ORDER);
+        return new Report(sorted.subList(0, Math.min(sorted.size(), maxErrors)), rowCount.sum(), stopped);
+    }
+
+    /**
+     * Match the rules to a dataset's columns.
+     */
+    private Compiled compile(List<HXLColumn> columns) {
+        final List<ColumnRules> ruled = new ArrayList<ColumnRules>();
+        final List<HXLValidationError> columnErrors = new ArrayList<HXLValidationError>();
+        for (final HXLColumn column : columns) {
+            final ColumnRules c = new ColumnRules(column);
+            for (final Rule rule : rules) {
+                if (rule.pattern.matches(column)) {
+                    if (rule.test == null) {
+                        c.requiredMessage = rule.message;
+                    } else {
+                        c.rules.add(rule);
+                    }
+                }
+            }
+            if (c.requiredMessage != null || !c.rules.isEmpty()) {
+                c.ruleArray = c.rules.toArray(new Rule[c.rules.size()]);
+                ruled.add(c);
+            }
+        }
+        for (final Rule rule : rules) {
+            if (rule.test == null && rule.pattern.find(columns) < 0) {
+                columnErrors.add(new HXLValidationError(null, "", "No column matches required " + rule.pattern, -1, -1));
+            }
+        }
+        return new Compiled(ruled.toArray(new ColumnRules[ruled.size()]), columnErrors);
+    }
+
+    private static String describeRange(double min, double max, double lowest, double highest) {
+        final String low = (min == (long) min ? Long.toString((long) min) : Double.toString(min));
+        final String high = (max == (long) max ? Long.toString((long) max) : Double.toString(max));
+        if (min <= lowest && max >= highest) {
+            return "";
+        } else if (max >= highest) {
+            return " of at least " + low;
+        } else if (min <= lowest) {
+            return " of at most " + high;
+        } else {
+            return " from " + low + " to " + high;
+        }
+    }
+
+    private final static Comparator<HXLValidationError> ERROR_ORDER = new Comparator<HXLValidationError>() {
+        @Override
+        public int compare(HXLValidationError a, HXLValidationError b) {
+            final int c = Integer.compare(a.getSourceRowNumber(), b.getSourceRowNumber());
+            return (c != 0 ? c : Integer.compare(a.getSourceColumnNumber(), b.getSourceColumnNumber()));
+        }
+    };
+
+    /**
+     * A pipeline step that checks each row as it passes.
+     */
+    public final static class Check extends HXLPipeline {
+
+        private final HXLValidator validator;
+
+        private final int maxErrors;
+
+        private final List<HXLValidationError> errors = new ArrayList<HXLValidationError>();
+
+        private Compiled compiled;
+
+        private long rowCount;
+
+        private boolean stopped;
+
+        private Check(HXLValidator validator, HXLRowSource source) {
+            super(source);
+            this.validator = validator;
+            this.maxErrors = validator.maxErrors;
+        }
+
+        /**
+         * Read and check the next row.
+         *
+         * @return The row, or null at the end of the source or after
+         * the row that reached the error limit.
+         * @exception IOException if there is an error reading the
+         * source.
+         */
+        @Override
+        public HXLRow read() throws IOException {
+            if (compiled == null) {
+                compiled = validator.compile(getColumns());
+                addErrors(compiled.columnErrors);
+            }
+            if (stopped) {
+                return null;
+            }
+            final HXLRow row = this.source.read();
+            if (row != null) {
+                rowCount++;
+                if (compiled.check(row, errors) > 0 && errors.size() >= maxErrors) {
+                    stop();
+                }
+            }
+            return row;
+        }
+
+        /**
+         * Get the errors found so far.
+         *
+         * @return A read-only list of errors, in the order found.
+         */
+        public List<HXLValidationError> getErrors() {
+            return Collections.unmodifiableList(errors);
+        }
+
+        /**
+         * Test whether checking stopped at the error limit.
+         *
+         * @return true if the step ended before the end of the source.
+         */
+        public boolean isStopped() {
+            return stopped;
+        }
+
+        /**
+         * Get a report of the rows checked so far.
+         *
+         * @return The report.
+         */
+        public Report getReport() {
+            return new Report(new ArrayList<HXLValidationError>(errors), rowCount, stopped);
+        }
+
+        private void addErrors(List<HXLValidationError> columnErrors) {
+            errors.addAll(columnErrors);
+            if (errors.size() >= maxErrors) {
+                stop();
+            }
+        }
+
+        private void stop() {
+            stopped = true;
+            if (errors.size() > maxErrors) {
+                errors.subList(maxErrors, errors.size()).clear();
+            }
+        }
+
+    }
+
+    /**
+     * The outcome of validating a dataset.
+     */
+    public final static class Report {
+
+        private final List<HXLValidationError> errors;
+
+        private final long rowCount;
+
+        private final boolean stopped;
+
+        private Report(List<HXLValidationError> errors, long rowCount, boolean stopped) {
+            this.errors = Collections.unmodifiableList(errors);
+            this.rowCount = rowCount;
+            this.stopped = stopped;
+        }
+
+        /**
+         * Test whether no rule was broken.
+         *
+         * @return true if there are no errors.
+         */
+        public boolean isValid() {
+            return errors.isEmpty();
+        }
+
+        /**
+         * Get the errors.
+         *
+         * @return A read-only list of errors, at most the validator's
+         * limit.
+         */
+        public List<HXLValidationError> getErrors() {
+            return errors;
+        }
+
+        /**
+         * Get the number of rows checked.
+         *
+         * @return The row count.
+         */
+        public long getRowCount() {
+            return rowCount;
+        }
+
+        /**
+         * Test whether validation stopped at the error limit.
+         *
+         * @return true if some rows weren't checked.
+         */
+        public boolean isStopped() {
+            return stopped;
+        }
+
+    }
+
+    /**
+     * A rule as added, with the pattern for its columns.
+     */
+    private final static class Rule {
+
+        final HXLTagPattern pattern;
+
+        final Predicate<? super HXLValue> test;
+
+        final String message;
+
+        Rule(HXLTagPattern pattern, Predicate<? super HXLValue> test, String message) {
+            this.pattern = pattern;
+            this.test = test;
+            this.message = message;
+        }
+
+    }
+
+    /**
+     * The rules that apply to one column.
+     */
+    private final static class ColumnRules {
+
+        final HXLColumn column;
+
+        final List<Rule> rules = new ArrayList<Rule>();
+
+        String requiredMessage;
+
+        Rule ruleArray[];
+
+        ColumnRules(HXLColumn column) {
+            this.column = column;
+        }
+
+    }
+
+    /**
+     * The rules matched to a dataset's columns.
+     */
+    private final static class Compiled {
+
+        final ColumnRules columns[];
+
+        final List<HXLValidationError> columnErrors;
+
+        Compiled(ColumnRules columns[], List<HXLValidationError> columnErrors) {
+            this.columns = columns;
+            this.columnErrors = columnErrors;
+        }
+
+        /**
+         * Check a row.
+         *
+         * @param errors The collection to add errors to.
+         * @return The number of errors added.
+         */
+        int check(HXLRow row, Collection<HXLValidationError> errors) {
+            int n = 0;
+            for (final ColumnRules c : columns) {
+                final HXLValue value = row.get(c.column);
+                final String content = (value == null ? "" : value.getContent());
+                if (content.length() == 0) {
+                    if (c.requiredMessage != null) {
+                        errors.add(new HXLValidationError(c.column, "", c.requiredMessage, row.getRowNumber(), row.getSourceRowNumber()));
+                        n++;
+                    }
+                    continue;
+                }
+                for (final Rule rule : c.ruleArray) {
+                    if (!rule.test.test(value)) {
+                        errors.add(new HXLValidationError(c.column, content, rule.message, row.getRowNumber(), row.getSourceRowNumber()));
+                        n++;
+                    }
+                }
+            }
+            return n;
+        }
+
+    }
+
+}
@@ -1,5 +1,8 @@
 package org.hxlstandard;
 
+import java.time.DateTimeException;
+import java.time.LocalDate;
+
 /**
  * A single value in a HXL dataset.
  *
@@ -21,6 +24,14 @@ package org.hxlstandard;
  * System.out.println("The value is " + value.getContent());
  * </pre>
  *
+ * <p>Numbers and dates are parsed the first time one of the typed
+ * accessors ({@link #isNumeric()}, {@link #asLong()}, {@link
+ * #asDouble()}, {@link #isDate()}, {@link #asDate()}) needs them, and
+ * the result is kept in the value, so later calls cost nothing. The
+ * number parser reads the content in place without creating any
+ * objects; for a value from a memory-mapped file, it doesn't even
+ * decode the content into a string.</p>
+ *
  * @author David Megginson
  */
 public class HXLValue {
@@ -29,10 +40,35 @@ public class HXLValue {
 
     private String content;
 
+    private CharSequence lazyContent;
+
     private int rowNumber;
 
     private int sourceRowNumber;
 
+    private final static byte UNPARSED = 0;
+
+    private final static byte NOT_NUMBER = HXLNumberParser.NOT_NUMBER;
+
+    private final static byte INTEGER = HXLNumberParser.INTEGER;
+
+    private final static byte DECIMAL = HXLNumberParser.DECIMAL;
+
+    /**
+     * One parser per thread, so that typed access doesn't allocate.
+     */
+    private final static ThreadLocal<HXLNumberParser> parser = ThreadLocal.withInitial(HXLNumberParser::new);
+
+    private byte numberType;
+
+    private long longValue;
+
+    private double doubleValue;
+
+    private boolean dateParsed;
+
+    private LocalDate date;
+
     /**
      * Create a new value object.
      *
@@ -60,10 +96,70 @@ public class HXLValue {
     protected void init(HXLColumn column, String content, int rowNumber, int sourceRowNumber) {
         this.column = column;
         this.content = content;
+        this.lazyContent = null;
+        this.numberType = UNPARSED;
+        this.dateParsed = false;
+        this.date = null;
         this.rowNumber = rowNumber;
         this.sourceRowNumber = sourceRowNumber;
     }
 
+    /**
+     * Reinitialize a value whose content is converted to a string only
+     * when {@link #getContent()} is first called.
+     *
+     * {@link HXLReader} uses this to avoid decoding fields that the
+     * client never looks at.
+     *
+     * @param column The column metadata for this value.
+     * @param content The value content, converted with its
+     * <code>toString()</code> method on first access.
+     * @param rowNumber The logical (HXL) row number, zero-based.
+     * @param sourceRowNumber The row number in the original source,
+     * zero-based, or -1 if unspecified.
+     */
+    void initLazy(HXLColumn column, CharSequence content, int rowNumber, int sourceRowNumber) {
+        init(column, null, rowNumber, sourceRowNumber);
+        this.lazyContent = content;
+    }
+
+    /**
+     * Reinitialize a value from an integer that is already parsed.
+     *
+     * The content string is created only when {@link #getContent()} is
+     * first called. {@link HXLSnapshot} uses this for numeric columns.
+     *
+     * @param column The column metadata for this value.
+     * @param value The number.
+     * @param rowNumber The logical (HXL) row number, zero-based.
+     * @param sourceRowNumber The row number in the original source,
+     * zero-based, or -1 if unspecified.
+     */
+    void initLong(HXLColumn column, long value, int rowNumber, int sourceRowNumber) {
+        init(column, null, rowNumber, sourceRowNumber);
+        this.numberType = INTEGER;
+        this.longValue = value;
+    }
+
+    /**
+     * Reinitialize a value from a decimal number that is already parsed.
+     *
+     * The content is created in the normalised form of {@link
+     * HXLColumnVector#getString(int)} when {@link #getContent()} is
+     * first called.
+     *
+     * @param column The column metadata for this value.
+     * @param value The number.
+     * @param rowNumber The logical (HXL) row number, zero-based.
+     * @param sourceRowNumber The row number in the original source,
+     * zero-based, or -1 if unspecified.
+     */
+    void initDouble(HXLColumn column, double value, int rowNumber, int sourceRowNumber) {
+        init(column, null, rowNumber, sourceRowNumber);
+        this.numberType = DECIMAL;
+        this.doubleValue = value;
+    }
+
     /**
      * Get the column metadata associated with this value.
      *
@@ -81,9 +177,105 @@ public class HXLValue {
      * @return The value content as a string.
      */
     public String getContent() {
+        if (content == null) {
+            final CharSequence lazy = lazyContent;
+            if (lazy != null) {
+                content = lazy.toString();
+            } else if (numberType == INTEGER) {
+                content = Long.toString(longValue);
+            } else if (numberType == DECIMAL) {
+                content = HXLColumnVector.formatDouble(doubleValue);
+            }
+        }
         return content;
     }
 
+    /**
+     * Test whether the content is a number.
+     *
+     * <p>A number is an optional sign, digits with an optional decimal
+     * point, and an optional exponent (e.g. "42", "-3.5", "1e6"),
+     * with optional surrounding spaces. Thousands separators are not
+     * allowed (see {@link HXLNumberParser}).</p>
+     *
+     * @return true if the content can be read with {@link #asLong()}
+     * and {@link #asDouble()}.
+     */
+    public boolean isNumeric() {
+        return getNumberType() != NOT_NUMBER;
+    }
+
+    /**
+     * Get the content as a whole number.
+     *
+     * @return The number, with any fractional part dropped.
+     * @exception NumberFormatException if the content isn't a number.
+     * @see #isNumeric()
+     */
+    public long asLong() {
+        final byte type = getNumberType();
+        if (type == INTEGER) {
+            return longValue;
+        } else if (type == DECIMAL) {
+            return (long) doubleValue;
+        } else {
+            throw new NumberFormatException("Not a number: " + getContent());
+        }
+    }
+
+    /**
+     * Get the content as a floating-point number.
+     *
+     * @return The number.
+     * @exception NumberFormatException if the content isn't a number.
+     * @see #isNumeric()
+     */
+    public double asDouble() {
+        final byte type = getNumberType();
+        if (type == INTEGER) {
+            return longValue;
+        } else if (type == DECIMAL) {
+            return doubleValue;
+        } else {
+            throw new NumberFormatException("Not a number: " + getContent());
+        }
+    }
+
+    /**
+     * Test whether the content is an ISO 8601 date (YYYY-MM-DD).
+     *
+     * @return true if the content can be read with {@link #asDate()}.
+     */
+    public boolean isDate() {
+        return getDate() != null;
+    }
+
+    /**
+     * Get the content as a date.
+     *
+     * @return The date.
+     * @exception DateTimeException if the content isn't an ISO 8601
+     * date (YYYY-MM-DD).
+     * @see #isDate()
+     */
+    public LocalDate asDate() {
+        final LocalDate d = getDate();
+        if (d == null) {
+            throw new DateTimeException("Not an ISO 8601 date: " + getContent());
+        }
+        return d;
+    }
+
+    /**
+     * Test whether the content is a number without a fractional part
+     * or exponent.
+     *
+     * @return true for integers small enough for a long.
+     */
+    boolean isInteger() {
+        return getNumberType() == INTEGER;
+    }
+
     /**
      * Get the row number for this value.
      *
@@ -146,4 +338,79 @@ public class HXLValue {
         return getColumn().getSourceColumnNumber();
     }
 
+    /**
+     * Get the content without decoding lazy content into a string.
+     */
+    private CharSequence getChars() {
+        return (content != null ? content : lazyContent);
+    }
+
+    private byte getNumberType() {
+        if (numberType == UNPARSED) {
+            final CharSequence s = getChars();
+            if (s == null) {
+                numberType = NOT_NUMBER;
+            } else {
+                final HXLNumberParser p = parser.get();
+                numberType = p.parse(s);
+                longValue = p.longValue;
+                doubleValue = p.doubleValue;
+            }
+        }
+        return numberType;
+    }
+
+    private LocalDate getDate() {
+        if (!dateParsed) {
+            dateParsed = true;
+            final CharSequence s = getChars();
+            if (s != null) {
+                date = parseDate(s);
+            }
+        }
+        return date;
+    }
+
+    /**
+     * Parse an ISO 8601 calendar date (YYYY-MM-DD).
+     *
+     * @return The date, or null if the content isn't a valid date.
+     */
+    private static LocalDate parseDate(CharSequence s) {
+        int start = 0;
+        int end = s.length();
+        while (start < end && s.charAt(start) == ' ') {
+            start++;
+        }
+        while (end > start && s.charAt(end - 1) == ' ') {
+            end--;
+        }
+        if (end - start != 10 || s.charAt(start + 4) != '-' || s.charAt(start + 7) != '-') {
+            return null;
+        }
+        final int year = parseDigits(s, start, 4);
+        final int month = parseDigits(s, start + 5, 2);
+        final int day = parseDigits(s, start + 8, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31) {
+            return null;
+        }
+        try {
+            return LocalDate.of(year, month, day);
+        } catch (DateTimeException e) {
+            return null; // e.g. 2015-02-30
+        }
+    }
+
+    private static int parseDigits(CharSequence s, int start, int length) {
+        int n = 0;
+        for (int i = start; i < start + length; i++) {
+            final char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            n = n * 10 + (c - '0');
+        }
+        return n;
+    }
+
 }
@@ -0,0 +1,289 @@
+package org.hxlstandard;
+
+import java.util.Arrays;
+
+/**
+ * Bounded dictionary of the distinct values in a column.
+ *
+ * <p>Columns such as <code>#adm1</code> or <code>#sector</code> repeat
+ * a handful of values thousands of times. When dictionaries are
+ * enabled with {@link HXLReader#setDictionaryLimit(int)}, the reader
+ * looks up each field in its column's dictionary straight from the
+ * tokenizer's buffer, and every occurrence of the same value shares a
+ * single string instance, which can be compared with <code>==</code>
+ * or through its integer code ({@link #getCode(String)}).</p>
+ *
+ * <p>If a column turns out to have more distinct values than the
+ * limit, the dictionary disables itself and releases its table, and
+ * the rest of the column is read as plain strings. The statistics show
+ * how much each dictionary saved.</p>
+ *
+ * @author David Megginson
+ */
+public class HXLValueDictionary {
+
+    /**
+     * Suggested limit for low-cardinality columns.
+     */
+    public final static int DEFAULT_LIMIT = 1024;
+
+    /**
+     * Largest limit allowed, so that the hash table (twice the number
+     * of values) still fits in an array.
+     */
+    public final static int MAX_LIMIT = 1 << 29;
+
+    private final static int INITIAL_CAPACITY = 16;
+
+    private final int limit;
+
+    private int slots[];
+
+    private String values[];
+
+    private int hashes[];
+
+    private int size;
+
+    private boolean enabled = true;
+
+    private long hits;
+
+    private long misses;
+
+    private long savedChars;
+
+    /**
+     * Create a new dictionary.
+     *
+     * <p>The table starts small and grows with the number of values,
+     * so a generous limit costs nothing for a column that only has a
+     * few.</p>
+     *
+     * @param limit The largest number of distinct values to keep
+     * before giving up (at most {@link #MAX_LIMIT}).
+     */
+    public HXLValueDictionary(int limit) {
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new IllegalArgumentException("Limit must be between 1 and " + MAX_LIMIT + ": " + limit);
+        }
+        this.limit = limit;
+        this.slots = new int[INITIAL_CAPACITY];
+        this.values = new String[Math.min(limit, 64)];
+        this.hashes = new int[this.values.length];
+    }
+
+    /**
+     * Get the shared instance of a value.
+     *
+     * @param s The value to look up.
+     * @return The shared string equal to s, or s itself if it is new
+     * or the dictionary is disabled.
+     */
+    public String intern(String s) {
+        if (!enabled) {
+            return s;
+        }
+        final int hash = s.hashCode();
+        final int mask = slots.length - 1;
+        for (int i = hash & mask;; i = (i + 1) & mask) {
+            final int code = slots[i] - 1;
+            if (code < 0) {
+                return add(s, hash, i);
+            }
+            if (hashes[code] == hash && values[code].equals(s)) {
+                return hit(values[code]);
+            }
+        }
+    }
+
+    /**
+     * Get the shared instance of a value, without creating a string
+     * unless the value is new.
+     *
+     * @param chars The buffer holding the value.
+     * @param start The offset of the first character.
+     * @param length The number of characters.
+     * @return The shared string, or a new string if the value is new
+     * or the dictionary is disabled.
+     */
+    public String intern(char chars[], int start, int length) {
+        if (!enabled) {
+            return new String(chars, start, length);
+        }
+        int hash = 0;
+        for (int k = 0; k < length; k++) {
+            hash = 31 * hash + chars[start + k];
+        }
+        final int mask = slots.length - 1;
+        for (int i = hash & mask;; i = (i + 1) & mask) {
+            final int code = slots[i] - 1;
+            if (code < 0) {
+                return add(new String(chars, start, length), hash, i);
+            }
+            if (hashes[code] == hash && matches(values[code], chars, start, length)) {
+                return hit(values[code]);
+            }
+        }
+    }
+
+    /**
+     * Get the integer code for a value.
+     *
+     * <p>Codes are assigned from 0 in order of first appearance, so two
+     * values from the same column are equal exactly when their codes
+     * are equal.</p>
+     *
+     * @param s The value to look up.
+     * @return The code, or -1 if the value isn't in the dictionary or
+     * the dictionary is disabled.
+     */
+    public int getCode(String s) {
+        if (!enabled) {
+            return -1;
+        }
+        final int hash = s.hashCode();
+        final int mask = slots.length - 1;
+        for (int i = hash & mask;; i = (i + 1) & mask) {
+            final int code = slots[i] - 1;
+            if (code < 0) {
+                return -1;
+            }
+            if (hashes[code] == hash && values[code].equals(s)) {
+                return code;
+            }
+        }
+    }
+
+    /**
+     * Get the value for a code.
+     *
+     * @param code A code from {@link #getCode(String)}.
+     * @return The shared string for the code.
+     * @exception IndexOutOfBoundsException if there is no such code.
+     */
+    public String getValue(int code) {
+        if (code < 0 || code >= size) {
+            throw new IndexOutOfBoundsException("Code " + code + " of " + size);
+        }
+        return values[code];
+    }
+
+    /**
+     * Test whether the dictionary is still in use.
+     *
+     * @return false if the column had more distinct values than the
+     * limit.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Get the limit on distinct values.
+     *
+     * @return The limit.
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Get the number of distinct values.
+     *
+     * @return The number of values in the dictionary, or 0 once it is
+     * disabled.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the number of lookups that found a shared value.
+     *
+     * @return The number of strings that didn't need to be created.
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Get the number of lookups that added a new value.
+     *
+     * @return The number of misses while the dictionary was enabled.
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Get the total length of the strings that didn't need to be
+     * created.
+     *
+     * @return The number of characters saved by lookups that hit.
+     */
+    public long getSavedChars() {
+        return savedChars;
+    }
+
+    private String hit(String value) {
+        hits++;
+        savedChars += value.length();
+        return value;
+    }
+
+    private String add(String s, int hash, int slot) {
+        misses++;
+        if (size == limit) {
+            // too many distinct values: give up on this column
+            enabled = false;
+            slots = null;
+            values = null;
+            hashes = null;
+            size = 0;
+            return s;
+        }
+        if (size == values.length) {
+            final int capacity = Math.min(limit, size * 2);
+            values = Arrays.copyOf(values, capacity);
+            hashes = Arrays.copyOf(hashes, capacity);
+        }
+        values[size] = s;
+        hashes[size] = hash;
+        slots[slot] = ++size;
+        if (size * 2 > slots.length) {
+            rehash(slots.length * 2);
+        }
+        return s;
+    }
+
+    /**
+     * Rebuild the hash table with more slots, keeping it at most half
+     * full.
+     */
+    private void rehash(int capacity) {
+        final int table[] = new int[capacity];
+        final int mask = capacity - 1;
+        for (int code = 0; code < size; code++) {
+            int i = hashes[code] & mask;
+            while (table[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            table[i] = code + 1;
+        }
+        slots = table;
+    }
+
+    private static boolean matches(String value, char chars[], int start, int length) {
+        if (value.length() != length) {
+            return false;
+        }
+        for (int k = 0; k < length; k++) {
+            if (value.charAt(k) != chars[start + k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
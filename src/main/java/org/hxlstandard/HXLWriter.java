@@ -0,0 +1,437 @@
+package org.hxlstandard;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Class to write HXL data to a CSV file.
+ *
+ * <p>The writer produces the hashtag row and then one CSV record per
+ * {@link HXLRow}, quoting a field only when it contains a separator, a
+ * quotation mark, or a line break. Output goes through a single
+ * reusable character buffer, so writing a row creates no objects. When
+ * writing to a file or a {@link WritableByteChannel}, the writer
+ * encodes the buffer as UTF-8 itself, without a {@link Writer} or
+ * {@link java.nio.charset.CharsetEncoder} in between.</p>
+ *
+ * <p>Example:</p>
+ *
+ * <pre>
+ * HXLReader reader = new HXLReader(input);
+ * HXLWriter writer = new HXLWriter(new File("out.csv"));
+ * writer.write(HXLPipeline.from(reader).filter("#sector", s -&gt; s.equals("WASH")));
+ * writer.close();
+ * </pre>
+ *
+ * <p>Records end with CRLF, as in RFC 4180.</p>
+ *
+ * @author David Megginson
+ */
+public class HXLWriter implements Closeable, Flushable {
+
+    /**
+     * Default size of the character buffer.
+     */
+    public final static int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final static char QUOTE = '"';
+
+    private final Writer output;
+
+    private final WritableByteChannel channel;
+
+    private final char separator;
+
+    private final char buffer[];
+
+    private int pos;
+
+    private byte bytes[];
+
+    private ByteBuffer byteBuffer;
+
+    private char pendingHighSurrogate;
+
+    private int columnCount;
+
+    private HXLValue slots[] = new HXLValue[16];
+
+    private long rowCount;
+
+    /**
+     * Create a new writer with the default separator and buffer size.
+     *
+     * @param output The character stream to write to.
+     */
+    public HXLWriter(Writer output) {
+        this(output, HXLCSVTokenizer.DEFAULT_SEPARATOR, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Create a new writer.
+     *
+     * @param output The character stream to write to.
+     * @param separator The field separator character.
+     * @param bufferSize The size of the character buffer.
+     */
+    public HXLWriter(Writer output, char separator, int bufferSize) {
+        this(output, null, separator, bufferSize);
+        if (output == null) {
+            throw new NullPointerException("output");
+        }
+    }
+
+    /**
+     * Create a new writer for a UTF-8 file, replacing any existing
+     * content.
+     *
+     * @param file The file to write.
+     * @exception IOException if the file can't be opened.
+     */
+    public HXLWriter(File file) throws IOException {
+        this(FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE));
+    }
+
+    /**
+     * Create a new writer that encodes UTF-8 straight to a channel.
+     *
+     * @param channel The channel to write to (e.g. a {@link
+     * FileChannel}).
+     */
+    public HXLWriter(WritableByteChannel channel) {
+        this(channel, HXLCSVTokenizer.DEFAULT_SEPARATOR, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Create a new writer that encodes UTF-8 straight to a channel.
+     *
+     * @param channel The channel to write to.
+     * @param separator The field separator character.
+     * @param bufferSize The size of the character buffer.
+     */
+    public HXLWriter(WritableByteChannel channel, char separator, int bufferSize) {
+        this(null, channel, separator, bufferSize);
+        if (channel == null) {
+            throw new NullPointerException("channel");
+        }
+        // worst case: 3 bytes per char, plus a surrogate pair left over
+        this.bytes = new byte[bufferSize * 3 + 4];
+        this.byteBuffer = ByteBuffer.wrap(this.bytes);
+    }
+
+    private HXLWriter(Writer output, WritableByteChannel channel, char separator, int bufferSize) {
+        if (separator == QUOTE || separator == '\r' || separator == '\n') {
+            throw new IllegalArgumentException("Illegal separator: " + separator);
+        }
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("Buffer size must be positive: " + bufferSize);
+        }
+        this.output = output;
+        this.channel = channel;
+        this.separator = separator;
+        this.buffer = new char[bufferSize];
+    }
+
+    /**
+     * Write the hashtag row.
+     *
+     * <p>Each column's hashtag is written with its language code, if
+     * any (e.g. "#sector/en"). Later rows get one field per column.</p>
+     *
+     * @param columns The columns, in logical order.
+     * @exception IOException if there is an error writing the output.
+     */
+    public void writeColumns(List<HXLColumn> columns) throws IOException {
+        this.columnCount = columns.size();
+        if (slots.length < columnCount) {
+            slots = new HXLValue[columnCount];
+        }
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                append(separator);
+            }
+            final HXLColumn column = columns.get(i);
+            writeField(column.getLang() == null ? column.getTag() : column.getTag() + "/" + column.getLang());
+        }
+        endRecord();
+    }
+
+    /**
+     * Write a row of HXL data.
+     *
+     * <p>Each value goes in the field for its logical column number.
+     * Columns without a value in the row are left empty.</p>
+     *
+     * @param row The row to write.
+     * @exception IOException if there is an error writing the output.
+     */
+    public void writeRow(HXLRow row) throws IOException {
+        final List<HXLValue> values = row.getValuesModifiable();
+        int width = columnCount;
+        for (int i = 0; i < values.size(); i++) {
+            final HXLValue value = values.get(i);
+            final int n = value.getColumnNumber();
+            if (n >= slots.length) {
+                slots = Arrays.copyOf(slots, Math.max(slots.length * 2, n + 1));
+            }
+            slots[n] = value;
+            width = Math.max(width, n + 1);
+        }
+        for (int i = 0; i < width; i++) {
+            if (i > 0) {
+                append(separator);
+            }
+            final HXLValue value = slots[i];
+            if (value != null) {
+                writeField(value.getContent());
+                slots[i] = null;
+            }
+        }
+        endRecord();
+        rowCount++;
+    }
+
+    /**
+     * Write a raw CSV record.
+     *
+     * <p>This can be used for text headers above the hashtag row, or
+     * to write data held in arrays rather than {@link HXLRow}
+     * objects.</p>
+     *
+     * @param fields The fields of the record (null for an empty
+     * field).
+     * @exception IOException if there is an error writing the output.
+     */
+    public void writeRecord(CharSequence... fields) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                append(separator);
+            }
+            if (fields[i] != null) {
+                writeField(fields[i]);
+            }
+        }
+        endRecord();
+    }
+
+    /**
+     * Write the columns and all of the remaining rows from a source.
+     *
+     * @param source The source of HXL data.
+     * @return The number of rows written.
+     * @exception IOException if there is an error reading the source
+     * or writing the output.
+     */
+    public long write(HXLRowSource source) throws IOException {
+        writeColumns(source.getColumns());
+        long count = 0;
+        HXLRow row = source.read();
+        while (row != null) {
+            writeRow(row);
+            count++;
+            row = source.read();
+        }
+        return count;
+    }
+
+    /**
+     * Get the number of data rows written.
+     *
+     * @return The number of calls to {@link #writeRow(HXLRow)}.
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Write out the buffer and flush the output.
+     *
+     * @exception IOException if there is an error writing the output.
+     */
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        if (output != null) {
+            output.flush();
+        }
+    }
+
+    /**
+     * Write out the buffer and close the output.
+     *
+     * @exception IOException if there is an error writing or closing
+     * the output.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBuffer();
+            if (pendingHighSurrogate != 0) {
+                // unpaired surrogate at the very end
+                pendingHighSurrogate = 0;
+                bytes[0] = '?';
+                writeBytes(1);
+            }
+        } finally {
+            if (output != null) {
+                output.close();
+            } else {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Write one field, quoting it only if necessary.
+     */
+    private void writeField(CharSequence s) throws IOException {
+        final int length = s.length();
+        boolean quote = false;
+        for (int i = 0; i < length; i++) {
+            final char c = s.charAt(i);
+            if (c == separator || c == QUOTE || c == '\n' || c == '\r') {
+                quote = true;
+                break;
+            }
+        }
+        if (!quote) {
+            if (s instanceof String) {
+                appendString((String) s);
+            } else {
+                for (int i = 0; i < length; i++) {
+                    append(s.charAt(i));
+                }
+            }
+        } else {
+            append(QUOTE);
+            for (int i = 0; i < length; i++) {
+                final char c = s.charAt(i);
+                if (c == QUOTE) {
+                    append(QUOTE);
+                }
+                append(c);
+            }
+            append(QUOTE);
+        }
+    }
+
+    private void endRecord() throws IOException {
+        append('\r');
+        append('\n');
+    }
+
+    private void append(char c) throws IOException {
+        if (pos == buffer.length) {
+            flushBuffer();
+        }
+        buffer[pos++] = c;
+    }
+
+    private void appendString(String s) throws IOException {
+        int start = 0;
+        final int length = s.length();
+        while (start < length) {
+            if (pos == buffer.length) {
+                flushBuffer();
+            }
+            final int n = Math.min(length - start, buffer.length - pos);
+            s.getChars(start, start + n, buffer, pos);
+            pos += n;
+            start += n;
+        }
+    }
+
+    /**
+     * Write out the character buffer, encoding it if the output is a
+     * channel.
+     */
+    private void flushBuffer() throws IOException {
+        if (pos == 0) {
+            return;
+        }
+        if (output != null) {
+            output.write(buffer, 0, pos);
+        } else {
+            writeBytes(encode());
+        }
+        pos = 0;
+    }
+
+    /**
+     * Encode the character buffer as UTF-8.
+     *
+     * <p>A high surrogate at the end of the buffer is held back until
+     * the next flush, so that a pair split across two flushes is still
+     * encoded as one character. Unpaired surrogates become "?", as in
+     * {@link String#getBytes(java.nio.charset.Charset)}.</p>
+     *
+     * @return The number of bytes encoded.
+     */
+    private int encode() {
+        final char chars[] = buffer;
+        final byte b[] = bytes;
+        final int n = pos;
+        int w = 0;
+        int i = 0;
+        if (pendingHighSurrogate != 0) {
+            final char high = pendingHighSurrogate;
+            pendingHighSurrogate = 0;
+            if (Character.isLowSurrogate(chars[0])) {
+                w = encodeCodePoint(Character.toCodePoint(high, chars[0]), b, w);
+                i = 1;
+            } else {
+                b[w++] = '?';
+            }
+        }
+        while (i < n) {
+            final char c = chars[i++];
+            if (c < 0x80) {
+                b[w++] = (byte) c;
+            } else if (c < 0x800) {
+                b[w++] = (byte) (0xc0 | (c >> 6));
+                b[w++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c)) {
+                if (i == n) {
+                    pendingHighSurrogate = c;
+                } else if (Character.isLowSurrogate(chars[i])) {
+                    w = encodeCodePoint(Character.toCodePoint(c, chars[i++]), b, w);
+                } else {
+                    b[w++] = '?';
+                }
+            } else if (Character.isLowSurrogate(c)) {
+                b[w++] = '?';
+            } else {
+                b[w++] = (byte) (0xe0 | (c >> 12));
+                b[w++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                b[w++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        return w;
+    }
+
+    private static int encodeCodePoint(int cp, byte b[], int w) {
+        b[w++] = (byte) (0xf0 | (cp >> 18));
+        b[w++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+        b[w++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+        b[w++] = (byte) (0x80 | (cp & 0x3f));
+        return w;
+    }
+
+    private void writeBytes(int length) throws IOException {
+        byteBuffer.clear();
+        byteBuffer.limit(length);
+        while (byteBuffer.hasRemaining()) {
+            channel.write(byteBuffer);
+        }
+    }
+
+}
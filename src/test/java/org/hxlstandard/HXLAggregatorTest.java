@@ -0,0 +1,143 @@
+package org.hxlstandard;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * JUnit4 tests for the HXLAggregator class.
+ */
+public class HXLAggregatorTest {
+
+    //
+    // Test constants
+    //
+
+    private final static String DATA =
+        "#adm1,#sector,#affected,#x_rate\n"
+        + "North,WASH,100,0.5\n"
+        + "South,Health,20,n/a\n"
+        + "North,WASH,50,1.5\n"
+        + "North,Health,,2\n"
+        + "South,Health,5\n";
+
+    //
+    // Tests
+    //
+
+    @Test
+    public void testGroups() throws Exception {
+        HXLAggregator.Result result = new HXLAggregator("#adm1", "#sector").count().aggregate(reader());
+        Assert.assertEquals(3, result.getGroupCount());
+        Assert.assertEquals("North", result.getKey(0, 0));
+        Assert.assertEquals("WASH", result.getKey(0, 1));
+        Assert.assertEquals("South", result.getKey(1, 0));
+        Assert.assertEquals("Health", result.getKey(2, 1));
+        Assert.assertEquals(2, result.getCount(0));
+        Assert.assertEquals(2, result.getCount(1));
+        Assert.assertEquals(1, result.getCount(2));
+        Assert.assertEquals(2.0, result.getValue(0, 0), 0.0);
+    }
+
+    @Test
+    public void testFunctions() throws Exception {
+        HXLAggregator.Result result = new HXLAggregator("#adm1")
+            .sum("#affected").min("#affected").max("#affected").avg("#affected").avg("#x_rate")
+            .aggregate(reader());
+        Assert.assertEquals(2, result.getGroupCount());
+        Assert.assertEquals(150.0, result.getValue(0, 0), 0.0);
+        Assert.assertEquals(50.0, result.getValue(0, 1), 0.0);
+        Assert.assertEquals(100.0, result.getValue(0, 2), 0.0);
+        Assert.assertEquals(75.0, result.getValue(0, 3), 0.0);
+        Assert.assertEquals(4.0 / 3, result.getValue(0, 4), 1e-12);
+        Assert.assertEquals(25.0, result.getValue(1, 0), 0.0);
+        Assert.assertEquals(12.5, result.getValue(1, 3), 0.0);
+        // "n/a" is ignored
+        Assert.assertTrue(Double.isNaN(result.getValue(1, 4)));
+    }
+
+    @Test
+    public void testNoGroups() throws Exception {
+        HXLAggregator.Result result = new HXLAggregator().count().sum("#affected").aggregate(reader());
+        Assert.assertEquals(1, result.getGroupCount());
+        Assert.assertEquals(5, result.getCount(0));
+        Assert.assertEquals(175.0, result.getValue(0, 1), 0.0);
+    }
+
+    @Test
+    public void testMissingTag() throws Exception {
+        HXLAggregator.Result result = new HXLAggregator("#org").count().sum("#population").aggregate(reader());
+        Assert.assertEquals(1, result.getGroupCount());
+        Assert.assertEquals("", result.getKey(0, 0));
+        Assert.assertEquals(0.0, result.getValue(0, 1), 0.0);
+    }
+
+    @Test
+    public void testOutputRows() throws Exception {
+        HXLAggregator.Result result = new HXLAggregator("#adm1").count().sum("#affected").min("#x_rate")
+            .aggregate(reader());
+        List<HXLColumn> columns = result.getColumns();
+        Assert.assertEquals(4, columns.size());
+        Assert.assertEquals("#adm1", columns.get(0).getTag());
+        Assert.assertEquals(0, columns.get(0).getSourceColumnNumber());
+        Assert.assertEquals(HXLAggregator.COUNT_TAG, columns.get(1).getTag());
+        Assert.assertEquals("#affected+sum", columns.get(2).getTag());
+        Assert.assertEquals("#x_rate+min", columns.get(3).getTag());
+        HXLRow row = result.read();
+        Assert.assertEquals("North", row.get("#adm1").getContent());
+        Assert.assertEquals("3", row.get(HXLAggregator.COUNT_TAG).getContent());
+        Assert.assertEquals("150", row.get("#affected+sum").getContent());
+        Assert.assertEquals("0.5", row.get("#x_rate+min").getContent());
+        row = result.read();
+        Assert.assertEquals("", row.get("#x_rate+min").getContent());
+        Assert.assertNull(result.read());
+    }
+
+    @Test
+    public void testReuseObjects() throws Exception {
+        HXLReader reader = reader();
+        reader.setReuseObjects(true);
+        HXLAggregator.Result result = new HXLAggregator("#sector").sum("#affected").aggregate(reader);
+        Assert.assertEquals("WASH", result.getKey(0, 0));
+        Assert.assertEquals(150.0, result.getValue(0, 0), 0.0);
+        Assert.assertEquals(25.0, result.getValue(1, 0), 0.0);
+    }
+
+    @Test
+    public void testParallelStream() throws Exception {
+        StringBuilder data = new StringBuilder("#adm1,#sector,#affected\n");
+        for (int i = 0; i < 20000; i++) {
+            data.append("Region ").append(i % 7).append(",Sector ").append(i % 3).append(',').append(i).append('\n');
+        }
+        HXLAggregator aggregator = new HXLAggregator("#adm1", "#sector").count().sum("#affected").max("#affected");
+        HXLAggregator.Result sequential = aggregator.aggregate(new HXLReader(new StringReader(data.toString())));
+        Stream<HXLRow> stream = new HXLReader(new StringReader(data.toString())).stream().parallel();
+        HXLAggregator.Result parallel = aggregator.aggregate(stream);
+        Assert.assertEquals(21, parallel.getGroupCount());
+        Assert.assertEquals(sequential.getGroupCount(), parallel.getGroupCount());
+        for (int i = 0; i < sequential.getGroupCount(); i++) {
+            Assert.assertEquals(sequential.getKey(i, 0), parallel.getKey(i, 0));
+            Assert.assertEquals(sequential.getKey(i, 1), parallel.getKey(i, 1));
+            Assert.assertEquals(sequential.getCount(i), parallel.getCount(i));
+            Assert.assertEquals(sequential.getValue(i, 1), parallel.getValue(i, 1), 0.0);
+            Assert.assertEquals(sequential.getValue(i, 2), parallel.getValue(i, 2), 0.0);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSumNeedsTag() {
+        new HXLAggregator().add(HXLAggregator.Function.SUM, null);
+    }
+
+    //
+    // Utility methods
+    //
+
+    private static HXLReader reader() {
+        return new HXLReader(new StringReader(DATA));
+    }
+
+}
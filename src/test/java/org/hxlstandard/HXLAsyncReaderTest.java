@@ -0,0 +1,177 @@
+package org.hxlstandard;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * JUnit4 tests for the HXLAsyncReader class.
+ */
+public class HXLAsyncReaderTest {
+
+    //
+    // Test constants
+    //
+
+    private final static int ROWS = 1000;
+
+    //
+    // Tests
+    //
+
+    @Test
+    public void testSameRows() throws Exception {
+        HXLReader expected = new HXLReader(new StringReader(makeData(ROWS)));
+        HXLAsyncReader actual = new HXLAsyncReader(new HXLReader(new StringReader(makeData(ROWS))), 7, 2, null);
+        Assert.assertEquals(expected.getColumns().size(), actual.getColumns().size());
+        HXLRow row = expected.read();
+        while (row != null) {
+            HXLRow other = actual.read();
+            Assert.assertEquals(row.getRowNumber(), other.getRowNumber());
+            Assert.assertEquals(row.getSourceRowNumber(), other.getSourceRowNumber());
+            Assert.assertEquals(row.get("#affected").getContent(), other.get("#affected").getContent());
+            row = expected.read();
+        }
+        Assert.assertNull(actual.read());
+        Assert.assertNull(actual.readBatch());
+        actual.close();
+    }
+
+    @Test
+    public void testBatches() throws Exception {
+        HXLAsyncReader reader = new HXLAsyncReader(new HXLReader(new StringReader(makeData(25))), 10, 1, null);
+        Assert.assertEquals(10, reader.readBatch().size());
+        // a partly-read batch returns the rest
+        Assert.assertEquals(10, reader.read().getRowNumber());
+        List<HXLRow> batch = reader.readBatch();
+        Assert.assertEquals(9, batch.size());
+        Assert.assertEquals(11, batch.get(0).getRowNumber());
+        Assert.assertEquals(5, reader.readBatch().size());
+        Assert.assertNull(reader.readBatch());
+        reader.close();
+    }
+
+    @Test
+    public void testError() throws Exception {
+        HXLAsyncReader reader = new HXLAsyncReader(new TestSource(15, true), 10, 4, null);
+        Assert.assertEquals(10, reader.readBatch().size());
+        Assert.assertEquals(5, reader.readBatch().size());
+        try {
+            reader.readBatch();
+            Assert.fail("Expected an IOException");
+        } catch (IOException e) {
+            Assert.assertEquals("Test failure", e.getMessage());
+        }
+        Assert.assertNull(reader.readBatch());
+        reader.close();
+    }
+
+    @Test
+    public void testBackpressure() throws Exception {
+        TestSource source = new TestSource(Integer.MAX_VALUE, false);
+        HXLAsyncReader reader = new HXLAsyncReader(source, 10, 2, null);
+        reader.read();
+        Thread.sleep(200);
+        // one batch with the consumer, two in the queue, one being filled
+        Assert.assertTrue("read " + source.reads.get(), source.reads.get() <= 41);
+        reader.close();
+    }
+
+    @Test(timeout=5000)
+    public void testClose() throws Exception {
+        TestSource source = new TestSource(Integer.MAX_VALUE, false);
+        HXLAsyncReader reader = new HXLAsyncReader(source, 10, 2, null);
+        reader.read();
+        reader.close();
+        Assert.assertTrue(source.closed);
+        Assert.assertNull(reader.read());
+        int reads = source.reads.get();
+        Thread.sleep(50);
+        Assert.assertEquals(reads, source.reads.get());
+        reader.close();
+    }
+
+    @Test
+    public void testThreadFactory() throws Exception {
+        final AtomicInteger threads = new AtomicInteger();
+        HXLAsyncReader reader = new HXLAsyncReader(new TestSource(5, false), 2, 1, r -> {
+            threads.incrementAndGet();
+            return new Thread(r);
+        });
+        Assert.assertEquals(5, HXLPipeline.from(reader).count());
+        Assert.assertEquals(1, threads.get());
+        reader.close();
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testReuseObjectsRejected() throws Exception {
+        HXLReader source = new HXLReader(new StringReader(makeData(1)));
+        source.setReuseObjects(true);
+        new HXLAsyncReader(source);
+    }
+
+    //
+    // Utility methods
+    //
+
+    private static String makeData(int rows) {
+        StringBuilder data = new StringBuilder("#org,#affected\n");
+        for (int i = 0; i < rows; i++) {
+            data.append("Org ").append(i % 7).append(',').append(i).append('\n');
+        }
+        return data.toString();
+    }
+
+    //
+    // Test source that counts reads and can fail
+    //
+
+    private static class TestSource implements HXLRowSource {
+
+        private final HXLColumn column = new HXLColumn("#affected", null, 0, 0);
+
+        private final int rows;
+
+        private final boolean fail;
+
+        final AtomicInteger reads = new AtomicInteger();
+
+        volatile boolean closed;
+
+        TestSource(int rows, boolean fail) {
+            this.rows = rows;
+            this.fail = fail;
+        }
+
+        @Override
+        public List<HXLColumn> getColumns() {
+            return Collections.singletonList(column);
+        }
+
+        @Override
+        public HXLRow read() throws IOException {
+            final int n = reads.getAndIncrement();
+            if (n >= rows) {
+                if (fail) {
+                    throw new IOException("Test failure");
+                }
+                return null;
+            }
+            final HXLRow row = new HXLRow(n, n + 1);
+            row.getValuesModifiable().add(new HXLValue(column, Integer.toString(n), n, n + 1));
+            return row;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+    }
+
+}
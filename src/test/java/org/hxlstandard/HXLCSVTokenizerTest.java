@@ -0,0 +1,164 @@
+package org.hxlstandard;
+
+import java.io.StringReader;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * JUnit4 tests for the HXLCSVTokenizer class.
+ */
+public class HXLCSVTokenizerTest {
+
+    //
+    // Tests
+    //
+
+    @Test
+    public void testSimple() throws Exception {
+        HXLCSVTokenizer tokenizer = tokenize("a,b,c\nd,e,f\n");
+        assertRecord(tokenizer, "a", "b", "c");
+        assertRecord(tokenizer, "d", "e", "f");
+        Assert.assertEquals(-1, tokenizer.next());
+    }
+
+    @Test
+    public void testNoFinalNewline() throws Exception {
+        HXLCSVTokenizer tokenizer = tokenize("a,b\nc,d");
+        assertRecord(tokenizer, "a", "b");
+        assertRecord(tokenizer, "c", "d");
+        Assert.assertEquals(-1, tokenizer.next());
+    }
+
+    @Test
+    public void testEmptyInput() throws Exception {
+        Assert.assertEquals(-1, tokenize("").next());
+    }
+
+    @Test
+    public void testLineEndings() throws Exception {
+        HXLCSVTokenizer tokenizer = tokenize("a\r\nb\rc\nd");
+        assertRecord(tokenizer, "a");
+        assertRecord(tokenizer, "b");
+        assertRecord(tokenizer, "c");
+        assertRecord(tokenizer, "d");
+        Assert.assertEquals(-1, tokenizer.next());
+    }
+
+    @Test
+    public void testEmptyFields() throws Exception {
+        HXLCSVTokenizer tokenizer = tokenize(",a,,\n\n");
+        assertRecord(tokenizer, "", "a", "", "");
+        assertRecord(tokenizer, "");
+        Assert.assertEquals(-1, tokenizer.next());
+    }
+
+    @Test
+    public void testQuoted() throws Exception {
+        HXLCSVTokenizer tokenizer = tokenize("\"a,b\",\"say \"\"hi\"\"\",\"\"\n\"line 1\r\nline 2\",x\n");
+        assertRecord(tokenizer, "a,b", "say \"hi\"", "");
+        assertRecord(tokenizer, "line 1\r\nline 2", "x");
+        Assert.assertEquals(-1, tokenizer.next());
+    }
+
+    @Test
+    public void testTextAfterClosingQuote() throws Exception {
+        HXLCSVTokenizer tokenizer = tokenize("\"a\"\"b\"c,d\n");
+        assertRecord(tokenizer, "a\"bc", "d");
+    }
+
+    @Test
+    public void testQuoteInsideUnquotedField() throws Exception {
+        HXLCSVTokenizer tokenizer = tokenize("5'10\",x\n");
+        assertRecord(tokenizer, "5'10\"", "x");
+    }
+
+    @Test
+    public void testUnterminatedQuote() throws Exception {
+        HXLCSVTokenizer tokenizer = tokenize("\"abc,def\n");
+        assertRecord(tokenizer, "abc,def\n");
+        Assert.assertEquals(-1, tokenizer.next());
+    }
+
+    @Test
+    public void testBackslashIsLiteral() throws Exception {
+        HXLCSVTokenizer tokenizer = tokenize("a\\,\"b\\\"\n");
+        assertRecord(tokenizer, "a\\", "b\\");
+    }
+
+    @Test
+    public void testSmallBuffer() throws Exception {
+        // records much longer than the buffer force it to shift and grow
+        String input = "\"Sector, \"\"quoted\"\"\",Subsector 1,Organisation 1\r\n"
+            + "WASH,\"multi\r\nline\",Org\r\n"
+            + "x,y,z";
+        HXLCSVTokenizer tokenizer = new HXLCSVTokenizer(new StringReader(input), ',', 3);
+        assertRecord(tokenizer, "Sector, \"quoted\"", "Subsector 1", "Organisation 1");
+        assertRecord(tokenizer, "WASH", "multi\r\nline", "Org");
+        assertRecord(tokenizer, "x", "y", "z");
+        Assert.assertEquals(-1, tokenizer.next());
+    }
+
+    @Test
+    public void testManyFields() throws Exception {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            input.append(i > 0 ? "," : "").append(i);
+        }
+        HXLCSVTokenizer tokenizer = tokenize(input.toString());
+        Assert.assertEquals(100, tokenizer.next());
+        Assert.assertEquals("99", tokenizer.getField(99));
+    }
+
+    @Test
+    public void testSeparator() throws Exception {
+        HXLCSVTokenizer tokenizer = new HXLCSVTokenizer(new StringReader("a;\"b;c\",d\n"), ';', 16);
+        assertRecord(tokenizer, "a", "b;c,d");
+    }
+
+    @Test
+    public void testFieldChars() throws Exception {
+        HXLCSVTokenizer tokenizer = tokenize("#sector,\"#org\"\n");
+        Assert.assertEquals(2, tokenizer.next());
+        Assert.assertEquals(7, tokenizer.getFieldLength(0));
+        Assert.assertEquals('#', tokenizer.getFieldChar(0, 0));
+        Assert.assertEquals('g', tokenizer.getFieldChar(1, 3));
+    }
+
+    @Test(expected=IndexOutOfBoundsException.class)
+    public void testFieldIndexError() throws Exception {
+        HXLCSVTokenizer tokenizer = tokenize("a,b\n");
+        tokenizer.next();
+        tokenizer.getField(2);
+    }
+
+    @Test(expected=IndexOutOfBoundsException.class)
+    public void testFieldOffsetError() throws Exception {
+        HXLCSVTokenizer tokenizer = tokenize("a,b\n");
+        tokenizer.next();
+        tokenizer.getFieldChar(0, 1);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testIllegalSeparator() {
+        new HXLCSVTokenizer(new StringReader(""), '"', 16);
+    }
+
+    //
+    // Utility methods
+    //
+
+    private static HXLCSVTokenizer tokenize(String input) {
+        return new HXLCSVTokenizer(new StringReader(input));
+    }
+
+    private static void assertRecord(HXLTokenizer tokenizer, String... expected) throws Exception {
+        Assert.assertEquals(expected.length, tokenizer.next());
+        Assert.assertEquals(expected.length, tokenizer.getFieldCount());
+        for (int i = 0; i < expected.length; i++) {
+            Assert.assertEquals(expected[i], tokenizer.getField(i));
+            Assert.assertEquals(expected[i].length(), tokenizer.getFieldLength(i));
+        }
+    }
+
+}
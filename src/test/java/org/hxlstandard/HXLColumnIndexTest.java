@@ -0,0 +1,84 @@
+package org.hxlstandard;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit4 tests for the HXLColumnIndex class.
+ */
+public class HXLColumnIndexTest {
+
+    //
+    // Test constants
+    //
+
+    private final static String TAGS[] = {
+        "#sector", "#org", "#adm1", "#org"
+    };
+
+    //
+    // Instance variables
+    //
+
+    private List<HXLColumn> columns;
+
+    private HXLColumnIndex index;
+
+    //
+    // Tests
+    //
+
+    @Before
+    public void setUp() throws Exception {
+        columns = new ArrayList<HXLColumn>();
+        for (int i = 0; i < TAGS.length; i++) {
+            columns.add(new HXLColumn(TAGS[i], null, i, i + 1));
+        }
+        index = new HXLColumnIndex(columns);
+    }
+
+    @Test
+    public void testColumns() {
+        Assert.assertEquals(TAGS.length, index.size());
+        Assert.assertEquals(columns, index.getColumns());
+    }
+
+    @Test
+    public void testColumnNumber() {
+        Assert.assertEquals(0, index.getColumnNumber("#sector"));
+        Assert.assertEquals(1, index.getColumnNumber("#org"));
+        Assert.assertEquals(-1, index.getColumnNumber("#country"));
+    }
+
+    @Test
+    public void testColumnNumbers() {
+        Assert.assertArrayEquals(new int[] {1, 3}, index.getColumnNumbers("#org"));
+        Assert.assertEquals(0, index.getColumnNumbers("#country").length);
+    }
+
+    @Test
+    public void testAttributes() {
+        columns = new ArrayList<HXLColumn>();
+        columns.add(new HXLColumn("#adm1+code", null, 0, 0));
+        columns.add(new HXLColumn("#affected+f", null, 1, 1));
+        columns.add(new HXLColumn("#affected+m", null, 2, 2));
+        index = new HXLColumnIndex(columns);
+        Assert.assertEquals(0, index.getColumnNumber("#adm1"));
+        Assert.assertArrayEquals(new int[] {1, 2}, index.getColumnNumbers("#affected"));
+        Assert.assertEquals(2, index.getColumnNumber("#affected+m"));
+        Assert.assertEquals(2, index.getColumnNumber("#affected-f"));
+        Assert.assertEquals(-1, index.getColumnNumber("#adm1+name"));
+        Assert.assertEquals(-1, index.getColumnNumber("not a tag"));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testColumnOutOfPlace() {
+        columns.remove(0);
+        new HXLColumnIndex(columns);
+    }
+
+}
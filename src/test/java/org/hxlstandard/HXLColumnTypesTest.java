@@ -0,0 +1,72 @@
+package org.hxlstandard;
+
+import java.io.StringReader;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit4 tests for the HXLColumnTypes class.
+ */
+public class HXLColumnTypesTest {
+
+    //
+    // Test constants
+    //
+
+    private final static String DATA =
+        "#org,#affected,#value,#date,#code,#description\n"
+        + "Org 1,100,1.5,2015-01-01,007,\n"
+        + "Org 2,,2,2015-01-02,x,\n"
+        + "Org 3,300,-3,2015-01-03,9,\n";
+
+    //
+    // Instance variables
+    //
+
+    private List<HXLColumn> columns;
+
+    private HXLColumnTypes types;
+
+    //
+    // Tests
+    //
+
+    @Before
+    public void setUp() throws Exception {
+        HXLReader reader = new HXLReader(new StringReader(DATA));
+        columns = reader.getColumns();
+        types = HXLColumnTypes.infer(reader, 100);
+    }
+
+    @Test
+    public void testTypes() {
+        Assert.assertEquals(HXLColumnTypes.Type.STRING, types.getType(columns.get(0)));
+        Assert.assertEquals(HXLColumnTypes.Type.INTEGER, types.getType(columns.get(1)));
+        Assert.assertEquals(HXLColumnTypes.Type.DECIMAL, types.getType(columns.get(2)));
+        Assert.assertEquals(HXLColumnTypes.Type.DATE, types.getType(columns.get(3)));
+        Assert.assertEquals(HXLColumnTypes.Type.STRING, types.getType(columns.get(4)));
+        Assert.assertEquals(HXLColumnTypes.Type.EMPTY, types.getType(columns.get(5)));
+    }
+
+    @Test
+    public void testNumericColumns() {
+        Assert.assertTrue(types.isNumeric(columns.get(1)));
+        Assert.assertFalse(types.isNumeric(columns.get(5)));
+        List<HXLColumn> numeric = types.getNumericColumns();
+        Assert.assertEquals(2, numeric.size());
+        Assert.assertEquals("#affected", numeric.get(0).getTag());
+        Assert.assertEquals("#value", numeric.get(1).getTag());
+    }
+
+    @Test
+    public void testMaxRows() throws Exception {
+        HXLReader reader = new HXLReader(new StringReader(DATA));
+        HXLColumnTypes firstRow = HXLColumnTypes.infer(reader, 1);
+        Assert.assertEquals(HXLColumnTypes.Type.INTEGER, firstRow.getType(columns.get(4)));
+        Assert.assertEquals(1, reader.read().getRowNumber());
+    }
+
+}
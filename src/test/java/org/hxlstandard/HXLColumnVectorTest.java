@@ -0,0 +1,168 @@
+package org.hxlstandard;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit4 tests for the HXLColumnVector class.
+ */
+public class HXLColumnVectorTest {
+
+    //
+    // Instance variables
+    //
+
+    private HXLColumnVector vector;
+
+    //
+    // Tests
+    //
+
+    @Before
+    public void setUp() throws Exception {
+        vector = new HXLColumnVector(new HXLColumn("#affected", null, 0, 0));
+    }
+
+    @Test
+    public void testInt() {
+        add("10", "", "-3", null, "200");
+        vector.trimToSize();
+        Assert.assertEquals(HXLColumnVector.Type.INT, vector.getType());
+        Assert.assertTrue(vector.isNumeric());
+        Assert.assertEquals(5, vector.size());
+        Assert.assertEquals(3, vector.count());
+        Assert.assertEquals(207, vector.sumLong());
+        Assert.assertEquals(207.0, vector.sum(), 0.0);
+        Assert.assertEquals(-3.0, vector.min(), 0.0);
+        Assert.assertEquals(200.0, vector.max(), 0.0);
+        Assert.assertEquals(-3, vector.getInt(2));
+        Assert.assertTrue(vector.isNull(1));
+        Assert.assertTrue(vector.isNull(3));
+        Assert.assertNull(vector.getString(3));
+        Assert.assertEquals("200", vector.getString(4));
+    }
+
+    @Test
+    public void testLong() {
+        add("1", "5000000000", "");
+        Assert.assertEquals(HXLColumnVector.Type.LONG, vector.getType());
+        Assert.assertEquals(5000000001L, vector.sumLong());
+        Assert.assertEquals(1L, vector.getLong(0));
+    }
+
+    @Test
+    public void testDouble() {
+        add("1", "2.50", "5000000000");
+        Assert.assertEquals(HXLColumnVector.Type.DOUBLE, vector.getType());
+        Assert.assertEquals(5000000003.5, vector.sum(), 0.0);
+        Assert.assertEquals(1.0, vector.min(), 0.0);
+        Assert.assertEquals("2.5", vector.getString(1));
+        Assert.assertEquals(2.5, vector.getDouble(1), 0.0);
+    }
+
+    @Test
+    public void testPromoteToString() {
+        add("1", "", "2.5", "n/a", "1");
+        vector.trimToSize();
+        Assert.assertEquals(HXLColumnVector.Type.STRING, vector.getType());
+        Assert.assertFalse(vector.isNumeric());
+        Assert.assertEquals("1", vector.getString(0));
+        Assert.assertEquals("2.5", vector.getString(2));
+        Assert.assertEquals("n/a", vector.getString(3));
+        Assert.assertEquals(3, vector.getDictionary().size());
+        Assert.assertEquals(vector.getCode(0), vector.getCode(4));
+        Assert.assertEquals(-1, vector.getCode(1));
+        Assert.assertEquals(4, vector.count());
+    }
+
+    @Test
+    public void testLeadingZerosAreStrings() {
+        add("007");
+        Assert.assertEquals(HXLColumnVector.Type.STRING, vector.getType());
+        Assert.assertEquals("007", vector.getString(0));
+    }
+
+    @Test
+    public void testSameNumbersAsValues() {
+        // plain numbers have the values HXLValue gives them
+        for (String s : new String[] {"0", "42", "-17", "9223372036854775807"}) {
+            HXLColumnVector v = new HXLColumnVector(new HXLColumn("#x", null, 0, 0));
+            v.add(s);
+            Assert.assertTrue(s, v.isNumeric());
+            Assert.assertEquals(s, new HXLValue(v.getColumn(), s, 0, 0).asLong(), v.getLong(0));
+            Assert.assertEquals(s, s, v.getString(0));
+        }
+        for (String s : new String[] {"2.5", "-0.25", "0.05"}) {
+            HXLColumnVector v = new HXLColumnVector(new HXLColumn("#x", null, 0, 0));
+            v.add(s);
+            Assert.assertEquals(s, HXLColumnVector.Type.DOUBLE, v.getType());
+            Assert.assertEquals(s, new HXLValue(v.getColumn(), s, 0, 0).asDouble(), v.getDouble(0), 0);
+        }
+    }
+
+    @Test
+    public void testNotPlainNumbers() {
+        // numbers to HXLValue, but they wouldn't come back as written
+        String values[] = {"12", "007", "+5", " 42 ", "1e5", ".5", "99999999999999999999"};
+        add(values);
+        Assert.assertEquals(HXLColumnVector.Type.STRING, vector.getType());
+        for (int i = 0; i < values.length; i++) {
+            Assert.assertTrue(values[i], new HXLValue(vector.getColumn(), values[i], 0, 0).isNumeric());
+            Assert.assertEquals(values[i], vector.getString(i));
+        }
+    }
+
+    @Test
+    public void testNotNumbers() {
+        for (String s : new String[] {"-", "1.", ".5", "1e3", "+1", "1,000", "99999999999999999999"}) {
+            HXLColumnVector v = new HXLColumnVector(new HXLColumn("#x", null, 0, 0));
+            v.add(s);
+            Assert.assertEquals(s, HXLColumnVector.Type.STRING, v.getType());
+            Assert.assertEquals(s, v.getString(0));
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        add(null, "");
+        Assert.assertEquals(HXLColumnVector.Type.STRING, vector.getType());
+        Assert.assertEquals(0, vector.count());
+        Assert.assertTrue(vector.getDictionary().isEmpty());
+    }
+
+    @Test
+    public void testManyRows() {
+        for (int i = 0; i < 1000; i++) {
+            vector.add(i % 10 == 0 ? "" : Integer.toString(i));
+        }
+        vector.trimToSize();
+        Assert.assertEquals(1000, vector.size());
+        Assert.assertEquals(900, vector.count());
+        Assert.assertTrue(vector.isNull(990));
+        Assert.assertEquals(999, vector.getInt(999));
+    }
+
+    @Test(expected=UnsupportedOperationException.class)
+    public void testSumStringError() {
+        add("WASH");
+        vector.sum();
+    }
+
+    @Test(expected=UnsupportedOperationException.class)
+    public void testGetIntError() {
+        add("2.5");
+        vector.getInt(0);
+    }
+
+    //
+    // Utility methods
+    //
+
+    private void add(String... contents) {
+        for (String content : contents) {
+            vector.add(content);
+        }
+    }
+
+}
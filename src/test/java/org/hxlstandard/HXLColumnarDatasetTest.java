@@ -0,0 +1,128 @@
+package org.hxlstandard;
+
+import java.io.InputStreamReader;
+import java.io.StringReader;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit4 tests for the HXLColumnarDataset class.
+ */
+public class HXLColumnarDatasetTest {
+
+    //
+    // Test constants
+    //
+
+    private final static String DATA =
+        "Sector,Region,Affected,Rate\n"
+        + "#sector,#adm1,#affected,#x_rate\n"
+        + "WASH,North,100,0.5\n"
+        + "Health,South,,1.25\n"
+        + "WASH,North,50\n";
+
+    //
+    // Instance variables
+    //
+
+    private HXLColumnarDataset dataset;
+
+    //
+    // Tests
+    //
+
+    @Before
+    public void setUp() throws Exception {
+        dataset = new HXLColumnarDataset(new HXLReader(new StringReader(DATA)));
+    }
+
+    @Test
+    public void testShape() {
+        Assert.assertEquals(4, dataset.getColumns().size());
+        Assert.assertEquals(3, dataset.getRowCount());
+        Assert.assertEquals(3, dataset.getVector(0).size());
+        Assert.assertEquals(3, dataset.getVector(3).size());
+    }
+
+    @Test
+    public void testRowNumbers() {
+        Assert.assertEquals(0, dataset.getRowNumber(0));
+        Assert.assertEquals(2, dataset.getSourceRowNumber(0));
+        Assert.assertEquals(4, dataset.getSourceRowNumber(2));
+    }
+
+    @Test
+    public void testTypes() {
+        Assert.assertEquals(HXLColumnVector.Type.STRING, dataset.getVector("#sector").getType());
+        Assert.assertEquals(HXLColumnVector.Type.INT, dataset.getVector("#affected").getType());
+        Assert.assertEquals(HXLColumnVector.Type.DOUBLE, dataset.getVector("#x_rate").getType());
+        Assert.assertNull(dataset.getVector("#org"));
+    }
+
+    @Test
+    public void testAggregates() {
+        HXLColumnVector affected = dataset.getVector("#affected");
+        Assert.assertEquals(2, affected.count());
+        Assert.assertEquals(150, affected.sumLong());
+        Assert.assertEquals(50.0, affected.min(), 0.0);
+        Assert.assertEquals(100.0, affected.max(), 0.0);
+        HXLColumnVector rate = dataset.getVector("#x_rate");
+        Assert.assertEquals(2, rate.count());
+        Assert.assertTrue(rate.isNull(2));
+        Assert.assertEquals(1.75, rate.sum(), 0.0);
+    }
+
+    @Test
+    public void testDictionary() {
+        HXLColumnVector sector = dataset.getVector("#sector");
+        Assert.assertEquals(2, sector.getDictionary().size());
+        Assert.assertEquals(sector.getCode(0), sector.getCode(2));
+    }
+
+    @Test
+    public void testGetRow() {
+        HXLRow row = dataset.getRow(1);
+        Assert.assertEquals(1, row.getRowNumber());
+        Assert.assertEquals(3, row.getSourceRowNumber());
+        Assert.assertEquals(4, row.getValues().size());
+        Assert.assertEquals("South", row.getValues().get(1).getContent());
+        Assert.assertEquals("", row.getValues().get(2).getContent());
+        Assert.assertEquals("1.25", row.getValues().get(3).getContent());
+    }
+
+    @Test
+    public void testOriginalText() throws Exception {
+        // zero-padded codes and other numbers not in plain form
+        String codes[] = {"12", "007", "010", "+5", "1e5", "ABC", "-3"};
+        StringBuilder data = new StringBuilder("#adm1+code\n");
+        for (String code : codes) {
+            data.append(code).append('\n');
+        }
+        HXLColumnarDataset codeDataset = new HXLColumnarDataset(new HXLReader(new StringReader(data.toString())));
+        HXLColumnVector vector = codeDataset.getVector("#adm1");
+        Assert.assertEquals(HXLColumnVector.Type.STRING, vector.getType());
+        for (int i = 0; i < codes.length; i++) {
+            Assert.assertEquals(codes[i], vector.getString(i));
+            Assert.assertEquals(codes[i], codeDataset.getRow(i).get("#adm1+code").getContent());
+        }
+
+        // a column that stays numeric until the first code
+        codeDataset = new HXLColumnarDataset(new HXLReader(new StringReader("#adm1+code\n12\n34\n007\n")));
+        vector = codeDataset.getVector(0);
+        Assert.assertEquals("12", vector.getString(0));
+        Assert.assertEquals("34", vector.getString(1));
+        Assert.assertEquals("007", vector.getString(2));
+    }
+
+    @Test
+    public void testSample() throws Exception {
+        HXLReader reader = new HXLReader(new InputStreamReader(getClass().getResourceAsStream("/hxl-sample-01.csv")));
+        HXLColumnarDataset sample = new HXLColumnarDataset(reader);
+        Assert.assertEquals(4, sample.getRowCount());
+        Assert.assertEquals("Subsector 1", sample.getVector("#subsector").getString(0));
+        Assert.assertFalse(reader.isReuseObjects());
+    }
+
+}
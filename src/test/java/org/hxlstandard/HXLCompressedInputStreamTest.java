@@ -0,0 +1,256 @@
+package org.hxlstandard;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * JUnit4 tests for the HXLCompressedInputStream class.
+ */
+public class HXLCompressedInputStreamTest {
+
+    //
+    // Test constants
+    //
+
+    private final static String DATA =
+        "Province,Affected\n"
+        + "#adm1,#affected\n"
+        + "Coast,100\n"
+        + "Plateau,200\n";
+
+    //
+    // Instance variables
+    //
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    //
+    // Tests
+    //
+
+    @Test
+    public void testNone() throws IOException {
+        HXLCompressedInputStream input = new HXLCompressedInputStream(new ByteArrayInputStream(bytes(DATA)));
+        Assert.assertEquals(HXLCompressedInputStream.Format.NONE, input.getFormat());
+        Assert.assertArrayEquals(bytes(DATA), readAll(input));
+        Assert.assertEquals(DATA.length(), input.getCompressedBytes());
+        Assert.assertEquals(DATA.length(), input.getUncompressedBytes());
+    }
+
+    @Test
+    public void testGzip() throws IOException {
+        byte data[] = bytes(makeData(20000));
+        byte compressed[] = gzip(data);
+        HXLCompressedInputStream input = new HXLCompressedInputStream(new ByteArrayInputStream(compressed), 1000, 2, null);
+        Assert.assertEquals(HXLCompressedInputStream.Format.GZIP, input.getFormat());
+        Assert.assertArrayEquals(data, readAll(input));
+        Assert.assertEquals(compressed.length, input.getCompressedBytes());
+        Assert.assertEquals(data.length, input.getUncompressedBytes());
+    }
+
+    @Test
+    public void testConcatenatedGzip() throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        compressed.write(gzip(bytes("#adm1\n")));
+        compressed.write(gzip(bytes("Coast\n")));
+        HXLCompressedInputStream input = new HXLCompressedInputStream(new ByteArrayInputStream(compressed.toByteArray()));
+        Assert.assertArrayEquals(bytes("#adm1\nCoast\n"), readAll(input));
+    }
+
+    @Test
+    public void testDeflate() throws IOException {
+        byte data[] = bytes(makeData(20000));
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        OutputStream output = new DeflaterOutputStream(compressed);
+        output.write(data);
+        output.close();
+        HXLCompressedInputStream input = new HXLCompressedInputStream(new ByteArrayInputStream(compressed.toByteArray()));
+        Assert.assertEquals(HXLCompressedInputStream.Format.DEFLATE, input.getFormat());
+        Assert.assertArrayEquals(data, readAll(input));
+    }
+
+    @Test
+    public void testZip() throws IOException {
+        HXLCompressedInputStream input = new HXLCompressedInputStream(new ByteArrayInputStream(zip(DATA)));
+        Assert.assertEquals(HXLCompressedInputStream.Format.ZIP, input.getFormat());
+        Assert.assertEquals("data/test.csv", input.getEntryName());
+        // only the first file
+        Assert.assertArrayEquals(bytes(DATA), readAll(input));
+    }
+
+    @Test(expected = IOException.class)
+    public void testEmptyZip() throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        ZipOutputStream output = new ZipOutputStream(compressed);
+        output.putNextEntry(new ZipEntry("dir/"));
+        output.closeEntry();
+        output.close();
+        new HXLCompressedInputStream(new ByteArrayInputStream(compressed.toByteArray()));
+    }
+
+    @Test
+    public void testShortInput() throws IOException {
+        for (String s : new String[] {"", "x", "#a"}) {
+            HXLCompressedInputStream input = new HXLCompressedInputStream(new ByteArrayInputStream(bytes(s)));
+            Assert.assertEquals(HXLCompressedInputStream.Format.NONE, input.getFormat());
+            Assert.assertArrayEquals(bytes(s), readAll(input));
+        }
+    }
+
+    @Test
+    public void testLooksLikeZlib() throws IOException {
+        // text whose first two bytes pass the zlib header check
+        for (String s : new String[] {"HKG flood report\n#adm1\nHong Kong\n", "x^2,y\n#x_a,#x_b\n1,2\n", "HK"}) {
+            HXLCompressedInputStream input = new HXLCompressedInputStream(new ByteArrayInputStream(bytes(s)));
+            Assert.assertEquals(s, HXLCompressedInputStream.Format.NONE, input.getFormat());
+            Assert.assertArrayEquals(bytes(s), readAll(input));
+        }
+        File file = folder.newFile();
+        Files.write(file.toPath(), bytes("HKG flood report\n#adm1,#affected\nHong Kong,100\n"));
+        HXLReader reader = HXLReader.open(file);
+        Assert.assertEquals("Hong Kong", reader.read().get("#adm1").getContent());
+        reader.close();
+    }
+
+    @Test
+    public void testTruncated() throws IOException {
+        byte data[] = bytes(makeData(20000));
+        byte compressed[] = gzip(data);
+        HXLCompressedInputStream input = new HXLCompressedInputStream(new ByteArrayInputStream(Arrays.copyOf(compressed, compressed.length / 2)), 1000, 2, null);
+        byte buffer[] = new byte[1000];
+        long total = 0;
+        try {
+            int n = input.read(buffer);
+            while (n >= 0) {
+                total += n;
+                n = input.read(buffer);
+            }
+            Assert.fail("Truncated input not reported");
+        } catch (IOException e) {
+            // the data before the error comes first
+            Assert.assertTrue(total > 0);
+        }
+    }
+
+    @Test
+    public void testCloseEarly() throws IOException {
+        byte compressed[] = gzip(bytes(makeData(20000)));
+        final boolean closed[] = new boolean[1];
+        InputStream raw = new ByteArrayInputStream(compressed) {
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+        HXLCompressedInputStream input = new HXLCompressedInputStream(raw, 100, 1, null);
+        Assert.assertTrue(input.read() >= 0);
+        input.close();
+        Assert.assertTrue(closed[0]);
+        try {
+            input.read();
+            Assert.fail("Read after close");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testOpenStream() throws IOException {
+        HXLReader reader = HXLReader.open(new ByteArrayInputStream(gzip(bytes(DATA))), "#affected");
+        Assert.assertEquals(1, reader.getColumns().size());
+        Assert.assertEquals("100", reader.read().get("#affected").getContent());
+        Assert.assertEquals("200", reader.read().get("#affected").getContent());
+        Assert.assertNull(reader.read());
+        reader.close();
+    }
+
+    @Test
+    public void testOpenFile() throws IOException {
+        // names don't matter
+        for (byte data[] : new byte[][] {bytes(DATA), gzip(bytes(DATA)), zip(DATA)}) {
+            File file = folder.newFile();
+            OutputStream output = new FileOutputStream(file);
+            output.write(data);
+            output.close();
+            HXLReader reader = HXLReader.open(file);
+            Assert.assertEquals(2, reader.getColumns().size());
+            Assert.assertEquals("Coast", reader.read().get("#adm1").getContent());
+            Assert.assertEquals("Plateau", reader.read().get("#adm1").getContent());
+            Assert.assertNull(reader.read());
+            reader.close();
+        }
+    }
+
+    //
+    // Utility methods
+    //
+
+    private static byte[] bytes(String s) {
+        try {
+            return s.getBytes("UTF-8");
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String makeData(int rows) {
+        StringBuilder data = new StringBuilder("#adm1,#affected\n");
+        for (int i = 0; i < rows; i++) {
+            data.append("Province ").append(i % 17).append(',').append(i).append('\n');
+        }
+        return data.toString();
+    }
+
+    private static byte[] gzip(byte data[]) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        OutputStream output = new GZIPOutputStream(compressed);
+        output.write(data);
+        output.close();
+        return compressed.toByteArray();
+    }
+
+    private static byte[] zip(String data) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        ZipOutputStream output = new ZipOutputStream(compressed);
+        output.putNextEntry(new ZipEntry("data/"));
+        output.closeEntry();
+        output.putNextEntry(new ZipEntry("data/test.csv"));
+        output.write(bytes(data));
+        output.closeEntry();
+        output.putNextEntry(new ZipEntry("data/other.csv"));
+        output.write(bytes("#sector\nHealth\n"));
+        output.closeEntry();
+        output.close();
+        return compressed.toByteArray();
+    }
+
+    private static byte[] readAll(InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte buffer[] = new byte[333];
+        int n = input.read(buffer);
+        while (n >= 0) {
+            output.write(buffer, 0, n);
+            n = input.read(buffer);
+        }
+        input.close();
+        return output.toByteArray();
+    }
+
+}
@@ -0,0 +1,151 @@
+package org.hxlstandard;
+
+import java.io.StringReader;
+import java.time.LocalDate;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit4 tests for the HXLIndex class.
+ */
+public class HXLIndexTest {
+
+    //
+    // Test constants
+    //
+
+    private final static String DATA =
+        "#adm1,#sector,#affected,#date\n"
+        + "North,WASH,100,2015-01-10\n"
+        + "South,Health,20,2015-02-01\n"
+        + "North,Health,n/a,2015-03-15\n"
+        + "North,WASH,50,not a date\n"
+        + "South\n";
+
+    //
+    // Instance variables
+    //
+
+    private List<HXLColumn> columns;
+
+    private HXLIndex index;
+
+    //
+    // Tests
+    //
+
+    @Before
+    public void setUp() throws Exception {
+        HXLReader reader = new HXLReader(new StringReader(DATA));
+        columns = reader.getColumns();
+        index = new HXLIndex()
+            .addHashIndex(columns.get(0))
+            .addHashIndex(columns.get(1))
+            .addNumberIndex(columns.get(2))
+            .addDateIndex(columns.get(3));
+        Assert.assertEquals(5, index.addAll(reader));
+    }
+
+    @Test
+    public void testEqual() {
+        Assert.assertEquals(bits(0, 2, 3), index.equal(columns.get(0), "North"));
+        Assert.assertEquals(bits(1, 4), index.equal(columns.get(0), "South"));
+        Assert.assertEquals(bits(), index.equal(columns.get(0), "East"));
+        // a short row has no #sector
+        Assert.assertEquals(bits(4), index.equal(columns.get(1), ""));
+    }
+
+    @Test
+    public void testIntersect() {
+        BitSet rows = index.equal(columns.get(0), "North");
+        rows.and(index.equal(columns.get(1), "WASH"));
+        Assert.assertEquals(bits(0, 3), rows);
+        rows.and(index.range(columns.get(2), 60, Double.POSITIVE_INFINITY));
+        Assert.assertEquals(bits(0), rows);
+    }
+
+    @Test
+    public void testNumberRange() {
+        Assert.assertEquals(bits(0, 1, 3), index.range(columns.get(2), Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY));
+        Assert.assertEquals(bits(1, 3), index.range(columns.get(2), 20, 50));
+        Assert.assertEquals(bits(), index.range(columns.get(2), 51, 99));
+    }
+
+    @Test
+    public void testDateRange() {
+        Assert.assertEquals(bits(0, 1), index.range(columns.get(3), LocalDate.of(2015, 1, 1), LocalDate.of(2015, 2, 1)));
+        Assert.assertEquals(bits(0, 1, 2), index.range(columns.get(3), LocalDate.MIN, LocalDate.MAX));
+    }
+
+    @Test
+    public void testIncremental() throws Exception {
+        Assert.assertEquals(bits(1, 3), index.range(columns.get(2), 20, 50));
+        HXLReader more = new HXLReader(new StringReader("#adm1,#sector,#affected,#date\nWest,WASH,30,2015-02-02\n"));
+        HXLRow row = more.read();
+        HXLRow copy = new HXLRow(5, 7);
+        for (int i = 0; i < columns.size(); i++) {
+            copy.getValuesModifiable().add(new HXLValue(columns.get(i), row.getValues().get(i).getContent(), 5, 7));
+        }
+        index.add(copy);
+        Assert.assertEquals(bits(1, 3, 5), index.range(columns.get(2), 20, 50));
+        Assert.assertEquals(bits(5), index.equal(columns.get(0), "West"));
+        Assert.assertEquals(bits(0, 1, 2, 3, 4, 5), index.getRows());
+    }
+
+    @Test
+    public void testSortedAgainstScan() {
+        HXLColumn column = new HXLColumn("#value", null, 0, 0);
+        HXLIndex big = new HXLIndex().addNumberIndex(column);
+        Random random = new Random(42);
+        double values[] = new double[5000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextInt(500) / 4.0;
+            HXLRow row = new HXLRow(i, i);
+            row.getValuesModifiable().add(new HXLValue(column, Double.toString(values[i]), i, i));
+            big.add(row);
+            if (i % 1000 == 999) {
+                // query between batches of rows, to merge sorted runs
+                big.range(column, 0, 1);
+            }
+        }
+        for (int q = 0; q < 50; q++) {
+            double from = random.nextInt(500) / 4.0;
+            double to = from + random.nextInt(100) / 4.0;
+            BitSet expected = new BitSet();
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] >= from && values[i] <= to) {
+                    expected.set(i);
+                }
+            }
+            Assert.assertEquals(expected, big.range(column, from, to));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoIndex() {
+        index.equal(columns.get(2), "100");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongKind() {
+        index.range(columns.get(2), LocalDate.MIN, LocalDate.MAX);
+    }
+
+    //
+    // Utility methods
+    //
+
+    private static BitSet bits(int... rows) {
+        BitSet result = new BitSet();
+        for (int row : rows) {
+            result.set(row);
+        }
+        return result;
+    }
+
+}
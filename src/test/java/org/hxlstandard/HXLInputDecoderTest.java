@@ -0,0 +1,179 @@
+package org.hxlstandard;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * JUnit4 tests for the HXLInputDecoder class.
+ */
+public class HXLInputDecoderTest {
+
+    //
+    // Test constants
+    //
+
+    private final static Charset UTF8 = Charset.forName("UTF-8");
+
+    private final static String DATA =
+        "Sector,Organisation\n"
+        + "#sector,#org\n"
+        + "WASH,M\u00e9decins du Monde\n"
+        + "Sant\u00e9,\u4e2d\u6587 \ud83d\ude00\n";
+
+    //
+    // Instance variables
+    //
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    //
+    // Tests
+    //
+
+    @Test
+    public void testUtf8() throws IOException {
+        HXLInputDecoder decoder = new HXLInputDecoder(new ByteArrayInputStream(DATA.getBytes(UTF8)));
+        Assert.assertEquals("UTF-8", decoder.getCharset().name());
+        Assert.assertFalse(decoder.hasByteOrderMark());
+        Assert.assertEquals(DATA, readAll(decoder, 1000));
+    }
+
+    @Test
+    public void testByteOrderMark() throws IOException {
+        HXLInputDecoder decoder = new HXLInputDecoder(new ByteArrayInputStream(("\ufeff" + DATA).getBytes(UTF8)));
+        Assert.assertEquals("UTF-8", decoder.getCharset().name());
+        Assert.assertTrue(decoder.hasByteOrderMark());
+        Assert.assertEquals(DATA, readAll(decoder, 1000));
+    }
+
+    @Test
+    public void testUtf16() throws IOException {
+        String charsets[] = {"UTF-16BE", "UTF-16LE"};
+        for (String name : charsets) {
+            Charset charset = Charset.forName(name);
+            HXLInputDecoder decoder = new HXLInputDecoder(new ByteArrayInputStream(("\ufeff" + DATA).getBytes(charset)));
+            Assert.assertEquals(charset, decoder.getCharset());
+            Assert.assertTrue(decoder.hasByteOrderMark());
+            Assert.assertEquals(DATA, readAll(decoder, 1000));
+
+            // no byte order mark
+            decoder = new HXLInputDecoder(new ByteArrayInputStream(DATA.getBytes(charset)));
+            Assert.assertEquals(charset, decoder.getCharset());
+            Assert.assertFalse(decoder.hasByteOrderMark());
+            Assert.assertEquals(DATA, readAll(decoder, 1000));
+        }
+    }
+
+    @Test
+    public void testBufferBoundaries() throws IOException {
+        // every split of multi-byte characters between reads and fills
+        StringBuilder s = new StringBuilder();
+        Random random = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            switch (random.nextInt(4)) {
+            case 0:
+                s.append((char) ('a' + random.nextInt(26)));
+                break;
+            case 1:
+                s.append((char) (0x80 + random.nextInt(0x780)));
+                break;
+            case 2:
+                s.append((char) (0x800 + random.nextInt(0xd000)));
+                break;
+            default:
+                s.appendCodePoint(0x10000 + random.nextInt(0x10000));
+                break;
+            }
+        }
+        String text = s.toString();
+        byte bytes[] = text.getBytes(UTF8);
+        for (int bufferSize = 4; bufferSize <= 9; bufferSize++) {
+            for (int readSize = 1; readSize <= 5; readSize++) {
+                HXLInputDecoder decoder = new HXLInputDecoder(new ByteArrayInputStream(bytes), bufferSize);
+                Assert.assertEquals(bufferSize + "/" + readSize, text, readAll(decoder, readSize));
+            }
+        }
+    }
+
+    @Test
+    public void testMalformed() throws IOException {
+        byte bytes[] = {'a', (byte) 0xff, 'b', (byte) 0xc3, 'c', (byte) 0xe2, (byte) 0x82, (byte) 0xc0, (byte) 0x80, 'd', (byte) 0xe2};
+        HXLInputDecoder decoder = new HXLInputDecoder(new ByteArrayInputStream(bytes));
+        // the same replacements as an InputStreamReader
+        Assert.assertEquals(new String(bytes, UTF8), readAll(decoder, 100));
+        Assert.assertEquals("a\ufffdb\ufffdc\ufffd\ufffd\ufffdd\ufffd", new String(bytes, UTF8));
+    }
+
+    @Test
+    public void testShortInput() throws IOException {
+        Assert.assertEquals("", readAll(new HXLInputDecoder(new ByteArrayInputStream(new byte[0])), 10));
+        Assert.assertEquals("#", readAll(new HXLInputDecoder(new ByteArrayInputStream(new byte[] {'#'})), 10));
+        Assert.assertEquals("", readAll(new HXLInputDecoder(new ByteArrayInputStream("\ufeff".getBytes(UTF8))), 10));
+    }
+
+    @Test
+    public void testDetectCharset() throws IOException {
+        String charsets[] = {"UTF-8", "UTF-16BE", "UTF-16LE"};
+        for (String name : charsets) {
+            for (String text : new String[] {DATA, "\ufeff" + DATA}) {
+                byte bytes[] = text.getBytes(name);
+                Assert.assertEquals(name, HXLInputDecoder.detectCharset(bytes, 4).name());
+                Assert.assertEquals(name, new HXLInputDecoder(new ByteArrayInputStream(bytes)).getCharset().name());
+            }
+        }
+        Assert.assertEquals("UTF-8", HXLInputDecoder.detectCharset(new byte[4], 0).name());
+    }
+
+    @Test
+    public void testReaderFromStream() throws IOException {
+        HXLReader reader = new HXLReader(new ByteArrayInputStream(("\ufeff" + DATA).getBytes(UTF8)));
+        Assert.assertEquals("#sector", reader.getColumns().get(0).getTag());
+        reader.read();
+        Assert.assertEquals("\u4e2d\u6587 \ud83d\ude00", reader.read().get("#org").getContent());
+        reader.close();
+    }
+
+    @Test
+    public void testReaderFromFile() throws IOException {
+        String charsets[] = {"UTF-8", "UTF-16LE"};
+        for (String charset : charsets) {
+            File file = folder.newFile();
+            OutputStream output = new FileOutputStream(file);
+            output.write(("\ufeff" + DATA).getBytes(charset));
+            output.close();
+            HXLReader reader = new HXLReader(file.toPath(), "#org");
+            Assert.assertEquals("#org", reader.getColumns().get(0).getTag());
+            Assert.assertEquals("M\u00e9decins du Monde", reader.read().get("#org").getContent());
+            reader.close();
+        }
+    }
+
+    //
+    // Utility methods
+    //
+
+    private static String readAll(Reader input, int readSize) throws IOException {
+        StringBuilder s = new StringBuilder();
+        char buffer[] = new char[readSize];
+        int n = input.read(buffer);
+        while (n >= 0) {
+            s.append(buffer, 0, n);
+            n = input.read(buffer);
+        }
+        input.close();
+        return s.toString();
+    }
+
+}
@@ -0,0 +1,200 @@
+package org.hxlstandard;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * JUnit4 tests for the HXLMappedTokenizer class.
+ */
+public class HXLMappedTokenizerTest {
+
+    //
+    // Test constants
+    //
+
+    private final static String INPUTS[] = {
+        "",
+        "a,b,c\nd,e,f\n",
+        "a,b\nc,d",
+        "a\r\nb\rc\nd",
+        ",a,,\n\n",
+        "\"a,b\",\"say \"\"hi\"\"\",\"\"\n\"line 1\r\nline 2\",x\n",
+        "\"a\"\"b\"c,d\n",
+        "\"a\"b\"c,d\n",
+        "5'10\",x\n",
+        "\"abc,def\n",
+        "\"abc\"",
+        "a\\,\"b\\\"\n",
+        "Caf\u00e9,\"Sant\u00e9, \"\"\u00e9\"\"\",\u65e5\u672c,\ud83d\ude00\r\n",
+        "#sector,#org\r\nWASH,\"Org\r\n1\"\r\nHealth,Org 2\r\n"
+    };
+
+    //
+    // Instance variables
+    //
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    //
+    // Tests
+    //
+
+    @Test
+    public void testSameAsCSVTokenizer() throws Exception {
+        for (String input : INPUTS) {
+            File file = writeFile(input);
+            // tiny windows force the record to be remapped and the window grown
+            for (int windowSize : new int[] {1, 3, 7, 64, HXLMappedTokenizer.DEFAULT_WINDOW_SIZE}) {
+                assertSameTokens(input, new HXLMappedTokenizer(file, ',', windowSize));
+            }
+        }
+    }
+
+    @Test
+    public void testFieldChars() throws Exception {
+        HXLMappedTokenizer tokenizer = new HXLMappedTokenizer(writeFile("#sector,\u00e9t\u00e9,\"#org\"\n"));
+        Assert.assertEquals(3, tokenizer.next());
+        Assert.assertEquals('#', tokenizer.getFieldChar(0, 0));
+        Assert.assertEquals('t', tokenizer.getFieldChar(1, 1));
+        Assert.assertEquals(3, tokenizer.getFieldLength(1));
+        Assert.assertEquals('#', tokenizer.getFieldChar(2, 0));
+        tokenizer.close();
+    }
+
+    @Test
+    public void testFieldCharsPastNonAscii() throws Exception {
+        HXLMappedTokenizer tokenizer = new HXLMappedTokenizer(writeFile("#adm1+caf\u00e9+x,#org\nab\u00e9cd\n"));
+        Assert.assertEquals(2, tokenizer.next());
+        String field = "#adm1+caf\u00e9+x";
+        for (int i = 0; i < field.length(); i++) {
+            Assert.assertEquals(field.charAt(i), tokenizer.getFieldChar(0, i));
+        }
+        Assert.assertEquals('#', tokenizer.getFieldChar(1, 0));
+        Assert.assertEquals('+', tokenizer.getFieldChar(0, 5));
+        // the next record doesn't see the last one's characters
+        Assert.assertEquals(1, tokenizer.next());
+        Assert.assertEquals('\u00e9', tokenizer.getFieldChar(0, 2));
+        Assert.assertEquals('d', tokenizer.getFieldChar(0, 4));
+        try {
+            tokenizer.getFieldChar(0, 5);
+            Assert.fail("Offset past the end of the field");
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+        tokenizer.close();
+    }
+
+    @Test(expected=IndexOutOfBoundsException.class)
+    public void testFieldIndexError() throws Exception {
+        HXLMappedTokenizer tokenizer = new HXLMappedTokenizer(writeFile("a,b\n"));
+        tokenizer.next();
+        tokenizer.getField(2);
+    }
+
+    @Test
+    public void testLazyFieldOutlivesRecord() throws Exception {
+        HXLMappedTokenizer tokenizer = new HXLMappedTokenizer(writeFile("\"x\"\"y\",b\nc,d\n"), ',', 4);
+        tokenizer.next();
+        CharSequence field = tokenizer.getLazyField(0);
+        tokenizer.next();
+        tokenizer.close();
+        Assert.assertEquals("x\"y", field.toString());
+        Assert.assertEquals(3, field.length());
+    }
+
+    @Test
+    public void testReader() throws Exception {
+        File file = writeFile("Sector,Org\n#sector,#org\nWASH,\"Org, 1\"\nHealth,Org 2\n");
+        HXLReader reader = new HXLReader(file);
+        HXLRow row1 = reader.read();
+        HXLRow row2 = reader.read();
+        Assert.assertNull(reader.read());
+        reader.close();
+        Assert.assertEquals("#org", row1.getValues().get(1).getTag());
+        Assert.assertEquals("Org, 1", row1.getValues().get(1).getContent());
+        Assert.assertEquals("Health", row2.getValues().get(0).getContent());
+        Assert.assertEquals(3, row2.getSourceRowNumber());
+    }
+
+    @Test
+    public void testReaderReuseObjects() throws Exception {
+        File file = writeFile("#sector,#org\nWASH,Org 1\nHealth,Org 2\n");
+        HXLReader reader = new HXLReader(file);
+        reader.setReuseObjects(true);
+        HXLValue value = reader.read().getValues().get(1);
+        Assert.assertEquals("Org 1", value.getContent());
+        Assert.assertSame(value, reader.read().getValues().get(1));
+        Assert.assertEquals("Org 2", value.getContent());
+        reader.close();
+    }
+
+    @Test
+    public void testReaderBatch() throws Exception {
+        File file = writeFile("#sector,#org\nWASH,Org 1\nHealth,Org 2\nEducation,Org 3\n");
+        HXLReader reader = new HXLReader(file);
+        HXLRowBlock block = reader.readBatch(2);
+        Assert.assertEquals("Org 2", block.get(1).get("#org").getContent());
+        block = reader.readBatch(2);
+        Assert.assertEquals(1, block.size());
+        Assert.assertEquals("Education", block.get(0).get("#sector").getContent());
+        Assert.assertNull(reader.readBatch(2));
+        reader.close();
+    }
+
+    @Test
+    public void testReaderNumbers() throws Exception {
+        File file = writeFile("#affected\n100\n\"2,5\"\n\"3\"\n\u00e9\n");
+        HXLReader reader = new HXLReader(file);
+        Assert.assertEquals(100, reader.read().get("#affected").asLong());
+        Assert.assertFalse(reader.read().get("#affected").isNumeric());
+        Assert.assertEquals(3.0, reader.read().get("#affected").asDouble(), 0.0);
+        HXLValue value = reader.read().get("#affected");
+        Assert.assertFalse(value.isNumeric());
+        Assert.assertEquals("\u00e9", value.getContent());
+        reader.close();
+    }
+
+    //
+    // Utility methods
+    //
+
+    private File writeFile(String content) throws Exception {
+        File file = folder.newFile();
+        OutputStream output = new FileOutputStream(file);
+        output.write(content.getBytes("UTF-8"));
+        output.close();
+        return file;
+    }
+
+    private static void assertSameTokens(String input, HXLMappedTokenizer actual) throws Exception {
+        HXLCSVTokenizer expected = new HXLCSVTokenizer(new StringReader(input));
+        int count = expected.next();
+        while (count != -1) {
+            Assert.assertEquals(input, count, actual.next());
+            for (int i = 0; i < count; i++) {
+                Assert.assertEquals(input, expected.getField(i), actual.getField(i));
+                Assert.assertEquals(input, expected.getField(i), actual.getLazyField(i).toString());
+                Assert.assertEquals(input, expected.getFieldLength(i), actual.getFieldLength(i));
+                for (int j = 0; j < expected.getFieldLength(i); j++) {
+                    Assert.assertEquals(input, expected.getFieldChar(i, j), actual.getFieldChar(i, j));
+                }
+                if (expected.getFieldLength(i) > 0) {
+                    // back to the start after the whole field
+                    Assert.assertEquals(input, expected.getFieldChar(i, 0), actual.getFieldChar(i, 0));
+                }
+            }
+            count = expected.next();
+        }
+        Assert.assertEquals(input, -1, actual.next());
+        actual.close();
+    }
+
+}
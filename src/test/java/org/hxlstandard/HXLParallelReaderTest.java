@@ -0,0 +1,189 @@
+package org.hxlstandard;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * JUnit4 tests for the HXLParallelReader class.
+ */
+public class HXLParallelReaderTest {
+
+    //
+    // Test constants
+    //
+
+    private final static Charset UTF8 = Charset.forName("UTF-8");
+
+    private final static int ROWS = 500;
+
+    //
+    // Instance variables
+    //
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+
+    private ForkJoinPool pool;
+
+    //
+    // Tests
+    //
+
+    @Before
+    public void setUp() throws Exception {
+        file = folder.newFile("parallel.csv");
+        Writer output = new OutputStreamWriter(new FileOutputStream(file), UTF8);
+        output.write("What,\"Who\r\nexactly\",Where\r\n");
+        output.write("Sector,Organisation,Country\r\n");
+        output.write("#sector,#org,#country,,#affected\r\n");
+        for (int i = 0; i < ROWS; i++) {
+            if (i % 7 == 0) {
+                output.write("\"Multi\nline, \"\"quoted\"\" \u00e9\",Org " + i + ",Country,x," + i + "\n");
+            } else if (i % 11 == 0) {
+                output.write("\r\n");
+            } else {
+                output.write("WASH,Org " + i + ",\"Country\r\n2\",," + i + "\r");
+            }
+        }
+        output.write("Health,Last,Country,,999");
+        output.close();
+        pool = new ForkJoinPool(4);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pool.shutdown();
+    }
+
+    @Test
+    public void testColumns() throws Exception {
+        HXLParallelReader reader = new HXLParallelReader(file);
+        try {
+            List<HXLColumn> columns = reader.getColumns();
+            Assert.assertEquals(4, columns.size());
+            Assert.assertEquals("#affected", columns.get(3).getTag());
+            Assert.assertEquals(4, columns.get(3).getSourceColumnNumber());
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testOrdered() throws Exception {
+        // tiny chunks, so that boundaries fall inside quoted values and CRLF pairs
+        for (int chunkSize = 1; chunkSize < 200; chunkSize += 37) {
+            HXLParallelReader reader = new HXLParallelReader(file, UTF8, pool, true, chunkSize);
+            try {
+                assertSameRows(readSequential(), readAll(reader));
+                Assert.assertTrue(reader.getChunkCount() > 1);
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    @Test
+    public void testUnordered() throws Exception {
+        HXLParallelReader reader = new HXLParallelReader(file, UTF8, pool, false, 64);
+        List<HXLRow> rows;
+        try {
+            rows = readAll(reader);
+        } finally {
+            reader.close();
+        }
+        Collections.sort(rows, new Comparator<HXLRow>() {
+            @Override
+            public int compare(HXLRow r1, HXLRow r2) {
+                return r1.getRowNumber() - r2.getRowNumber();
+            }
+        });
+        assertSameRows(readSequential(), rows);
+    }
+
+    @Test
+    public void testDefaultChunkSize() throws Exception {
+        HXLParallelReader reader = new HXLParallelReader(file);
+        try {
+            assertSameRows(readSequential(), readAll(reader));
+            Assert.assertEquals(1, reader.getChunkCount());
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testNoData() throws Exception {
+        File empty = folder.newFile("empty.csv");
+        Writer output = new OutputStreamWriter(new FileOutputStream(empty), UTF8);
+        output.write("Sector\n#sector\n");
+        output.close();
+        HXLParallelReader reader = new HXLParallelReader(empty, UTF8, pool, true, 4);
+        try {
+            Assert.assertNull(reader.read());
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testUnsupportedCharset() throws Exception {
+        new HXLParallelReader(file, Charset.forName("UTF-16"), pool, true, 1024);
+    }
+
+    //
+    // Utility methods
+    //
+
+    private List<HXLRow> readSequential() throws Exception {
+        HXLReader reader = new HXLReader(new InputStreamReader(new FileInputStream(file), UTF8));
+        List<HXLRow> rows = new ArrayList<HXLRow>();
+        for (HXLRow row = reader.read(); row != null; row = reader.read()) {
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private static List<HXLRow> readAll(HXLParallelReader reader) throws Exception {
+        List<HXLRow> rows = new ArrayList<HXLRow>();
+        for (HXLRow row = reader.read(); row != null; row = reader.read()) {
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private static void assertSameRows(List<HXLRow> expected, List<HXLRow> actual) {
+        Assert.assertEquals(ROWS + 1, expected.size());
+        Assert.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            HXLRow e = expected.get(i);
+            HXLRow a = actual.get(i);
+            Assert.assertEquals(e.getRowNumber(), a.getRowNumber());
+            Assert.assertEquals(e.getSourceRowNumber(), a.getSourceRowNumber());
+            Assert.assertEquals(e.getValues().size(), a.getValues().size());
+            for (int j = 0; j < e.getValues().size(); j++) {
+                Assert.assertEquals(e.getValues().get(j).getContent(), a.getValues().get(j).getContent());
+                Assert.assertSame(e.getValues().get(j).getTag(), a.getValues().get(j).getTag());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,299 @@
+package org.hxlstandard;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * JUnit4 tests for the HXLPipeline class.
+ */
+public class HXLPipelineTest {
+
+    //
+    // Test constants
+    //
+
+    private final static String DATA =
+        "Sector,Org,Country,Affected\n"
+        + "#sector,#org,#country,#affected\n"
+        + "WASH,Org 1,Mali,100\n"
+        + "Health,Org 2,Mali,200\n"
+        + "WASH,Org 1,Niger,300\n"
+        + "WASH,Org 3,Mali,400\n"
+        + "Health,Org 2,Mali,500\n";
+
+    private final static String COUNTRIES =
+        "#country,#country+code,#population\n"
+        + "Mali,MLI,20000000\n"
+        + "Niger,NER,\n"
+        + "Niger,NER2,1\n"
+        + "Chad,TCD,17000000\n";
+
+    //
+    // Tests
+    //
+
+    @Test
+    public void testFrom() throws Exception {
+        HXLPipeline pipeline = HXLPipeline.from(reader());
+        Assert.assertEquals(4, pipeline.getColumns().size());
+        Assert.assertEquals(5, pipeline.count());
+        Assert.assertSame(pipeline, HXLPipeline.from(pipeline));
+    }
+
+    @Test
+    public void testFilter() throws Exception {
+        HXLPipeline pipeline = HXLPipeline.from(reader()).filter("#sector", s -> s.equals("WASH"));
+        HXLRow row = pipeline.read();
+        Assert.assertEquals("Org 1", row.get("#org").getContent());
+        Assert.assertEquals(0, row.getRowNumber());
+        row = pipeline.read();
+        Assert.assertEquals("Niger", row.get("#country").getContent());
+        Assert.assertEquals(2, row.getRowNumber());
+        Assert.assertEquals(4, row.getSourceRowNumber());
+        Assert.assertEquals(1, pipeline.count());
+    }
+
+    @Test
+    public void testFilterMissingTag() throws Exception {
+        Assert.assertEquals(5, HXLPipeline.from(reader()).filter("#adm1", String::isEmpty).count());
+    }
+
+    @Test
+    public void testSelect() throws Exception {
+        HXLPipeline pipeline = HXLPipeline.from(reader()).select("#country", "#org");
+        List<HXLColumn> columns = pipeline.getColumns();
+        Assert.assertEquals(2, columns.size());
+        Assert.assertEquals("#org", columns.get(0).getTag());
+        Assert.assertEquals(0, columns.get(0).getColumnNumber());
+        Assert.assertEquals(1, columns.get(0).getSourceColumnNumber());
+        HXLRow row = pipeline.read();
+        Assert.assertEquals(2, row.getValues().size());
+        Assert.assertSame(columns.get(1), row.getValues().get(1).getColumn());
+        Assert.assertEquals("Mali", row.get("#country").getContent());
+        Assert.assertNull(row.get("#sector"));
+    }
+
+    @Test
+    public void testSelectAttributes() throws Exception {
+        HXLReader reader = new HXLReader(new StringReader("#adm1+code,#affected+f,#affected+m\nCOA,100,200\n"));
+        HXLPipeline pipeline = HXLPipeline.from(reader).select("#affected-m");
+        Assert.assertEquals(1, pipeline.getColumns().size());
+        Assert.assertEquals("#affected+f", pipeline.getColumns().get(0).getTag());
+        Assert.assertEquals("100", pipeline.read().get("#affected").getContent());
+    }
+
+    @Test
+    public void testRename() throws Exception {
+        HXLPipeline pipeline = HXLPipeline.from(reader()).rename("#country", "#adm0");
+        Assert.assertEquals("#adm0", pipeline.getColumns().get(2).getTag());
+        Assert.assertEquals("Mali", pipeline.read().get("#adm0").getContent());
+        pipeline = HXLPipeline.from(reader()).rename("#Country", "#adm0");
+        Assert.assertEquals("#adm0", pipeline.getColumns().get(2).getTag());
+    }
+
+    @Test
+    public void testRenameAttributes() throws Exception {
+        HXLPipeline pipeline = HXLPipeline.from(new HXLReader(new StringReader(
+            "#affected+f+children,#affected+m,#affected+total,#affectedx\n"
+            + "1,2,3,4\n"
+        ))).rename("#Affected-total", "#inneed");
+        List<String> tags = pipeline.getColumns().stream().map(HXLColumn::getTag).collect(Collectors.toList());
+        Assert.assertEquals(Arrays.asList("#inneed+f+children", "#inneed+m", "#affected+total", "#affectedx"), tags);
+
+        // attributes named in the pattern or the new tag aren't repeated
+        pipeline = HXLPipeline.from(new HXLReader(new StringReader("#affected+f+children\n1\n")))
+            .rename("#affected+children", "#inneed+f");
+        Assert.assertEquals("#inneed+f", pipeline.getColumns().get(0).getTag());
+        Assert.assertEquals("1", pipeline.read().get("#inneed+f").getContent());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRenameBadPattern() throws Exception {
+        HXLPipeline.from(reader()).rename("country", "#adm0");
+    }
+
+    @Test
+    public void testLimit() throws Exception {
+        HXLReader reader = reader();
+        HXLPipeline pipeline = HXLPipeline.from(reader).limit(2);
+        Assert.assertEquals(2, pipeline.count());
+        Assert.assertNull(pipeline.read());
+        // the rest of the source is left unread
+        Assert.assertEquals(2, reader.read().getRowNumber());
+    }
+
+    @Test
+    public void testDistinct() throws Exception {
+        Assert.assertEquals(5, HXLPipeline.from(reader()).distinct().count());
+        Assert.assertEquals(3, HXLPipeline.from(reader()).distinct("#org").count());
+        Assert.assertEquals(4, HXLPipeline.from(reader()).select("#sector", "#org", "#country").distinct().count());
+    }
+
+    @Test
+    public void testChain() throws Exception {
+        long count = HXLPipeline.from(reader())
+            .filter("#country", s -> s.equals("Mali"))
+            .rename("#org", "#org+impl")
+            .select("#sector", "#org+impl")
+            .distinct()
+            .limit(10)
+            .count();
+        Assert.assertEquals(3, count);
+    }
+
+    @Test
+    public void testIterator() throws Exception {
+        int count = 0;
+        for (HXLRow row : HXLPipeline.from(reader()).filter("#sector", s -> s.equals("Health"))) {
+            Assert.assertEquals("Org 2", row.get("#org").getContent());
+            count++;
+        }
+        Assert.assertEquals(2, count);
+    }
+
+    @Test
+    public void testStream() throws Exception {
+        List<String> orgs = HXLPipeline.from(reader())
+            .stream()
+            .map(row -> row.get("#org").getContent())
+            .distinct()
+            .collect(Collectors.toList());
+        Assert.assertEquals(3, orgs.size());
+        Assert.assertEquals("Org 3", orgs.get(2));
+    }
+
+    @Test
+    public void testParallelStream() throws Exception {
+        long total = HXLPipeline.from(new HXLReader(new StringReader(makeData(5000))))
+            .stream()
+            .parallel()
+            .mapToLong(row -> Long.parseLong(row.get("#affected").getContent()))
+            .sum();
+        Assert.assertEquals(5000L * 4999 / 2, total);
+    }
+
+    @Test
+    public void testStreamClosesSource() throws Exception {
+        final boolean closed[] = new boolean[1];
+        Reader input = new StringReader(DATA) {
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+        try (java.util.stream.Stream<HXLRow> stream = HXLPipeline.from(new HXLReader(input)).stream()) {
+            Assert.assertEquals(5, stream.count());
+        }
+        Assert.assertTrue(closed[0]);
+    }
+
+    @Test(expected=java.io.UncheckedIOException.class)
+    public void testStreamError() throws Exception {
+        HXLPipeline.from(new HXLReader(new StringReader("no,hashtags\n1,2\n"))).stream().count();
+    }
+
+    @Test
+    public void testJoin() throws Exception {
+        HXLPipeline pipeline = HXLPipeline.from(reader()).join(countries(), "#country");
+        List<HXLColumn> columns = pipeline.getColumns();
+        Assert.assertEquals(6, columns.size());
+        Assert.assertEquals("#country+code", columns.get(4).getTag());
+        Assert.assertEquals(4, columns.get(4).getColumnNumber());
+        Assert.assertEquals(-1, columns.get(4).getSourceColumnNumber());
+        Assert.assertEquals("#population", columns.get(5).getTag());
+        HXLRow row = pipeline.read();
+        Assert.assertEquals("Org 1", row.get("#org").getContent());
+        Assert.assertEquals("MLI", row.get("#country+code").getContent());
+        Assert.assertEquals("20000000", row.get(columns.get(5)).getContent());
+        Assert.assertEquals(0, row.getRowNumber());
+        Assert.assertEquals(2, row.getSourceRowNumber());
+        pipeline.read();
+        // one row for each match, in the other source's order
+        row = pipeline.read();
+        Assert.assertEquals("NER", row.get("#country+code").getContent());
+        Assert.assertEquals("", row.get("#population").getContent());
+        Assert.assertEquals(2, row.getRowNumber());
+        row = pipeline.read();
+        Assert.assertEquals("NER2", row.get("#country+code").getContent());
+        Assert.assertEquals(2, row.getRowNumber());
+        Assert.assertEquals(2, pipeline.count());
+    }
+
+    @Test
+    public void testLeftJoin() throws Exception {
+        String data = "#org,#country\nOrg 1,Mali\nOrg 2,Sudan\nOrg 3,\n";
+        HXLPipeline pipeline = HXLPipeline.from(new HXLReader(new StringReader(data))).leftJoin(countries(), "#country");
+        Assert.assertEquals("MLI", pipeline.read().get("#country+code").getContent());
+        HXLRow row = pipeline.read();
+        Assert.assertEquals("Org 2", row.get("#org").getContent());
+        Assert.assertNull(row.get("#country+code"));
+        Assert.assertEquals(2, row.getValues().size());
+        // an empty key never matches
+        Assert.assertEquals("Org 3", pipeline.read().get("#org").getContent());
+        Assert.assertNull(pipeline.read());
+        Assert.assertEquals(0, HXLPipeline.from(new HXLReader(new StringReader(data))).join(countries(), "#country").filter("#org", s -> !s.equals("Org 1")).count());
+    }
+
+    @Test
+    public void testJoinMultipleTags() throws Exception {
+        String codes = "#country,#sector,#meta+code\nMali,WASH,A\nMali,Health,B\nNiger,WASH,C\n";
+        List<String> result = HXLPipeline.from(reader())
+            .join(new HXLReader(new StringReader(codes)), "#sector", "#country")
+            .stream()
+            .map(row -> row.get("#meta+code").getContent())
+            .collect(Collectors.toList());
+        Assert.assertEquals(Arrays.asList("A", "B", "C", "A", "B"), result);
+    }
+
+    @Test
+    public void testJoinReuseObjects() throws Exception {
+        HXLReader reader = reader();
+        reader.setReuseObjects(true);
+        HXLPipeline pipeline = HXLPipeline.from(reader).join(countries(), "#country");
+        long total = 0;
+        HXLRow row = pipeline.read();
+        while (row != null) {
+            total += row.get("#affected").asLong();
+            row = pipeline.read();
+        }
+        Assert.assertEquals(1800, total);
+    }
+
+    @Test(expected = IOException.class)
+    public void testJoinLimit() throws Exception {
+        HXLPipeline.from(reader()).join(countries(), false, 3, "#country").read();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testJoinMissingTag() throws Exception {
+        HXLPipeline.from(reader()).join(countries(), "#org").getColumns();
+    }
+
+    //
+    // Utility methods
+    //
+
+    private static HXLReader reader() {
+        return new HXLReader(new StringReader(DATA));
+    }
+
+    private static HXLReader countries() {
+        return new HXLReader(new StringReader(COUNTRIES));
+    }
+
+    private static String makeData(int rows) {
+        StringBuilder data = new StringBuilder("#org,#affected\n");
+        for (int i = 0; i < rows; i++) {
+            data.append("Org ").append(i % 7).append(',').append(i).append('\n');
+        }
+        return data.toString();
+    }
+
+}
@@ -0,0 +1,227 @@
+package org.hxlstandard;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * JUnit4 tests for the HXLReaderMetrics class.
+ */
+public class HXLReaderMetricsTest {
+
+    //
+    // Test constants
+    //
+
+    private final static String DATA =
+        "Title of the dataset\n"
+        + "Sector,Organisation,People affected\n"
+        + "#sector,#org,#affected\n"
+        + "WASH,Org A,100\n"
+        + "Health,Org B,200,extra\n"
+        + "WASH,Org C\n";
+
+    //
+    // Instance variables
+    //
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<String> events = new ArrayList<String>();
+
+    //
+    // Tests
+    //
+
+    @Test
+    public void testDisabled() throws IOException {
+        HXLReader reader = new HXLReader(new StringReader(DATA));
+        Assert.assertNull(reader.getMetrics());
+        Assert.assertEquals(3, consume(reader));
+    }
+
+    @Test
+    public void testCounts() throws IOException {
+        HXLReaderMetrics metrics = new HXLReaderMetrics();
+        HXLReader reader = new HXLReader(new StringReader(DATA));
+        reader.setMetrics(metrics);
+        Assert.assertEquals(3, consume(reader));
+        Assert.assertEquals(DATA.length(), metrics.getBytesRead());
+        Assert.assertEquals(6, metrics.getRawRows());
+        Assert.assertEquals(3, metrics.getLogicalRows());
+        Assert.assertEquals(2, metrics.getSkippedRows());
+        Assert.assertEquals(9, metrics.getFieldCount());
+        Assert.assertEquals(4, metrics.getMaxFieldsPerRow());
+        Assert.assertEquals(3.0, metrics.getAverageFieldsPerRow(), 0.001);
+        Assert.assertEquals(3, metrics.getRowsAllocated());
+        Assert.assertEquals(8, metrics.getValuesAllocated());
+        Assert.assertEquals(0, metrics.getValuesRecycled());
+        Assert.assertEquals(1, metrics.getReadersFinished());
+        Assert.assertTrue(metrics.getHeaderNanos() > 0);
+        Assert.assertTrue(metrics.getTokenizeNanos() > 0);
+        Assert.assertTrue(metrics.getBuildNanos() > 0);
+        Assert.assertEquals(metrics.getHeaderNanos() + metrics.getTokenizeNanos() + metrics.getBuildNanos(), metrics.getTotalNanos());
+
+        // reading past the end doesn't count again
+        Assert.assertNull(reader.read());
+        Assert.assertEquals(1, metrics.getReadersFinished());
+        Assert.assertEquals(6, metrics.getRawRows());
+    }
+
+    @Test
+    public void testReuseObjects() throws IOException {
+        HXLReaderMetrics metrics = new HXLReaderMetrics();
+        HXLReader reader = new HXLReader(new StringReader(DATA));
+        reader.setReuseObjects(true);
+        reader.setMetrics(metrics);
+        Assert.assertEquals(3, consume(reader));
+        Assert.assertEquals(0, metrics.getRowsAllocated());
+        Assert.assertEquals(3, metrics.getValuesAllocated());
+        Assert.assertEquals(5, metrics.getValuesRecycled());
+    }
+
+    @Test
+    public void testReadBatch() throws IOException {
+        HXLReaderMetrics metrics = new HXLReaderMetrics();
+        HXLReader reader = new HXLReader(new StringReader(DATA));
+        reader.setMetrics(metrics);
+        Assert.assertEquals(3, reader.readBatch(10).size());
+        Assert.assertNull(reader.readBatch(10));
+        Assert.assertEquals(3, metrics.getLogicalRows());
+        Assert.assertEquals(9, metrics.getFieldCount());
+        Assert.assertEquals(1, metrics.getReadersFinished());
+    }
+
+    @Test
+    public void testMappedFile() throws IOException {
+        File file = folder.newFile("data.csv");
+        OutputStream output = new FileOutputStream(file);
+        output.write(DATA.getBytes("UTF-8"));
+        output.close();
+        HXLReaderMetrics metrics = new HXLReaderMetrics();
+        HXLReader reader = new HXLReader(file);
+        reader.setMetrics(metrics);
+        Assert.assertEquals(3, consume(reader));
+        reader.close();
+        Assert.assertEquals(file.length(), metrics.getBytesRead());
+        Assert.assertEquals(2, metrics.getSkippedRows());
+    }
+
+    @Test
+    public void testSharedMetrics() throws IOException {
+        HXLReaderMetrics metrics = new HXLReaderMetrics();
+        for (int i = 0; i < 2; i++) {
+            HXLReader reader = new HXLReader(new StringReader(DATA));
+            reader.setMetrics(metrics);
+            consume(reader);
+        }
+        Assert.assertEquals(6, metrics.getLogicalRows());
+        Assert.assertEquals(4, metrics.getSkippedRows());
+        Assert.assertEquals(2, metrics.getReadersFinished());
+        metrics.reset();
+        Assert.assertEquals(0, metrics.getLogicalRows());
+        Assert.assertEquals(0, metrics.getMaxFieldsPerRow());
+        Assert.assertEquals(0, metrics.getBytesRead());
+    }
+
+    @Test
+    public void testCloseEarly() throws IOException {
+        StringBuilder data = new StringBuilder("#sector,#affected\n");
+        for (int i = 0; i < 2000; i++) {
+            data.append("WASH,").append(i).append('\n');
+        }
+        HXLReaderMetrics metrics = new HXLReaderMetrics();
+        HXLReader reader = new HXLReader(new StringReader(data.toString()));
+        reader.setMetrics(metrics);
+        for (int i = 0; i < 1000; i++) {
+            reader.read();
+        }
+        reader.close();
+        Assert.assertEquals(1000, metrics.getLogicalRows());
+        Assert.assertEquals(2000, metrics.getFieldCount());
+        Assert.assertEquals(1, metrics.getReadersFinished());
+
+        // closing again doesn't count twice
+        reader.close();
+        Assert.assertEquals(1000, metrics.getLogicalRows());
+        Assert.assertEquals(1, metrics.getReadersFinished());
+    }
+
+    @Test
+    public void testListener() throws IOException {
+        HXLReaderMetrics metrics = new HXLReaderMetrics();
+        metrics.setProgressInterval(2);
+        metrics.addListener(new HXLReaderListener() {
+            @Override
+            public void headerFound(HXLReaderMetrics m, List<HXLColumn> columns) {
+                events.add("header " + columns.size() + " " + m.getSkippedRows());
+            }
+
+            @Override
+            public void progress(HXLReaderMetrics m) {
+                events.add("progress " + m.getLogicalRows());
+            }
+
+            @Override
+            public void finished(HXLReaderMetrics m) {
+                events.add("finished " + m.getLogicalRows());
+            }
+        });
+        HXLReader reader = new HXLReader(new StringReader(DATA));
+        reader.setMetrics(metrics);
+        consume(reader);
+        Assert.assertEquals(3, events.size());
+        Assert.assertEquals("header 3 2", events.get(0));
+        Assert.assertEquals("progress 2", events.get(1));
+        Assert.assertEquals("finished 3", events.get(2));
+    }
+
+    @Test
+    public void testMBean() throws Exception {
+        HXLReaderMetrics metrics = new HXLReaderMetrics();
+        ObjectName name = metrics.register("test");
+        try {
+            HXLReader reader = new HXLReader(new StringReader(DATA));
+            reader.setMetrics(metrics);
+            consume(reader);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            Assert.assertTrue(server.isRegistered(name));
+            Assert.assertEquals(3L, server.getAttribute(name, "LogicalRows"));
+            Assert.assertEquals(2L, server.getAttribute(name, "SkippedRows"));
+            server.invoke(name, "reset", null, null);
+            Assert.assertEquals(0, metrics.getLogicalRows());
+        } finally {
+            metrics.unregister();
+        }
+        Assert.assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+
+    //
+    // Utility methods
+    //
+
+    private static int consume(HXLReader reader) throws IOException {
+        int n = 0;
+        HXLRow row = reader.read();
+        while (row != null) {
+            n++;
+            row = reader.read();
+        }
+        return n;
+    }
+
+}
@@ -2,9 +2,13 @@ package org.hxlstandard;
 
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.util.List;
 
 import org.junit.After;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -64,4 +68,375 @@ public class HXLReaderTest {
         Assert.assertEquals(3, value.getSourceRowNumber());
     }
 
+    @Test
+    public void testOpenCSVEngine() throws Exception {
+        HXLReader openCSVReader = new HXLReader(new HXLOpenCSVTokenizer(
+            new InputStreamReader(getClass().getResourceAsStream("/hxl-sample-01.csv"))));
+        HXLRow expected = hxlReader.read();
+        HXLRow actual = openCSVReader.read();
+        while (expected != null) {
+            Assert.assertNotNull(actual);
+            Assert.assertEquals(expected.getSourceRowNumber(), actual.getSourceRowNumber());
+            Assert.assertEquals(expected.getValues().size(), actual.getValues().size());
+            for (int i = 0; i < expected.getValues().size(); i++) {
+                Assert.assertEquals(expected.getValues().get(i).getContent(), actual.getValues().get(i).getContent());
+            }
+            expected = hxlReader.read();
+            actual = openCSVReader.read();
+        }
+        Assert.assertNull(actual);
+    }
+
+    @Test
+    public void testReuseObjects() throws Exception {
+        hxlReader.setReuseObjects(true);
+        Assert.assertTrue(hxlReader.isReuseObjects());
+        HXLRow row1 = hxlReader.read();
+        HXLValue value1 = row1.getValues().get(1);
+        String content1 = value1.getContent();
+        HXLRow row2 = hxlReader.read();
+        Assert.assertSame(row1, row2);
+        Assert.assertSame(value1, row2.getValues().get(1));
+        Assert.assertEquals(1, row2.getRowNumber());
+        Assert.assertEquals(4, row2.getSourceRowNumber());
+        Assert.assertEquals(4, row2.getValues().size());
+        Assert.assertEquals("Subsector 2", value1.getContent());
+        Assert.assertEquals(4, value1.getSourceRowNumber());
+        // content strings are never recycled
+        Assert.assertEquals("Subsector 1", content1);
+    }
+
+    @Test
+    public void testReuseObjectsAllocation() throws Exception {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        String data = makeData(20000);
+        countAllocation(data, false); // warm up
+        countAllocation(data, true);
+        long normal = countAllocation(data, false);
+        long reused = countAllocation(data, true);
+        Assert.assertTrue("reused=" + reused + " normal=" + normal, reused < normal * 0.8);
+    }
+
+    @Test
+    public void testDictionaries() throws Exception {
+        HXLReader reader = new HXLReader(new StringReader(makeData(500)));
+        reader.setDictionaryLimit(100);
+        HXLRow first = reader.read();
+        HXLRow row = first;
+        for (int i = 0; i < 50; i++) {
+            row = reader.read();
+        }
+        Assert.assertSame(first.getValues().get(0).getContent(), row.getValues().get(0).getContent());
+        Assert.assertSame(first.getValues().get(1).getContent(), row.getValues().get(1).getContent());
+        while (reader.read() != null) {
+            // read to the end
+        }
+        List<HXLColumn> columns = reader.getColumns();
+        HXLValueDictionary sector = reader.getDictionary(columns.get(0));
+        Assert.assertTrue(sector.isEnabled());
+        Assert.assertEquals(1, sector.size());
+        Assert.assertEquals(499, sector.getHits());
+        Assert.assertEquals(50, reader.getDictionary(columns.get(1)).size());
+        // #affected is unique per row, so it goes back to plain strings
+        Assert.assertFalse(reader.getDictionary(columns.get(5)).isEnabled());
+    }
+
+    @Test(timeout = 10000)
+    public void testDictionaryLimitUnbounded() throws Exception {
+        HXLReader reader = new HXLReader(new StringReader(makeData(500)));
+        reader.setDictionaryLimit(Integer.MAX_VALUE);
+        Assert.assertEquals(HXLValueDictionary.MAX_LIMIT, reader.getDictionaryLimit());
+        while (reader.read() != null) {
+            // read to the end
+        }
+        // every #affected value is kept
+        Assert.assertEquals(500, reader.getDictionary(reader.getColumns().get(5)).size());
+    }
+
+    @Test
+    public void testDictionariesDisabled() throws Exception {
+        Assert.assertEquals(0, hxlReader.getDictionaryLimit());
+        hxlReader.read();
+        Assert.assertNull(hxlReader.getDictionary(hxlReader.getColumns().get(0)));
+    }
+
+    @Test
+    public void testTagSelectionAttributes() throws Exception {
+        String data = "#adm1+code,#affected+f,#affected+m\nCOA,100,200\n";
+        HXLReader reader = new HXLReader(new StringReader(data), "#affected", "#adm1");
+        List<HXLColumn> columns = reader.getColumns();
+        Assert.assertEquals(3, columns.size());
+        Assert.assertEquals("#adm1+code", columns.get(0).getTag());
+        HXLRow row = reader.read();
+        Assert.assertEquals("COA", row.get("#adm1").getContent());
+        Assert.assertEquals("100", row.get("#affected").getContent());
+        Assert.assertEquals("200", row.get("#affected+m").getContent());
+
+        reader = new HXLReader(new StringReader(data), "#affected-f");
+        Assert.assertEquals(1, reader.getColumns().size());
+        Assert.assertEquals("200", reader.read().get("#affected").getContent());
+    }
+
+    @Test
+    public void testTagSelection() throws Exception {
+        HXLReader reader = new HXLReader(new InputStreamReader(getClass().getResourceAsStream("/hxl-sample-01.csv")), "#org", "#subsector", "#nosuchtag");
+        List<HXLColumn> columns = reader.getColumns();
+        Assert.assertEquals(2, columns.size());
+        Assert.assertEquals("#subsector", columns.get(0).getTag());
+        Assert.assertEquals(0, columns.get(0).getColumnNumber());
+        Assert.assertEquals(2, columns.get(0).getSourceColumnNumber());
+        Assert.assertEquals("#org", columns.get(1).getTag());
+        Assert.assertEquals(1, columns.get(1).getColumnNumber());
+        Assert.assertEquals(3, columns.get(1).getSourceColumnNumber());
+        HXLRow row = reader.read();
+        Assert.assertEquals(2, row.getValues().size());
+        Assert.assertEquals("Subsector 1", row.getValues().get(0).getContent());
+        Assert.assertEquals("Org 1", row.getValues().get(1).getContent());
+        Assert.assertEquals(3, row.getSourceRowNumber());
+        reader.close();
+    }
+
+    @Test
+    public void testGetByTag() throws Exception {
+        HXLRow row = hxlReader.read();
+        Assert.assertSame(hxlReader.getColumnIndex(), row.getColumnIndex());
+        Assert.assertEquals("Org 1", row.get("#org").getContent());
+        Assert.assertEquals("Country 1", row.get(hxlReader.getColumns().get(3)).getContent());
+        Assert.assertNull(row.get("#adm1"));
+        hxlReader.setReuseObjects(true);
+        hxlReader.read();
+        row = hxlReader.read();
+        Assert.assertEquals("Org 3", row.get("#org").getContent());
+        row = hxlReader.read();
+        Assert.assertEquals("Org 1", row.get("#org").getContent());
+    }
+
+    @Test
+    public void testIterator() throws Exception {
+        int count = 0;
+        for (HXLRow row : hxlReader) {
+            Assert.assertEquals(count++, row.getRowNumber());
+        }
+        Assert.assertEquals(4, count);
+        Assert.assertFalse(hxlReader.iterator().hasNext());
+    }
+
+    @Test
+    public void testStream() throws Exception {
+        Assert.assertEquals(2, hxlReader.stream().filter(row -> row.get("#country").getContent().equals("Country 2")).count());
+    }
+
+    @Test
+    public void testReadBatch() throws Exception {
+        String data = makeData(250);
+        HXLReader expected = new HXLReader(new StringReader(data));
+        HXLReader reader = new HXLReader(new StringReader(data));
+        HXLRowBlock block = reader.readBatch(100);
+        HXLRowBlock first = block;
+        int total = 0;
+        while (block != null) {
+            Assert.assertSame(first, block);
+            Assert.assertTrue(block.size() <= 100);
+            for (HXLRow row : block) {
+                HXLRow other = expected.read();
+                Assert.assertEquals(other.getRowNumber(), row.getRowNumber());
+                Assert.assertEquals(other.getSourceRowNumber(), row.getSourceRowNumber());
+                Assert.assertEquals(other.get("#affected").getContent(), row.get("#affected").getContent());
+                Assert.assertEquals(other.getValues().size(), row.getValues().size());
+            }
+            total += block.size();
+            block = reader.readBatch(100);
+        }
+        Assert.assertEquals(250, total);
+        Assert.assertNull(expected.read());
+    }
+
+    @Test
+    public void testReadBatchReusesRows() throws Exception {
+        HXLRowBlock block = hxlReader.readBatch(3);
+        Assert.assertEquals(3, block.size());
+        HXLRow row = block.get(0);
+        HXLValue value = row.getValues().get(1);
+        Assert.assertEquals("Subsector 1", value.getContent());
+        // a plain read in between doesn't disturb the block
+        Assert.assertEquals(3, hxlReader.read().getRowNumber());
+        Assert.assertEquals("Subsector 3", block.get(2).getValues().get(1).getContent());
+        Assert.assertNull(hxlReader.readBatch(3));
+
+        HXLReader reader = new HXLReader(new StringReader(makeData(4)));
+        block = reader.readBatch(3);
+        row = block.get(0);
+        Assert.assertEquals(3, reader.readBatch(3).get(0).getRowNumber());
+        Assert.assertSame(row, block.get(0));
+        Assert.assertEquals(1, block.size());
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testReadBatchSize() throws Exception {
+        hxlReader.readBatch(0);
+    }
+
+    @Test
+    public void testReadBatchAllocation() throws Exception {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        String data = makeData(20000);
+        countBatchAllocation(data); // warm up
+        countAllocation(data, false);
+        long normal = countAllocation(data, false);
+        long batched = countBatchAllocation(data);
+        Assert.assertTrue("batched=" + batched + " normal=" + normal, batched < normal * 0.8);
+    }
+
+    @Test
+    public void testTagSelectionAllocation() throws Exception {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        String data = makeData(20000);
+        countAllocation(new HXLReader(new StringReader(data))); // warm up
+        countAllocation(new HXLReader(new StringReader(data), "#sector"));
+        long all = countAllocation(new HXLReader(new StringReader(data)));
+        long projected = countAllocation(new HXLReader(new StringReader(data), "#sector"));
+        Assert.assertTrue("projected=" + projected + " all=" + all, projected < all * 0.5);
+    }
+
+    @Test
+    public void testAttributes() throws Exception {
+        HXLReader reader = new HXLReader(new StringReader(
+            "Not #tags,#1 either\n"
+            + "#Affected +F +children, #sector/en,#org+impl\n"
+            + "100,WASH,Org A\n"));
+        List<HXLColumn> columns = reader.getColumns();
+        Assert.assertEquals(1, reader.getHeaderRowNumber());
+        Assert.assertEquals("#affected+f+children", columns.get(0).getTag());
+        Assert.assertEquals("#affected", columns.get(0).getHashtag());
+        Assert.assertTrue(columns.get(0).hasAttribute("+children"));
+        Assert.assertNull(columns.get(0).getLang());
+        Assert.assertEquals("#sector", columns.get(1).getTag());
+        Assert.assertEquals("en", columns.get(1).getLang());
+        HXLRow row = reader.read();
+        Assert.assertEquals("100", row.get("#affected+f+children").getContent());
+        Assert.assertEquals("Org A", row.get("#org+impl").getContent());
+    }
+
+    @Test
+    public void testAttributesSelection() throws Exception {
+        HXLReader reader = new HXLReader(new StringReader("#org+impl,#org+funder\nA,B\n"), "#org+funder");
+        Assert.assertEquals(1, reader.getColumns().size());
+        Assert.assertEquals("B", reader.read().get("#org+funder").getContent());
+    }
+
+    @Test
+    public void testHeaderNotFound() throws Exception {
+        HXLReader reader = new HXLReader(new StringReader("a,b\n#sector,Organisation\nc,d\n"));
+        try {
+            reader.read();
+            Assert.fail();
+        } catch (HXLHeaderNotFoundException e) {
+            Assert.assertEquals(HXLHeaderNotFoundException.Reason.END_OF_INPUT, e.getReason());
+            Assert.assertEquals(3, e.getRowsScanned());
+            Assert.assertEquals(29, e.getBytesScanned());
+            Assert.assertEquals(1, e.getRejectedRowNumber());
+            Assert.assertEquals(1, e.getRejectedColumnNumber());
+            Assert.assertEquals("Organisation", e.getRejectedText());
+            // later calls fail the same way without reading further
+            try {
+                reader.getColumns();
+                Assert.fail();
+            } catch (HXLHeaderNotFoundException e2) {
+                Assert.assertSame(e, e2);
+            }
+        }
+    }
+
+    @Test
+    public void testMaxHeaderRows() throws Exception {
+        String data = "x\nx\nx\n#sector\nWASH\n";
+        HXLReader reader = new HXLReader(new StringReader(data));
+        reader.setMaxHeaderRows(4);
+        Assert.assertEquals("WASH", reader.read().get("#sector").getContent());
+        reader = new HXLReader(new StringReader(data));
+        reader.setMaxHeaderRows(3);
+        try {
+            reader.getColumns();
+            Assert.fail();
+        } catch (HXLHeaderNotFoundException e) {
+            Assert.assertEquals(HXLHeaderNotFoundException.Reason.ROW_LIMIT, e.getReason());
+            Assert.assertEquals(3, e.getRowsScanned());
+            Assert.assertEquals(-1, e.getRejectedRowNumber());
+            Assert.assertNull(e.getRejectedText());
+        }
+    }
+
+    @Test
+    public void testMaxHeaderBytes() throws Exception {
+        StringBuilder data = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            data.append("Some preamble text,and more\n");
+        }
+        data.append("#sector\nWASH\n");
+        HXLReader reader = new HXLReader(new StringReader(data.toString()));
+        reader.setMaxHeaderBytes(1000);
+        try {
+            reader.getColumns();
+            Assert.fail();
+        } catch (HXLHeaderNotFoundException e) {
+            Assert.assertEquals(HXLHeaderNotFoundException.Reason.BYTE_LIMIT, e.getReason());
+            Assert.assertEquals(36, e.getRowsScanned());
+            Assert.assertEquals(1008, e.getBytesScanned());
+        }
+        reader = new HXLReader(new StringReader(data.toString()));
+        reader.setMaxHeaderBytes(data.length());
+        Assert.assertEquals(1, reader.getColumns().size());
+        Assert.assertEquals(1000, reader.getHeaderRowNumber());
+    }
+
+    @Test
+    public void testByteOrderMark() throws Exception {
+        // a BOM left in by an InputStreamReader
+        HXLReader reader = new HXLReader(new StringReader("\ufeff#sector,#org\nWASH,UNICEF\n"));
+        Assert.assertEquals("#sector", reader.getColumns().get(0).getTag());
+        Assert.assertEquals("WASH", reader.read().get("#sector").getContent());
+    }
+
+    //
+    // Utility methods
+    //
+
+    private static String makeData(int rows) {
+        StringBuilder data = new StringBuilder("#sector,#subsector,#org,#country,#adm1,#affected\n");
+        for (int i = 0; i < rows; i++) {
+            data.append("WASH,Subsector ").append(i % 50).append(",Org ").append(i % 30)
+                .append(",Country 1,Adm ").append(i % 20).append(',').append(i).append('\n');
+        }
+        return data.toString();
+    }
+
+    private static long countAllocation(String data, boolean reuseObjects) throws Exception {
+        HXLReader reader = new HXLReader(new StringReader(data));
+        reader.setReuseObjects(reuseObjects);
+        return countAllocation(reader);
+    }
+
+    private static long countBatchAllocation(String data) throws Exception {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        HXLReader reader = new HXLReader(new StringReader(data));
+        reader.getColumns();
+        long start = bean.getThreadAllocatedBytes(threadId);
+        while (reader.readBatch(256) != null) {
+            // just count
+        }
+        return bean.getThreadAllocatedBytes(threadId) - start;
+    }
+
+    private static long countAllocation(HXLReader reader) throws Exception {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        reader.getColumns();
+        long start = bean.getThreadAllocatedBytes(threadId);
+        while (reader.read() != null) {
+            // just count
+        }
+        return bean.getThreadAllocatedBytes(threadId) - start;
+    }
+
 }
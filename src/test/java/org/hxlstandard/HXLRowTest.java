@@ -1,5 +1,6 @@
 package org.hxlstandard;
 
+import java.util.ArrayList;
 import java.util.List;
 import org.junit.Assert;
 import org.junit.Before;
@@ -70,6 +71,58 @@ public class HXLRowTest {
     }
 
 
+    @Test
+    public void testGetByTag() {
+        Assert.assertEquals("World Health Organization", row.get("#org").getContent());
+        Assert.assertNull(row.get("#adm1"));
+        Assert.assertEquals(1, row.getAll("#country").size());
+        Assert.assertSame(row.getValues().get(1), row.get(row.getValues().get(1).getColumn()));
+    }
+
+    @Test
+    public void testGetByAttributes() {
+        HXLRow attributed = new HXLRow(ROW_NUMBER, SOURCE_ROW_NUMBER);
+        attributed.getValuesModifiable().add(new HXLValue(new HXLColumn("#affected+f", null, 0, 0), "100", ROW_NUMBER, SOURCE_ROW_NUMBER));
+        attributed.getValuesModifiable().add(new HXLValue(new HXLColumn("#affected+m", null, 1, 1), "200", ROW_NUMBER, SOURCE_ROW_NUMBER));
+        Assert.assertEquals("100", attributed.get("#affected").getContent());
+        Assert.assertEquals("200", attributed.get("#affected-f").getContent());
+        Assert.assertEquals(2, attributed.getAll("#affected").size());
+        Assert.assertNull(attributed.get("#affected+children"));
+        Assert.assertNull(attributed.get("affected"));
+    }
+
+    @Test
+    public void testGetWithIndex() {
+        List<HXLColumn> columns = new ArrayList<HXLColumn>();
+        columns.add(new HXLColumn("#org", null, 0, 0));
+        columns.add(new HXLColumn("#sector", null, 1, 2));
+        columns.add(new HXLColumn("#org", null, 2, 3));
+        HXLColumnIndex index = new HXLColumnIndex(columns);
+        HXLRow indexed = new HXLRow(ROW_NUMBER, SOURCE_ROW_NUMBER, index);
+        // the first #org is missing from this row
+        indexed.getValuesModifiable().add(new HXLValue(columns.get(1), "Health", ROW_NUMBER, SOURCE_ROW_NUMBER));
+        indexed.getValuesModifiable().add(new HXLValue(columns.get(2), "Org 2", ROW_NUMBER, SOURCE_ROW_NUMBER));
+        Assert.assertSame(index, indexed.getColumnIndex());
+        Assert.assertEquals("Org 2", indexed.get("#org").getContent());
+        Assert.assertEquals(1, indexed.getAll("#org").size());
+        Assert.assertNull(indexed.get(columns.get(0)));
+        Assert.assertEquals("Health", indexed.get(columns.get(1)).getContent());
+
+        // reinitialising clears the lookup, and values added after a
+        // lookup are found too
+        indexed.init(ROW_NUMBER + 1, SOURCE_ROW_NUMBER + 1);
+        Assert.assertNull(indexed.get("#sector"));
+        indexed.getValuesModifiable().add(new HXLValue(columns.get(0), "Org 1", ROW_NUMBER + 1, SOURCE_ROW_NUMBER + 1));
+        Assert.assertEquals("Org 1", indexed.get("#org").getContent());
+        indexed.getValuesModifiable().add(new HXLValue(columns.get(2), "Org 3", ROW_NUMBER + 1, SOURCE_ROW_NUMBER + 1));
+        Assert.assertEquals(2, indexed.getAll("#org").size());
+    }
+
+    @Test
+    public void testValuesNotReallocated() {
+        Assert.assertSame(row.getValues(), row.getValues());
+    }
+
     @Test
     public void testRowNumber() {
         Assert.assertEquals(ROW_NUMBER, row.getRowNumber());
@@ -0,0 +1,238 @@
+package org.hxlstandard;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * JUnit4 tests for the HXLSnapshot class.
+ */
+public class HXLSnapshotTest {
+
+    //
+    // Test constants
+    //
+
+    private final static String DATA =
+        "Sector,Region,Affected,Rate,Population\n"
+        + "#sector,#adm1,#affected,#x_rate,#population\n"
+        + "WASH,North,100,0.5,12345678901\n"
+        + "Health,Caf\u00e9 \ud83d\ude00,,1.25,7\n"
+        + "WASH,North,50\n";
+
+    //
+    // Instance variables
+    //
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HXLColumnarDataset dataset;
+
+    private File file;
+
+    //
+    // Tests
+    //
+
+    @Before
+    public void setUp() throws Exception {
+        dataset = new HXLColumnarDataset(new HXLReader(new StringReader(DATA)));
+        file = folder.newFile("data.hxls");
+        HXLSnapshot.write(dataset, file);
+    }
+
+    @Test
+    public void testColumns() throws Exception {
+        HXLSnapshot snapshot = new HXLSnapshot(file);
+        Assert.assertEquals(5, snapshot.getColumns().size());
+        HXLColumn column = snapshot.getColumns().get(0);
+        Assert.assertEquals("#sector", column.getTag());
+        Assert.assertNull(column.getLang());
+        Assert.assertEquals(0, column.getColumnNumber());
+        Assert.assertEquals(0, column.getSourceColumnNumber());
+        Assert.assertEquals(4, snapshot.getColumns().get(4).getSourceColumnNumber());
+        Assert.assertEquals(3, snapshot.getColumnIndex().getColumnNumber("#x_rate"));
+        snapshot.close();
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        HXLSnapshot snapshot = new HXLSnapshot(file);
+        Assert.assertEquals(dataset.getRowCount(), snapshot.getRowCount());
+        for (int i = 0; i < dataset.getRowCount(); i++) {
+            HXLRow expected = dataset.getRow(i);
+            HXLRow actual = snapshot.read();
+            Assert.assertEquals(expected.getRowNumber(), actual.getRowNumber());
+            Assert.assertEquals(expected.getSourceRowNumber(), actual.getSourceRowNumber());
+            Assert.assertEquals(contents(expected), contents(actual));
+        }
+        Assert.assertNull(snapshot.read());
+        snapshot.close();
+    }
+
+    @Test
+    public void testRowNumbers() throws Exception {
+        HXLSnapshot snapshot = new HXLSnapshot(file);
+        HXLRow row = snapshot.getRow(2);
+        Assert.assertEquals(2, row.getRowNumber());
+        Assert.assertEquals(dataset.getSourceRowNumber(2), row.getSourceRowNumber());
+        Assert.assertEquals(dataset.getSourceRowNumber(2), row.get("#sector").getSourceRowNumber());
+        snapshot.close();
+    }
+
+    @Test
+    public void testValues() throws Exception {
+        HXLSnapshot snapshot = new HXLSnapshot(file);
+        HXLRow row = snapshot.getRow(1);
+        Assert.assertEquals("Health", row.get("#sector").getContent());
+        Assert.assertEquals("Caf\u00e9 \ud83d\ude00", row.get("#adm1").getContent());
+        Assert.assertEquals("", row.get("#affected").getContent());
+        Assert.assertFalse(row.get("#affected").isNumeric());
+        Assert.assertEquals(1.25, row.get("#x_rate").asDouble(), 0.0);
+        Assert.assertEquals("1.25", row.get("#x_rate").getContent());
+        Assert.assertEquals(7, row.get("#population").asLong());
+        Assert.assertEquals(12345678901L, snapshot.getRow(0).get("#population").asLong());
+        Assert.assertEquals("12345678901", snapshot.getRow(0).get("#population").getContent());
+        Assert.assertEquals("", snapshot.getRow(2).get("#x_rate").getContent());
+        snapshot.close();
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        File empty = folder.newFile("empty.hxls");
+        HXLSnapshot.write(new HXLColumnarDataset(new HXLReader(new StringReader("#sector,#adm1\n"))), empty);
+        HXLSnapshot snapshot = new HXLSnapshot(empty);
+        Assert.assertEquals(2, snapshot.getColumns().size());
+        Assert.assertEquals(0, snapshot.getRowCount());
+        Assert.assertNull(snapshot.read());
+        snapshot.close();
+    }
+
+    @Test
+    public void testZeroPaddedCodes() throws Exception {
+        File codes = folder.newFile("codes.hxls");
+        HXLSnapshot.write(new HXLColumnarDataset(new HXLReader(new StringReader(
+            "#adm1+code,#affected\n"
+            + "007,12\n"
+            + "010,007\n"
+            + "ABC,+5\n"
+        ))), codes);
+        HXLSnapshot snapshot = new HXLSnapshot(codes);
+        Assert.assertEquals("007", snapshot.getRow(0).get("#adm1").getContent());
+        Assert.assertEquals("010", snapshot.getRow(1).get("#adm1").getContent());
+        Assert.assertEquals("ABC", snapshot.getRow(2).get("#adm1").getContent());
+        Assert.assertEquals("12", snapshot.getRow(0).get("#affected").getContent());
+        Assert.assertEquals("007", snapshot.getRow(1).get("#affected").getContent());
+        Assert.assertEquals("+5", snapshot.getRow(2).get("#affected").getContent());
+        snapshot.close();
+    }
+
+    @Test
+    public void testPipeline() throws Exception {
+        HXLSnapshot snapshot = new HXLSnapshot(file);
+        Assert.assertEquals(2, HXLPipeline.from(snapshot).filter("#sector", s -> s.equals("WASH")).count());
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotSnapshot() throws Exception {
+        File csv = folder.newFile("data.csv");
+        Files.write(csv.toPath(), DATA.getBytes("UTF-8"));
+        new HXLSnapshot(csv);
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncated() throws Exception {
+        byte bytes[] = Files.readAllBytes(file.toPath());
+        File truncated = folder.newFile("truncated.hxls");
+        Files.write(truncated.toPath(), Arrays.copyOf(bytes, bytes.length - 16));
+        new HXLSnapshot(truncated);
+    }
+
+    @Test
+    public void testBadSectionLength() throws Exception {
+        byte bytes[] = Files.readAllBytes(file.toPath());
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int entry = findColumnEntry(buffer, HXLColumnVector.Type.INT);
+        // shorten the section by one value
+        buffer.putLong(entry + 8, buffer.getLong(entry + 8) - 4);
+        assertRejected(bytes);
+    }
+
+    @Test
+    public void testBadDictionarySize() throws Exception {
+        byte bytes[] = Files.readAllBytes(file.toPath());
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int entry = findColumnEntry(buffer, HXLColumnVector.Type.STRING);
+        int bitmapLength = ((dataset.getRowCount() + 63) >>> 6) << 3;
+        int sizeOffset = (int) buffer.getLong(entry) + bitmapLength;
+        buffer.putInt(sizeOffset, -1);
+        assertRejected(bytes);
+        buffer.putInt(sizeOffset, Integer.MAX_VALUE);
+        assertRejected(bytes);
+    }
+
+    @Test
+    public void testWriteAligned() throws Exception {
+        byte bytes[] = Files.readAllBytes(file.toPath());
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int entry = findColumnEntry(buffer, HXLColumnVector.Type.STRING);
+        Assert.assertEquals(0, buffer.getLong(entry) & 7);
+        Assert.assertEquals(0, buffer.getLong(24 - 8) & 7);
+    }
+
+    //
+    // Utility methods
+    //
+
+    /**
+     * Find the offset and length fields of the first column of a type
+     * in the column table.
+     */
+    private static int findColumnEntry(ByteBuffer buffer, HXLColumnVector.Type type) {
+        int columnCount = buffer.getInt(8);
+        int pos = 24;
+        for (int i = 0; i < columnCount; i++) {
+            pos += 2 + buffer.getShort(pos);
+            if (buffer.get(pos++) != 0) {
+                pos += 2 + buffer.getShort(pos);
+            }
+            pos += 4;
+            int ordinal = buffer.get(pos++);
+            if (ordinal == type.ordinal()) {
+                return pos;
+            }
+            pos += 16;
+        }
+        throw new AssertionError("No " + type + " column");
+    }
+
+    private void assertRejected(byte bytes[]) throws Exception {
+        File corrupt = folder.newFile();
+        Files.write(corrupt.toPath(), bytes);
+        try {
+            new HXLSnapshot(corrupt);
+            Assert.fail("Corrupt snapshot accepted");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private static String contents(HXLRow row) {
+        StringBuilder s = new StringBuilder();
+        for (HXLValue value : row.getValues()) {
+            s.append(value.getColumnNumber()).append('=').append(value.getContent()).append('|');
+        }
+        return s.toString();
+    }
+
+}
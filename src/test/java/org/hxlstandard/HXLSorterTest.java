@@ -0,0 +1,269 @@
+package org.hxlstandard;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * JUnit4 tests for the HXLSorter class.
+ */
+public class HXLSorterTest {
+
+    //
+    // Test constants
+    //
+
+    private final static String DATA =
+        "#adm1,#affected,#date\n"
+        + "North,100,2015-03-01\n"
+        + "South,9,2015-01-15\n"
+        + "east,n/a,2014-12-31\n"
+        + "North,\n"
+        + "South,10,2015-02-01\n"
+        + "North,9.5,2015-01-01\n";
+
+    //
+    // Instance variables
+    //
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    //
+    // Tests
+    //
+
+    @Test
+    public void testNumericSort() throws IOException {
+        HXLSorter sorter = new HXLSorter(reader(DATA), "#affected");
+        Assert.assertEquals(3, sorter.getColumns().size());
+        // numbers by value, then text, then empty values
+        Assert.assertEquals(list("9", "9.5", "10", "100", "n/a", ""), contents(sorter, "#affected"));
+        Assert.assertEquals(0, sorter.getRunCount());
+    }
+
+    @Test
+    public void testStringSort() throws IOException {
+        HXLSorter sorter = new HXLSorter(reader(DATA), "#date");
+        Assert.assertEquals(list("2014-12-31", "2015-01-01", "2015-01-15", "2015-02-01", "2015-03-01", ""), contents(sorter, "#date"));
+    }
+
+    @Test
+    public void testMultipleTags() throws IOException {
+        HXLSorter sorter = new HXLSorter(reader(DATA), "#adm1", "#affected");
+        List<HXLRow> rows = rows(sorter);
+        Assert.assertEquals(list("North", "North", "North", "South", "South", "east"), contents(rows, "#adm1"));
+        Assert.assertEquals(list("9.5", "100", "", "9", "10", "n/a"), contents(rows, "#affected"));
+        // rows keep their original numbers
+        Assert.assertEquals(5, rows.get(0).getRowNumber());
+        Assert.assertEquals(6, rows.get(0).getSourceRowNumber());
+        Assert.assertEquals(5, rows.get(0).get("#affected").getRowNumber());
+    }
+
+    @Test
+    public void testStable() throws IOException {
+        HXLSorter sorter = new HXLSorter(reader(DATA), "#adm1");
+        List<HXLRow> rows = rows(sorter);
+        Assert.assertEquals(list("100", "", "9.5", "9", "10", "n/a"), contents(rows, "#affected"));
+    }
+
+    @Test
+    public void testDescending() throws IOException {
+        HXLSorter sorter = new HXLSorter(reader(DATA), "#affected");
+        sorter.setDescending(true);
+        Assert.assertEquals(list("n/a", "100", "10", "9.5", "9", ""), contents(sorter, "#affected"));
+    }
+
+    @Test
+    public void testAttributes() throws IOException {
+        HXLSorter sorter = new HXLSorter(reader("#adm1+name,#affected+f\nNorth,100\nSouth,9\n"), "#affected");
+        Assert.assertEquals(list("9", "100"), contents(sorter, "#affected"));
+    }
+
+    @Test
+    public void testMissingTag() throws IOException {
+        HXLSorter sorter = new HXLSorter(reader(DATA), "#org");
+        Assert.assertEquals(list("100", "9", "n/a", "", "10", "9.5"), contents(sorter, "#affected"));
+    }
+
+    @Test
+    public void testSpill() throws IOException {
+        String data = randomData(2000);
+        File directory = folder.newFolder();
+        HXLSorter sorter = new HXLSorter(reader(data), "#affected", "#adm1");
+        sorter.setMemoryBudget(20000);
+        sorter.setTempDirectory(directory);
+        List<HXLRow> rows = rows(sorter);
+        Assert.assertTrue(sorter.getRunCount() > 10);
+        Assert.assertEquals(directory.list().length, sorter.getRunCount());
+        Assert.assertEquals(signatures(rows(new HXLSorter(reader(data), "#affected", "#adm1"))), signatures(rows));
+        sorter.close();
+        Assert.assertEquals(0, directory.list().length);
+    }
+
+    @Test
+    public void testSpillStable() throws IOException {
+        String data = randomData(1000);
+        HXLSorter sorter = new HXLSorter(reader(data), "#adm1");
+        sorter.setMemoryBudget(10000);
+        sorter.setTempDirectory(folder.getRoot());
+        List<HXLRow> rows = rows(sorter);
+        Assert.assertTrue(sorter.getRunCount() > 1);
+        Assert.assertEquals(1000, rows.size());
+        for (int i = 1; i < rows.size(); i++) {
+            String previous = rows.get(i - 1).get("#adm1").getContent();
+            String current = rows.get(i).get("#adm1").getContent();
+            Assert.assertTrue(previous.compareTo(current) <= 0);
+            if (previous.equals(current)) {
+                Assert.assertTrue(rows.get(i - 1).getRowNumber() < rows.get(i).getRowNumber());
+            }
+        }
+        sorter.close();
+    }
+
+    @Test
+    public void testParallelSpill() throws IOException {
+        String data = randomData(2000);
+        HXLSorter sorter = new HXLSorter(reader(data), "#affected", "#adm1");
+        sorter.setMemoryBudget(30000);
+        sorter.setParallelism(2);
+        sorter.setTempDirectory(folder.getRoot());
+        List<HXLRow> rows = rows(sorter);
+        Assert.assertTrue(sorter.getRunCount() > 1);
+        Assert.assertEquals(signatures(rows(new HXLSorter(reader(data), "#affected", "#adm1"))), signatures(rows));
+        sorter.close();
+        Assert.assertEquals(0, folder.getRoot().list().length);
+    }
+
+    @Test
+    public void testReuseObjects() throws IOException {
+        HXLReader reader = reader(DATA);
+        reader.setReuseObjects(true);
+        HXLSorter sorter = new HXLSorter(reader, "#affected");
+        Assert.assertEquals(list("9", "9.5", "10", "100", "n/a", ""), contents(rows(sorter), "#affected"));
+    }
+
+    @Test
+    public void testPipeline() throws IOException {
+        HXLPipeline pipeline = HXLPipeline.from(reader(DATA)).filter("#adm1", s -> !s.equals("east")).sort("#date");
+        Assert.assertEquals(list("2015-01-01", "2015-01-15", "2015-02-01", "2015-03-01", ""), contents(pipeline, "#date"));
+    }
+
+    @Test
+    public void testParallelSpillFailure() throws IOException {
+        final String data = randomData(2000);
+        final ForkJoinPool pool = new ForkJoinPool(2);
+        HXLReader reader = new HXLReader(new StringReader(data) {
+            private int count;
+
+            @Override
+            public int read(char buffer[], int offset, int length) throws IOException {
+                if (count > data.length() * 3 / 4) {
+                    // fail after the runs so far are written, but before
+                    // the sorter has collected them
+                    pool.awaitQuiescence(10, TimeUnit.SECONDS);
+                    throw new IOException("Read error");
+                }
+                final int n = super.read(buffer, offset, Math.min(length, 100));
+                count += Math.max(n, 0);
+                return n;
+            }
+        });
+        File directory = folder.newFolder();
+        HXLSorter sorter = new HXLSorter(reader, "#affected");
+        sorter.setMemoryBudget(30000);
+        sorter.setParallelism(2);
+        sorter.setPool(pool);
+        sorter.setTempDirectory(directory);
+        try {
+            sorter.read();
+            Assert.fail("Read error not reported");
+        } catch (IOException e) {
+            Assert.assertEquals("Read error", e.getMessage());
+        }
+        sorter.close();
+        pool.shutdown();
+        // including the runs the sorter never collected
+        Assert.assertEquals(0, directory.list().length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoTags() {
+        new HXLSorter(reader(DATA));
+    }
+
+    //
+    // Utility methods
+    //
+
+    private static HXLReader reader(String data) {
+        return new HXLReader(new StringReader(data));
+    }
+
+    private static List<String> list(String... items) {
+        List<String> list = new ArrayList<String>();
+        for (String item : items) {
+            list.add(item);
+        }
+        return list;
+    }
+
+    private static List<HXLRow> rows(HXLRowSource source) throws IOException {
+        List<HXLRow> rows = new ArrayList<HXLRow>();
+        HXLRow row = source.read();
+        while (row != null) {
+            rows.add(row);
+            row = source.read();
+        }
+        return rows;
+    }
+
+    private static List<String> contents(HXLRowSource source, String tag) throws IOException {
+        return contents(rows(source), tag);
+    }
+
+    private static List<String> contents(List<HXLRow> rows, String tag) {
+        List<String> contents = new ArrayList<String>();
+        for (HXLRow row : rows) {
+            HXLValue value = row.get(tag);
+            contents.add(value == null ? "" : value.getContent());
+        }
+        return contents;
+    }
+
+    private static List<String> signatures(List<HXLRow> rows) {
+        List<String> signatures = new ArrayList<String>();
+        for (HXLRow row : rows) {
+            StringBuilder s = new StringBuilder().append(row.getRowNumber());
+            for (HXLValue value : row) {
+                s.append('|').append(value.getContent());
+            }
+            signatures.add(s.toString());
+        }
+        return signatures;
+    }
+
+    private static String randomData(int rows) {
+        Random random = new Random(42);
+        StringBuilder data = new StringBuilder("#adm1,#affected,#description\n");
+        for (int i = 0; i < rows; i++) {
+            data.append("Region ").append(random.nextInt(20)).append(',');
+            if (random.nextInt(10) > 0) {
+                data.append(random.nextInt(500));
+            }
+            data.append(",Caf\u00e9 row ").append(i).append('\n');
+        }
+        return data.toString();
+    }
+
+}
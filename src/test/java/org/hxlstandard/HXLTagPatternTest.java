@@ -0,0 +1,99 @@
+package org.hxlstandard;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * JUnit4 tests for the HXLTagPattern class.
+ */
+public class HXLTagPatternTest {
+
+    //
+    // Tests
+    //
+
+    @Test
+    public void testCompile() {
+        HXLTagPattern pattern = HXLTagPattern.compile(" #Affected +f - adults");
+        Assert.assertEquals("#affected", pattern.getHashtag());
+        Assert.assertEquals(Arrays.asList("f"), pattern.getIncludedAttributes());
+        Assert.assertEquals(Arrays.asList("adults"), pattern.getExcludedAttributes());
+    }
+
+    @Test
+    public void testMatches() {
+        HXLTagPattern pattern = HXLTagPattern.compile("#affected+f-adults");
+        Assert.assertTrue(pattern.matches(column("#affected+f+children")));
+        Assert.assertTrue(pattern.matches(column("#affected+children+f")));
+        Assert.assertTrue(pattern.matches(column("#Affected+F")));
+        Assert.assertFalse(pattern.matches(column("#affected+f+adults")));
+        Assert.assertFalse(pattern.matches(column("#affected+m")));
+        Assert.assertFalse(pattern.matches(column("#affected")));
+        Assert.assertFalse(pattern.matches(column("#reached+f")));
+    }
+
+    @Test
+    public void testHashtagOnly() {
+        HXLTagPattern pattern = HXLTagPattern.compile("#org");
+        Assert.assertTrue(pattern.matches(column("#org")));
+        Assert.assertTrue(pattern.matches(column("#org+impl/en")));
+        Assert.assertFalse(pattern.matches(column("#organisation")));
+    }
+
+    @Test
+    public void testExcludeOnly() {
+        HXLTagPattern pattern = HXLTagPattern.compile("#org-funder");
+        Assert.assertTrue(pattern.matches(column("#org+impl")));
+        Assert.assertFalse(pattern.matches(column("#org+impl+funder")));
+    }
+
+    @Test
+    public void testManyAttributes() {
+        // enough distinct attributes to need several words of bits
+        StringBuilder tag = new StringBuilder("#meta");
+        for (int i = 0; i < 200; i++) {
+            tag.append("+pattern_test_").append(i);
+        }
+        HXLColumn column = column(tag.toString());
+        Assert.assertTrue(HXLTagPattern.compile("#meta+pattern_test_0+pattern_test_199").matches(column));
+        Assert.assertFalse(HXLTagPattern.compile("#meta+pattern_test_199+pattern_test_200").matches(column));
+        Assert.assertFalse(HXLTagPattern.compile("#meta-pattern_test_150").matches(column));
+        Assert.assertTrue(HXLTagPattern.compile("#meta+pattern_test_150").matches(column("#meta+pattern_test_150")));
+    }
+
+    @Test
+    public void testFind() {
+        List<HXLColumn> columns = new ArrayList<HXLColumn>();
+        columns.add(new HXLColumn("#org+funder", null, 0, 0));
+        columns.add(new HXLColumn("#org+impl", null, 1, 1));
+        columns.add(new HXLColumn("#affected", null, 2, 2));
+        Assert.assertEquals(1, HXLTagPattern.compile("#org-funder").find(columns));
+        Assert.assertEquals(0, HXLTagPattern.compile("#org").find(columns));
+        Assert.assertEquals(-1, HXLTagPattern.compile("#sector").find(columns));
+    }
+
+    @Test
+    public void testBadPatterns() {
+        for (String s : new String[] {"", "#", "org", "#org+", "#org*impl", "#org+1"}) {
+            try {
+                HXLTagPattern.compile(s);
+                Assert.fail(s);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    //
+    // Utility methods
+    //
+
+    private static HXLColumn column(String tag) {
+        return new HXLColumn(tag, null, 0, 0);
+    }
+
+}
@@ -0,0 +1,131 @@
+package org.hxlstandard;
+
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * JUnit4 tests for the HXLTagSpec class.
+ */
+public class HXLTagSpecTest {
+
+    //
+    // Test constants
+    //
+
+    private final static String VALID[] = {
+        "#sector",
+        "#affected+f+children",
+        " #affected + f + children ",
+        "#sector/en",
+        "#sector+cluster/fr-CA",
+        "#x_rate",
+        "#adm1+code"
+    };
+
+    private final static String INVALID[] = {
+        "",
+        "#",
+        "sector",
+        "# sector",
+        "#1st",
+        "#sector+",
+        "#sector+1",
+        "#sector/en+main",
+        "#sector (main)",
+        "#sector/",
+        "#sector#org"
+    };
+
+    //
+    // Tests
+    //
+
+    @Test
+    public void testParse() {
+        HXLTagSpec spec = HXLTagSpec.parse("#affected+f+children");
+        Assert.assertEquals("#affected+f+children", spec.getTag());
+        Assert.assertEquals("#affected", spec.getHashtag());
+        Assert.assertEquals(Arrays.asList("f", "children"), spec.getAttributes());
+        Assert.assertNull(spec.getLang());
+        Assert.assertTrue(spec.hasAttribute("f"));
+        Assert.assertTrue(spec.hasAttribute("+children"));
+        Assert.assertFalse(spec.hasAttribute("m"));
+    }
+
+    @Test
+    public void testNoAttributes() {
+        HXLTagSpec spec = HXLTagSpec.parse("#sector");
+        Assert.assertEquals("#sector", spec.getTag());
+        Assert.assertEquals(Collections.emptyList(), spec.getAttributes());
+    }
+
+    @Test
+    public void testLang() {
+        HXLTagSpec spec = HXLTagSpec.parse("#sector+cluster/FR-ca");
+        Assert.assertEquals("#sector+cluster", spec.getTag());
+        Assert.assertEquals("fr-ca", spec.getLang());
+        Assert.assertEquals("#sector+cluster/fr-ca", spec.toString());
+    }
+
+    @Test
+    public void testNormalise() {
+        HXLTagSpec spec = HXLTagSpec.parse("  #Affected +F+children +f\t");
+        Assert.assertEquals("#affected+f+children", spec.getTag());
+        Assert.assertTrue(spec.hasAttribute("F"));
+    }
+
+    @Test
+    public void testCanonical() {
+        Assert.assertSame(HXLTagSpec.parse("#org+impl"), HXLTagSpec.parse("#org+impl"));
+        Assert.assertSame(HXLTagSpec.parse("#org+impl").getHashtag(), HXLTagSpec.parse("#ORG").getHashtag());
+        Assert.assertSame(new HXLColumn("#org+impl", null, 0, 0).getTagSpec(), new HXLColumn("#org+impl", null, 1, 3).getTagSpec());
+    }
+
+    @Test
+    public void testValid() throws Exception {
+        for (String s : VALID) {
+            Assert.assertNotNull(s, HXLTagSpec.parse(s));
+            Assert.assertTrue(s, isTagSpec(s));
+        }
+    }
+
+    @Test
+    public void testInvalid() throws Exception {
+        for (String s : INVALID) {
+            Assert.assertNull(s, HXLTagSpec.parse(s));
+            if (s.length() > 0) {
+                Assert.assertFalse(s, isTagSpec(s));
+            }
+        }
+    }
+
+    @Test
+    public void testColumnFallback() {
+        HXLColumn column = new HXLColumn("not a tag", null, 0, 0);
+        Assert.assertEquals("not a tag", column.getTag());
+        Assert.assertEquals("not a tag", column.getHashtag());
+        Assert.assertEquals(Collections.emptyList(), column.getAttributes());
+    }
+
+    @Test
+    public void testColumnLang() {
+        Assert.assertEquals("en", new HXLColumn("#sector/en", null, 0, 0).getLang());
+        Assert.assertEquals("fr", new HXLColumn("#sector/en", "fr", 0, 0).getLang());
+        Assert.assertEquals("#sector", new HXLColumn("#sector/en", null, 0, 0).getTag());
+    }
+
+    //
+    // Utility methods
+    //
+
+    private static boolean isTagSpec(String s) throws Exception {
+        HXLCSVTokenizer tokenizer = new HXLCSVTokenizer(new StringReader("\"" + s + "\"\n"));
+        Assert.assertEquals(1, tokenizer.next());
+        return HXLTagSpec.isTagSpec(tokenizer, 0);
+    }
+
+}
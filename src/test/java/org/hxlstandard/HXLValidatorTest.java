@@ -0,0 +1,210 @@
+package org.hxlstandard;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * JUnit4 tests for the HXLValidator class.
+ */
+public class HXLValidatorTest {
+
+    //
+    // Test constants
+    //
+
+    private final static String DATA =
+        "Province,Affected (F),Affected (M),Date\n"
+        + "#adm1,#affected+f,#affected+m,#date\n"
+        + "North,100,90,2015-03-01\n"
+        + "South,9.5,10,2015-01-15\n"
+        + ",n/a,-1,yesterday\n"
+        + "West,,5,2015-02-01\n";
+
+    //
+    // Tests
+    //
+
+    @Test
+    public void testValid() throws IOException {
+        HXLValidator validator = new HXLValidator()
+            .required("#adm1")
+            .number("#affected", 0, Double.POSITIVE_INFINITY);
+        HXLValidator.Report report = validator.validate(HXLPipeline.from(reader(DATA)).limit(2));
+        Assert.assertTrue(report.isValid());
+        Assert.assertFalse(report.isStopped());
+        Assert.assertEquals(2, report.getRowCount());
+    }
+
+    @Test
+    public void testErrors() throws IOException {
+        HXLValidator validator = new HXLValidator()
+            .required("#adm1")
+            .allowedValues("#adm1", Arrays.asList("North", "South", "East"))
+            .integer("#affected", 0, Long.MAX_VALUE)
+            .date("#date");
+        HXLValidator.Report report = validator.validate(reader(DATA));
+        Assert.assertEquals(4, report.getRowCount());
+        Assert.assertEquals(Arrays.asList(
+            "Row 4, column 2: #affected+f \"9.5\" must be an integer of at least 0",
+            "Row 5, column 1: #adm1 is required",
+            "Row 5, column 2: #affected+f \"n/a\" must be an integer of at least 0",
+            "Row 5, column 3: #affected+m \"-1\" must be an integer of at least 0",
+            "Row 5, column 4: #date \"yesterday\" must be an ISO 8601 date",
+            "Row 6, column 1: #adm1 \"West\" is not an allowed value"
+        ), strings(report.getErrors()));
+        HXLValidationError error = report.getErrors().get(0);
+        Assert.assertEquals(1, error.getRowNumber());
+        Assert.assertEquals(3, error.getSourceRowNumber());
+        Assert.assertEquals(1, error.getSourceColumnNumber());
+        Assert.assertEquals("#affected+f", error.getColumn().getTag());
+        Assert.assertEquals("9.5", error.getContent());
+    }
+
+    @Test
+    public void testPatterns() throws IOException {
+        HXLValidator validator = new HXLValidator()
+            .number("#affected-f", 0, 50)
+            .regex("#adm1", "[A-Z].*");
+        Assert.assertEquals(Arrays.asList(
+            "Row 3, column 3: #affected+m \"90\" must be a number from 0 to 50",
+            "Row 5, column 3: #affected+m \"-1\" must be a number from 0 to 50"
+        ), strings(validator.validate(reader(DATA)).getErrors()));
+    }
+
+    @Test
+    public void testCustomRule() throws IOException {
+        HXLValidator validator = new HXLValidator()
+            .rule("#adm1", v -> v.getContent().length() == 5, "must have five letters");
+        Assert.assertEquals(Arrays.asList(
+            "Row 6, column 1: #adm1 \"West\" must have five letters"
+        ), strings(validator.validate(reader(DATA)).getErrors()));
+    }
+
+    @Test
+    public void testMissingRequiredColumn() throws IOException {
+        HXLValidator validator = new HXLValidator().required("#sector");
+        HXLValidator.Report report = validator.validate(reader(DATA));
+        Assert.assertEquals(1, report.getErrors().size());
+        HXLValidationError error = report.getErrors().get(0);
+        Assert.assertNull(error.getColumn());
+        Assert.assertEquals(-1, error.getSourceRowNumber());
+        Assert.assertEquals(-1, error.getSourceColumnNumber());
+        Assert.assertEquals("No column matches required #sector", error.toString());
+    }
+
+    @Test
+    public void testMaxErrors() throws IOException {
+        HXLValidator validator = new HXLValidator()
+            .date("#date")
+            .setMaxErrors(2);
+        StringBuilder data = new StringBuilder("#date\n");
+        for (int i = 0; i < 10; i++) {
+            data.append("bad").append(i).append('\n');
+        }
+        HXLValidator.Report report = validator.validate(reader(data.toString()));
+        Assert.assertTrue(report.isStopped());
+        Assert.assertEquals(2, report.getRowCount());
+        Assert.assertEquals(Arrays.asList("bad0", "bad1"), contents(report.getErrors()));
+    }
+
+    @Test
+    public void testMaxErrorsInOneRow() throws IOException {
+        HXLValidator validator = new HXLValidator()
+            .integer("#affected", 0, 10)
+            .setMaxErrors(1);
+        HXLValidator.Report report = validator.validate(reader(DATA));
+        Assert.assertTrue(report.isStopped());
+        Assert.assertEquals(1, report.getRowCount());
+        Assert.assertEquals(Arrays.asList("100"), contents(report.getErrors()));
+    }
+
+    @Test
+    public void testPipeline() throws IOException {
+        HXLValidator validator = new HXLValidator().date("#date");
+        HXLReader reader = reader(DATA);
+        reader.setReuseObjects(true);
+        HXLValidator.Check check = HXLPipeline.from(reader)
+            .filter("#adm1", s -> s.length() > 0)
+            .validate(validator);
+        // rows pass through unchanged
+        Assert.assertEquals(3, check.count());
+        Assert.assertTrue(check.getErrors().isEmpty());
+        Assert.assertFalse(check.isStopped());
+
+        check = HXLPipeline.from(reader(DATA)).validate(validator);
+        Assert.assertEquals(4, check.count());
+        Assert.assertEquals(Arrays.asList("yesterday"), contents(check.getErrors()));
+    }
+
+    @Test
+    public void testParallel() throws IOException {
+        HXLValidator validator = new HXLValidator()
+            .integer("#affected", 0, 1000);
+        StringBuilder data = new StringBuilder("#adm1,#affected\n");
+        for (int i = 0; i < 5000; i++) {
+            data.append("X,").append(i % 100 == 99 ? "bad" + i : Integer.toString(i % 100)).append('\n');
+        }
+        HXLReader reader = reader(data.toString());
+        HXLValidator.Report report = validator.validate(reader.getColumns(), reader.stream().parallel());
+        Assert.assertEquals(5000, report.getRowCount());
+        Assert.assertEquals(50, report.getErrors().size());
+        // sorted by source row
+        List<String> expected = new ArrayList<String>();
+        for (int i = 99; i < 5000; i += 100) {
+            expected.add("bad" + i);
+        }
+        Assert.assertEquals(expected, contents(report.getErrors()));
+    }
+
+    @Test
+    public void testParallelMaxErrors() throws IOException {
+        HXLValidator validator = new HXLValidator()
+            .date("#date")
+            .setMaxErrors(10);
+        StringBuilder data = new StringBuilder("#date\n");
+        for (int i = 0; i < 5000; i++) {
+            data.append("bad").append('\n');
+        }
+        HXLReader reader = reader(data.toString());
+        HXLValidator.Report report = validator.validate(reader.getColumns(), reader.stream().parallel());
+        Assert.assertTrue(report.isStopped());
+        Assert.assertEquals(10, report.getErrors().size());
+        Assert.assertTrue(report.getRowCount() < 5000);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadPattern() {
+        new HXLValidator().required("adm1");
+    }
+
+    //
+    // Utility methods
+    //
+
+    private static HXLReader reader(String data) {
+        return new HXLReader(new StringReader(data));
+    }
+
+    private static List<String> strings(List<HXLValidationError> errors) {
+        List<String> strings = new ArrayList<String>();
+        for (HXLValidationError error : errors) {
+            strings.add(error.toString());
+        }
+        return strings;
+    }
+
+    private static List<String> contents(List<HXLValidationError> errors) {
+        List<String> contents = new ArrayList<String>();
+        for (HXLValidationError error : errors) {
+            contents.add(error.getContent());
+        }
+        return contents;
+    }
+
+}
@@ -0,0 +1,96 @@
+package org.hxlstandard;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit4 tests for the HXLValueDictionary class.
+ */
+public class HXLValueDictionaryTest {
+
+    //
+    // Instance variables
+    //
+
+    private HXLValueDictionary dictionary;
+
+    //
+    // Tests
+    //
+
+    @Before
+    public void setUp() throws Exception {
+        dictionary = new HXLValueDictionary(3);
+    }
+
+    @Test
+    public void testInternString() {
+        String wash = dictionary.intern(new String("WASH"));
+        Assert.assertSame(wash, dictionary.intern(new String("WASH")));
+        Assert.assertEquals(1, dictionary.size());
+        Assert.assertEquals(1, dictionary.getHits());
+        Assert.assertEquals(1, dictionary.getMisses());
+        Assert.assertEquals(4, dictionary.getSavedChars());
+    }
+
+    @Test
+    public void testInternChars() {
+        char buffer[] = "xxWASHxxHealthWASH".toCharArray();
+        String wash = dictionary.intern(buffer, 2, 4);
+        Assert.assertEquals("WASH", wash);
+        Assert.assertSame(wash, dictionary.intern(buffer, 14, 4));
+        Assert.assertSame(wash, dictionary.intern("WASH"));
+        Assert.assertEquals("Health", dictionary.intern(buffer, 8, 6));
+        Assert.assertEquals(2, dictionary.size());
+    }
+
+    @Test
+    public void testCodes() {
+        dictionary.intern("WASH");
+        dictionary.intern("Health");
+        Assert.assertEquals(0, dictionary.getCode("WASH"));
+        Assert.assertEquals(1, dictionary.getCode("Health"));
+        Assert.assertEquals(-1, dictionary.getCode("Education"));
+        Assert.assertEquals("Health", dictionary.getValue(1));
+    }
+
+    @Test
+    public void testLimit() {
+        dictionary.intern("a");
+        dictionary.intern("b");
+        dictionary.intern("c");
+        Assert.assertTrue(dictionary.isEnabled());
+        String d = new String("d");
+        Assert.assertSame(d, dictionary.intern(d));
+        Assert.assertFalse(dictionary.isEnabled());
+        Assert.assertEquals(0, dictionary.size());
+        Assert.assertEquals(-1, dictionary.getCode("a"));
+        Assert.assertEquals("e", dictionary.intern("xe".toCharArray(), 1, 1));
+    }
+
+    @Test
+    public void testGrow() {
+        dictionary = new HXLValueDictionary(HXLValueDictionary.MAX_LIMIT);
+        for (int i = 0; i < 10000; i++) {
+            dictionary.intern("v" + i);
+        }
+        Assert.assertEquals(10000, dictionary.size());
+        for (int i = 0; i < 10000; i++) {
+            Assert.assertEquals(i, dictionary.getCode("v" + i));
+            Assert.assertSame(dictionary.getValue(i), dictionary.intern(new String("v" + i)));
+        }
+        Assert.assertEquals(-1, dictionary.getCode("v10000"));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testLimitTooLarge() {
+        new HXLValueDictionary(HXLValueDictionary.MAX_LIMIT + 1);
+    }
+
+    @Test(expected=IndexOutOfBoundsException.class)
+    public void testValueError() {
+        dictionary.getValue(0);
+    }
+
+}
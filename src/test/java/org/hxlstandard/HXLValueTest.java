@@ -1,5 +1,8 @@
 package org.hxlstandard;
 
+import java.time.DateTimeException;
+import java.time.LocalDate;
+
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -27,6 +30,31 @@ public class HXLValueTest {
 
     final private int SOURCE_ROW_NUMBER = 12;
 
+    final private static String INTEGERS[][] = {
+        {"0", "0"},
+        {"42", "42"},
+        {"-17", "-17"},
+        {"+5", "5"},
+        {" 1000 ", "1000"},
+        {"007", "7"},
+        {"123456789012345678", "123456789012345678"},
+        {"9223372036854775807", "9223372036854775807"},
+        {"-9223372036854775808", "-9223372036854775808"}
+    };
+
+    final private static String DECIMALS[] = {
+        "1.5", "-0.25", "0.05", ".5", "3.14159265358979", "1e6", "2.5E-3",
+        "123456789.123456789", "9223372036854775808", "0.1", "1.0"
+    };
+
+    final private static String NOT_NUMBERS[] = {
+        "", " ", "-", "+", ".", "1.", "1.2.3", "1,000", "12a", "e5", "1e", "1e+", "NaN", "Infinity", "0x10", "--1"
+    };
+
+    final private static String NOT_DATES[] = {
+        "", "2015", "2015-01", "2015-13-01", "2015-02-30", "15-01-01", "2015/01/01", "2015-01-01T12:00", "abcd-ef-gh"
+    };
+
     //
     // Instance variables
     //
@@ -98,4 +126,83 @@ public class HXLValueTest {
         Assert.assertEquals(SOURCE_COLUMN_NUMBER, value.getSourceColumnNumber());
     }
 
+    @Test
+    public void testIntegers() {
+        for (String test[] : INTEGERS) {
+            value.init(column, test[0], ROW_NUMBER, SOURCE_ROW_NUMBER);
+            Assert.assertTrue(test[0], value.isNumeric());
+            Assert.assertTrue(test[0], value.isInteger());
+            Assert.assertEquals(test[0], Long.parseLong(test[1]), value.asLong());
+            Assert.assertEquals(test[0], Long.parseLong(test[1]), value.asDouble(), 0.0);
+        }
+    }
+
+    @Test
+    public void testDecimals() {
+        for (String test : DECIMALS) {
+            value.init(column, test, ROW_NUMBER, SOURCE_ROW_NUMBER);
+            Assert.assertTrue(test, value.isNumeric());
+            Assert.assertFalse(test, value.isInteger());
+            // the fast path must round exactly as Java does
+            Assert.assertEquals(test, Double.parseDouble(test), value.asDouble(), 0.0);
+            Assert.assertEquals(test, (long) Double.parseDouble(test), value.asLong());
+        }
+    }
+
+    @Test
+    public void testNotNumbers() {
+        for (String test : NOT_NUMBERS) {
+            value.init(column, test, ROW_NUMBER, SOURCE_ROW_NUMBER);
+            Assert.assertFalse(test, value.isNumeric());
+        }
+    }
+
+    @Test(expected=NumberFormatException.class)
+    public void testAsLongError() {
+        value.asLong();
+    }
+
+    @Test
+    public void testDates() {
+        value.init(column, "2015-03-09", ROW_NUMBER, SOURCE_ROW_NUMBER);
+        Assert.assertTrue(value.isDate());
+        Assert.assertEquals(LocalDate.of(2015, 3, 9), value.asDate());
+        // cached
+        Assert.assertSame(value.asDate(), value.asDate());
+        for (String test : NOT_DATES) {
+            value.init(column, test, ROW_NUMBER, SOURCE_ROW_NUMBER);
+            Assert.assertFalse(test, value.isDate());
+        }
+    }
+
+    @Test(expected=DateTimeException.class)
+    public void testAsDateError() {
+        value.asDate();
+    }
+
+    @Test
+    public void testInitResetsParse() {
+        value.init(column, "5", ROW_NUMBER, SOURCE_ROW_NUMBER);
+        Assert.assertEquals(5, value.asLong());
+        value.init(column, "6.5", ROW_NUMBER, SOURCE_ROW_NUMBER);
+        Assert.assertEquals(6.5, value.asDouble(), 0.0);
+        value.init(column, "x", ROW_NUMBER, SOURCE_ROW_NUMBER);
+        Assert.assertFalse(value.isNumeric());
+    }
+
+    @Test
+    public void testLazyNumber() {
+        final int calls[] = new int[1];
+        CharSequence lazy = new CharSequence() {
+            public int length() { return 3; }
+            public char charAt(int i) { return "250".charAt(i); }
+            public CharSequence subSequence(int start, int end) { return "250".subSequence(start, end); }
+            public String toString() { calls[0]++; return "250"; }
+        };
+        value.initLazy(column, lazy, ROW_NUMBER, SOURCE_ROW_NUMBER);
+        Assert.assertEquals(250, value.asLong());
+        Assert.assertEquals(0, calls[0]);
+        Assert.assertEquals("250", value.getContent());
+    }
+
 }
@@ -0,0 +1,161 @@
+package org.hxlstandard;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * JUnit4 tests for the HXLWriter class.
+ */
+public class HXLWriterTest {
+
+    //
+    // Test constants
+    //
+
+    private final static String DATA =
+        "#sector,#org,#description\n"
+        + "WASH,Org 1,plain text\n"
+        + "Health,\"Org, 2\",\"say \"\"hi\"\"\"\n"
+        + "Education,Org 3,\"line 1\nline 2\"\n"
+        + "Shelter,Caf\u00e9 \u65e5\u672c,\ud83d\ude00 \ud83d\ude00\n"
+        + "Protection\n";
+
+    //
+    // Instance variables
+    //
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    //
+    // Tests
+    //
+
+    @Test
+    public void testMinimalQuoting() throws Exception {
+        StringWriter output = new StringWriter();
+        HXLWriter writer = new HXLWriter(output);
+        writer.writeRecord("a", "b,c", "say \"hi\"", null, "x\ny", "");
+        writer.close();
+        Assert.assertEquals("a,\"b,c\",\"say \"\"hi\"\"\",,\"x\ny\",\r\n", output.toString());
+    }
+
+    @Test
+    public void testSeparator() throws Exception {
+        StringWriter output = new StringWriter();
+        HXLWriter writer = new HXLWriter(output, ';', 4);
+        writer.writeRecord("a,b", "c;d");
+        writer.close();
+        Assert.assertEquals("a,b;\"c;d\"\r\n", output.toString());
+    }
+
+    @Test
+    public void testColumns() throws Exception {
+        List<HXLColumn> columns = new ArrayList<HXLColumn>();
+        columns.add(new HXLColumn("#sector", "en", 0, 0));
+        columns.add(new HXLColumn("#org", null, 1, 1));
+        StringWriter output = new StringWriter();
+        HXLWriter writer = new HXLWriter(output);
+        writer.writeColumns(columns);
+        writer.flush();
+        Assert.assertEquals("#sector/en,#org\r\n", output.toString());
+    }
+
+    @Test
+    public void testShortRow() throws Exception {
+        StringWriter output = new StringWriter();
+        HXLWriter writer = new HXLWriter(output);
+        HXLReader reader = new HXLReader(new StringReader(DATA));
+        Assert.assertEquals(1, writer.write(HXLPipeline.from(reader).filter("#sector", s -> s.equals("Protection")).select("#sector", "#org")));
+        writer.close();
+        Assert.assertEquals("#sector,#org\r\nProtection,\r\n", output.toString());
+    }
+
+    @Test
+    public void testRoundTripWriter() throws Exception {
+        for (int bufferSize : new int[] {1, 3, HXLWriter.DEFAULT_BUFFER_SIZE}) {
+            StringWriter output = new StringWriter();
+            HXLWriter writer = new HXLWriter(output, ',', bufferSize);
+            writer.write(new HXLReader(new StringReader(DATA)));
+            writer.close();
+            assertSameData(new HXLReader(new StringReader(DATA)), new HXLReader(new StringReader(output.toString())));
+        }
+    }
+
+    @Test
+    public void testRoundTripFile() throws Exception {
+        File file = folder.newFile();
+        HXLWriter writer = new HXLWriter(file);
+        Assert.assertEquals(5, writer.write(new HXLReader(new StringReader(DATA))));
+        Assert.assertEquals(5, writer.getRowCount());
+        writer.close();
+        assertSameData(new HXLReader(new StringReader(DATA)), new HXLReader(file));
+    }
+
+    @Test
+    public void testUTF8Encoding() throws Exception {
+        // tiny buffers split surrogate pairs across flushes
+        String text = "a\u00e9\u65e5\ud83d\ude00\ud83d\ude01z\ud800x";
+        for (int bufferSize : new int[] {1, 2, 3, 5, 64}) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            HXLWriter writer = new HXLWriter(Channels.newChannel(bytes), ',', bufferSize);
+            writer.writeRecord(text);
+            writer.close();
+            Assert.assertArrayEquals("buffer " + bufferSize, (text + "\r\n").getBytes("UTF-8"), bytes.toByteArray());
+        }
+    }
+
+    @Test
+    public void testTrailingHighSurrogate() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        HXLWriter writer = new HXLWriter(Channels.newChannel(bytes), ',', 1);
+        writer.writeRecord("a");
+        writer.writeRecord("\ud83d");
+        writer.close();
+        Assert.assertEquals("a\r\n?\r\n", new String(bytes.toByteArray(), "UTF-8"));
+    }
+
+    @Test
+    public void testFileReplaced() throws Exception {
+        File file = folder.newFile();
+        Files.write(file.toPath(), "old content that is longer than the new content".getBytes("UTF-8"));
+        HXLWriter writer = new HXLWriter(file);
+        writer.writeRecord("#org");
+        writer.close();
+        Assert.assertEquals("#org\r\n", new String(Files.readAllBytes(file.toPath()), "UTF-8"));
+    }
+
+    //
+    // Utility methods
+    //
+
+    private static void assertSameData(HXLReader expected, HXLReader actual) throws Exception {
+        Assert.assertEquals(expected.getColumns().size(), actual.getColumns().size());
+        for (int i = 0; i < expected.getColumns().size(); i++) {
+            Assert.assertEquals(expected.getColumns().get(i).getTag(), actual.getColumns().get(i).getTag());
+        }
+        HXLRow row = expected.read();
+        while (row != null) {
+            HXLRow other = actual.read();
+            Assert.assertNotNull(other);
+            for (HXLValue value : row) {
+                Assert.assertEquals(value.getContent(), other.get(value.getColumn().getTag()).getContent());
+            }
+            row = expected.read();
+        }
+        Assert.assertNull(actual.read());
+        actual.close();
+    }
+
+}
@@ -8,7 +8,28 @@ import org.junit.runner.RunWith;
   HXLValueTest.class,
   HXLRowTest.class,
   HXLColumnTest.class,
-  HXLReaderTest.class
+  HXLReaderTest.class,
+  HXLCSVTokenizerTest.class,
+  HXLParallelReaderTest.class,
+  HXLMappedTokenizerTest.class,
+  HXLColumnVectorTest.class,
+  HXLColumnarDatasetTest.class,
+  HXLValueDictionaryTest.class,
+  HXLColumnIndexTest.class,
+  HXLPipelineTest.class,
+  HXLAsyncReaderTest.class,
+  HXLColumnTypesTest.class,
+  HXLWriterTest.class,
+  HXLSnapshotTest.class,
+  HXLAggregatorTest.class,
+  HXLIndexTest.class,
+  HXLSorterTest.class,
+  HXLReaderMetricsTest.class,
+  HXLTagSpecTest.class,
+  HXLTagPatternTest.class,
+  HXLValidatorTest.class,
+  HXLCompressedInputStreamTest.class,
+  HXLInputDecoderTest.class
 })
 public class TestSuite {
   //nothing